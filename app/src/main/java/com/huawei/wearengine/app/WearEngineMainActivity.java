@@ -24,22 +24,42 @@ import androidx.core.content.FileProvider;
 
 import com.huawei.hmf.tasks.OnFailureListener;
 import com.huawei.hmf.tasks.OnSuccessListener;
+import com.huawei.hmf.tasks.Task;
 import com.huawei.wearengine.HiWear;
+import com.huawei.wearengine.app.device.DeviceRegistry;
+import com.huawei.wearengine.app.device.LinkLatencyMonitor;
+import com.huawei.wearengine.app.image.BinEncodeOptions;
+import com.huawei.wearengine.app.metrics.LatencyHistogram;
+import com.huawei.wearengine.app.metrics.MeteredDeviceClient;
+import com.huawei.wearengine.app.metrics.MeteredP2pClient;
+import com.huawei.wearengine.app.metrics.MetricsRegistry;
+import com.huawei.wearengine.app.p2p.BroadcastSender;
+import com.huawei.wearengine.app.p2p.FileTransfer;
+import com.huawei.wearengine.app.p2p.FileTransferEngine;
+import com.huawei.wearengine.app.p2p.InboundMessagePipeline;
+import com.huawei.wearengine.app.p2p.OutboundMessageQueue;
+import com.huawei.wearengine.app.p2p.ReceiverRouter;
+import com.huawei.wearengine.app.p2p.TextMessageCodec;
+import com.huawei.wearengine.app.transport.DeviceTransport;
+import com.huawei.wearengine.app.transport.P2pTransport;
+import com.huawei.wearengine.app.transport.WearEngineDeviceTransport;
+import com.huawei.wearengine.app.transport.WearEngineP2pTransport;
+import com.huawei.wearengine.app.utils.BitmapPool;
 import com.huawei.wearengine.app.utils.FileManager;
+import com.huawei.wearengine.app.utils.ImageConvertPipeline;
+import com.huawei.wearengine.app.utils.PreviewJpegWriter;
+import com.huawei.wearengine.app.utils.UiLogSink;
 import com.huawei.wearengine.auth.AuthCallback;
 import com.huawei.wearengine.auth.Permission;
 import com.huawei.wearengine.device.Device;
-import com.huawei.wearengine.device.DeviceClient;
 import com.huawei.wearengine.p2p.Message;
 import com.huawei.wearengine.p2p.P2pClient;
 import com.huawei.wearengine.p2p.PingCallback;
-import com.huawei.wearengine.p2p.Receiver;
 import com.huawei.wearengine.p2p.SendCallback;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
-import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.HashMap;
 import java.util.List;
@@ -57,6 +77,8 @@ public class WearEngineMainActivity extends AppCompatActivity {
 
     private static final String SEND_MESSAGE_TO = "Send message to ";
 
+    private static final String SEND_FILE_TO = "Send file to ";
+
     private static final String FAILURE = " task failure";
 
     private static final String SUCCESS = " task success";
@@ -65,7 +87,7 @@ public class WearEngineMainActivity extends AppCompatActivity {
 
     private static final String STRING_PING = " Ping ";
 
-    private static final String HASH_CODE = " , hashcode is: ";
+    private static final double MICROS_PER_MILLI = 1000.0;
 
     private static final String PEER_PKG_NAME = "com.watch.wearengine";
 
@@ -74,23 +96,39 @@ public class WearEngineMainActivity extends AppCompatActivity {
 
     private static final int TAKE_PHOTO = 2;
 
+    private static final int PICK_FILE = 3;
+
+    private static final String ANY_MIME_TYPE = "*/*";
+
     private static final int SCROLL_HIGH = 50;
 
+    private static final int PREVIEW_JPEG_QUALITY = 90;
+
+    // A photo sent again to the same device only carries the tiles changed since the last one it received
+    private static final BinEncodeOptions PHOTO_OPTIONS = new BinEncodeOptions.Builder().setParallel(true)
+        .setDelta(true).build();
+
     private RadioGroup devicesRadioGroup;
 
     private TextView logOutputTextView;
 
-    private P2pClient p2pClient;
+    private UiLogSink logSink;
 
-    private DeviceClient deviceClient;
+    private MetricsRegistry metricsRegistry;
 
-    private List<Device> deviceList = new ArrayList<>();
+    private P2pTransport p2pClient;
+
+    private DeviceTransport deviceClient;
+
+    private DeviceRegistry deviceRegistry;
 
     private Device selectedDevice;
 
     private Message sendMessage;
 
-    private Map<String, Device> deviceMap = new HashMap<>();
+    private Map<String, RadioButton> deviceButtonMap = new HashMap<>();
+
+    private Map<Integer, String> buttonDeviceMap = new HashMap<>();
 
     private int index = 0;
 
@@ -109,6 +147,19 @@ public class WearEngineMainActivity extends AppCompatActivity {
 	
     private String mCameraImagePath;
 
+    private ImageConvertPipeline imageConvertPipeline;
+
+    private FileTransferEngine fileTransferEngine;
+
+    private OutboundMessageQueue outboundMessageQueue;
+
+    private BroadcastSender broadcastSender;
+
+    private InboundMessagePipeline inboundMessagePipeline;
+
+    private ReceiverRouter receiverRouter;
+
+    private LinkLatencyMonitor linkLatencyMonitor;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -120,6 +171,19 @@ public class WearEngineMainActivity extends AppCompatActivity {
         addViewListener();
     }
 
+    @Override
+    protected void onDestroy() {
+        imageConvertPipeline.shutdown();
+        fileTransferEngine.shutdown();
+        outboundMessageQueue.shutdown();
+        broadcastSender.shutdown();
+        linkLatencyMonitor.stop();
+        deviceRegistry.stop();
+        receiverRouter.unregisterAll();
+        inboundMessagePipeline.shutdown();
+        super.onDestroy();
+    }
+
     /**
      * Applying for the Read Permission on External Storage
      */
@@ -136,7 +200,65 @@ public class WearEngineMainActivity extends AppCompatActivity {
      * Initialization data
      */
     private void initData() {
+        metricsRegistry = new MetricsRegistry();
+        P2pClient hiWearP2pClient = HiWear.getP2pClient(this);
+        hiWearP2pClient.setPeerPkgName(PEER_PKG_NAME);
+        p2pClient = new MeteredP2pClient(new WearEngineP2pTransport(hiWearP2pClient), metricsRegistry);
+        deviceClient = new MeteredDeviceClient(new WearEngineDeviceTransport(HiWear.getDeviceClient(this)),
+                metricsRegistry);
+        deviceRegistry = new DeviceRegistry(deviceClient);
+        deviceRegistry.addListener(new DeviceRegistry.Listener() {
+            @Override
+            public void onDeviceAdded(Device device) {
+                addDeviceButton(device);
+            }
 
+            @Override
+            public void onDeviceRemoved(Device device) {
+                receiverRouter.unregister(device);
+                linkLatencyMonitor.forget(device.getUuid());
+                imageConvertPipeline.forgetDevice(device.getUuid());
+                removeDeviceButton(device);
+            }
+
+            @Override
+            public void onConnectionChanged(Device device, boolean isConnected) {
+                printOperationResult("device Name: " + device.getName() + " connect status:" + isConnected);
+                if (selectedDevice != null && selectedDevice.getUuid().equals(device.getUuid())) {
+                    selectedDevice = device;
+                }
+            }
+        });
+        deviceRegistry.start();
+        linkLatencyMonitor = new LinkLatencyMonitor(p2pClient, deviceRegistry);
+        linkLatencyMonitor.start();
+        fileTransferEngine = new FileTransferEngine(p2pClient);
+        outboundMessageQueue = new OutboundMessageQueue(p2pClient);
+        broadcastSender = new BroadcastSender(p2pClient);
+        inboundMessagePipeline = new InboundMessagePipeline();
+        inboundMessagePipeline.subscribe(TextMessageCodec.TOPIC, String.class,
+            new InboundMessagePipeline.Subscriber<String>() {
+                @Override
+                public void onMessage(Device device, String message) {
+                    printOperationResult("ReceiveMessage is:" + message);
+                }
+            });
+        inboundMessagePipeline.subscribe(InboundMessagePipeline.TOPIC_BYTES, byte[].class,
+            new InboundMessagePipeline.Subscriber<byte[]>() {
+                @Override
+                public void onMessage(Device device, byte[] message) {
+                    printOperationResult("ReceiveMessage is " + message.length + " bytes from " + device.getName());
+                }
+            });
+        receiverRouter = new ReceiverRouter(p2pClient, inboundMessagePipeline);
+        BitmapPool bitmapPool = new BitmapPool(BitmapPool.DEFAULT_MAX_BYTES);
+        imageConvertPipeline = new ImageConvertPipeline(this, new ImageConvertPipeline.Sender() {
+            @Override
+            public void send(Device device, String binPath, SendCallback callback) {
+                sendFile(device, binPath, callback);
+            }
+        }, new PreviewJpegWriter(this, PreviewJpegWriter.Mode.DEFERRED, PREVIEW_JPEG_QUALITY, bitmapPool),
+            bitmapPool);
     }
 
     /**
@@ -145,6 +267,7 @@ public class WearEngineMainActivity extends AppCompatActivity {
     private void initView() {
         devicesRadioGroup = findViewById(R.id.device_radio_group);
         logOutputTextView = findViewById(R.id.log_output_text_view);
+        logSink = new UiLogSink(TAG, logOutputTextView, SCROLL_HIGH);
     }
 
     /**
@@ -156,7 +279,7 @@ public class WearEngineMainActivity extends AppCompatActivity {
             @Override
             public void onCheckedChanged(RadioGroup group, int checkedId) {
                 Log.d(TAG, "onCheckedChanged:" + checkedId);
-                selectedDevice = deviceList.get(checkedId);
+                selectedDevice = deviceRegistry.getDevice(buttonDeviceMap.get(checkedId));
             }
         });
     }
@@ -167,22 +290,13 @@ public class WearEngineMainActivity extends AppCompatActivity {
      * @param view UI object
      */
     public void getBoundDevices(View view) {
-        deviceClient.getBondedDevices().addOnSuccessListener(new OnSuccessListener<List<Device>>() {
-            @Override
-            public void onSuccess(List<Device> devices) {
-                if (devices == null || devices.size() == 0) {
-                    printOperationResult("getBondedDevices list is null or list size is 0");
-                    return;
-                }
-                printOperationResult("getBondedDevices onSuccess! devices list size = " + devices.size());
-                updateDeviceList(devices);
-            }
-        }).addOnFailureListener(new OnFailureListener() {
-            @Override
-            public void onFailure(Exception e) {
-                printOperationResult("getBondedDevices task submission error");
-            }
-        });
+        List<Device> devices = deviceRegistry.getDevices();
+        printOperationResult("getBondedDevices cached devices list size = " + devices.size());
+        for (Device device : devices) {
+            printOperationResult("device Name: " + device.getName());
+            printOperationResult("device connect status:" + deviceRegistry.isConnected(device.getUuid()));
+        }
+        deviceRegistry.refresh();
     }
 
     /**
@@ -194,25 +308,39 @@ public class WearEngineMainActivity extends AppCompatActivity {
         if (!checkSelectedDevice()) {
             return;
         }
-        p2pClient.ping(selectedDevice, new PingCallback() {
+        final Device device = selectedDevice;
+        p2pClient.ping(device, new PingCallback() {
             @Override
             public void onPingResult(int result) {
-                printOperationResult(Calendar.getInstance().getTime() + STRING_PING + selectedDevice.getName()
+                printOperationResult(Calendar.getInstance().getTime() + STRING_PING + device.getName()
                         + DEVICE_NAME_OF + PEER_PKG_NAME + STRING_RESULT + result);
+                printLinkStats(device);
             }
         }).addOnSuccessListener(new OnSuccessListener<Void>() {
             @Override
             public void onSuccess(Void result) {
-                printOperationResult(STRING_PING + selectedDevice.getName() + DEVICE_NAME_OF + PEER_PKG_NAME + SUCCESS);
+                printOperationResult(STRING_PING + device.getName() + DEVICE_NAME_OF + PEER_PKG_NAME + SUCCESS);
             }
         }).addOnFailureListener(new OnFailureListener() {
             @Override
             public void onFailure(Exception e) {
-                printOperationResult(STRING_PING + selectedDevice.getName() + DEVICE_NAME_OF + PEER_PKG_NAME + FAILURE);
+                printOperationResult(STRING_PING + device.getName() + DEVICE_NAME_OF + PEER_PKG_NAME + FAILURE);
             }
         });
     }
 
+    private void printLinkStats(Device device) {
+        LinkLatencyMonitor.LinkStats stats = linkLatencyMonitor.getStats(device.getUuid());
+        if (stats == null) {
+            return;
+        }
+        LatencyHistogram.Snapshot latency = stats.getLatency();
+        printOperationResult("link " + device.getName() + " rtt ms p50:" + latency.getP50() / MICROS_PER_MILLI
+                + " p95:" + latency.getP95() / MICROS_PER_MILLI + " p99:" + latency.getP99() / MICROS_PER_MILLI
+                + " max:" + latency.getMax() / MICROS_PER_MILLI + " pings:" + stats.getSentPings() + " timeouts:"
+                + stats.getTimeouts() + " failures:" + stats.getFailures());
+    }
+
     /**
      * send message to device
      *
@@ -223,22 +351,138 @@ public class WearEngineMainActivity extends AppCompatActivity {
         sendMessageResult(sendMessageStr);
     }
 
+    /**
+     * send message to all the bound devices
+     *
+     * @param view UI object
+     */
+    public void broadcastMessage(View view) {
+        List<Device> devices = deviceRegistry.getDevices();
+        if (devices.isEmpty()) {
+            printOperationResult("please get the bound devices!");
+            return;
+        }
+        byte[] payload;
+        try {
+            payload = "Hello Watches! This is HuaWei Phone.".getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            Log.e(TAG, "set broadcast message UnsupportedEncodingException");
+            return;
+        }
+        broadcastSender.send(devices, payload, new BroadcastSender.Callback() {
+            @Override
+            public void onComplete(BroadcastSender.BroadcastResult result) {
+                for (BroadcastSender.DeviceResult deviceResult : result.getDeviceResults()) {
+                    printOperationResult(SEND_MESSAGE_TO + deviceResult.getDevice().getName() + DEVICE_NAME_OF
+                            + PEER_PKG_NAME + STRING_RESULT + deviceResult.getResultCode() + " in "
+                            + deviceResult.getLatencyMillis() + "ms");
+                }
+                printOperationResult("broadcast " + result.getSuccessCount() + "/" + result.getDeviceResults().size()
+                        + SUCCESS + " in " + result.getTotalMillis() + "ms");
+            }
+        });
+    }
+
     /**
      * send file to device
      *
      * @param sendFilePath file path
      */
     public void sendFile(String sendFilePath) {
+        sendFile(sendFilePath, null);
+    }
 
+    /**
+     * send file to device
+     *
+     * @param sendFilePath file path
+     * @param resultCallback receiver of the send result, may be null
+     */
+    public void sendFile(String sendFilePath, SendCallback resultCallback) {
+        sendFile(selectedDevice, sendFilePath, resultCallback);
+    }
+
+    /**
+     * send file to a given device
+     *
+     * @param device receiving device, null if none is selected
+     * @param sendFilePath file path
+     * @param resultCallback receiver of the send result, may be null
+     */
+    public void sendFile(final Device device, String sendFilePath, final SendCallback resultCallback) {
+        if (device == null) {
+            Log.w(TAG, "no target device for " + sendFilePath);
+            if (resultCallback != null) {
+                resultCallback.onSendResult(FileTransferEngine.RESULT_SEND_ERROR);
+            }
+            return;
+        }
+        final FileTransfer transfer = fileTransferEngine.getTransfer(device, new File(sendFilePath));
+        fileTransferEngine.start(transfer, new SendCallback() {
+            @Override
+            public void onSendResult(int resultCode) {
+                printOperationResult(Calendar.getInstance().getTime() + SEND_FILE_TO + device.getName()
+                        + DEVICE_NAME_OF + PEER_PKG_NAME + STRING_RESULT + resultCode);
+                if (resultCallback != null) {
+                    resultCallback.onSendResult(resultCode);
+                }
+            }
+
+            @Override
+            public void onSendProgress(long progress) {
+                printOperationResult(SEND_FILE_TO + device.getName() + " progress:" + progress + "% "
+                        + transfer.getBytesPerSecond() + " B/s");
+            }
+        });
+    }
+
+    /**
+     * send the content behind a URI to device, read straight from its provider
+     *
+     * @param uri URI of the content
+     */
+    public void sendContent(final Uri uri) {
+        final Device device = selectedDevice;
+        if (device == null) {
+            Log.w(TAG, "no target device for " + uri);
+            return;
+        }
+        fileTransferEngine.start(device, getContentResolver(), uri, new SendCallback() {
+            @Override
+            public void onSendResult(int resultCode) {
+                printOperationResult(Calendar.getInstance().getTime() + SEND_FILE_TO + device.getName()
+                        + DEVICE_NAME_OF + PEER_PKG_NAME + STRING_RESULT + resultCode);
+            }
+
+            @Override
+            public void onSendProgress(long progress) {
+                printOperationResult(SEND_FILE_TO + device.getName() + " progress:" + progress + "%");
+            }
+        });
     }
 
     @Override
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
         super.onActivityResult(requestCode, resultCode, data);
         if (requestCode == TAKE_PHOTO && resultCode == RESULT_OK) {
-            String compressedFilePath = FileManager.getPathAfterCompressed(this, mCameraUri);
-            printOperationResult("take photo success，getPathAfterCompressed file path is " + compressedFilePath);
-            sendFile(compressedFilePath);
+            if (!checkSelectedDevice()) {
+                return;
+            }
+            imageConvertPipeline.submit(mCameraUri, PHOTO_OPTIONS, selectedDevice,
+                new ImageConvertPipeline.Callback() {
+                    @Override
+                    public void onSuccess(String binPath, ImageConvertPipeline.Timings timings) {
+                        printOperationResult("take photo success，getPathAfterCompressed file path is " + binPath);
+                        printOperationResult("convert photo timings: " + timings);
+                    }
+
+                    @Override
+                    public void onFailure(Exception exception) {
+                        printOperationResult("convert photo" + FAILURE + ": " + exception.getMessage());
+                    }
+                });
+        } else if (requestCode == PICK_FILE && resultCode == RESULT_OK && data != null && data.getData() != null) {
+            sendContent(data.getData());
         }
     }
 
@@ -251,21 +495,17 @@ public class WearEngineMainActivity extends AppCompatActivity {
         if (!checkSelectedDevice()) {
             return;
         }
-        Receiver receiver = new Receiver() {
-            @Override
-            public void onReceiveMessage(Message message) {
-                if (message != null) {
-                    String data = new String(message.getData());
-                    printOperationResult("ReceiveMessage is:" + data);
-                } else {
-                    printOperationResult("Receiver Message is null");
-                }
-            }
-        };
-        int receiverPid = android.os.Process.myPid();
-        int receiverHashCode = System.identityHashCode(receiver);
-        Log.d(TAG, "receiveMessageButtonOnClick receiver pid is:" + receiverPid + HASH_CODE + receiverHashCode);
-        p2pClient.registerReceiver(selectedDevice, receiver).addOnSuccessListener(new OnSuccessListener<Void>() {
+        if (receiverRouter.isRegistered(selectedDevice.getUuid())) {
+            printOperationResult("receiver listener already registered for " + selectedDevice.getName());
+            return;
+        }
+        Task<Void> task = receiverRouter.register(selectedDevice);
+        if (task == null) {
+            printOperationResult("register receiver listener" + FAILURE);
+            return;
+        }
+        Log.d(TAG, "receiveMessageButtonOnClick receiver pid is:" + android.os.Process.myPid());
+        task.addOnSuccessListener(new OnSuccessListener<Void>() {
             @Override
             public void onSuccess(Void avoid) {
                 printOperationResult("register receiver listener" + SUCCESS);
@@ -283,6 +523,7 @@ public class WearEngineMainActivity extends AppCompatActivity {
         if (!checkSelectedDevice()) {
             return;
         }
+        final Device device = selectedDevice;
         if (message.length() > 0) {
             Message.Builder builder = new Message.Builder();
             try {
@@ -300,29 +541,32 @@ public class WearEngineMainActivity extends AppCompatActivity {
         SendCallback sendCallback = new SendCallback() {
             @Override
             public void onSendResult(int resultCode) {
-                printOperationResult(Calendar.getInstance().getTime() + SEND_MESSAGE_TO + selectedDevice.getName()
+                printOperationResult(Calendar.getInstance().getTime() + SEND_MESSAGE_TO + device.getName()
                         + DEVICE_NAME_OF + PEER_PKG_NAME + STRING_RESULT + resultCode);
+                printOperationResult("outbound queue depth:" + outboundMessageQueue.getQueueDepth()
+                        + " batching ratio:" + outboundMessageQueue.getBatchingRatio());
             }
 
             @Override
             public void onSendProgress(long progress) {
-                printOperationResult(Calendar.getInstance().getTime() + SEND_MESSAGE_TO + selectedDevice.getName()
+                printOperationResult(Calendar.getInstance().getTime() + SEND_MESSAGE_TO + device.getName()
                         + DEVICE_NAME_OF + PEER_PKG_NAME + " progress:" + progress);
             }
         };
-        p2pClient.send(selectedDevice, sendMessage, sendCallback).addOnSuccessListener(new OnSuccessListener<Void>() {
-            @Override
-            public void onSuccess(Void result) {
-                printOperationResult(
-                        SEND_MESSAGE_TO + selectedDevice.getName() + DEVICE_NAME_OF + PEER_PKG_NAME + SUCCESS);
-            }
-        }).addOnFailureListener(new OnFailureListener() {
-            @Override
-            public void onFailure(Exception e) {
-                printOperationResult(
-                        SEND_MESSAGE_TO + selectedDevice.getName() + DEVICE_NAME_OF + PEER_PKG_NAME + FAILURE);
-            }
-        });
+        outboundMessageQueue.enqueue(device, sendMessage.getData(), sendCallback)
+                .addOnSuccessListener(new OnSuccessListener<Void>() {
+                    @Override
+                    public void onSuccess(Void result) {
+                        printOperationResult(
+                                SEND_MESSAGE_TO + device.getName() + DEVICE_NAME_OF + PEER_PKG_NAME + SUCCESS);
+                    }
+                }).addOnFailureListener(new OnFailureListener() {
+                    @Override
+                    public void onFailure(Exception e) {
+                        printOperationResult(
+                                SEND_MESSAGE_TO + device.getName() + DEVICE_NAME_OF + PEER_PKG_NAME + FAILURE);
+                    }
+                });
     }
 
     /**
@@ -331,8 +575,19 @@ public class WearEngineMainActivity extends AppCompatActivity {
      * @param view UI object
      */
     public void clearOutputTextView(View view) {
-        logOutputTextView.setText("");
-        logOutputTextView.scrollTo(0, 0);
+        logSink.clear();
+    }
+
+    /**
+     * Print the metrics of the WearEngine calls as JSON
+     *
+     * @param view UI object
+     */
+    public void dumpMetrics(View view) {
+        printOperationResult("metrics: " + metricsRegistry.toJson());
+        printOperationResult("file paths: " + FileManager.getFilePathCache());
+        printOperationResult("bitmaps: " + imageConvertPipeline.getBitmapPool());
+        printOperationResult("buffers: " + imageConvertPipeline.getBufferPool());
     }
 
     /**
@@ -341,33 +596,44 @@ public class WearEngineMainActivity extends AppCompatActivity {
      * @param string indicating the log string
      */
     private void printOperationResult(String string) {
-        Log.i(TAG, string);
-        logOutputTextView.append(string + System.lineSeparator());
-        int offset = logOutputTextView.getLineCount() * logOutputTextView.getLineHeight();
-        if (offset > logOutputTextView.getHeight()) {
-            logOutputTextView.scrollTo(0, offset - logOutputTextView.getHeight() + SCROLL_HIGH);
-        }
+        logSink.log(string);
     }
 
 
     /**
-     * update device list for devicesRadioGroup
+     * add the button of a device to devicesRadioGroup
      *
-     * @param devices devices list
+     * @param device added device
      */
-    private void updateDeviceList(List<Device> devices) {
-        for (Device device : devices) {
-            printOperationResult("device Name: " + device.getName());
-            printOperationResult("device connect status:" + device.isConnected());
-            if (deviceMap.containsKey(device.getUuid())) {
-                continue;
-            }
-            deviceList.add(device);
-            deviceMap.put(device.getUuid(), device);
-            RadioButton deviceRadioButton = new RadioButton(this);
-            setRaidButton(deviceRadioButton, device.getName(), index);
-            devicesRadioGroup.addView(deviceRadioButton);
-            index++;
+    private void addDeviceButton(Device device) {
+        printOperationResult("device Name: " + device.getName());
+        printOperationResult("device connect status:" + device.isConnected());
+        if (deviceButtonMap.containsKey(device.getUuid())) {
+            return;
+        }
+        RadioButton deviceRadioButton = new RadioButton(this);
+        setRaidButton(deviceRadioButton, device.getName(), index);
+        devicesRadioGroup.addView(deviceRadioButton);
+        deviceButtonMap.put(device.getUuid(), deviceRadioButton);
+        buttonDeviceMap.put(index, device.getUuid());
+        index++;
+    }
+
+    /**
+     * remove the button of a device from devicesRadioGroup
+     *
+     * @param device removed device
+     */
+    private void removeDeviceButton(Device device) {
+        printOperationResult("device Name: " + device.getName() + " is not bound anymore");
+        RadioButton deviceRadioButton = deviceButtonMap.remove(device.getUuid());
+        if (deviceRadioButton == null) {
+            return;
+        }
+        buttonDeviceMap.remove(deviceRadioButton.getId());
+        devicesRadioGroup.removeView(deviceRadioButton);
+        if (selectedDevice != null && selectedDevice.getUuid().equals(device.getUuid())) {
+            selectedDevice = null;
         }
     }
 
@@ -388,6 +654,23 @@ public class WearEngineMainActivity extends AppCompatActivity {
         return true;
     }
 
+    /**
+     * pick a file in the document picker and send it
+     *
+     * @param view UI object
+     */
+    public void pickFile(View view) {
+        if (!checkSelectedDevice()) {
+            return;
+        }
+        Intent pickIntent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+        pickIntent.addCategory(Intent.CATEGORY_OPENABLE);
+        pickIntent.setType(ANY_MIME_TYPE);
+        if (pickIntent.resolveActivity(getPackageManager()) != null) {
+            startActivityForResult(pickIntent, PICK_FILE);
+        }
+    }
+
     /**
      * use camera to take photo
      *
@@ -0,0 +1,305 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.device;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.huawei.hmf.tasks.OnFailureListener;
+import com.huawei.hmf.tasks.OnSuccessListener;
+import com.huawei.hmf.tasks.Task;
+import com.huawei.wearengine.app.transport.DeviceTransport;
+import com.huawei.wearengine.app.utils.MainThreadExecutor;
+import com.huawei.wearengine.device.Device;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Cache of the bonded devices, refreshed in the background
+ * <p>
+ * Reading the devices never waits for {@link DeviceTransport#getBondedDevices}: the cached list is returned
+ * at once, and a refresh is started when it is older than the TTL. While started, the registry also
+ * refreshes itself every TTL on the main thread. Each refresh is compared with the cache by UUID, and the
+ * listeners are told about the added and removed devices and the connection state changes on the callback
+ * executor, the main thread by default.
+ *
+ * @since 2020-08-05
+ */
+public class DeviceRegistry {
+    /**
+     * Default time the bonded devices are cached
+     */
+    public static final long DEFAULT_TTL_MILLIS = 30000L;
+
+    private static final String TAG = "DeviceRegistry";
+
+    /**
+     * Receives the changes of the bonded devices on the callback executor
+     */
+    public interface Listener {
+        /**
+         * A device was bonded, or seen for the first time
+         *
+         * @param device added device
+         */
+        void onDeviceAdded(Device device);
+
+        /**
+         * A device is not bonded anymore
+         *
+         * @param device removed device
+         */
+        void onDeviceRemoved(Device device);
+
+        /**
+         * A device connected or disconnected
+         *
+         * @param device device with its new state
+         * @param isConnected whether the device is connected
+         */
+        void onConnectionChanged(Device device, boolean isConnected);
+    }
+
+    private final DeviceTransport deviceClient;
+
+    private final long ttlMillis;
+
+    private final Executor callbackExecutor;
+
+    private final Map<String, Device> devices = new ConcurrentHashMap<>();
+
+    private final Map<String, Boolean> connectionStates = new ConcurrentHashMap<>();
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private final AtomicBoolean isRefreshing = new AtomicBoolean();
+
+    private final Runnable periodicRefresh = new Runnable() {
+        @Override
+        public void run() {
+            refresh();
+            refreshHandler.postDelayed(this, ttlMillis);
+        }
+    };
+
+    // Created by the first start, so that the registry needs no looper until it refreshes periodically
+    private Handler refreshHandler;
+
+    private volatile List<Device> deviceList = Collections.emptyList();
+
+    private volatile long refreshedAt;
+
+    private volatile boolean isLoaded;
+
+    /**
+     * Constructor with the default TTL
+     *
+     * @param deviceClient client listing the bonded devices
+     */
+    public DeviceRegistry(DeviceTransport deviceClient) {
+        this(deviceClient, DEFAULT_TTL_MILLIS);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param deviceClient client listing the bonded devices
+     * @param ttlMillis time the bonded devices are cached
+     */
+    public DeviceRegistry(DeviceTransport deviceClient, long ttlMillis) {
+        this(deviceClient, ttlMillis, new MainThreadExecutor());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param deviceClient client listing the bonded devices
+     * @param ttlMillis time the bonded devices are cached
+     * @param callbackExecutor executor calling the listeners
+     */
+    public DeviceRegistry(DeviceTransport deviceClient, long ttlMillis, Executor callbackExecutor) {
+        if (ttlMillis <= 0) {
+            throw new IllegalArgumentException("invalid ttlMillis " + ttlMillis);
+        }
+        this.deviceClient = deviceClient;
+        this.ttlMillis = ttlMillis;
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    /**
+     * Get the cached bonded devices, refreshing them in the background when they are stale
+     *
+     * @return Unmodifiable list of the devices, in the order of the last refresh
+     */
+    public List<Device> getDevices() {
+        refreshIfStale();
+        return deviceList;
+    }
+
+    /**
+     * Get a cached device
+     *
+     * @param uuid UUID of the device
+     * @return Device, null if it is not bonded
+     */
+    public Device getDevice(String uuid) {
+        return uuid == null ? null : devices.get(uuid);
+    }
+
+    /**
+     * Get the cached connection state of a device
+     *
+     * @param uuid UUID of the device
+     * @return true if the device was connected at the last refresh
+     */
+    public boolean isConnected(String uuid) {
+        Boolean isConnected = uuid == null ? null : connectionStates.get(uuid);
+        return isConnected != null && isConnected;
+    }
+
+    /**
+     * Check whether the cache is older than the TTL or was never loaded
+     *
+     * @return true if the cache is stale
+     */
+    public boolean isStale() {
+        return !isLoaded || SystemClock.elapsedRealtime() - refreshedAt >= ttlMillis;
+    }
+
+    /**
+     * Add a listener of the device changes
+     *
+     * @param listener listener
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Remove a listener of the device changes
+     *
+     * @param listener listener
+     */
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Refresh the cache in the background when it is stale
+     */
+    public void refreshIfStale() {
+        if (isStale()) {
+            refresh();
+        }
+    }
+
+    /**
+     * Refresh the cache in the background, unless a refresh is in progress
+     */
+    public void refresh() {
+        if (!isRefreshing.compareAndSet(false, true)) {
+            return;
+        }
+        Task<List<Device>> task = deviceClient.getBondedDevices();
+        if (task == null) {
+            isRefreshing.set(false);
+            return;
+        }
+        task.addOnSuccessListener(new OnSuccessListener<List<Device>>() {
+            @Override
+            public void onSuccess(List<Device> bondedDevices) {
+                apply(bondedDevices == null ? Collections.<Device>emptyList() : bondedDevices);
+                isRefreshing.set(false);
+            }
+        }).addOnFailureListener(new OnFailureListener() {
+            @Override
+            public void onFailure(Exception e) {
+                Log.w(TAG, "getBondedDevices failed", e);
+                isRefreshing.set(false);
+            }
+        });
+    }
+
+    /**
+     * Refresh the cache every TTL until {@link #stop} is called, to be called on the main thread
+     */
+    public void start() {
+        if (refreshHandler == null) {
+            refreshHandler = new Handler(Looper.getMainLooper());
+        }
+        refreshHandler.removeCallbacks(periodicRefresh);
+        refreshHandler.post(periodicRefresh);
+    }
+
+    /**
+     * Stop the periodic refresh, to be called on the main thread
+     */
+    public void stop() {
+        if (refreshHandler != null) {
+            refreshHandler.removeCallbacks(periodicRefresh);
+        }
+    }
+
+    private synchronized void apply(List<Device> bondedDevices) {
+        Map<String, Device> bonded = new LinkedHashMap<>();
+        for (Device device : bondedDevices) {
+            bonded.put(device.getUuid(), device);
+        }
+        final List<Device> added = new ArrayList<>();
+        final List<Device> removed = new ArrayList<>();
+        final List<Device> changed = new ArrayList<>();
+        for (Map.Entry<String, Device> entry : devices.entrySet()) {
+            if (!bonded.containsKey(entry.getKey())) {
+                removed.add(entry.getValue());
+            }
+        }
+        for (Device device : removed) {
+            devices.remove(device.getUuid());
+            connectionStates.remove(device.getUuid());
+        }
+        for (Device device : bonded.values()) {
+            Boolean wasConnected = connectionStates.get(device.getUuid());
+            devices.put(device.getUuid(), device);
+            connectionStates.put(device.getUuid(), device.isConnected());
+            if (wasConnected == null) {
+                added.add(device);
+            } else if (wasConnected != device.isConnected()) {
+                changed.add(device);
+            }
+        }
+        deviceList = Collections.unmodifiableList(new ArrayList<>(bonded.values()));
+        refreshedAt = SystemClock.elapsedRealtime();
+        isLoaded = true;
+        if (added.isEmpty() && removed.isEmpty() && changed.isEmpty()) {
+            return;
+        }
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (Listener listener : listeners) {
+                    for (Device device : removed) {
+                        listener.onDeviceRemoved(device);
+                    }
+                    for (Device device : added) {
+                        listener.onDeviceAdded(device);
+                    }
+                    for (Device device : changed) {
+                        listener.onConnectionChanged(device, device.isConnected());
+                    }
+                }
+            }
+        });
+    }
+}
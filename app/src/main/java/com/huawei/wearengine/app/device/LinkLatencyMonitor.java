@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.device;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.huawei.hmf.tasks.OnFailureListener;
+import com.huawei.hmf.tasks.Task;
+import com.huawei.wearengine.app.metrics.LatencyHistogram;
+import com.huawei.wearengine.app.transport.P2pTransport;
+import com.huawei.wearengine.device.Device;
+import com.huawei.wearengine.p2p.PingCallback;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Monitor pinging the connected devices on a schedule and recording the round-trip times
+ * <p>
+ * Every interval, each connected device of the registry without a ping in flight is pinged. The time from
+ * the ping to its result is measured with the monotonic clock and recorded in a histogram per device, in
+ * microseconds. A ping without result after the timeout is counted as a timeout and its late result is
+ * ignored, so that a degrading link shows up as a growing tail latency and timeout count before the
+ * transfers start failing.
+ *
+ * @since 2020-08-05
+ */
+public class LinkLatencyMonitor {
+    /**
+     * Default time between two pings of a device
+     */
+    public static final long DEFAULT_INTERVAL_MILLIS = 10000L;
+
+    /**
+     * Default time a device has to answer a ping
+     */
+    public static final long DEFAULT_TIMEOUT_MILLIS = 5000L;
+
+    private static final String TAG = "LinkLatencyMonitor";
+
+    private final P2pTransport p2pClient;
+
+    private final DeviceRegistry deviceRegistry;
+
+    private final long intervalMillis;
+
+    private final long timeoutNanos;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final ConcurrentHashMap<String, LinkStats> stats = new ConcurrentHashMap<>();
+
+    private final Runnable periodicPing = new Runnable() {
+        @Override
+        public void run() {
+            pingConnectedDevices();
+            mainHandler.postDelayed(this, intervalMillis);
+        }
+    };
+
+    /**
+     * Constructor with the default interval and timeout
+     *
+     * @param p2pClient client pinging the devices
+     * @param deviceRegistry registry of the devices to ping
+     */
+    public LinkLatencyMonitor(P2pTransport p2pClient, DeviceRegistry deviceRegistry) {
+        this(p2pClient, deviceRegistry, DEFAULT_INTERVAL_MILLIS, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param p2pClient client pinging the devices
+     * @param deviceRegistry registry of the devices to ping
+     * @param intervalMillis time between two pings of a device
+     * @param timeoutMillis time a device has to answer a ping
+     */
+    public LinkLatencyMonitor(P2pTransport p2pClient, DeviceRegistry deviceRegistry, long intervalMillis,
+        long timeoutMillis) {
+        if (intervalMillis <= 0 || timeoutMillis <= 0) {
+            throw new IllegalArgumentException("invalid intervalMillis " + intervalMillis + " or timeoutMillis "
+                + timeoutMillis);
+        }
+        this.p2pClient = p2pClient;
+        this.deviceRegistry = deviceRegistry;
+        this.intervalMillis = intervalMillis;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    }
+
+    /**
+     * Ping the connected devices every interval until {@link #stop} is called
+     */
+    public void start() {
+        mainHandler.removeCallbacks(periodicPing);
+        mainHandler.post(periodicPing);
+    }
+
+    /**
+     * Stop the periodic pings, the pings in flight are still recorded
+     */
+    public void stop() {
+        mainHandler.removeCallbacks(periodicPing);
+    }
+
+    /**
+     * Ping a device now, unless a ping of the device is in flight
+     *
+     * @param device device to ping
+     */
+    public void ping(Device device) {
+        final LinkStats linkStats = getOrCreateStats(device.getUuid());
+        final long sequence;
+        final long start = SystemClock.elapsedRealtimeNanos();
+        synchronized (linkStats) {
+            if (linkStats.inFlightSequence != 0) {
+                if (start - linkStats.inFlightStart < timeoutNanos) {
+                    return;
+                }
+                linkStats.timeouts.incrementAndGet();
+            }
+            sequence = linkStats.nextSequence++;
+            linkStats.inFlightSequence = sequence;
+            linkStats.inFlightStart = start;
+        }
+        linkStats.sentPings.incrementAndGet();
+        Task<Void> task = p2pClient.ping(device, new PingCallback() {
+            @Override
+            public void onPingResult(int result) {
+                long end = SystemClock.elapsedRealtimeNanos();
+                if (linkStats.finish(sequence)) {
+                    linkStats.lastResult = result;
+                    linkStats.latency.record(TimeUnit.NANOSECONDS.toMicros(end - start));
+                }
+            }
+        });
+        if (task != null) {
+            task.addOnFailureListener(new OnFailureListener() {
+                @Override
+                public void onFailure(Exception e) {
+                    Log.w(TAG, "ping failed", e);
+                    if (linkStats.finish(sequence)) {
+                        linkStats.failures.incrementAndGet();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Get the link statistics of a device
+     *
+     * @param uuid UUID of the device
+     * @return Statistics, null if the device was never pinged
+     */
+    public LinkStats getStats(String uuid) {
+        return uuid == null ? null : stats.get(uuid);
+    }
+
+    /**
+     * Get the link statistics of all the pinged devices
+     *
+     * @return Unmodifiable map of the statistics by device UUID
+     */
+    public Map<String, LinkStats> getAllStats() {
+        return Collections.unmodifiableMap(new HashMap<>(stats));
+    }
+
+    /**
+     * Forget the statistics of a device, such as a removed one
+     *
+     * @param uuid UUID of the device
+     */
+    public void forget(String uuid) {
+        stats.remove(uuid);
+    }
+
+    private void pingConnectedDevices() {
+        for (Device device : deviceRegistry.getDevices()) {
+            if (deviceRegistry.isConnected(device.getUuid())) {
+                ping(device);
+            }
+        }
+    }
+
+    private LinkStats getOrCreateStats(String uuid) {
+        LinkStats linkStats = stats.get(uuid);
+        if (linkStats == null) {
+            LinkStats created = new LinkStats();
+            linkStats = stats.putIfAbsent(uuid, created);
+            if (linkStats == null) {
+                linkStats = created;
+            }
+        }
+        return linkStats;
+    }
+
+    /**
+     * Round-trip times and ping outcomes of one device
+     */
+    public static final class LinkStats {
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        private final AtomicLong sentPings = new AtomicLong();
+
+        private final AtomicLong timeouts = new AtomicLong();
+
+        private final AtomicLong failures = new AtomicLong();
+
+        private volatile int lastResult;
+
+        private long nextSequence = 1;
+
+        private long inFlightSequence;
+
+        private long inFlightStart;
+
+        LinkStats() {
+        }
+
+        /**
+         * Get the round-trip times of the answered pings
+         *
+         * @return Snapshot of the round-trip times in microseconds
+         */
+        public LatencyHistogram.Snapshot getLatency() {
+            return latency.getSnapshot();
+        }
+
+        public long getSentPings() {
+            return sentPings.get();
+        }
+
+        public long getTimeouts() {
+            return timeouts.get();
+        }
+
+        public long getFailures() {
+            return failures.get();
+        }
+
+        /**
+         * Get the result code of the last answered ping
+         *
+         * @return Ping result code, 0 if no ping was answered
+         */
+        public int getLastResult() {
+            return lastResult;
+        }
+
+        synchronized boolean finish(long sequence) {
+            if (inFlightSequence != sequence) {
+                return false;
+            }
+            inFlightSequence = 0;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.image;
+
+/**
+ * Lossless compression of the pixels of the watch .bin image file
+ * <p>
+ * The compression id is stored in the low 4 bits of the color mode word, which are 0 for the original
+ * uncompressed files. The 8-byte header itself is never compressed.
+ *
+ * @since 2020-08-05
+ */
+public enum BinCompression {
+    /**
+     * Pixels are stored as they are
+     */
+    NONE(0) {
+        @Override
+        public int maxCompressedLength(int rawLength, int rowBytes, int bytesPerPixel) {
+            return rawLength;
+        }
+
+        @Override
+        public long maxRawLength(int compressedLength, int bytesPerPixel) {
+            return compressedLength;
+        }
+
+        @Override
+        public int compress(byte[] src, int srcOffset, int rawLength, int rowBytes, int bytesPerPixel, byte[] dst,
+            int dstOffset) {
+            System.arraycopy(src, srcOffset, dst, dstOffset, rawLength);
+            return dstOffset + rawLength;
+        }
+
+        @Override
+        public int decompress(byte[] src, int srcOffset, byte[] dst, int dstOffset, int rawLength,
+            int bytesPerPixel) {
+            if (srcOffset + rawLength > src.length) {
+                throw new IllegalArgumentException("bin data is truncated");
+            }
+            System.arraycopy(src, srcOffset, dst, dstOffset, rawLength);
+            return srcOffset + rawLength;
+        }
+    },
+
+    /**
+     * Each row is run-length coded on whole pixels, suited to flat backgrounds
+     */
+    ROW_RLE(1) {
+        @Override
+        public int maxCompressedLength(int rawLength, int rowBytes, int bytesPerPixel) {
+            return RowRleCodec.maxCompressedLength(rawLength, rowBytes, bytesPerPixel);
+        }
+
+        @Override
+        public long maxRawLength(int compressedLength, int bytesPerPixel) {
+            return RowRleCodec.maxRawLength(compressedLength, bytesPerPixel);
+        }
+
+        @Override
+        public int compress(byte[] src, int srcOffset, int rawLength, int rowBytes, int bytesPerPixel, byte[] dst,
+            int dstOffset) {
+            return RowRleCodec.compress(src, srcOffset, rawLength, rowBytes, bytesPerPixel, dst, dstOffset);
+        }
+
+        @Override
+        public int decompress(byte[] src, int srcOffset, byte[] dst, int dstOffset, int rawLength,
+            int bytesPerPixel) {
+            return RowRleCodec.decompress(src, srcOffset, dst, dstOffset, rawLength, bytesPerPixel);
+        }
+    },
+
+    /**
+     * Blocks of at most 64 KB are LZ77 coded, suited to repeated patterns
+     */
+    LZ(2) {
+        @Override
+        public int maxCompressedLength(int rawLength, int rowBytes, int bytesPerPixel) {
+            return LzBlockCodec.maxCompressedLength(rawLength);
+        }
+
+        @Override
+        public long maxRawLength(int compressedLength, int bytesPerPixel) {
+            return LzBlockCodec.maxRawLength(compressedLength);
+        }
+
+        @Override
+        public int compress(byte[] src, int srcOffset, int rawLength, int rowBytes, int bytesPerPixel, byte[] dst,
+            int dstOffset) {
+            return LzBlockCodec.compress(src, srcOffset, rawLength, dst, dstOffset);
+        }
+
+        @Override
+        public int decompress(byte[] src, int srcOffset, byte[] dst, int dstOffset, int rawLength,
+            int bytesPerPixel) {
+            return LzBlockCodec.decompress(src, srcOffset, dst, dstOffset, rawLength);
+        }
+    };
+
+    private static final int COMPRESSION_MASK = 0x0F;
+
+    private final int compressionId;
+
+    BinCompression(int compressionId) {
+        this.compressionId = compressionId;
+    }
+
+    /**
+     * Get the bits of the color mode word naming the compression
+     *
+     * @return Compression bits of the color mode word
+     */
+    public int getColorModeBits() {
+        return compressionId;
+    }
+
+    /**
+     * Get the largest possible size of compressed pixels
+     *
+     * @param rawLength length of the raw pixels, made of whole rows
+     * @param rowBytes length of one row
+     * @param bytesPerPixel length of one pixel
+     * @return Largest compressed length
+     */
+    public abstract int maxCompressedLength(int rawLength, int rowBytes, int bytesPerPixel);
+
+    /**
+     * Get the largest possible size of the raw pixels of compressed data, used to reject corrupted sizes
+     *
+     * @param compressedLength length of the compressed data
+     * @param bytesPerPixel length of one pixel
+     * @return Largest raw length
+     */
+    public abstract long maxRawLength(int compressedLength, int bytesPerPixel);
+
+    /**
+     * Compress pixels
+     * <p>
+     * Calls may be chained over consecutive bands of rows, the decompression then reads them as one.
+     *
+     * @param src raw pixels
+     * @param srcOffset offset of the first row
+     * @param rawLength length of the raw pixels, made of whole rows
+     * @param rowBytes length of one row
+     * @param bytesPerPixel length of one pixel
+     * @param dst destination, at least {@link #maxCompressedLength} long after dstOffset
+     * @param dstOffset offset of the first compressed byte
+     * @return Offset right after the last written byte
+     */
+    public abstract int compress(byte[] src, int srcOffset, int rawLength, int rowBytes, int bytesPerPixel,
+        byte[] dst, int dstOffset);
+
+    /**
+     * Decompress pixels
+     *
+     * @param src compressed pixels
+     * @param srcOffset offset of the first compressed byte
+     * @param dst destination of the raw pixels
+     * @param dstOffset offset of the first raw byte
+     * @param rawLength length of the raw pixels
+     * @param bytesPerPixel length of one pixel
+     * @return Offset right after the last read byte
+     * @throws IllegalArgumentException if the compressed data is corrupted
+     */
+    public abstract int decompress(byte[] src, int srcOffset, byte[] dst, int dstOffset, int rawLength,
+        int bytesPerPixel);
+
+    /**
+     * Find the compression of a color mode word
+     *
+     * @param colorMode color mode word read from the file header
+     * @return Compression of the pixels
+     * @throws IllegalArgumentException if the compression is unknown
+     */
+    public static BinCompression fromColorMode(int colorMode) {
+        int compressionId = colorMode & COMPRESSION_MASK;
+        for (BinCompression compression : values()) {
+            if (compression.compressionId == compressionId) {
+                return compression;
+            }
+        }
+        throw new IllegalArgumentException("unknown compression in color mode " + colorMode);
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.image;
+
+/**
+ * Options of the watch .bin image encoding
+ *
+ * @since 2020-08-05
+ */
+public final class BinEncodeOptions {
+    /**
+     * Options of the original uncompressed BGRA file
+     */
+    public static final BinEncodeOptions DEFAULT = new Builder().build();
+
+    private final BinPixelFormat pixelFormat;
+
+    private final BinCompression compression;
+
+    private final int paletteSize;
+
+    private final boolean isDither;
+
+    private final boolean isDelta;
+
+    private final boolean isParallel;
+
+    private BinEncodeOptions(Builder builder) {
+        this.pixelFormat = builder.pixelFormat;
+        this.compression = builder.compression;
+        this.paletteSize = builder.paletteSize;
+        this.isDither = builder.isDither;
+        this.isDelta = builder.isDelta;
+        this.isParallel = builder.isParallel;
+    }
+
+    public BinPixelFormat getPixelFormat() {
+        return pixelFormat;
+    }
+
+    public BinCompression getCompression() {
+        return compression;
+    }
+
+    public int getPaletteSize() {
+        return paletteSize;
+    }
+
+    public boolean isDither() {
+        return isDither;
+    }
+
+    public boolean isDelta() {
+        return isDelta;
+    }
+
+    public boolean isParallel() {
+        return isParallel;
+    }
+
+    /**
+     * Create the quantizer of indexed images
+     *
+     * @return Quantizer configured by these options
+     */
+    public PaletteQuantizer createQuantizer() {
+        return new PaletteQuantizer(paletteSize, isDither);
+    }
+
+    /**
+     * Get the color mode word written in the file header
+     *
+     * @return Color mode word
+     */
+    public int getColorMode() {
+        return pixelFormat.getColorMode() | compression.getColorModeBits();
+    }
+
+    /**
+     * Builder of the encoding options
+     */
+    public static final class Builder {
+        private BinPixelFormat pixelFormat = BinPixelFormat.ARGB8888;
+
+        private BinCompression compression = BinCompression.NONE;
+
+        private int paletteSize = PaletteQuantizer.MAX_COLORS;
+
+        private boolean isDither;
+
+        private boolean isDelta;
+
+        private boolean isParallel;
+
+        /**
+         * Set the pixel format, ARGB8888 by default
+         *
+         * @param pixelFormat pixel format
+         * @return Builder
+         */
+        public Builder setPixelFormat(BinPixelFormat pixelFormat) {
+            this.pixelFormat = pixelFormat;
+            return this;
+        }
+
+        /**
+         * Set the compression, NONE by default
+         *
+         * @param compression compression of the pixels
+         * @return Builder
+         */
+        public Builder setCompression(BinCompression compression) {
+            this.compression = compression;
+            return this;
+        }
+
+        /**
+         * Set the largest palette size of indexed images, 256 by default
+         *
+         * @param paletteSize largest number of palette entries, from 1 to 256
+         * @return Builder
+         */
+        public Builder setPaletteSize(int paletteSize) {
+            if (paletteSize < 1 || paletteSize > PaletteQuantizer.MAX_COLORS) {
+                throw new IllegalArgumentException("paletteSize must be in [1, 256]: " + paletteSize);
+            }
+            this.paletteSize = paletteSize;
+            return this;
+        }
+
+        /**
+         * Set whether indexed images are dithered, false by default
+         *
+         * @param isDither whether Floyd-Steinberg dithering is applied
+         * @return Builder
+         */
+        public Builder setDither(boolean isDither) {
+            this.isDither = isDither;
+            return this;
+        }
+
+        /**
+         * Set whether pictures sent again to the same device are sent as delta files, false by default
+         *
+         * @param isDelta whether only the tiles changed since the last picture sent are written
+         * @return Builder
+         */
+        public Builder setDelta(boolean isDelta) {
+            this.isDelta = isDelta;
+            return this;
+        }
+
+        /**
+         * Set whether the pixels of large images are converted on several threads, false by default
+         *
+         * @param isParallel whether the conversion uses the {@link ParallelPixelConverter#getDefault} threads
+         * @return Builder
+         */
+        public Builder setParallel(boolean isParallel) {
+            this.isParallel = isParallel;
+            return this;
+        }
+
+        /**
+         * Build the options
+         *
+         * @return Encoding options
+         */
+        public BinEncodeOptions build() {
+            return new BinEncodeOptions(this);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.image;
+
+/**
+ * Decoded watch .bin image
+ *
+ * @since 2020-08-05
+ */
+public final class BinImage {
+    private final BinPixelFormat format;
+
+    private final int width;
+
+    private final int height;
+
+    private final int[] pixels;
+
+    /**
+     * Constructor
+     *
+     * @param format pixel format the image was stored in
+     * @param width image width
+     * @param height image height
+     * @param pixels ARGB pixels, row by row
+     */
+    public BinImage(BinPixelFormat format, int width, int height, int[] pixels) {
+        this.format = format;
+        this.width = width;
+        this.height = height;
+        this.pixels = pixels;
+    }
+
+    public BinPixelFormat getFormat() {
+        return format;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int[] getPixels() {
+        return pixels;
+    }
+}
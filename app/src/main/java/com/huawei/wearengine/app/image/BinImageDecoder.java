@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.image;
+
+import java.util.zip.CRC32;
+
+/**
+ * Decoder of the watch .bin image file, used to verify what the watch receives
+ *
+ * @since 2020-08-05
+ */
+public final class BinImageDecoder {
+    // Largest number of pixels of a decoded image, whose int pixels then take 256 MB
+    private static final long MAX_PIXELS = 1L << 26;
+
+    private BinImageDecoder() {
+    }
+
+    /**
+     * Decode the content of a .bin file
+     *
+     * @param data file content
+     * @return Decoded image
+     * @throws IllegalArgumentException if the content is truncated or corrupted, or the color mode is unknown
+     */
+    public static BinImage decode(byte[] data) {
+        if (data.length < BinImageFormat.HEADER_SIZE) {
+            throw new IllegalArgumentException("bin data is shorter than the header");
+        }
+        int colorMode = BinImageFormat.readColorMode(data, 0);
+        if (BinImageFormat.isDelta(colorMode)) {
+            throw new IllegalArgumentException("delta bin data needs a base image");
+        }
+        BinPixelFormat format = BinPixelFormat.fromColorMode(colorMode);
+        BinCompression compression = BinCompression.fromColorMode(colorMode);
+        int width = BinImageFormat.readWidth(data, 0);
+        int height = BinImageFormat.readHeight(data, 0);
+        long pixelCount = (long) width * height;
+        if (pixelCount > MAX_PIXELS) {
+            throw new IllegalArgumentException("image size " + width + "x" + height + " is too large");
+        }
+        int rawLength = (int) pixelCount * format.getBytesPerPixel();
+
+        int payloadOffset = BinImageFormat.HEADER_SIZE;
+        int[] palette = null;
+        if (format == BinPixelFormat.INDEX8) {
+            palette = BinImageFormat.readPalette(data, payloadOffset);
+            payloadOffset += BinImageFormat.getPaletteSize(palette.length);
+        }
+        // Checked before allocating, so that a corrupted size word cannot exhaust the memory
+        if (rawLength > compression.maxRawLength(data.length - payloadOffset, format.getBytesPerPixel())) {
+            throw new IllegalArgumentException("bin data is truncated");
+        }
+        byte[] raw = data;
+        int rawOffset = payloadOffset;
+        if (compression != BinCompression.NONE) {
+            raw = new byte[rawLength];
+            rawOffset = 0;
+            compression.decompress(data, payloadOffset, raw, 0, rawLength, format.getBytesPerPixel());
+        }
+        int[] pixels = new int[(int) pixelCount];
+        format.decode(raw, rawOffset, pixels.length, pixels, 0);
+        if (palette != null) {
+            applyPalette(pixels, palette);
+        }
+        return new BinImage(format, width, height, pixels);
+    }
+
+    /**
+     * Decode the content of a delta .bin file over the image it updates
+     *
+     * @param data file content
+     * @param base image shown before the delta, left unchanged
+     * @return Updated image
+     * @throws IllegalArgumentException if the content is truncated or corrupted, or does not apply to the base
+     */
+    public static BinImage decodeDelta(byte[] data, BinImage base) {
+        int mapOffset = BinImageFormat.HEADER_SIZE + BinImageFormat.DELTA_HEADER_SIZE;
+        if (data.length < mapOffset) {
+            throw new IllegalArgumentException("delta bin data is shorter than the header");
+        }
+        int colorMode = BinImageFormat.readColorMode(data, 0);
+        if (!BinImageFormat.isDelta(colorMode)) {
+            throw new IllegalArgumentException("bin data is not a delta");
+        }
+        BinPixelFormat format = BinPixelFormat.fromColorMode(colorMode);
+        BinCompression compression = BinCompression.fromColorMode(colorMode);
+        int width = BinImageFormat.readWidth(data, 0);
+        int height = BinImageFormat.readHeight(data, 0);
+        if (format != base.getFormat() || format == BinPixelFormat.INDEX8 || width != base.getWidth()
+            || height != base.getHeight()) {
+            throw new IllegalArgumentException("delta bin data does not match the base image");
+        }
+        int bytesPerPixel = format.getBytesPerPixel();
+        int rowBytes = width * bytesPerPixel;
+        byte[] raw = new byte[rowBytes * height];
+        format.encode(base.getPixels(), 0, width * height, raw, 0);
+        CRC32 crc = new CRC32();
+        crc.update(raw, 0, raw.length);
+        if ((int) crc.getValue() != BinImageFormat.readBaseChecksum(data, BinImageFormat.HEADER_SIZE)) {
+            throw new IllegalArgumentException("delta bin data is based on another image");
+        }
+
+        int tileWidth = BinImageFormat.readTileWidth(data, BinImageFormat.HEADER_SIZE);
+        int tileHeight = BinImageFormat.readTileHeight(data, BinImageFormat.HEADER_SIZE);
+        if (tileWidth == 0 || tileHeight == 0) {
+            throw new IllegalArgumentException("invalid tile size " + tileWidth + "x" + tileHeight);
+        }
+        int tilesX = (width + tileWidth - 1) / tileWidth;
+        int tileCount = tilesX * ((height + tileHeight - 1) / tileHeight);
+        int index = mapOffset + BinImageFormat.getTileMapSize(tileCount);
+        if (data.length < index) {
+            throw new IllegalArgumentException("delta tile map is truncated");
+        }
+        // Tiles larger than the image, only found in corrupted files, are clipped to it
+        byte[] tileBuffer = new byte[Math.min(tileWidth, width) * Math.min(tileHeight, height) * bytesPerPixel];
+        for (int tile = 0; tile < tileCount; tile++) {
+            if ((data[mapOffset + tile / Byte.SIZE] & (1 << (tile % Byte.SIZE))) == 0) {
+                continue;
+            }
+            int tileX = tile % tilesX;
+            int tileY = tile / tilesX;
+            int tileRowBytes = Math.min(tileWidth, width - tileX * tileWidth) * bytesPerPixel;
+            int rows = Math.min(tileHeight, height - tileY * tileHeight);
+            index = compression.decompress(data, index, tileBuffer, 0, tileRowBytes * rows, bytesPerPixel);
+            int dstOffset = tileY * tileHeight * rowBytes + tileX * tileWidth * bytesPerPixel;
+            for (int row = 0; row < rows; row++) {
+                System.arraycopy(tileBuffer, row * tileRowBytes, raw, dstOffset + row * rowBytes, tileRowBytes);
+            }
+        }
+        int[] pixels = new int[width * height];
+        format.decode(raw, 0, pixels.length, pixels, 0);
+        return new BinImage(format, width, height, pixels);
+    }
+
+    private static void applyPalette(int[] pixels, int[] palette) {
+        for (int i = 0; i < pixels.length; i++) {
+            if (pixels[i] >= palette.length) {
+                throw new IllegalArgumentException("palette index " + pixels[i] + " out of range");
+            }
+            pixels[i] = palette[pixels[i]];
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.image;
+
+/**
+ * Layout of the watch .bin image file
+ * <p>
+ * The file starts with an 8-byte header of two little-endian words: the color mode, followed by the
+ * image size (width in the low 16 bits, height in the high 16 bits). Indexed images then have a palette
+ * block: a little-endian word with the number of entries, followed by the entries as BGRA. The pixels
+ * follow row by row in the {@link BinPixelFormat} named by the color mode.
+ * <p>
+ * A delta file, flagged by {@link #DELTA_FLAG} in the color mode, only updates the image the watch
+ * already shows. The header is followed by the CRC32 of the raw pixels of that base image, the tile size
+ * word (width in the low 16 bits, height in the high 16 bits), and the tile map: one bit per tile, row by
+ * row and low bit first, set when the tile changed. The pixels of the changed tiles follow tile by tile,
+ * each tile row by row and clipped at the image border. Indexed images have no delta files.
+ *
+ * @since 2020-08-05
+ */
+public final class BinImageFormat {
+    /**
+     * Size of the file header in bytes
+     */
+    public static final int HEADER_SIZE = 8;
+
+    /**
+     * Bit of the color mode word flagging a delta file
+     */
+    public static final int DELTA_FLAG = 0x80;
+
+    /**
+     * Size of the delta block following the header, without the tile map
+     */
+    public static final int DELTA_HEADER_SIZE = 8;
+
+    private static final int PALETTE_COUNT_SIZE = 4;
+
+    private static final int WIDTH_BIT_OFFSET = 0;
+
+    private static final int HEIGHT_BIT_OFFSET = 16;
+
+    private static final int SIZE_MASK = 0xFFFF;
+
+    private static final int BYTE_MASK = 0xFF;
+
+    private BinImageFormat() {
+    }
+
+    /**
+     * Write the file header
+     *
+     * @param dst destination array
+     * @param offset offset of the header in dst
+     * @param colorMode color mode word
+     * @param width image width
+     * @param height image height
+     * @return Offset right after the header
+     */
+    public static int writeHeader(byte[] dst, int offset, int colorMode, int width, int height) {
+        int size = (width << WIDTH_BIT_OFFSET) + (height << HEIGHT_BIT_OFFSET);
+        int index = writeWord(dst, offset, colorMode);
+        return writeWord(dst, index, size);
+    }
+
+    /**
+     * Read the color mode word of the file header
+     *
+     * @param src file content
+     * @param offset offset of the header in src
+     * @return Color mode word
+     */
+    public static int readColorMode(byte[] src, int offset) {
+        return readWord(src, offset);
+    }
+
+    /**
+     * Check whether a color mode word flags a delta file
+     *
+     * @param colorMode color mode word
+     * @return true if the file is a delta file
+     */
+    public static boolean isDelta(int colorMode) {
+        return (colorMode & DELTA_FLAG) != 0;
+    }
+
+    /**
+     * Read the image width of the file header
+     *
+     * @param src file content
+     * @param offset offset of the header in src
+     * @return Image width
+     */
+    public static int readWidth(byte[] src, int offset) {
+        return (readWord(src, offset + 4) >>> WIDTH_BIT_OFFSET) & SIZE_MASK;
+    }
+
+    /**
+     * Read the image height of the file header
+     *
+     * @param src file content
+     * @param offset offset of the header in src
+     * @return Image height
+     */
+    public static int readHeight(byte[] src, int offset) {
+        return (readWord(src, offset + 4) >>> HEIGHT_BIT_OFFSET) & SIZE_MASK;
+    }
+
+    /**
+     * Write the palette block of an indexed image
+     *
+     * @param dst destination array
+     * @param offset offset of the palette block in dst
+     * @param palette ARGB palette
+     * @return Offset right after the palette block
+     */
+    public static int writePalette(byte[] dst, int offset, int[] palette) {
+        int index = writeWord(dst, offset, palette.length);
+        return BinPixelFormat.ARGB8888.encode(palette, 0, palette.length, dst, index);
+    }
+
+    /**
+     * Read the palette block of an indexed image
+     *
+     * @param src file content
+     * @param offset offset of the palette block in src
+     * @return ARGB palette
+     * @throws IllegalArgumentException if the palette block is invalid or truncated
+     */
+    public static int[] readPalette(byte[] src, int offset) {
+        if (src.length < offset + PALETTE_COUNT_SIZE) {
+            throw new IllegalArgumentException("palette block is truncated");
+        }
+        int count = readWord(src, offset);
+        if (count < 1 || count > PaletteQuantizer.MAX_COLORS || src.length < offset + getPaletteSize(count)) {
+            throw new IllegalArgumentException("invalid palette block of " + count + " entries");
+        }
+        int[] palette = new int[count];
+        BinPixelFormat.ARGB8888.decode(src, offset + PALETTE_COUNT_SIZE, count, palette, 0);
+        return palette;
+    }
+
+    /**
+     * Get the size of a palette block
+     *
+     * @param count number of palette entries
+     * @return Size of the palette block in bytes
+     */
+    public static int getPaletteSize(int count) {
+        return PALETTE_COUNT_SIZE + count * BinPixelFormat.ARGB8888.getBytesPerPixel();
+    }
+
+    /**
+     * Write the delta block of a delta file
+     *
+     * @param dst destination array
+     * @param offset offset of the delta block in dst
+     * @param baseChecksum CRC32 of the raw pixels of the base image
+     * @param tileSize width and height of the tiles
+     * @return Offset of the tile map
+     */
+    public static int writeDeltaHeader(byte[] dst, int offset, int baseChecksum, int tileSize) {
+        int index = writeWord(dst, offset, baseChecksum);
+        return writeWord(dst, index, (tileSize << WIDTH_BIT_OFFSET) + (tileSize << HEIGHT_BIT_OFFSET));
+    }
+
+    /**
+     * Read the base image checksum of the delta block
+     *
+     * @param src file content
+     * @param offset offset of the delta block in src
+     * @return CRC32 of the raw pixels of the base image
+     */
+    public static int readBaseChecksum(byte[] src, int offset) {
+        return readWord(src, offset);
+    }
+
+    /**
+     * Read the tile width of the delta block
+     *
+     * @param src file content
+     * @param offset offset of the delta block in src
+     * @return Tile width
+     */
+    public static int readTileWidth(byte[] src, int offset) {
+        return (readWord(src, offset + 4) >>> WIDTH_BIT_OFFSET) & SIZE_MASK;
+    }
+
+    /**
+     * Read the tile height of the delta block
+     *
+     * @param src file content
+     * @param offset offset of the delta block in src
+     * @return Tile height
+     */
+    public static int readTileHeight(byte[] src, int offset) {
+        return (readWord(src, offset + 4) >>> HEIGHT_BIT_OFFSET) & SIZE_MASK;
+    }
+
+    /**
+     * Get the size of the tile map of a delta file
+     *
+     * @param tileCount number of tiles of the image
+     * @return Size of the tile map in bytes
+     */
+    public static int getTileMapSize(int tileCount) {
+        return (tileCount + Byte.SIZE - 1) / Byte.SIZE;
+    }
+
+    /**
+     * Get the size of an uncompressed .bin file without palette
+     *
+     * @param format pixel format
+     * @param width image width
+     * @param height image height
+     * @return Size of the file in bytes
+     */
+    public static int getFileSize(BinPixelFormat format, int width, int height) {
+        return HEADER_SIZE + width * height * format.getBytesPerPixel();
+    }
+
+    private static int writeWord(byte[] dst, int offset, int word) {
+        int index = offset;
+        dst[index++] = (byte) (word & BYTE_MASK);
+        dst[index++] = (byte) ((word >> 8) & BYTE_MASK);
+        dst[index++] = (byte) ((word >> 16) & BYTE_MASK);
+        dst[index++] = (byte) ((word >> 24) & BYTE_MASK);
+        return index;
+    }
+
+    private static int readWord(byte[] src, int offset) {
+        return (src[offset] & BYTE_MASK) | ((src[offset + 1] & BYTE_MASK) << 8)
+            | ((src[offset + 2] & BYTE_MASK) << 16) | ((src[offset + 3] & BYTE_MASK) << 24);
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.image;
+
+/**
+ * Pixel formats of the watch .bin image file
+ * <p>
+ * The format id is stored in the second byte of the color mode word. Multi-byte pixels are little-endian,
+ * and byte-aligned channels are stored blue first, matching the original BGRA layout.
+ *
+ * @since 2020-08-05
+ */
+public enum BinPixelFormat {
+    /**
+     * 32-bit pixels stored as B, G, R, A
+     */
+    ARGB8888(1, 4) {
+        @Override
+        public int encode(int[] pixels, int pixelOffset, int count, byte[] dst, int dstOffset) {
+            int index = dstOffset;
+            int end = pixelOffset + count;
+            for (int i = pixelOffset; i < end; i++) {
+                int clr = pixels[i];
+                dst[index++] = (byte) clr;
+                dst[index++] = (byte) (clr >> 8);
+                dst[index++] = (byte) (clr >> 16);
+                dst[index++] = (byte) (clr >>> 24);
+            }
+            return index;
+        }
+
+        @Override
+        public int decode(byte[] src, int srcOffset, int count, int[] pixels, int pixelOffset) {
+            int index = srcOffset;
+            int end = pixelOffset + count;
+            for (int i = pixelOffset; i < end; i++) {
+                int blue = src[index++] & BYTE_MASK;
+                int green = src[index++] & BYTE_MASK;
+                int red = src[index++] & BYTE_MASK;
+                int alpha = src[index++] & BYTE_MASK;
+                pixels[i] = (alpha << 24) | (red << 16) | (green << 8) | blue;
+            }
+            return index;
+        }
+    },
+
+    /**
+     * 16-bit pixels with 5 bits red, 6 bits green and 5 bits blue, fully opaque
+     */
+    RGB565(2, 2) {
+        @Override
+        public int encode(int[] pixels, int pixelOffset, int count, byte[] dst, int dstOffset) {
+            int index = dstOffset;
+            int end = pixelOffset + count;
+            for (int i = pixelOffset; i < end; i++) {
+                int clr = pixels[i];
+                int value = ((clr >> 8) & 0xF800) | ((clr >> 5) & 0x07E0) | ((clr >> 3) & 0x001F);
+                dst[index++] = (byte) value;
+                dst[index++] = (byte) (value >> 8);
+            }
+            return index;
+        }
+
+        @Override
+        public int decode(byte[] src, int srcOffset, int count, int[] pixels, int pixelOffset) {
+            int index = srcOffset;
+            int end = pixelOffset + count;
+            for (int i = pixelOffset; i < end; i++) {
+                int value = (src[index++] & BYTE_MASK) | ((src[index++] & BYTE_MASK) << 8);
+                int red = (value >> 11) & 0x1F;
+                int green = (value >> 5) & 0x3F;
+                int blue = value & 0x1F;
+                pixels[i] = OPAQUE | (((red << 3) | (red >> 2)) << 16) | (((green << 2) | (green >> 4)) << 8)
+                    | ((blue << 3) | (blue >> 2));
+            }
+            return index;
+        }
+    },
+
+    /**
+     * 16-bit pixels with 4 bits for each of alpha, red, green and blue
+     */
+    ARGB4444(3, 2) {
+        @Override
+        public int encode(int[] pixels, int pixelOffset, int count, byte[] dst, int dstOffset) {
+            int index = dstOffset;
+            int end = pixelOffset + count;
+            for (int i = pixelOffset; i < end; i++) {
+                int clr = pixels[i];
+                int value = ((clr >>> 16) & 0xF000) | ((clr >> 12) & 0x0F00) | ((clr >> 8) & 0x00F0)
+                    | ((clr >> 4) & 0x000F);
+                dst[index++] = (byte) value;
+                dst[index++] = (byte) (value >> 8);
+            }
+            return index;
+        }
+
+        @Override
+        public int decode(byte[] src, int srcOffset, int count, int[] pixels, int pixelOffset) {
+            int index = srcOffset;
+            int end = pixelOffset + count;
+            for (int i = pixelOffset; i < end; i++) {
+                int value = (src[index++] & BYTE_MASK) | ((src[index++] & BYTE_MASK) << 8);
+                int alpha = ((value >> 12) & 0xF) * NIBBLE_TO_BYTE;
+                int red = ((value >> 8) & 0xF) * NIBBLE_TO_BYTE;
+                int green = ((value >> 4) & 0xF) * NIBBLE_TO_BYTE;
+                int blue = (value & 0xF) * NIBBLE_TO_BYTE;
+                pixels[i] = (alpha << 24) | (red << 16) | (green << 8) | blue;
+            }
+            return index;
+        }
+    },
+
+    /**
+     * 24-bit pixels stored as B, G, R, fully opaque
+     */
+    RGB888(4, 3) {
+        @Override
+        public int encode(int[] pixels, int pixelOffset, int count, byte[] dst, int dstOffset) {
+            int index = dstOffset;
+            int end = pixelOffset + count;
+            for (int i = pixelOffset; i < end; i++) {
+                int clr = pixels[i];
+                dst[index++] = (byte) clr;
+                dst[index++] = (byte) (clr >> 8);
+                dst[index++] = (byte) (clr >> 16);
+            }
+            return index;
+        }
+
+        @Override
+        public int decode(byte[] src, int srcOffset, int count, int[] pixels, int pixelOffset) {
+            int index = srcOffset;
+            int end = pixelOffset + count;
+            for (int i = pixelOffset; i < end; i++) {
+                int blue = src[index++] & BYTE_MASK;
+                int green = src[index++] & BYTE_MASK;
+                int red = src[index++] & BYTE_MASK;
+                pixels[i] = OPAQUE | (red << 16) | (green << 8) | blue;
+            }
+            return index;
+        }
+    },
+
+    /**
+     * 8-bit indices into the palette block that follows the file header, see {@link PaletteQuantizer}
+     * <p>
+     * The pixels given to and returned by the codec of this format are palette indices, not ARGB colors.
+     */
+    INDEX8(5, 1) {
+        @Override
+        public int encode(int[] pixels, int pixelOffset, int count, byte[] dst, int dstOffset) {
+            int index = dstOffset;
+            int end = pixelOffset + count;
+            for (int i = pixelOffset; i < end; i++) {
+                dst[index++] = (byte) pixels[i];
+            }
+            return index;
+        }
+
+        @Override
+        public int decode(byte[] src, int srcOffset, int count, int[] pixels, int pixelOffset) {
+            int index = srcOffset;
+            int end = pixelOffset + count;
+            for (int i = pixelOffset; i < end; i++) {
+                pixels[i] = src[index++] & BYTE_MASK;
+            }
+            return index;
+        }
+    };
+
+    private static final int BYTE_MASK = 0xFF;
+
+    private static final int OPAQUE = 0xFF000000;
+
+    private static final int NIBBLE_TO_BYTE = 0x11;
+
+    private static final int FORMAT_ID_BIT_OFFSET = 8;
+
+    private final int formatId;
+
+    private final int bytesPerPixel;
+
+    BinPixelFormat(int formatId, int bytesPerPixel) {
+        this.formatId = formatId;
+        this.bytesPerPixel = bytesPerPixel;
+    }
+
+    /**
+     * Get the color mode word written in the file header
+     *
+     * @return Color mode word
+     */
+    public int getColorMode() {
+        return formatId << FORMAT_ID_BIT_OFFSET;
+    }
+
+    /**
+     * Get the number of bytes of one encoded pixel
+     *
+     * @return Bytes per pixel
+     */
+    public int getBytesPerPixel() {
+        return bytesPerPixel;
+    }
+
+    /**
+     * Encode ARGB pixels
+     *
+     * @param pixels source ARGB pixels
+     * @param pixelOffset index of the first pixel to encode
+     * @param count number of pixels to encode
+     * @param dst destination array
+     * @param dstOffset offset of the first output byte in dst
+     * @return Offset right after the last written byte
+     */
+    public abstract int encode(int[] pixels, int pixelOffset, int count, byte[] dst, int dstOffset);
+
+    /**
+     * Decode pixels back into ARGB
+     *
+     * @param src encoded bytes
+     * @param srcOffset offset of the first encoded byte
+     * @param count number of pixels to decode
+     * @param pixels destination ARGB pixels
+     * @param pixelOffset index of the first output pixel
+     * @return Offset right after the last read byte
+     */
+    public abstract int decode(byte[] src, int srcOffset, int count, int[] pixels, int pixelOffset);
+
+    /**
+     * Find the pixel format of a color mode word
+     *
+     * @param colorMode color mode word read from the file header
+     * @return Pixel format
+     * @throws IllegalArgumentException if the color mode is unknown
+     */
+    public static BinPixelFormat fromColorMode(int colorMode) {
+        int formatId = (colorMode >> FORMAT_ID_BIT_OFFSET) & BYTE_MASK;
+        for (BinPixelFormat format : values()) {
+            if (format.formatId == formatId) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("unknown color mode " + colorMode);
+    }
+}
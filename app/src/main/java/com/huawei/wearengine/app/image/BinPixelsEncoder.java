@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.image;
+
+import java.util.Arrays;
+
+/**
+ * Encoder of ARGB pixels held in memory into a whole watch .bin image file
+ *
+ * @since 2020-08-05
+ */
+public final class BinPixelsEncoder {
+    private BinPixelsEncoder() {
+    }
+
+    /**
+     * Encode an image into the content of a .bin file
+     *
+     * @param pixels ARGB pixels, row by row, left unchanged
+     * @param width image width
+     * @param height image height
+     * @param options encoding options
+     * @return File content
+     */
+    public static byte[] encode(int[] pixels, int width, int height, BinEncodeOptions options) {
+        BinPixelFormat format = options.getPixelFormat();
+        int count = width * height;
+        int[] source = pixels;
+        int[] palette = null;
+        if (format == BinPixelFormat.INDEX8) {
+            source = Arrays.copyOf(pixels, count);
+            palette = options.createQuantizer().quantize(source, width, height);
+        }
+        byte[] raw = new byte[count * format.getBytesPerPixel()];
+        convertPixels(source, width, height, raw, options);
+        return encodeRaw(raw, width, height, palette, options);
+    }
+
+    /**
+     * Convert pixels into the pixel format of the options, on several threads if the options say so
+     *
+     * @param pixels ARGB pixels, or palette indices of indexed images, row by row
+     * @param width image width
+     * @param height image height
+     * @param raw destination of the raw pixels
+     * @param options encoding options
+     */
+    static void convertPixels(int[] pixels, int width, int height, byte[] raw, BinEncodeOptions options) {
+        BinPixelFormat format = options.getPixelFormat();
+        if (options.isParallel()) {
+            ParallelPixelConverter.getDefault().encode(format, pixels, 0, width, height, raw, 0);
+        } else {
+            format.encode(pixels, 0, width * height, raw, 0);
+        }
+    }
+
+    /**
+     * Encode pixels already converted to the pixel format of the options
+     *
+     * @param raw raw pixels, row by row
+     * @param width image width
+     * @param height image height
+     * @param palette ARGB palette of indexed images, null otherwise
+     * @param options encoding options
+     * @return File content
+     */
+    static byte[] encodeRaw(byte[] raw, int width, int height, int[] palette, BinEncodeOptions options) {
+        BinCompression compression = options.getCompression();
+        int bytesPerPixel = options.getPixelFormat().getBytesPerPixel();
+        int rowBytes = width * bytesPerPixel;
+        int rawLength = rowBytes * height;
+        int paletteSize = palette == null ? 0 : BinImageFormat.getPaletteSize(palette.length);
+        byte[] data = new byte[BinImageFormat.HEADER_SIZE + paletteSize
+            + compression.maxCompressedLength(rawLength, rowBytes, bytesPerPixel)];
+        int index = BinImageFormat.writeHeader(data, 0, options.getColorMode(), width, height);
+        if (palette != null) {
+            index = BinImageFormat.writePalette(data, index, palette);
+        }
+        index = compression.compress(raw, 0, rawLength, rowBytes, bytesPerPixel, data, index);
+        return index == data.length ? data : Arrays.copyOf(data, index);
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.image;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pool of pixel and byte buffers reused from one conversion to the next
+ * <p>
+ * A buffer is handed out again for the exact same length, which is the case of the conversions of
+ * pictures of the same size. The buffers released beyond the memory cap evict the buffers released the
+ * longest ago. A released buffer must not be used anymore by the caller. The pool is thread safe.
+ *
+ * @since 2020-08-05
+ */
+public final class BufferPool {
+    /**
+     * Default memory cap, holding the buffers of the conversion of a picture to the watch size
+     */
+    public static final long DEFAULT_MAX_BYTES = 8L * 1024 * 1024;
+
+    private static final int INT_BYTES = 4;
+
+    private final long maxBytes;
+
+    // Released buffers, the oldest first, guarded by this
+    private final List<Object> buffers = new ArrayList<>();
+
+    private long pooledBytes;
+
+    private long hits;
+
+    private long misses;
+
+    private long evictions;
+
+    /**
+     * Constructor
+     *
+     * @param maxBytes largest number of bytes of the pooled buffers, 0 to pool nothing
+     */
+    public BufferPool(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("invalid maxBytes " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Get a pixel buffer, whose content is undefined
+     *
+     * @param length buffer length
+     * @return Pooled buffer of that length, or a new one
+     */
+    public int[] acquireInts(int length) {
+        Object buffer = take(int[].class, length);
+        return buffer == null ? new int[length] : (int[]) buffer;
+    }
+
+    /**
+     * Get a byte buffer, whose content is undefined
+     *
+     * @param length buffer length
+     * @return Pooled buffer of that length, or a new one
+     */
+    public byte[] acquireBytes(int length) {
+        Object buffer = take(byte[].class, length);
+        return buffer == null ? new byte[length] : (byte[]) buffer;
+    }
+
+    /**
+     * Give a pixel buffer back to the pool
+     *
+     * @param buffer buffer got from {@link #acquireInts} or allocated by the caller, ignored if null
+     */
+    public void release(int[] buffer) {
+        if (buffer != null) {
+            put(buffer, (long) buffer.length * INT_BYTES);
+        }
+    }
+
+    /**
+     * Give a byte buffer back to the pool
+     *
+     * @param buffer buffer got from {@link #acquireBytes} or allocated by the caller, ignored if null
+     */
+    public void release(byte[] buffer) {
+        if (buffer != null) {
+            put(buffer, buffer.length);
+        }
+    }
+
+    /**
+     * Drop all the pooled buffers
+     */
+    public synchronized void clear() {
+        buffers.clear();
+        pooledBytes = 0;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized long getPooledBytes() {
+        return pooledBytes;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BufferPool{buffers=" + buffers.size() + ", bytes=" + pooledBytes + ", hits=" + hits + ", misses="
+            + misses + ", evictions=" + evictions + "}";
+    }
+
+    private synchronized Object take(Class<?> type, int length) {
+        // The most recently released buffer first, it is the most likely to be in the CPU caches
+        for (int i = buffers.size() - 1; i >= 0; i--) {
+            Object buffer = buffers.get(i);
+            if (buffer.getClass() == type && getLength(buffer) == length) {
+                buffers.remove(i);
+                pooledBytes -= sizeOf(buffer);
+                hits++;
+                return buffer;
+            }
+        }
+        misses++;
+        return null;
+    }
+
+    private synchronized void put(Object buffer, long size) {
+        if (size > maxBytes) {
+            evictions++;
+            return;
+        }
+        for (Object pooled : buffers) {
+            if (pooled == buffer) {
+                return;
+            }
+        }
+        buffers.add(buffer);
+        pooledBytes += size;
+        while (pooledBytes > maxBytes) {
+            pooledBytes -= sizeOf(buffers.remove(0));
+            evictions++;
+        }
+    }
+
+    private static int getLength(Object buffer) {
+        return buffer instanceof int[] ? ((int[]) buffer).length : ((byte[]) buffer).length;
+    }
+
+    private static long sizeOf(Object buffer) {
+        return buffer instanceof int[] ? (long) ((int[]) buffer).length * INT_BYTES : ((byte[]) buffer).length;
+    }
+}
@@ -0,0 +1,334 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.image;
+
+/**
+ * Scaler of ARGB pixels held in memory, with an optional center crop to the aspect ratio of the target
+ * <p>
+ * Reductions of at least twice on one side average the area of the source covered by each target pixel,
+ * counting the source pixels on the edges of that area by the fraction they cover, so that fine details
+ * of a large photo do not alias. Smaller reductions and enlargements interpolate the four nearest source
+ * pixels. Either way, each target pixel is written once, straight into the buffer of the caller.
+ * <p>
+ * The four channels are scaled independently, which is exact for opaque pictures. The index tables and
+ * the accumulators are kept across calls, so an instance is not thread safe.
+ *
+ * @since 2020-08-05
+ */
+public final class ImageScaler {
+    private static final int AREA_MIN_RATIO = 2;
+
+    private static final int CHANNELS = 4;
+
+    private static final int BYTE_MASK = 0xFF;
+
+    private static final int ALPHA_SHIFT = 24;
+
+    private static final int RED_SHIFT = 16;
+
+    private static final int GREEN_SHIFT = 8;
+
+    private static final int FRACTION_BITS = 8;
+
+    private static final int FRACTION_ONE = 1 << FRACTION_BITS;
+
+    private static final int ROUNDING = 1 << (2 * FRACTION_BITS - 1);
+
+    private int[] columnIndices = new int[0];
+
+    private int[] columnFractions = new int[0];
+
+    private float[] columnWeights = new float[0];
+
+    private float[] rowSums = new float[0];
+
+    private float[] currentRow = new float[0];
+
+    private float[] nextRow = new float[0];
+
+    /**
+     * Get the largest centered area of an image with the aspect ratio of the target
+     *
+     * @param width image width
+     * @param height image height
+     * @param targetWidth target width
+     * @param targetHeight target height
+     * @return Center crop area
+     */
+    public static Crop getCenterCrop(int width, int height, int targetWidth, int targetHeight) {
+        int cropWidth = width;
+        int cropHeight = height;
+        if ((long) width * targetHeight > (long) height * targetWidth) {
+            cropWidth = (int) Math.max(1L, ((long) height * targetWidth + targetHeight / 2) / targetHeight);
+        } else {
+            cropHeight = (int) Math.max(1L, ((long) width * targetHeight + targetWidth / 2) / targetWidth);
+        }
+        return new Crop((width - cropWidth) / 2, (height - cropHeight) / 2, cropWidth, cropHeight);
+    }
+
+    /**
+     * Check whether a scaling averages areas rather than interpolating
+     *
+     * @param srcWidth source width
+     * @param srcHeight source height
+     * @param dstWidth target width
+     * @param dstHeight target height
+     * @return true if the source is reduced on both sides and at least twice on one side
+     */
+    public static boolean isAreaAveraging(int srcWidth, int srcHeight, int dstWidth, int dstHeight) {
+        return srcWidth >= dstWidth && srcHeight >= dstHeight
+            && ((long) srcWidth >= (long) AREA_MIN_RATIO * dstWidth
+            || (long) srcHeight >= (long) AREA_MIN_RATIO * dstHeight);
+    }
+
+    /**
+     * Crop the center of an image to the aspect ratio of the target and scale it to the target
+     *
+     * @param src ARGB pixels of the image, row by row
+     * @param srcWidth image width
+     * @param srcHeight image height
+     * @param dst destination of the ARGB pixels of the target, row by row
+     * @param dstWidth target width
+     * @param dstHeight target height
+     * @throws IllegalArgumentException if a size is not positive or a buffer is too small
+     */
+    public void cropAndScale(int[] src, int srcWidth, int srcHeight, int[] dst, int dstWidth, int dstHeight) {
+        checkSize(srcWidth, srcHeight);
+        checkSize(dstWidth, dstHeight);
+        Crop crop = getCenterCrop(srcWidth, srcHeight, dstWidth, dstHeight);
+        scale(src, crop.getTop() * srcWidth + crop.getLeft(), srcWidth, crop.getWidth(), crop.getHeight(), dst,
+            dstWidth, dstHeight);
+    }
+
+    /**
+     * Scale an area of an image to the target
+     *
+     * @param src ARGB pixels of the image, row by row
+     * @param srcOffset index of the top left pixel of the area
+     * @param srcStride number of pixels from one row of the image to the next
+     * @param srcWidth area width
+     * @param srcHeight area height
+     * @param dst destination of the ARGB pixels of the target, row by row
+     * @param dstWidth target width
+     * @param dstHeight target height
+     * @throws IllegalArgumentException if a size is not positive or a buffer is too small
+     */
+    public void scale(int[] src, int srcOffset, int srcStride, int srcWidth, int srcHeight, int[] dst,
+        int dstWidth, int dstHeight) {
+        checkSize(srcWidth, srcHeight);
+        checkSize(dstWidth, dstHeight);
+        if (srcOffset < 0 || srcStride < srcWidth
+            || srcOffset + (long) (srcHeight - 1) * srcStride + srcWidth > src.length) {
+            throw new IllegalArgumentException("source area is out of the source buffer");
+        }
+        if ((long) dstWidth * dstHeight > dst.length) {
+            throw new IllegalArgumentException("destination buffer is smaller than " + dstWidth + "x" + dstHeight);
+        }
+        if (isAreaAveraging(srcWidth, srcHeight, dstWidth, dstHeight)) {
+            scaleArea(src, srcOffset, srcStride, srcWidth, srcHeight, dst, dstWidth, dstHeight);
+        } else {
+            scaleBilinear(src, srcOffset, srcStride, srcWidth, srcHeight, dst, dstWidth, dstHeight);
+        }
+    }
+
+    private static void checkSize(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("invalid size " + width + "x" + height);
+        }
+    }
+
+    private void scaleArea(int[] src, int srcOffset, int srcStride, int srcWidth, int srcHeight, int[] dst,
+        int dstWidth, int dstHeight) {
+        // Each source column goes to the target column of its index, for its weight, and the rest to the next one
+        ensureCapacity(srcWidth, dstWidth);
+        for (int x = 0; x < srcWidth; x++) {
+            columnIndices[x] = (int) ((long) x * dstWidth / srcWidth);
+            columnWeights[x] = getFirstWeight(x, columnIndices[x], srcWidth, dstWidth);
+        }
+        float normalization = (float) ((double) dstWidth * dstHeight / ((double) srcWidth * srcHeight));
+        clear(currentRow, dstWidth);
+        clear(nextRow, dstWidth);
+        int dstRow = 0;
+        for (int y = 0; y < srcHeight; y++) {
+            int rowIndex = (int) ((long) y * dstHeight / srcHeight);
+            for (; dstRow < rowIndex; dstRow++) {
+                writeAreaRow(normalization, dst, dstRow * dstWidth, dstWidth);
+            }
+            sumRow(src, srcOffset + y * srcStride, srcWidth, dstWidth);
+            float rowWeight = getFirstWeight(y, rowIndex, srcHeight, dstHeight);
+            addRow(currentRow, rowWeight, dstWidth);
+            if (rowWeight < 1.0f && rowIndex + 1 < dstHeight) {
+                addRow(nextRow, 1.0f - rowWeight, dstWidth);
+            }
+        }
+        for (; dstRow < dstHeight; dstRow++) {
+            writeAreaRow(normalization, dst, dstRow * dstWidth, dstWidth);
+        }
+    }
+
+    private static float getFirstWeight(int srcIndex, int dstIndex, int srcLength, int dstLength) {
+        // Part of the source pixel before the end of the target pixel, both measured in target pixels
+        long end = (long) (dstIndex + 1) * srcLength - (long) srcIndex * dstLength;
+        return end >= dstLength ? 1.0f : (float) end / dstLength;
+    }
+
+    private void sumRow(int[] src, int offset, int srcWidth, int dstWidth) {
+        float[] sums = rowSums;
+        clear(sums, dstWidth);
+        for (int x = 0; x < srcWidth; x++) {
+            int color = src[offset + x];
+            int index = columnIndices[x] * CHANNELS;
+            float weight = columnWeights[x];
+            float alpha = color >>> ALPHA_SHIFT;
+            float red = (color >> RED_SHIFT) & BYTE_MASK;
+            float green = (color >> GREEN_SHIFT) & BYTE_MASK;
+            float blue = color & BYTE_MASK;
+            sums[index] += alpha * weight;
+            sums[index + 1] += red * weight;
+            sums[index + 2] += green * weight;
+            sums[index + 3] += blue * weight;
+            if (weight < 1.0f && index + CHANNELS < dstWidth * CHANNELS) {
+                float rest = 1.0f - weight;
+                sums[index + 4] += alpha * rest;
+                sums[index + 5] += red * rest;
+                sums[index + 6] += green * rest;
+                sums[index + 7] += blue * rest;
+            }
+        }
+    }
+
+    private void addRow(float[] row, float weight, int dstWidth) {
+        float[] sums = rowSums;
+        int length = dstWidth * CHANNELS;
+        for (int i = 0; i < length; i++) {
+            row[i] += sums[i] * weight;
+        }
+    }
+
+    private void writeAreaRow(float normalization, int[] dst, int dstOffset, int dstWidth) {
+        float[] row = currentRow;
+        int index = 0;
+        for (int x = 0; x < dstWidth; x++) {
+            int alpha = toChannel(row[index++] * normalization);
+            int red = toChannel(row[index++] * normalization);
+            int green = toChannel(row[index++] * normalization);
+            int blue = toChannel(row[index++] * normalization);
+            dst[dstOffset + x] = (alpha << ALPHA_SHIFT) | (red << RED_SHIFT) | (green << GREEN_SHIFT) | blue;
+        }
+        // The next row becomes the current one, and the written row is reused as the next one
+        currentRow = nextRow;
+        nextRow = row;
+        clear(nextRow, dstWidth);
+    }
+
+    private static int toChannel(float value) {
+        int channel = (int) (value + 0.5f);
+        return channel < 0 ? 0 : Math.min(channel, BYTE_MASK);
+    }
+
+    private void scaleBilinear(int[] src, int srcOffset, int srcStride, int srcWidth, int srcHeight, int[] dst,
+        int dstWidth, int dstHeight) {
+        // The centers of the target pixels are mapped to the source, and the source edges are repeated
+        ensureCapacity(0, dstWidth);
+        for (int x = 0; x < dstWidth; x++) {
+            int position = getSourcePosition(x, srcWidth, dstWidth);
+            columnIndices[x] = position >> FRACTION_BITS;
+            columnFractions[x] = position & (FRACTION_ONE - 1);
+        }
+        int index = 0;
+        for (int y = 0; y < dstHeight; y++) {
+            int position = getSourcePosition(y, srcHeight, dstHeight);
+            int top = position >> FRACTION_BITS;
+            int rowFraction = position & (FRACTION_ONE - 1);
+            int topOffset = srcOffset + top * srcStride;
+            int bottomOffset = top + 1 < srcHeight ? topOffset + srcStride : topOffset;
+            for (int x = 0; x < dstWidth; x++) {
+                int left = columnIndices[x];
+                int right = left + 1 < srcWidth ? left + 1 : left;
+                dst[index++] = interpolate(src[topOffset + left], src[topOffset + right], src[bottomOffset + left],
+                    src[bottomOffset + right], columnFractions[x], rowFraction);
+            }
+        }
+    }
+
+    private static int getSourcePosition(int dstIndex, int srcLength, int dstLength) {
+        // Center of the target pixel in the source, in fixed point, clamped to the source
+        long position = ((2L * dstIndex + 1) * srcLength * FRACTION_ONE) / (2L * dstLength) - FRACTION_ONE / 2;
+        long max = (long) (srcLength - 1) * FRACTION_ONE;
+        return (int) (position < 0 ? 0 : Math.min(position, max));
+    }
+
+    private static int interpolate(int topLeft, int topRight, int bottomLeft, int bottomRight, int columnFraction,
+        int rowFraction) {
+        int color = 0;
+        for (int shift = 0; shift <= ALPHA_SHIFT; shift += GREEN_SHIFT) {
+            int top = ((topLeft >>> shift) & BYTE_MASK) * (FRACTION_ONE - columnFraction)
+                + ((topRight >>> shift) & BYTE_MASK) * columnFraction;
+            int bottom = ((bottomLeft >>> shift) & BYTE_MASK) * (FRACTION_ONE - columnFraction)
+                + ((bottomRight >>> shift) & BYTE_MASK) * columnFraction;
+            int value = (top * (FRACTION_ONE - rowFraction) + bottom * rowFraction + ROUNDING) >>> (2 * FRACTION_BITS);
+            color |= value << shift;
+        }
+        return color;
+    }
+
+    private static void clear(float[] values, int dstWidth) {
+        int length = dstWidth * CHANNELS;
+        for (int i = 0; i < length; i++) {
+            values[i] = 0.0f;
+        }
+    }
+
+    private void ensureCapacity(int srcWidth, int dstWidth) {
+        int columns = Math.max(srcWidth, dstWidth);
+        if (columnIndices.length < columns) {
+            columnIndices = new int[columns];
+            columnFractions = new int[columns];
+            columnWeights = new float[columns];
+        }
+        int rowLength = dstWidth * CHANNELS;
+        if (rowSums.length < rowLength) {
+            rowSums = new float[rowLength];
+            currentRow = new float[rowLength];
+            nextRow = new float[rowLength];
+        }
+    }
+
+    /**
+     * Area of an image
+     */
+    public static final class Crop {
+        private final int left;
+
+        private final int top;
+
+        private final int width;
+
+        private final int height;
+
+        Crop(int left, int top, int width, int height) {
+            this.left = left;
+            this.top = top;
+            this.width = width;
+            this.height = height;
+        }
+
+        public int getLeft() {
+            return left;
+        }
+
+        public int getTop() {
+            return top;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+    }
+}
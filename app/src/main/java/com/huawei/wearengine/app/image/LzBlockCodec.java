@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.image;
+
+import java.util.Arrays;
+
+/**
+ * LZ77 block codec in the style of LZ4
+ * <p>
+ * The data is coded as blocks of at most 64 KB, each starting with two little-endian words: the raw
+ * length, and the compressed length with the high bit set when the block is stored uncompressed. A
+ * compressed block is a sequence of tokens whose high nibble is the literal count and low nibble the
+ * match length minus 4, a nibble of 15 being extended by following bytes up to a byte below 255. The
+ * literals follow the token, then the 2-byte little-endian match offset. The last sequence of a block
+ * has literals only.
+ *
+ * @since 2020-08-05
+ */
+final class LzBlockCodec {
+    /**
+     * Largest raw length of a block
+     */
+    static final int MAX_BLOCK_SIZE = 64 * 1024;
+
+    private static final int BLOCK_HEADER_SIZE = 8;
+
+    private static final int STORED_FLAG = 0x80000000;
+
+    private static final int MIN_MATCH = 4;
+
+    private static final int MAX_OFFSET = 0xFFFF;
+
+    private static final int HASH_BITS = 12;
+
+    private static final int HASH_MULTIPLIER = -1640531535;
+
+    private static final int NIBBLE_MASK = 0xF;
+
+    private static final int EXTENDED_LENGTH = 15;
+
+    private static final int BYTE_MAX = 255;
+
+    private LzBlockCodec() {
+    }
+
+    /**
+     * Get the largest possible size of the compressed data
+     *
+     * @param rawLength length of the raw data
+     * @return Largest compressed length
+     */
+    static int maxCompressedLength(int rawLength) {
+        int blocks = Math.max(1, (rawLength + MAX_BLOCK_SIZE - 1) / MAX_BLOCK_SIZE);
+        return rawLength + blocks * BLOCK_HEADER_SIZE;
+    }
+
+    /**
+     * Get the largest possible size of the raw data, each byte extending a match length adding 255 bytes
+     *
+     * @param compressedLength length of the compressed data
+     * @return Largest raw length
+     */
+    static long maxRawLength(int compressedLength) {
+        return (long) compressedLength * BYTE_MAX;
+    }
+
+    /**
+     * Compress data into blocks
+     *
+     * @param src raw data
+     * @param srcOffset offset of the first raw byte
+     * @param rawLength length of the raw data
+     * @param dst destination, at least {@link #maxCompressedLength} long after dstOffset
+     * @param dstOffset offset of the first compressed byte
+     * @return Offset right after the last written byte
+     */
+    static int compress(byte[] src, int srcOffset, int rawLength, byte[] dst, int dstOffset) {
+        int[] hashTable = new int[1 << HASH_BITS];
+        int out = dstOffset;
+        int end = srcOffset + rawLength;
+        for (int block = srcOffset; block < end; block += MAX_BLOCK_SIZE) {
+            int blockLength = Math.min(MAX_BLOCK_SIZE, end - block);
+            int payload = out + BLOCK_HEADER_SIZE;
+            int compressedLength = compressBlock(src, block, blockLength, dst, payload, hashTable);
+            writeWord(dst, out, blockLength);
+            if (compressedLength < 0) {
+                System.arraycopy(src, block, dst, payload, blockLength);
+                writeWord(dst, out + 4, STORED_FLAG | blockLength);
+                out = payload + blockLength;
+            } else {
+                writeWord(dst, out + 4, compressedLength);
+                out = payload + compressedLength;
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Decompress blocks
+     *
+     * @param src compressed data
+     * @param srcOffset offset of the first block
+     * @param dst destination of the raw data
+     * @param dstOffset offset of the first raw byte
+     * @param rawLength length of the raw data
+     * @return Offset right after the last read byte
+     * @throws IllegalArgumentException if the compressed data is corrupted
+     */
+    static int decompress(byte[] src, int srcOffset, byte[] dst, int dstOffset, int rawLength) {
+        int in = srcOffset;
+        int out = dstOffset;
+        int end = dstOffset + rawLength;
+        try {
+            while (out < end) {
+                int blockLength = readWord(src, in);
+                int compressedWord = readWord(src, in + 4);
+                in += BLOCK_HEADER_SIZE;
+                if (blockLength <= 0 || blockLength > MAX_BLOCK_SIZE || out + blockLength > end) {
+                    throw new IllegalArgumentException("invalid lz block length " + blockLength);
+                }
+                if ((compressedWord & STORED_FLAG) != 0) {
+                    System.arraycopy(src, in, dst, out, blockLength);
+                    in += blockLength;
+                } else {
+                    decompressBlock(src, in, in + compressedWord, dst, out, out + blockLength);
+                    in += compressedWord;
+                }
+                out += blockLength;
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("lz data is truncated", e);
+        }
+        return in;
+    }
+
+    /**
+     * Compress one block
+     *
+     * @return Compressed length, or -1 if the block does not shrink
+     */
+    private static int compressBlock(byte[] src, int start, int length, byte[] dst, int dstOffset,
+        int[] hashTable) {
+        Arrays.fill(hashTable, -1);
+        int end = start + length;
+        int limit = dstOffset + length;
+        int matchLimit = end - MIN_MATCH;
+        int out = dstOffset;
+        int anchor = start;
+        int in = start;
+        while (in <= matchLimit) {
+            int hash = hash(readWord(src, in));
+            int candidate = hashTable[hash];
+            hashTable[hash] = in;
+            if (candidate < start || in - candidate > MAX_OFFSET || readWord(src, candidate) != readWord(src, in)) {
+                in++;
+                continue;
+            }
+            int matchLength = MIN_MATCH;
+            while (in + matchLength < end && src[candidate + matchLength] == src[in + matchLength]) {
+                matchLength++;
+            }
+            out = writeSequence(src, anchor, in - anchor, in - candidate, matchLength, dst, out, limit);
+            if (out < 0) {
+                return -1;
+            }
+            in += matchLength;
+            anchor = in;
+        }
+        out = writeSequence(src, anchor, end - anchor, 0, 0, dst, out, limit);
+        return out < 0 ? -1 : out - dstOffset;
+    }
+
+    private static int writeSequence(byte[] src, int literalStart, int literalLength, int offset, int matchLength,
+        byte[] dst, int dstOffset, int limit) {
+        int matchCode = matchLength == 0 ? 0 : matchLength - MIN_MATCH;
+        int needed = 1 + literalLength + literalLength / BYTE_MAX + 1;
+        if (matchLength != 0) {
+            needed += 2 + matchCode / BYTE_MAX + 1;
+        }
+        if (dstOffset + needed > limit) {
+            return -1;
+        }
+        int out = dstOffset;
+        int token = out++;
+        dst[token] = (byte) ((Math.min(literalLength, EXTENDED_LENGTH) << 4) | Math.min(matchCode, EXTENDED_LENGTH));
+        out = writeExtendedLength(literalLength, dst, out);
+        System.arraycopy(src, literalStart, dst, out, literalLength);
+        out += literalLength;
+        if (matchLength == 0) {
+            return out;
+        }
+        dst[out++] = (byte) offset;
+        dst[out++] = (byte) (offset >> 8);
+        return writeExtendedLength(matchCode, dst, out);
+    }
+
+    private static int writeExtendedLength(int length, byte[] dst, int dstOffset) {
+        if (length < EXTENDED_LENGTH) {
+            return dstOffset;
+        }
+        int out = dstOffset;
+        int remaining = length - EXTENDED_LENGTH;
+        while (remaining >= BYTE_MAX) {
+            dst[out++] = (byte) BYTE_MAX;
+            remaining -= BYTE_MAX;
+        }
+        dst[out++] = (byte) remaining;
+        return out;
+    }
+
+    private static void decompressBlock(byte[] src, int start, int end, byte[] dst, int dstStart, int dstEnd) {
+        int in = start;
+        int out = dstStart;
+        while (in < end) {
+            int token = src[in++] & 0xFF;
+            int literalLength = token >>> 4;
+            if (literalLength == EXTENDED_LENGTH) {
+                int next;
+                do {
+                    next = src[in++] & 0xFF;
+                    literalLength += next;
+                } while (next == BYTE_MAX);
+            }
+            if (out + literalLength > dstEnd || in + literalLength > end) {
+                throw new IllegalArgumentException("lz literals overrun the block");
+            }
+            System.arraycopy(src, in, dst, out, literalLength);
+            in += literalLength;
+            out += literalLength;
+            if (in >= end) {
+                break;
+            }
+            int offset = (src[in++] & 0xFF) | ((src[in++] & 0xFF) << 8);
+            int matchLength = token & NIBBLE_MASK;
+            if (matchLength == EXTENDED_LENGTH) {
+                int next;
+                do {
+                    next = src[in++] & 0xFF;
+                    matchLength += next;
+                } while (next == BYTE_MAX);
+            }
+            matchLength += MIN_MATCH;
+            int match = out - offset;
+            if (offset == 0 || match < dstStart || out + matchLength > dstEnd) {
+                throw new IllegalArgumentException("invalid lz match");
+            }
+            for (int i = 0; i < matchLength; i++) {
+                dst[out++] = dst[match + i];
+            }
+        }
+        if (out != dstEnd) {
+            throw new IllegalArgumentException("lz block is truncated");
+        }
+    }
+
+    private static int hash(int word) {
+        return (word * HASH_MULTIPLIER) >>> (Integer.SIZE - HASH_BITS);
+    }
+
+    private static void writeWord(byte[] dst, int offset, int word) {
+        dst[offset] = (byte) word;
+        dst[offset + 1] = (byte) (word >> 8);
+        dst[offset + 2] = (byte) (word >> 16);
+        dst[offset + 3] = (byte) (word >> 24);
+    }
+
+    private static int readWord(byte[] src, int offset) {
+        return (src[offset] & 0xFF) | ((src[offset + 1] & 0xFF) << 8) | ((src[offset + 2] & 0xFF) << 16)
+            | ((src[offset + 3] & 0xFF) << 24);
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.image;
+
+import java.util.Arrays;
+
+/**
+ * Median-cut color quantizer producing the palette of indexed watch images
+ * <p>
+ * Images with no more distinct colors than the palette size keep their exact colors. Otherwise the
+ * distinct colors are split into boxes along their widest ARGB channel at the population median, and
+ * each box becomes the weighted mean of its colors. Pixels are mapped to their nearest palette entry,
+ * optionally with Floyd-Steinberg error diffusion. An instance is not thread safe.
+ *
+ * @since 2020-08-05
+ */
+public final class PaletteQuantizer {
+    /**
+     * Largest palette size of an indexed image
+     */
+    public static final int MAX_COLORS = 256;
+
+    private static final int CHANNELS = 4;
+
+    private static final int CHANNEL_MAX = 255;
+
+    private static final int CACHE_BITS = 12;
+
+    private static final int HASH_MULTIPLIER = 0x9E3779B1;
+
+    private static final int ERROR_SCALE = 16;
+
+    private static final int ERROR_RIGHT = 7;
+
+    private static final int ERROR_BELOW_LEFT = 3;
+
+    private static final int ERROR_BELOW = 5;
+
+    private static final int ERROR_BELOW_RIGHT = 1;
+
+    private final int maxColors;
+
+    private final boolean isDither;
+
+    private final int[] cacheColors = new int[1 << CACHE_BITS];
+
+    private final int[] cacheIndices = new int[1 << CACHE_BITS];
+
+    /**
+     * Constructor
+     *
+     * @param maxColors largest number of palette entries, from 1 to 256
+     * @param isDither whether the quantization error is diffused with Floyd-Steinberg dithering
+     */
+    public PaletteQuantizer(int maxColors, boolean isDither) {
+        if (maxColors < 1 || maxColors > MAX_COLORS) {
+            throw new IllegalArgumentException("maxColors must be in [1, 256]: " + maxColors);
+        }
+        this.maxColors = maxColors;
+        this.isDither = isDither;
+    }
+
+    /**
+     * Quantize the image, replacing each ARGB pixel by the index of its palette entry
+     *
+     * @param pixels ARGB pixels, row by row, overwritten with palette indices
+     * @param width image width
+     * @param height image height
+     * @return ARGB palette
+     */
+    public int[] quantize(int[] pixels, int width, int height) {
+        int count = width * height;
+        int[] palette = buildPalette(pixels, 0, count);
+        if (isDither) {
+            mapWithDithering(pixels, width, height, palette);
+        } else {
+            Arrays.fill(cacheIndices, 0);
+            for (int i = 0; i < count; i++) {
+                pixels[i] = findNearest(palette, pixels[i]);
+            }
+        }
+        return palette;
+    }
+
+    /**
+     * Build the palette of the pixels
+     *
+     * @param pixels ARGB pixels
+     * @param offset index of the first pixel
+     * @param count number of pixels
+     * @return ARGB palette of at most maxColors entries
+     */
+    public int[] buildPalette(int[] pixels, int offset, int count) {
+        if (count == 0) {
+            return new int[] {0};
+        }
+        int[] sorted = Arrays.copyOfRange(pixels, offset, offset + count);
+        Arrays.sort(sorted);
+        int distinct = 0;
+        int[] counts = new int[count];
+        for (int i = 0; i < count; i++) {
+            if (i > 0 && sorted[i] == sorted[distinct - 1]) {
+                counts[distinct - 1]++;
+            } else {
+                sorted[distinct] = sorted[i];
+                counts[distinct++] = 1;
+            }
+        }
+        if (distinct <= maxColors) {
+            return Arrays.copyOf(sorted, distinct);
+        }
+        return medianCut(sorted, counts, distinct);
+    }
+
+    private int[] medianCut(int[] colors, int[] counts, int distinct) {
+        int[] boxStarts = new int[maxColors];
+        int[] boxEnds = new int[maxColors];
+        boxEnds[0] = distinct;
+        int boxes = 1;
+        int[] sortColors = new int[distinct];
+        int[] sortCounts = new int[distinct];
+        while (boxes < maxColors) {
+            int best = -1;
+            int bestRange = 0;
+            int bestChannel = 0;
+            for (int box = 0; box < boxes; box++) {
+                if (boxEnds[box] - boxStarts[box] < 2) {
+                    continue;
+                }
+                for (int channel = 0; channel < CHANNELS; channel++) {
+                    int range = getRange(colors, boxStarts[box], boxEnds[box], channel);
+                    if (range > bestRange) {
+                        best = box;
+                        bestRange = range;
+                        bestChannel = channel;
+                    }
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            int start = boxStarts[best];
+            int end = boxEnds[best];
+            sortByChannel(colors, counts, start, end, bestChannel, sortColors, sortCounts);
+            int split = getMedian(counts, start, end);
+            boxStarts[boxes] = split;
+            boxEnds[boxes] = end;
+            boxEnds[best] = split;
+            boxes++;
+        }
+        int[] palette = new int[boxes];
+        for (int box = 0; box < boxes; box++) {
+            palette[box] = getMean(colors, counts, boxStarts[box], boxEnds[box]);
+        }
+        return palette;
+    }
+
+    private static int getRange(int[] colors, int start, int end, int channel) {
+        int shift = channel * Byte.SIZE;
+        int min = CHANNEL_MAX;
+        int max = 0;
+        for (int i = start; i < end; i++) {
+            int value = (colors[i] >>> shift) & CHANNEL_MAX;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        return max - min;
+    }
+
+    private static void sortByChannel(int[] colors, int[] counts, int start, int end, int channel, int[] tmpColors,
+        int[] tmpCounts) {
+        int shift = channel * Byte.SIZE;
+        int[] positions = new int[CHANNEL_MAX + 2];
+        for (int i = start; i < end; i++) {
+            positions[((colors[i] >>> shift) & CHANNEL_MAX) + 1]++;
+        }
+        for (int value = 1; value < positions.length; value++) {
+            positions[value] += positions[value - 1];
+        }
+        for (int i = start; i < end; i++) {
+            int position = positions[(colors[i] >>> shift) & CHANNEL_MAX]++;
+            tmpColors[position] = colors[i];
+            tmpCounts[position] = counts[i];
+        }
+        System.arraycopy(tmpColors, 0, colors, start, end - start);
+        System.arraycopy(tmpCounts, 0, counts, start, end - start);
+    }
+
+    private static int getMedian(int[] counts, int start, int end) {
+        long total = 0;
+        for (int i = start; i < end; i++) {
+            total += counts[i];
+        }
+        long half = total / 2;
+        long cumulative = 0;
+        for (int i = start; i < end - 1; i++) {
+            cumulative += counts[i];
+            if (cumulative >= half) {
+                return i + 1;
+            }
+        }
+        return end - 1;
+    }
+
+    private static int getMean(int[] colors, int[] counts, int start, int end) {
+        long[] sums = new long[CHANNELS];
+        long total = 0;
+        for (int i = start; i < end; i++) {
+            for (int channel = 0; channel < CHANNELS; channel++) {
+                sums[channel] += (long) ((colors[i] >>> (channel * Byte.SIZE)) & CHANNEL_MAX) * counts[i];
+            }
+            total += counts[i];
+        }
+        int mean = 0;
+        for (int channel = 0; channel < CHANNELS; channel++) {
+            mean |= (int) ((sums[channel] + total / 2) / total) << (channel * Byte.SIZE);
+        }
+        return mean;
+    }
+
+    private void mapWithDithering(int[] pixels, int width, int height, int[] palette) {
+        Arrays.fill(cacheIndices, 0);
+        int[][] errors = new int[CHANNELS][width + 2];
+        int[][] nextErrors = new int[CHANNELS][width + 2];
+        int[] target = new int[CHANNELS];
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            for (int x = 0; x < width; x++) {
+                int color = pixels[row + x];
+                int adjusted = 0;
+                for (int channel = 0; channel < CHANNELS; channel++) {
+                    int value = (color >>> (channel * Byte.SIZE)) & CHANNEL_MAX;
+                    value += errors[channel][x + 1] / ERROR_SCALE;
+                    target[channel] = Math.max(0, Math.min(CHANNEL_MAX, value));
+                    adjusted |= target[channel] << (channel * Byte.SIZE);
+                }
+                int index = findNearest(palette, adjusted);
+                pixels[row + x] = index;
+                for (int channel = 0; channel < CHANNELS; channel++) {
+                    int error = target[channel] - ((palette[index] >>> (channel * Byte.SIZE)) & CHANNEL_MAX);
+                    errors[channel][x + 2] += error * ERROR_RIGHT;
+                    nextErrors[channel][x] += error * ERROR_BELOW_LEFT;
+                    nextErrors[channel][x + 1] += error * ERROR_BELOW;
+                    nextErrors[channel][x + 2] += error * ERROR_BELOW_RIGHT;
+                }
+            }
+            int[][] swap = errors;
+            errors = nextErrors;
+            nextErrors = swap;
+            for (int channel = 0; channel < CHANNELS; channel++) {
+                Arrays.fill(nextErrors[channel], 0);
+            }
+        }
+    }
+
+    private int findNearest(int[] palette, int color) {
+        int slot = (color * HASH_MULTIPLIER) >>> (Integer.SIZE - CACHE_BITS);
+        if (cacheIndices[slot] != 0 && cacheColors[slot] == color) {
+            return cacheIndices[slot] - 1;
+        }
+        int best = 0;
+        int bestDistance = Integer.MAX_VALUE;
+        for (int i = 0; i < palette.length; i++) {
+            int distance = 0;
+            for (int channel = 0; channel < CHANNELS; channel++) {
+                int shift = channel * Byte.SIZE;
+                int delta = ((color >>> shift) & CHANNEL_MAX) - ((palette[i] >>> shift) & CHANNEL_MAX);
+                distance += delta * delta;
+            }
+            if (distance < bestDistance) {
+                best = i;
+                bestDistance = distance;
+                if (distance == 0) {
+                    break;
+                }
+            }
+        }
+        cacheColors[slot] = color;
+        cacheIndices[slot] = best + 1;
+        return best;
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.image;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Converter of pixels between ARGB and a pixel format on several threads
+ * <p>
+ * The image is cut into bands of rows, more bands than threads, and each band is converted into its own
+ * region of the output, so the threads never write to the same bytes. The calling thread converts bands
+ * too, and every thread takes the next band left as soon as it is done with its own, so that a thread
+ * slowed down by the system does not hold back the others. Images below the threshold are converted on
+ * the calling thread, where waking up the pool would cost more than it saves.
+ * <p>
+ * The pool is a plain thread pool rather than a ForkJoinPool, which Android only provides from API 21.
+ *
+ * @since 2020-08-05
+ */
+public final class ParallelPixelConverter {
+    /**
+     * Default number of pixels below which the conversion runs on the calling thread
+     */
+    public static final int DEFAULT_THRESHOLD_PIXELS = 128 * 1024;
+
+    private static final String THREAD_NAME = "PixelConverter-";
+
+    private static final int BANDS_PER_THREAD = 4;
+
+    private static final int MIN_BAND_PIXELS = 16 * 1024;
+
+    private static final long KEEP_ALIVE_SECONDS = 30L;
+
+    private static volatile ParallelPixelConverter defaultConverter;
+
+    private final Executor executor;
+
+    private final int parallelism;
+
+    private final int thresholdPixels;
+
+    /**
+     * Constructor
+     *
+     * @param executor executor running the helper threads
+     * @param parallelism number of threads converting an image, including the calling thread
+     * @param thresholdPixels number of pixels below which the conversion runs on the calling thread
+     */
+    public ParallelPixelConverter(Executor executor, int parallelism, int thresholdPixels) {
+        if (parallelism <= 0 || thresholdPixels < 0) {
+            throw new IllegalArgumentException("invalid parallelism " + parallelism + " or thresholdPixels "
+                + thresholdPixels);
+        }
+        this.executor = executor;
+        this.parallelism = parallelism;
+        this.thresholdPixels = thresholdPixels;
+    }
+
+    /**
+     * Get the converter shared by the app, using one thread per processor
+     * <p>
+     * Its helper threads are daemon threads, stopped after a while without work.
+     *
+     * @return Shared converter
+     */
+    public static ParallelPixelConverter getDefault() {
+        ParallelPixelConverter converter = defaultConverter;
+        if (converter == null) {
+            synchronized (ParallelPixelConverter.class) {
+                converter = defaultConverter;
+                if (converter == null) {
+                    converter = createDefault();
+                    defaultConverter = converter;
+                }
+            }
+        }
+        return converter;
+    }
+
+    private static ParallelPixelConverter createDefault() {
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        int helpers = Math.max(1, parallelism - 1);
+        final AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(helpers, helpers, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, THREAD_NAME + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        pool.allowCoreThreadTimeOut(true);
+        return new ParallelPixelConverter(pool, parallelism, DEFAULT_THRESHOLD_PIXELS);
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public int getThresholdPixels() {
+        return thresholdPixels;
+    }
+
+    /**
+     * Convert ARGB pixels into a pixel format
+     *
+     * @param format pixel format
+     * @param pixels ARGB pixels, or palette indices for {@link BinPixelFormat#INDEX8}, row by row
+     * @param pixelOffset index of the first pixel
+     * @param width image width
+     * @param height image height
+     * @param dst destination of the converted pixels
+     * @param dstOffset index of the first converted byte
+     * @return Index after the last converted byte
+     */
+    public int encode(BinPixelFormat format, int[] pixels, int pixelOffset, int width, int height, byte[] dst,
+        int dstOffset) {
+        return convert(new Conversion(format, true, pixels, pixelOffset, dst, dstOffset), width, height);
+    }
+
+    /**
+     * Convert pixels of a pixel format into ARGB
+     *
+     * @param format pixel format
+     * @param src converted pixels
+     * @param srcOffset index of the first converted byte
+     * @param width image width
+     * @param height image height
+     * @param pixels destination of the ARGB pixels, or palette indices for {@link BinPixelFormat#INDEX8}
+     * @param pixelOffset index of the first pixel
+     * @return Index after the last converted byte read
+     */
+    public int decode(BinPixelFormat format, byte[] src, int srcOffset, int width, int height, int[] pixels,
+        int pixelOffset) {
+        return convert(new Conversion(format, false, pixels, pixelOffset, src, srcOffset), width, height);
+    }
+
+    private int convert(Conversion conversion, int width, int height) {
+        int count = width * height;
+        int byteEnd = conversion.byteOffset + count * conversion.format.getBytesPerPixel();
+        if (parallelism == 1 || count < thresholdPixels || height < 2) {
+            conversion.convert(0, count);
+            return byteEnd;
+        }
+        int bandRows = Math.max(ceilDiv(height, parallelism * BANDS_PER_THREAD), ceilDiv(MIN_BAND_PIXELS, width));
+        int bands = ceilDiv(height, bandRows);
+        if (bands < 2) {
+            conversion.convert(0, count);
+            return byteEnd;
+        }
+        Job job = new Job(conversion, width, height, bandRows, bands);
+        int helpers = Math.min(parallelism, bands) - 1;
+        for (int i = 0; i < helpers; i++) {
+            try {
+                executor.execute(job);
+            } catch (RejectedExecutionException e) {
+                // The bands not taken by a helper are converted on the calling thread
+                break;
+            }
+        }
+        job.run();
+        job.await();
+        return byteEnd;
+    }
+
+    private static int ceilDiv(int dividend, int divisor) {
+        return (dividend + divisor - 1) / divisor;
+    }
+
+    /**
+     * One conversion between ARGB pixels and converted bytes
+     */
+    private static final class Conversion {
+        private final BinPixelFormat format;
+
+        private final boolean isEncode;
+
+        private final int[] pixels;
+
+        private final int pixelOffset;
+
+        private final byte[] bytes;
+
+        private final int byteOffset;
+
+        Conversion(BinPixelFormat format, boolean isEncode, int[] pixels, int pixelOffset, byte[] bytes,
+            int byteOffset) {
+            this.format = format;
+            this.isEncode = isEncode;
+            this.pixels = pixels;
+            this.pixelOffset = pixelOffset;
+            this.bytes = bytes;
+            this.byteOffset = byteOffset;
+        }
+
+        void convert(int first, int count) {
+            int bytesOffset = byteOffset + first * format.getBytesPerPixel();
+            if (isEncode) {
+                format.encode(pixels, pixelOffset + first, count, bytes, bytesOffset);
+            } else {
+                format.decode(bytes, bytesOffset, count, pixels, pixelOffset + first);
+            }
+        }
+    }
+
+    /**
+     * Bands of a conversion, taken one by one by the threads running the job
+     */
+    private static final class Job implements Runnable {
+        private final Conversion conversion;
+
+        private final int width;
+
+        private final int height;
+
+        private final int bandRows;
+
+        private final int bands;
+
+        private final AtomicInteger nextBand = new AtomicInteger();
+
+        private final CountDownLatch remainingBands;
+
+        private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+        Job(Conversion conversion, int width, int height, int bandRows, int bands) {
+            this.conversion = conversion;
+            this.width = width;
+            this.height = height;
+            this.bandRows = bandRows;
+            this.bands = bands;
+            this.remainingBands = new CountDownLatch(bands);
+        }
+
+        @Override
+        public void run() {
+            int band;
+            while ((band = nextBand.getAndIncrement()) < bands) {
+                try {
+                    if (failure.get() == null) {
+                        int top = band * bandRows;
+                        int rows = Math.min(bandRows, height - top);
+                        conversion.convert(top * width, rows * width);
+                    }
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    remainingBands.countDown();
+                }
+            }
+        }
+
+        void await() {
+            // The caller may reuse the buffers once this returns, so the bands in progress are always waited for
+            boolean isInterrupted = false;
+            while (true) {
+                try {
+                    remainingBands.await();
+                    break;
+                } catch (InterruptedException e) {
+                    isInterrupted = true;
+                }
+            }
+            if (isInterrupted) {
+                Thread.currentThread().interrupt();
+            }
+            RuntimeException e = failure.get();
+            if (e != null) {
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.image;
+
+/**
+ * Run-length codec working on whole pixels, row by row
+ * <p>
+ * Each row is coded independently as a sequence of packets starting with a control byte. If its high
+ * bit is set, the next pixel is repeated (low 7 bits + 1) times; otherwise (control + 1) literal pixels
+ * follow.
+ * <p>
+ * A run packet of 2 pixels saves a byte when pixels have 2 bytes or more, which keeps the compressed
+ * data within one control byte per 128 pixels of the raw data. A run of two 1-byte pixels saves nothing
+ * and splits the literals around it, so 1-byte pixels only get run packets from 3 pixels.
+ *
+ * @since 2020-08-05
+ */
+final class RowRleCodec {
+    private static final int MAX_PACKET_PIXELS = 128;
+
+    private static final int RUN_FLAG = 0x80;
+
+    private static final int COUNT_MASK = 0x7F;
+
+    private static final int MIN_RUN_PIXELS = 2;
+
+    private static final int MIN_RUN_BYTES = 3;
+
+    private RowRleCodec() {
+    }
+
+    /**
+     * Get the largest possible size of the compressed data
+     *
+     * @param rawLength length of the raw data, made of whole rows
+     * @param rowBytes length of one row
+     * @param bytesPerPixel length of one pixel
+     * @return Largest compressed length
+     */
+    static int maxCompressedLength(int rawLength, int rowBytes, int bytesPerPixel) {
+        if (rowBytes == 0) {
+            return 0;
+        }
+        int rows = rawLength / rowBytes;
+        int rowPixels = rowBytes / bytesPerPixel;
+        return rawLength + rows * ((rowPixels + MAX_PACKET_PIXELS - 1) / MAX_PACKET_PIXELS);
+    }
+
+    /**
+     * Get the largest possible size of the raw data, a packet of one control byte and one pixel repeating
+     * that pixel at most 128 times
+     *
+     * @param compressedLength length of the compressed data
+     * @param bytesPerPixel length of one pixel
+     * @return Largest raw length
+     */
+    static long maxRawLength(int compressedLength, int bytesPerPixel) {
+        return (long) compressedLength / (1 + bytesPerPixel) * MAX_PACKET_PIXELS * bytesPerPixel;
+    }
+
+    /**
+     * Compress whole rows
+     *
+     * @param src raw data
+     * @param srcOffset offset of the first row
+     * @param rawLength length of the raw data, made of whole rows
+     * @param rowBytes length of one row
+     * @param bytesPerPixel length of one pixel
+     * @param dst destination, at least {@link #maxCompressedLength} long after dstOffset
+     * @param dstOffset offset of the first compressed byte
+     * @return Offset right after the last written byte
+     */
+    static int compress(byte[] src, int srcOffset, int rawLength, int rowBytes, int bytesPerPixel, byte[] dst,
+        int dstOffset) {
+        int out = dstOffset;
+        int end = srcOffset + rawLength;
+        for (int row = srcOffset; row < end; row += rowBytes) {
+            out = compressRow(src, row, row + rowBytes, bytesPerPixel, dst, out);
+        }
+        return out;
+    }
+
+    /**
+     * Decompress whole rows
+     *
+     * @param src compressed data
+     * @param srcOffset offset of the first compressed byte
+     * @param dst destination of the raw data
+     * @param dstOffset offset of the first raw byte
+     * @param rawLength length of the raw data, made of whole rows
+     * @param bytesPerPixel length of one pixel
+     * @return Offset right after the last read byte
+     * @throws IllegalArgumentException if the compressed data is corrupted
+     */
+    static int decompress(byte[] src, int srcOffset, byte[] dst, int dstOffset, int rawLength, int bytesPerPixel) {
+        int in = srcOffset;
+        int out = dstOffset;
+        int end = dstOffset + rawLength;
+        try {
+            while (out < end) {
+                int control = src[in++] & 0xFF;
+                int count = ((control & COUNT_MASK) + 1) * bytesPerPixel;
+                if (out + count > end) {
+                    throw new IllegalArgumentException("rle packet overruns the image");
+                }
+                if ((control & RUN_FLAG) != 0) {
+                    for (int copy = out; copy < out + count; copy += bytesPerPixel) {
+                        System.arraycopy(src, in, dst, copy, bytesPerPixel);
+                    }
+                    in += bytesPerPixel;
+                } else {
+                    System.arraycopy(src, in, dst, out, count);
+                    in += count;
+                }
+                out += count;
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("rle data is truncated", e);
+        }
+        return in;
+    }
+
+    private static int compressRow(byte[] src, int start, int end, int bytesPerPixel, byte[] dst, int dstOffset) {
+        int out = dstOffset;
+        int minRun = Math.max(MIN_RUN_PIXELS, MIN_RUN_BYTES / bytesPerPixel);
+        int literalStart = start;
+        int pixel = start;
+        while (pixel < end) {
+            int run = getRunPixels(src, pixel, end, bytesPerPixel);
+            if (run < minRun) {
+                pixel += bytesPerPixel;
+                if ((pixel - literalStart) / bytesPerPixel == MAX_PACKET_PIXELS) {
+                    out = writeLiterals(src, literalStart, pixel, bytesPerPixel, dst, out);
+                    literalStart = pixel;
+                }
+                continue;
+            }
+            out = writeLiterals(src, literalStart, pixel, bytesPerPixel, dst, out);
+            dst[out++] = (byte) (RUN_FLAG | (run - 1));
+            System.arraycopy(src, pixel, dst, out, bytesPerPixel);
+            out += bytesPerPixel;
+            pixel += run * bytesPerPixel;
+            literalStart = pixel;
+        }
+        return writeLiterals(src, literalStart, pixel, bytesPerPixel, dst, out);
+    }
+
+    private static int getRunPixels(byte[] src, int pixel, int end, int bytesPerPixel) {
+        int run = 1;
+        int next = pixel + bytesPerPixel;
+        while (next < end && run < MAX_PACKET_PIXELS && isSamePixel(src, pixel, next, bytesPerPixel)) {
+            run++;
+            next += bytesPerPixel;
+        }
+        return run;
+    }
+
+    private static boolean isSamePixel(byte[] src, int first, int second, int bytesPerPixel) {
+        for (int i = 0; i < bytesPerPixel; i++) {
+            if (src[first + i] != src[second + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int writeLiterals(byte[] src, int start, int end, int bytesPerPixel, byte[] dst, int dstOffset) {
+        if (end == start) {
+            return dstOffset;
+        }
+        int out = dstOffset;
+        dst[out++] = (byte) ((end - start) / bytesPerPixel - 1);
+        System.arraycopy(src, start, dst, out, end - start);
+        return out + end - start;
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.image;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Encoder sending only the tiles changed since the last image sent to each device
+ * <p>
+ * The image is split into square tiles and each tile is hashed on its raw pixels. The hashes of the last
+ * image sent to a device are kept under the device UUID, and the next image for that device becomes a
+ * delta file holding the changed tiles and a tile map, unless the whole file is smaller. The delta file
+ * carries the checksum of its base image so that the watch can reject it when it shows another image.
+ * Indexed images are always sent whole. An instance is thread safe.
+ *
+ * @since 2020-08-05
+ */
+public final class TileDeltaEncoder {
+    /**
+     * Default width and height of the tiles
+     */
+    public static final int DEFAULT_TILE_SIZE = 32;
+
+    private static final int MAX_TILE_SIZE = 0xFFFF;
+
+    private static final long FNV_OFFSET_BASIS = 0xCBF29CE484222325L;
+
+    private static final long FNV_PRIME = 0x100000001B3L;
+
+    private static final int BYTE_MASK = 0xFF;
+
+    private final int tileSize;
+
+    private final ConcurrentHashMap<String, TileSnapshot> sentSnapshots =
+        new ConcurrentHashMap<String, TileSnapshot>();
+
+    /**
+     * Constructor with tiles of {@link #DEFAULT_TILE_SIZE} pixels
+     */
+    public TileDeltaEncoder() {
+        this(DEFAULT_TILE_SIZE);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param tileSize width and height of the tiles
+     */
+    public TileDeltaEncoder(int tileSize) {
+        if (tileSize < 1 || tileSize > MAX_TILE_SIZE) {
+            throw new IllegalArgumentException("tileSize must be in [1, 65535]: " + tileSize);
+        }
+        this.tileSize = tileSize;
+    }
+
+    /**
+     * Encode an image for a device, as a delta of the last image sent to it when possible
+     * <p>
+     * The encoded image is not remembered until {@link #onSent} is called.
+     *
+     * @param deviceUuid UUID of the receiving device, null if unknown
+     * @param pixels ARGB pixels, row by row, left unchanged
+     * @param width image width
+     * @param height image height
+     * @param options encoding options
+     * @return Encoded file
+     */
+    public Result encode(String deviceUuid, int[] pixels, int width, int height, BinEncodeOptions options) {
+        BinPixelFormat format = options.getPixelFormat();
+        if (format == BinPixelFormat.INDEX8) {
+            return new Result(BinPixelsEncoder.encode(pixels, width, height, options), null, false, 0);
+        }
+        int count = width * height;
+        byte[] raw = new byte[count * format.getBytesPerPixel()];
+        BinPixelsEncoder.convertPixels(pixels, width, height, raw, options);
+        TileSnapshot snapshot = new TileSnapshot(raw, format, width, height, tileSize);
+        byte[] whole = BinPixelsEncoder.encodeRaw(raw, width, height, null, options);
+
+        TileSnapshot base = deviceUuid == null ? null : sentSnapshots.get(deviceUuid);
+        if (base != null && base.isCompatible(snapshot)) {
+            int changedTiles = snapshot.countChangedTiles(base);
+            if (changedTiles < snapshot.hashes.length) {
+                byte[] delta = encodeDelta(raw, snapshot, base, options);
+                if (delta.length < whole.length) {
+                    return new Result(delta, snapshot, true, changedTiles);
+                }
+            }
+        }
+        return new Result(whole, snapshot, false, snapshot.hashes.length);
+    }
+
+    /**
+     * Remember an encoded image as the one shown by the device
+     *
+     * @param deviceUuid UUID of the device which received the file
+     * @param result encoding result of the file
+     */
+    public void onSent(String deviceUuid, Result result) {
+        if (deviceUuid == null) {
+            return;
+        }
+        if (result.snapshot == null) {
+            sentSnapshots.remove(deviceUuid);
+        } else {
+            sentSnapshots.put(deviceUuid, result.snapshot);
+        }
+    }
+
+    /**
+     * Forget the image shown by a device, so that the next image is sent whole
+     *
+     * @param deviceUuid UUID of the device, ignored if null
+     */
+    public void forget(String deviceUuid) {
+        if (deviceUuid != null) {
+            sentSnapshots.remove(deviceUuid);
+        }
+    }
+
+    /**
+     * Forget the images shown by all the devices
+     */
+    public void clear() {
+        sentSnapshots.clear();
+    }
+
+    private byte[] encodeDelta(byte[] raw, TileSnapshot snapshot, TileSnapshot base, BinEncodeOptions options) {
+        BinCompression compression = options.getCompression();
+        int bytesPerPixel = snapshot.format.getBytesPerPixel();
+        int tilesX = snapshot.getTilesX();
+        int tileCount = snapshot.hashes.length;
+        int maxLength = BinImageFormat.HEADER_SIZE + BinImageFormat.DELTA_HEADER_SIZE
+            + BinImageFormat.getTileMapSize(tileCount);
+        for (int tile = 0; tile < tileCount; tile++) {
+            if (snapshot.hashes[tile] != base.hashes[tile]) {
+                int tileRowBytes = snapshot.getTileWidth(tile % tilesX) * bytesPerPixel;
+                int tileLength = tileRowBytes * snapshot.getTileHeight(tile / tilesX);
+                maxLength += compression.maxCompressedLength(tileLength, tileRowBytes, bytesPerPixel);
+            }
+        }
+
+        byte[] data = new byte[maxLength];
+        int index = BinImageFormat.writeHeader(data, 0, options.getColorMode() | BinImageFormat.DELTA_FLAG,
+            snapshot.width, snapshot.height);
+        int mapOffset = BinImageFormat.writeDeltaHeader(data, index, base.checksum, tileSize);
+        index = mapOffset + BinImageFormat.getTileMapSize(tileCount);
+        byte[] tileBuffer = new byte[tileSize * tileSize * bytesPerPixel];
+        int rowBytes = snapshot.width * bytesPerPixel;
+        for (int tile = 0; tile < tileCount; tile++) {
+            if (snapshot.hashes[tile] == base.hashes[tile]) {
+                continue;
+            }
+            data[mapOffset + tile / Byte.SIZE] |= (byte) (1 << (tile % Byte.SIZE));
+            int tileX = tile % tilesX;
+            int tileY = tile / tilesX;
+            int tileRowBytes = snapshot.getTileWidth(tileX) * bytesPerPixel;
+            int tileHeight = snapshot.getTileHeight(tileY);
+            int srcOffset = tileY * tileSize * rowBytes + tileX * tileSize * bytesPerPixel;
+            for (int row = 0; row < tileHeight; row++) {
+                System.arraycopy(raw, srcOffset + row * rowBytes, tileBuffer, row * tileRowBytes, tileRowBytes);
+            }
+            index = compression.compress(tileBuffer, 0, tileRowBytes * tileHeight, tileRowBytes, bytesPerPixel,
+                data, index);
+        }
+        return Arrays.copyOf(data, index);
+    }
+
+    /**
+     * Encoded file for a device
+     */
+    public static final class Result {
+        private final byte[] data;
+
+        private final TileSnapshot snapshot;
+
+        private final boolean isDelta;
+
+        private final int changedTiles;
+
+        Result(byte[] data, TileSnapshot snapshot, boolean isDelta, int changedTiles) {
+            this.data = data;
+            this.snapshot = snapshot;
+            this.isDelta = isDelta;
+            this.changedTiles = changedTiles;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+
+        public boolean isDelta() {
+            return isDelta;
+        }
+
+        public int getChangedTiles() {
+            return changedTiles;
+        }
+
+        /**
+         * Get the number of tiles of the image
+         *
+         * @return Number of tiles, 0 for indexed images
+         */
+        public int getTotalTiles() {
+            return snapshot == null ? 0 : snapshot.hashes.length;
+        }
+    }
+
+    /**
+     * Tile hashes and checksum of the raw pixels of an image
+     */
+    private static final class TileSnapshot {
+        private final BinPixelFormat format;
+
+        private final int width;
+
+        private final int height;
+
+        private final int tileSize;
+
+        private final long[] hashes;
+
+        private final int checksum;
+
+        TileSnapshot(byte[] raw, BinPixelFormat format, int width, int height, int tileSize) {
+            this.format = format;
+            this.width = width;
+            this.height = height;
+            this.tileSize = tileSize;
+            int tilesX = getTilesX();
+            int tilesY = (height + tileSize - 1) / tileSize;
+            this.hashes = new long[tilesX * tilesY];
+            int bytesPerPixel = format.getBytesPerPixel();
+            int rowBytes = width * bytesPerPixel;
+            for (int tileY = 0; tileY < tilesY; tileY++) {
+                for (int tileX = 0; tileX < tilesX; tileX++) {
+                    int tileRowBytes = getTileWidth(tileX) * bytesPerPixel;
+                    int offset = tileY * tileSize * rowBytes + tileX * tileSize * bytesPerPixel;
+                    long hash = FNV_OFFSET_BASIS;
+                    for (int row = getTileHeight(tileY); row > 0; row--, offset += rowBytes) {
+                        for (int i = offset; i < offset + tileRowBytes; i++) {
+                            hash = (hash ^ (raw[i] & BYTE_MASK)) * FNV_PRIME;
+                        }
+                    }
+                    hashes[tileY * tilesX + tileX] = hash;
+                }
+            }
+            CRC32 crc = new CRC32();
+            crc.update(raw, 0, raw.length);
+            this.checksum = (int) crc.getValue();
+        }
+
+        int getTilesX() {
+            return (width + tileSize - 1) / tileSize;
+        }
+
+        int getTileWidth(int tileX) {
+            return Math.min(tileSize, width - tileX * tileSize);
+        }
+
+        int getTileHeight(int tileY) {
+            return Math.min(tileSize, height - tileY * tileSize);
+        }
+
+        boolean isCompatible(TileSnapshot other) {
+            return format == other.format && width == other.width && height == other.height
+                && tileSize == other.tileSize;
+        }
+
+        int countChangedTiles(TileSnapshot base) {
+            int changed = 0;
+            for (int tile = 0; tile < hashes.length; tile++) {
+                if (hashes[tile] != base.hashes[tile]) {
+                    changed++;
+                }
+            }
+            return changed;
+        }
+    }
+}
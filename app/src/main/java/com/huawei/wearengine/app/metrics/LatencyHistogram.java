@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies with log-scaled buckets, recorded without locking
+ * <p>
+ * Values below 16 have one bucket each, and each power of two above is split into 8 buckets, so that a
+ * percentile is within 12.5% of the recorded value whatever its magnitude, with a fixed memory of a few
+ * kilobytes. The maximum is tracked exactly. Recording may be done from any thread, and a snapshot taken
+ * while values are recorded may miss the last ones.
+ *
+ * @since 2020-08-05
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private static final int LINEAR_LIMIT = SUB_BUCKETS << 1;
+
+    private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private static final double PERCENT = 100.0;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    private final AtomicLong count = new AtomicLong();
+
+    private final AtomicLong sum = new AtomicLong();
+
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record a value
+     *
+     * @param value value, negative values are recorded as 0
+     */
+    public void record(long value) {
+        long recorded = Math.max(0L, value);
+        counts.incrementAndGet(getBucket(recorded));
+        count.incrementAndGet();
+        sum.addAndGet(recorded);
+        long current = max.get();
+        while (recorded > current && !max.compareAndSet(current, recorded)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Forget all the recorded values
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0L);
+        }
+        count.set(0L);
+        sum.set(0L);
+        max.set(0L);
+    }
+
+    /**
+     * Take a snapshot of the recorded values
+     *
+     * @return Snapshot
+     */
+    public Snapshot getSnapshot() {
+        long[] bucketCounts = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            bucketCounts[i] = counts.get(i);
+            total += bucketCounts[i];
+        }
+        return new Snapshot(bucketCounts, total, sum.get(), max.get());
+    }
+
+    static int getBucket(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    static long getBucketUpperBound(int bucket) {
+        if (bucket < LINEAR_LIMIT) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long subBucket = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * Recorded values at one point in time
+     */
+    public static final class Snapshot {
+        private final long[] bucketCounts;
+
+        private final long count;
+
+        private final long sum;
+
+        private final long max;
+
+        Snapshot(long[] bucketCounts, long count, long sum, long max) {
+            this.bucketCounts = bucketCounts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * Get the mean of the recorded values
+         *
+         * @return Mean, 0 if no value was recorded
+         */
+        public double getMean() {
+            return count == 0 ? 0.0 : (double) sum / count;
+        }
+
+        /**
+         * Get a percentile of the recorded values
+         *
+         * @param percentile percentile, from 0 to 100
+         * @return Upper bound of the bucket holding the percentile, at most the maximum, 0 if no value was
+         *     recorded
+         */
+        public long getPercentile(double percentile) {
+            if (count == 0) {
+                return 0L;
+            }
+            long rank = Math.max(1L, (long) Math.ceil(Math.min(PERCENT, Math.max(0.0, percentile)) / PERCENT * count));
+            long seen = 0;
+            for (int i = 0; i < bucketCounts.length; i++) {
+                seen += bucketCounts[i];
+                if (seen >= rank) {
+                    return Math.min(getBucketUpperBound(i), max);
+                }
+            }
+            return max;
+        }
+
+        public long getP50() {
+            return getPercentile(50.0);
+        }
+
+        public long getP95() {
+            return getPercentile(95.0);
+        }
+
+        public long getP99() {
+            return getPercentile(99.0);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.metrics;
+
+import android.os.SystemClock;
+
+import com.huawei.hmf.tasks.OnFailureListener;
+import com.huawei.hmf.tasks.OnSuccessListener;
+import com.huawei.hmf.tasks.Task;
+import com.huawei.wearengine.app.transport.DeviceTransport;
+import com.huawei.wearengine.device.Device;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Device transport recording the calls, latencies and failures of every call into the metrics
+ * <p>
+ * For each call named "device.getBondedDevices" and "device.hasAvailableDevices", the ".calls" and
+ * ".failures" counters count the calls and the failed tasks, and the timer records the time from the call
+ * to the end of its task. The "device.bonded" gauge holds the number of bonded devices last listed.
+ *
+ * @since 2020-08-05
+ */
+public class MeteredDeviceClient implements DeviceTransport {
+    private static final String GET_BONDED_DEVICES = "device.getBondedDevices";
+
+    private static final String HAS_AVAILABLE_DEVICES = "device.hasAvailableDevices";
+
+    private static final String BONDED = "device.bonded";
+
+    private static final String CALLS = ".calls";
+
+    private static final String FAILURES = ".failures";
+
+    private final DeviceTransport deviceClient;
+
+    private final MetricsRegistry metrics;
+
+    /**
+     * Constructor
+     *
+     * @param deviceClient transport making the calls
+     * @param metrics metrics recording the calls
+     */
+    public MeteredDeviceClient(DeviceTransport deviceClient, MetricsRegistry metrics) {
+        this.deviceClient = deviceClient;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Task<List<Device>> getBondedDevices() {
+        final long start = startCall(GET_BONDED_DEVICES);
+        Task<List<Device>> task = deviceClient.getBondedDevices();
+        if (task == null) {
+            metrics.counter(GET_BONDED_DEVICES + FAILURES).increment();
+            return null;
+        }
+        return task.addOnSuccessListener(new OnSuccessListener<List<Device>>() {
+            @Override
+            public void onSuccess(List<Device> devices) {
+                endCall(GET_BONDED_DEVICES, start);
+                metrics.gauge(BONDED).set(devices == null ? 0 : devices.size());
+            }
+        }).addOnFailureListener(newFailureListener(GET_BONDED_DEVICES, start));
+    }
+
+    @Override
+    public Task<Boolean> hasAvailableDevices() {
+        final long start = startCall(HAS_AVAILABLE_DEVICES);
+        Task<Boolean> task = deviceClient.hasAvailableDevices();
+        if (task == null) {
+            metrics.counter(HAS_AVAILABLE_DEVICES + FAILURES).increment();
+            return null;
+        }
+        return task.addOnSuccessListener(new OnSuccessListener<Boolean>() {
+            @Override
+            public void onSuccess(Boolean isAvailable) {
+                endCall(HAS_AVAILABLE_DEVICES, start);
+            }
+        }).addOnFailureListener(newFailureListener(HAS_AVAILABLE_DEVICES, start));
+    }
+
+    private long startCall(String name) {
+        metrics.counter(name + CALLS).increment();
+        return SystemClock.elapsedRealtimeNanos();
+    }
+
+    private void endCall(String name, long start) {
+        metrics.timer(name).record(TimeUnit.NANOSECONDS.toMicros(SystemClock.elapsedRealtimeNanos() - start));
+    }
+
+    private OnFailureListener newFailureListener(final String name, final long start) {
+        return new OnFailureListener() {
+            @Override
+            public void onFailure(Exception e) {
+                endCall(name, start);
+                metrics.counter(name + FAILURES).increment();
+            }
+        };
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.metrics;
+
+import android.os.SystemClock;
+
+import com.huawei.hmf.tasks.OnFailureListener;
+import com.huawei.hmf.tasks.OnSuccessListener;
+import com.huawei.hmf.tasks.Task;
+import com.huawei.wearengine.app.transport.P2pTransport;
+import com.huawei.wearengine.device.Device;
+import com.huawei.wearengine.p2p.Message;
+import com.huawei.wearengine.p2p.PingCallback;
+import com.huawei.wearengine.p2p.Receiver;
+import com.huawei.wearengine.p2p.SendCallback;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * P2P transport recording the calls, latencies, result codes and bytes of every call into the metrics
+ * <p>
+ * For each call named "p2p.ping", "p2p.send", "p2p.registerReceiver" and "p2p.unregisterReceiver", the
+ * ".calls" and ".failures" counters count the calls and the failed tasks, and the timer records the time
+ * from the call to its result callback, or to the end of its task when there is no callback. The result
+ * codes of the pings and sends are tallied under the call name. The "p2p.send.bytes" counter sums the
+ * bytes handed to the client, and the "p2p.send.bytesInFlight" gauge holds the bytes not answered yet.
+ *
+ * @since 2020-08-05
+ */
+public class MeteredP2pClient implements P2pTransport {
+    private static final String PING = "p2p.ping";
+
+    private static final String SEND = "p2p.send";
+
+    private static final String REGISTER_RECEIVER = "p2p.registerReceiver";
+
+    private static final String UNREGISTER_RECEIVER = "p2p.unregisterReceiver";
+
+    private static final String CALLS = ".calls";
+
+    private static final String FAILURES = ".failures";
+
+    private static final String BYTES = SEND + ".bytes";
+
+    private static final String BYTES_IN_FLIGHT = SEND + ".bytesInFlight";
+
+    private final P2pTransport p2pClient;
+
+    private final MetricsRegistry metrics;
+
+    /**
+     * Constructor
+     *
+     * @param p2pClient transport making the calls
+     * @param metrics metrics recording the calls
+     */
+    public MeteredP2pClient(P2pTransport p2pClient, MetricsRegistry metrics) {
+        this.p2pClient = p2pClient;
+        this.metrics = metrics;
+    }
+
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public Task<Void> ping(Device device, final PingCallback pingCallback) {
+        final long start = startCall(PING);
+        Task<Void> task = p2pClient.ping(device, new PingCallback() {
+            @Override
+            public void onPingResult(int result) {
+                endCall(PING, start, result);
+                pingCallback.onPingResult(result);
+            }
+        });
+        return countFailures(PING, task, null);
+    }
+
+    @Override
+    public Task<Void> send(Device device, Message message, final SendCallback sendCallback) {
+        final long start = startCall(SEND);
+        final long bytes = getSize(message);
+        final AtomicBoolean isAnswered = new AtomicBoolean();
+        metrics.counter(BYTES).add(bytes);
+        metrics.gauge(BYTES_IN_FLIGHT).addAndGet(bytes);
+        Task<Void> task = p2pClient.send(device, message, new SendCallback() {
+            @Override
+            public void onSendResult(int resultCode) {
+                if (isAnswered.compareAndSet(false, true)) {
+                    metrics.gauge(BYTES_IN_FLIGHT).addAndGet(-bytes);
+                }
+                endCall(SEND, start, resultCode);
+                sendCallback.onSendResult(resultCode);
+            }
+
+            @Override
+            public void onSendProgress(long progress) {
+                sendCallback.onSendProgress(progress);
+            }
+        });
+        return countFailures(SEND, task, new Runnable() {
+            @Override
+            public void run() {
+                if (isAnswered.compareAndSet(false, true)) {
+                    metrics.gauge(BYTES_IN_FLIGHT).addAndGet(-bytes);
+                }
+            }
+        });
+    }
+
+    @Override
+    public Task<Void> registerReceiver(Device device, Receiver receiver) {
+        long start = startCall(REGISTER_RECEIVER);
+        return timeTask(REGISTER_RECEIVER, start, p2pClient.registerReceiver(device, receiver));
+    }
+
+    @Override
+    public Task<Void> unregisterReceiver(Receiver receiver) {
+        long start = startCall(UNREGISTER_RECEIVER);
+        return timeTask(UNREGISTER_RECEIVER, start, p2pClient.unregisterReceiver(receiver));
+    }
+
+    private long startCall(String name) {
+        metrics.counter(name + CALLS).increment();
+        return SystemClock.elapsedRealtimeNanos();
+    }
+
+    private void endCall(String name, long start, int resultCode) {
+        recordTime(name, start);
+        metrics.results(name).record(resultCode);
+    }
+
+    private void recordTime(String name, long start) {
+        metrics.timer(name).record(TimeUnit.NANOSECONDS.toMicros(SystemClock.elapsedRealtimeNanos() - start));
+    }
+
+    private Task<Void> countFailures(final String name, Task<Void> task, final Runnable onFailure) {
+        if (task == null) {
+            metrics.counter(name + FAILURES).increment();
+            if (onFailure != null) {
+                onFailure.run();
+            }
+            return null;
+        }
+        return task.addOnFailureListener(new OnFailureListener() {
+            @Override
+            public void onFailure(Exception e) {
+                metrics.counter(name + FAILURES).increment();
+                if (onFailure != null) {
+                    onFailure.run();
+                }
+            }
+        });
+    }
+
+    private Task<Void> timeTask(final String name, final long start, Task<Void> task) {
+        if (task == null) {
+            metrics.counter(name + FAILURES).increment();
+            return null;
+        }
+        return task.addOnSuccessListener(new OnSuccessListener<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+                recordTime(name, start);
+            }
+        }).addOnFailureListener(new OnFailureListener() {
+            @Override
+            public void onFailure(Exception e) {
+                recordTime(name, start);
+                metrics.counter(name + FAILURES).increment();
+            }
+        });
+    }
+
+    private static long getSize(Message message) {
+        if (message == null) {
+            return 0L;
+        }
+        if (message.getType() == Message.MESSAGE_TYPE_FILE) {
+            File file = message.getFile();
+            return file == null ? 0L : file.length();
+        }
+        byte[] data = message.getData();
+        return data == null ? 0L : data.length;
+    }
+}
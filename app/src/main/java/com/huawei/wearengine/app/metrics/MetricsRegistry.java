@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Named counters, gauges, timers and result code tallies, dumped as JSON for the field diagnostics
+ * <p>
+ * A metric is created the first time its name is used, and looking it up again does not lock. Updating a
+ * metric does not lock either, so the metrics can be updated from the callback threads of the clients.
+ * Timers record microseconds.
+ *
+ * @since 2020-08-05
+ */
+public class MetricsRegistry {
+    private final ConcurrentHashMap<String, StripedCounter> counters = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<String, AtomicLong> gauges = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<String, LatencyHistogram> timers = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<String, ResultTally> results = new ConcurrentHashMap<>();
+
+    /**
+     * Get a counter, created at 0 if needed
+     *
+     * @param name counter name
+     * @return Counter
+     */
+    public StripedCounter counter(String name) {
+        StripedCounter counter = counters.get(name);
+        return counter != null ? counter : getOrPut(counters, name, new StripedCounter());
+    }
+
+    /**
+     * Get a gauge, created at 0 if needed
+     *
+     * @param name gauge name
+     * @return Gauge
+     */
+    public AtomicLong gauge(String name) {
+        AtomicLong gauge = gauges.get(name);
+        return gauge != null ? gauge : getOrPut(gauges, name, new AtomicLong());
+    }
+
+    /**
+     * Get a timer, created empty if needed
+     *
+     * @param name timer name
+     * @return Histogram of the durations in microseconds
+     */
+    public LatencyHistogram timer(String name) {
+        LatencyHistogram timer = timers.get(name);
+        return timer != null ? timer : getOrPut(timers, name, new LatencyHistogram());
+    }
+
+    /**
+     * Get a result code tally, created empty if needed
+     *
+     * @param name tally name
+     * @return Tally
+     */
+    public ResultTally results(String name) {
+        ResultTally tally = results.get(name);
+        return tally != null ? tally : getOrPut(results, name, new ResultTally());
+    }
+
+    /**
+     * Reset all the metrics, keeping their names
+     */
+    public void reset() {
+        for (StripedCounter counter : counters.values()) {
+            counter.reset();
+        }
+        for (AtomicLong gauge : gauges.values()) {
+            gauge.set(0L);
+        }
+        for (LatencyHistogram timer : timers.values()) {
+            timer.reset();
+        }
+        for (ResultTally tally : results.values()) {
+            tally.reset();
+        }
+    }
+
+    /**
+     * Dump a snapshot of the metrics as JSON, the metrics being sorted by name
+     *
+     * @return JSON object with the counters, gauges, timers and results objects
+     */
+    public String toJson() {
+        StringBuilder builder = new StringBuilder("{\"counters\":{");
+        String separator = "";
+        for (Map.Entry<String, StripedCounter> entry : new TreeMap<>(counters).entrySet()) {
+            appendName(builder.append(separator), entry.getKey()).append(entry.getValue().get());
+            separator = ",";
+        }
+        builder.append("},\"gauges\":{");
+        separator = "";
+        for (Map.Entry<String, AtomicLong> entry : new TreeMap<>(gauges).entrySet()) {
+            appendName(builder.append(separator), entry.getKey()).append(entry.getValue().get());
+            separator = ",";
+        }
+        builder.append("},\"timers\":{");
+        separator = "";
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(timers).entrySet()) {
+            LatencyHistogram.Snapshot snapshot = entry.getValue().getSnapshot();
+            appendName(builder.append(separator), entry.getKey()).append("{\"count\":").append(snapshot.getCount())
+                .append(",\"mean\":").append(Math.round(snapshot.getMean())).append(",\"p50\":")
+                .append(snapshot.getP50()).append(",\"p95\":").append(snapshot.getP95()).append(",\"p99\":")
+                .append(snapshot.getP99()).append(",\"max\":").append(snapshot.getMax()).append('}');
+            separator = ",";
+        }
+        builder.append("},\"results\":{");
+        separator = "";
+        for (Map.Entry<String, ResultTally> entry : new TreeMap<>(results).entrySet()) {
+            appendName(builder.append(separator), entry.getKey()).append('{');
+            String codeSeparator = "";
+            for (Map.Entry<Integer, Long> code : entry.getValue().getCounts().entrySet()) {
+                builder.append(codeSeparator).append('"').append(code.getKey()).append("\":").append(code.getValue());
+                codeSeparator = ",";
+            }
+            builder.append('}');
+            separator = ",";
+        }
+        return builder.append("}}").toString();
+    }
+
+    private static <T> T getOrPut(ConcurrentMap<String, T> map, String name, T created) {
+        T existing = map.putIfAbsent(name, created);
+        return existing != null ? existing : created;
+    }
+
+    private static StringBuilder appendName(StringBuilder builder, String name) {
+        builder.append('"');
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            } else if (c < ' ') {
+                builder.append(String.format("\\u%04x", (int) c));
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.append("\":");
+    }
+
+    /**
+     * Number of calls per result code
+     */
+    public static final class ResultTally {
+        private final ConcurrentHashMap<Integer, StripedCounter> counts = new ConcurrentHashMap<>();
+
+        ResultTally() {
+        }
+
+        /**
+         * Count a result code
+         *
+         * @param resultCode result code
+         */
+        public void record(int resultCode) {
+            StripedCounter counter = counts.get(resultCode);
+            if (counter == null) {
+                StripedCounter created = new StripedCounter();
+                counter = counts.putIfAbsent(resultCode, created);
+                if (counter == null) {
+                    counter = created;
+                }
+            }
+            counter.increment();
+        }
+
+        /**
+         * Get the number of calls per result code
+         *
+         * @return Counts sorted by result code
+         */
+        public Map<Integer, Long> getCounts() {
+            Map<Integer, Long> snapshot = new TreeMap<>();
+            for (Map.Entry<Integer, StripedCounter> entry : counts.entrySet()) {
+                snapshot.put(entry.getKey(), entry.getValue().get());
+            }
+            return snapshot;
+        }
+
+        void reset() {
+            for (StripedCounter counter : counts.values()) {
+                counter.reset();
+            }
+        }
+    }
+}
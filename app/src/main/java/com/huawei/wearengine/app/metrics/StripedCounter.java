@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter spread over several cells, so that threads counting at once rarely contend
+ * <p>
+ * Each thread adds to the cell chosen by its id, the cells being a cache line apart. Reading the value
+ * sums the cells, so it is slower than adding and may miss the additions made meanwhile.
+ *
+ * @since 2020-08-05
+ */
+public class StripedCounter {
+    private static final int MAX_STRIPES = 64;
+
+    // 8 longs are 64 bytes, the usual cache line
+    private static final int CELL_SPACING = 8;
+
+    private static final int STRIPES = Math.min(MAX_STRIPES,
+        Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)) << 1);
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * CELL_SPACING);
+
+    /**
+     * Add one
+     */
+    public void increment() {
+        add(1L);
+    }
+
+    /**
+     * Add a value
+     *
+     * @param delta value to add
+     */
+    public void add(long delta) {
+        int stripe = (int) (Thread.currentThread().getId() & (STRIPES - 1));
+        cells.addAndGet(stripe * CELL_SPACING, delta);
+    }
+
+    /**
+     * Get the sum of the additions
+     *
+     * @return Value
+     */
+    public long get() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += cells.get(i * CELL_SPACING);
+        }
+        return sum;
+    }
+
+    /**
+     * Reset the value to 0, the additions made meanwhile may be kept
+     */
+    public void reset() {
+        for (int i = 0; i < STRIPES; i++) {
+            cells.set(i * CELL_SPACING, 0L);
+        }
+    }
+}
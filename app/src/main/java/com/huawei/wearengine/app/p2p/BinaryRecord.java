@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.p2p;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Binary record sent by the watch, such as a telemetry sample
+ * <p>
+ * The record is made of little-endian fields: magic "WR", version, type, record type, followed by the
+ * record body, whose layout depends on the record type.
+ *
+ * @since 2020-08-05
+ */
+public final class BinaryRecord {
+    /**
+     * Size of the record header in bytes
+     */
+    public static final int HEADER_SIZE = 6;
+
+    private static final short MAGIC = 0x5257;
+
+    private static final byte VERSION = 1;
+
+    private static final byte TYPE_RECORD = 3;
+
+    private static final int RECORD_TYPE_MASK = 0xFFFF;
+
+    private final int recordType;
+
+    private final ByteBuffer body;
+
+    private BinaryRecord(int recordType, ByteBuffer body) {
+        this.recordType = recordType;
+        this.body = body;
+    }
+
+    public int getRecordType() {
+        return recordType;
+    }
+
+    /**
+     * Get the record body
+     *
+     * @return Read-only little-endian view of the body
+     */
+    public ByteBuffer getBody() {
+        return body.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Encode a record
+     *
+     * @param recordType record type, from 0 to 65535
+     * @param body record body
+     * @return Record bytes
+     */
+    public static byte[] encode(int recordType, byte[] body) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + body.length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putShort(MAGIC).put(VERSION).put(TYPE_RECORD).putShort((short) recordType).put(body);
+        return buffer.array();
+    }
+
+    /**
+     * Check whether received data is a record
+     *
+     * @param data received data
+     * @return true if the data starts like a record
+     */
+    public static boolean isRecord(byte[] data) {
+        if (data == null || data.length < HEADER_SIZE) {
+            return false;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        return buffer.getShort() == MAGIC && buffer.get() == VERSION && buffer.get() == TYPE_RECORD;
+    }
+
+    /**
+     * Decode a record, its body is shared with the data
+     *
+     * @param data record bytes
+     * @return Decoded record
+     * @throws IllegalArgumentException if the data is not a record
+     */
+    public static BinaryRecord decode(byte[] data) {
+        if (!isRecord(data)) {
+            throw new IllegalArgumentException("not a binary record");
+        }
+        int recordType = ((data[4] & 0xFF) | ((data[5] & 0xFF) << 8)) & RECORD_TYPE_MASK;
+        ByteBuffer body = ByteBuffer.wrap(data, HEADER_SIZE, data.length - HEADER_SIZE).slice().asReadOnlyBuffer();
+        return new BinaryRecord(recordType, body);
+    }
+}
@@ -0,0 +1,415 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.p2p;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.huawei.hmf.tasks.OnFailureListener;
+import com.huawei.hmf.tasks.Task;
+import com.huawei.wearengine.app.transport.P2pTransport;
+import com.huawei.wearengine.app.utils.MainThreadExecutor;
+import com.huawei.wearengine.device.Device;
+import com.huawei.wearengine.p2p.Message;
+import com.huawei.wearengine.p2p.SendCallback;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Sender of one message to several devices at once
+ * <p>
+ * The message is built once and the same instance is handed to every send. At most the concurrency limit
+ * of sends are in flight, the next device starting as soon as one completes. The result of each device is
+ * collected with its latency, and the aggregated result is delivered on the callback executor, the main
+ * thread by default, once every device has answered or timed out.
+ * <p>
+ * A device which does not answer in time gets {@link #RESULT_TIMEOUT}, but its send keeps its slot until
+ * the send really ends, so that the sends in flight never exceed the concurrency limit. The next devices
+ * therefore wait for a timed-out send to end. So that sends which never end cannot hold the broadcast, it has
+ * a deadline of one timeout per round of sends, after which the devices not started yet get
+ * {@link #RESULT_TIMEOUT} as well and the result is delivered. A send which returns no task ends at once
+ * with {@link FileTransferEngine#RESULT_SEND_ERROR}.
+ *
+ * @since 2020-08-05
+ */
+public class BroadcastSender {
+    /**
+     * Send result code of a device which did not answer in time
+     */
+    public static final int RESULT_TIMEOUT = -5;
+
+    /**
+     * Default number of sends in flight
+     */
+    public static final int DEFAULT_MAX_CONCURRENCY = 3;
+
+    /**
+     * Default time a device has to answer
+     */
+    public static final long DEFAULT_TIMEOUT_MILLIS = 30000L;
+
+    private static final String TAG = "BroadcastSender";
+
+    private static final String THREAD_NAME = "BroadcastTimeout";
+
+    /**
+     * Receives the aggregated result of a broadcast on the callback executor
+     */
+    public interface Callback {
+        /**
+         * Every device answered or timed out
+         *
+         * @param result result of each device
+         */
+        void onComplete(BroadcastResult result);
+    }
+
+    private final P2pTransport p2pClient;
+
+    private final int maxConcurrency;
+
+    private final long timeoutMillis;
+
+    private final Executor callbackExecutor;
+
+    private final ScheduledExecutorService timeoutExecutor;
+
+    /**
+     * Constructor with the default concurrency limit and timeout
+     *
+     * @param p2pClient client sending the message
+     */
+    public BroadcastSender(P2pTransport p2pClient) {
+        this(p2pClient, DEFAULT_MAX_CONCURRENCY, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param p2pClient client sending the message
+     * @param maxConcurrency number of sends in flight
+     * @param timeoutMillis time a device has to answer
+     */
+    public BroadcastSender(P2pTransport p2pClient, int maxConcurrency, long timeoutMillis) {
+        this(p2pClient, maxConcurrency, timeoutMillis, new MainThreadExecutor());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param p2pClient client sending the message
+     * @param maxConcurrency number of sends in flight
+     * @param timeoutMillis time a device has to answer
+     * @param callbackExecutor executor calling the callbacks
+     */
+    public BroadcastSender(P2pTransport p2pClient, int maxConcurrency, long timeoutMillis,
+        Executor callbackExecutor) {
+        if (maxConcurrency < 1 || timeoutMillis <= 0) {
+            throw new IllegalArgumentException("invalid maxConcurrency " + maxConcurrency + " or timeoutMillis "
+                + timeoutMillis);
+        }
+        this.p2pClient = p2pClient;
+        this.maxConcurrency = maxConcurrency;
+        this.timeoutMillis = timeoutMillis;
+        this.callbackExecutor = callbackExecutor;
+        this.timeoutExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, THREAD_NAME);
+            }
+        });
+    }
+
+    /**
+     * Send a data message to devices
+     *
+     * @param devices receiving devices
+     * @param payload message bytes
+     * @param callback receiver of the aggregated result
+     */
+    public void send(List<Device> devices, byte[] payload, Callback callback) {
+        send(devices, new Message.Builder().setPayload(payload).build(), callback);
+    }
+
+    /**
+     * Send a file to devices
+     *
+     * @param devices receiving devices
+     * @param file file to send
+     * @param callback receiver of the aggregated result
+     */
+    public void send(List<Device> devices, File file, Callback callback) {
+        send(devices, new Message.Builder().setPayload(file).build(), callback);
+    }
+
+    /**
+     * Send a message to devices
+     *
+     * @param devices receiving devices
+     * @param message message shared by all the sends
+     * @param callback receiver of the aggregated result
+     */
+    public void send(List<Device> devices, Message message, Callback callback) {
+        final Broadcast broadcast = new Broadcast(new ArrayList<>(devices), message, callback);
+        if (devices.isEmpty()) {
+            broadcast.complete();
+            return;
+        }
+        long rounds = (devices.size() + maxConcurrency - 1) / maxConcurrency;
+        broadcast.deadline = timeoutExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (broadcast.expire()) {
+                    Log.w(TAG, "broadcast to " + broadcast.devices.size() + " devices passed its deadline");
+                    broadcast.complete();
+                }
+            }
+        }, rounds * timeoutMillis, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < maxConcurrency; i++) {
+            startNext(broadcast);
+        }
+    }
+
+    /**
+     * Stop the timeouts, the broadcasts in progress never complete
+     */
+    public void shutdown() {
+        timeoutExecutor.shutdownNow();
+    }
+
+    private void startNext(final Broadcast broadcast) {
+        final int index = broadcast.nextIndex();
+        if (index < 0) {
+            return;
+        }
+        Device device = broadcast.devices.get(index);
+        final long start = SystemClock.elapsedRealtime();
+        final AtomicBoolean isEnded = new AtomicBoolean();
+        final ScheduledFuture<?> timeout = timeoutExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                onDeviceResult(broadcast, index, RESULT_TIMEOUT, start);
+            }
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+        Task<Void> task = p2pClient.send(device, broadcast.message, new SendCallback() {
+            @Override
+            public void onSendResult(int resultCode) {
+                onSendEnd(broadcast, index, resultCode, start, timeout, isEnded);
+            }
+
+            @Override
+            public void onSendProgress(long progress) {
+            }
+        });
+        if (task == null) {
+            Log.w(TAG, "broadcast send to device " + index + " returned no task");
+            onSendEnd(broadcast, index, FileTransferEngine.RESULT_SEND_ERROR, start, timeout, isEnded);
+            return;
+        }
+        task.addOnFailureListener(new OnFailureListener() {
+            @Override
+            public void onFailure(Exception e) {
+                Log.w(TAG, "broadcast send failed", e);
+                onSendEnd(broadcast, index, FileTransferEngine.RESULT_SEND_ERROR, start, timeout, isEnded);
+            }
+        });
+    }
+
+    private void onSendEnd(Broadcast broadcast, int index, int resultCode, long start, ScheduledFuture<?> timeout,
+        AtomicBoolean isEnded) {
+        if (!isEnded.compareAndSet(false, true)) {
+            return;
+        }
+        timeout.cancel(false);
+        if (!onDeviceResult(broadcast, index, resultCode, start)) {
+            Log.i(TAG, "broadcast send to device " + index + " ended with " + resultCode + " after its timeout");
+        }
+        // The slot of the send is only free now, even if the device already timed out
+        startNext(broadcast);
+    }
+
+    private boolean onDeviceResult(Broadcast broadcast, int index, int resultCode, long start) {
+        boolean isLast;
+        synchronized (broadcast) {
+            if (!broadcast.setResult(index, resultCode, SystemClock.elapsedRealtime() - start)) {
+                return false;
+            }
+            isLast = broadcast.isComplete();
+        }
+        if (isLast) {
+            broadcast.complete();
+        }
+        return true;
+    }
+
+    /**
+     * State of one broadcast, shared by the callback threads
+     */
+    private final class Broadcast {
+        private final List<Device> devices;
+
+        private final Message message;
+
+        private final Callback callback;
+
+        private final DeviceResult[] results;
+
+        private final long startMillis = SystemClock.elapsedRealtime();
+
+        private int nextIndex;
+
+        private int answered;
+
+        private volatile ScheduledFuture<?> deadline;
+
+        Broadcast(List<Device> devices, Message message, Callback callback) {
+            this.devices = devices;
+            this.message = message;
+            this.callback = callback;
+            this.results = new DeviceResult[devices.size()];
+        }
+
+        synchronized int nextIndex() {
+            return nextIndex < devices.size() ? nextIndex++ : -1;
+        }
+
+        synchronized boolean setResult(int index, int resultCode, long latencyMillis) {
+            if (results[index] != null) {
+                return false;
+            }
+            results[index] = new DeviceResult(devices.get(index), resultCode, latencyMillis);
+            answered++;
+            return true;
+        }
+
+        synchronized boolean isComplete() {
+            return answered == devices.size();
+        }
+
+        /**
+         * Stop starting the devices and time out those which have not answered yet
+         *
+         * @return true if a device was timed out, which completes the broadcast
+         */
+        synchronized boolean expire() {
+            nextIndex = devices.size();
+            long latencyMillis = SystemClock.elapsedRealtime() - startMillis;
+            boolean isExpired = false;
+            for (int i = 0; i < results.length; i++) {
+                if (results[i] == null) {
+                    results[i] = new DeviceResult(devices.get(i), RESULT_TIMEOUT, latencyMillis);
+                    answered++;
+                    isExpired = true;
+                }
+            }
+            return isExpired;
+        }
+
+        void complete() {
+            ScheduledFuture<?> pendingDeadline = deadline;
+            if (pendingDeadline != null) {
+                pendingDeadline.cancel(false);
+            }
+            List<DeviceResult> deviceResults;
+            synchronized (this) {
+                deviceResults = new ArrayList<>(results.length);
+                Collections.addAll(deviceResults, results);
+            }
+            final BroadcastResult result = new BroadcastResult(deviceResults,
+                SystemClock.elapsedRealtime() - startMillis);
+            callbackExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    callback.onComplete(result);
+                }
+            });
+        }
+    }
+
+    /**
+     * Result of one device of a broadcast
+     */
+    public static final class DeviceResult {
+        private final Device device;
+
+        private final int resultCode;
+
+        private final long latencyMillis;
+
+        DeviceResult(Device device, int resultCode, long latencyMillis) {
+            this.device = device;
+            this.resultCode = resultCode;
+            this.latencyMillis = latencyMillis;
+        }
+
+        public Device getDevice() {
+            return device;
+        }
+
+        public int getResultCode() {
+            return resultCode;
+        }
+
+        public long getLatencyMillis() {
+            return latencyMillis;
+        }
+
+        public boolean isSuccess() {
+            return resultCode == FileTransferEngine.RESULT_SUCCESS;
+        }
+    }
+
+    /**
+     * Aggregated result of a broadcast
+     */
+    public static final class BroadcastResult {
+        private final List<DeviceResult> deviceResults;
+
+        private final long totalMillis;
+
+        BroadcastResult(List<DeviceResult> deviceResults, long totalMillis) {
+            this.deviceResults = Collections.unmodifiableList(deviceResults);
+            this.totalMillis = totalMillis;
+        }
+
+        /**
+         * Get the result of each device, in the order of the devices
+         *
+         * @return Device results
+         */
+        public List<DeviceResult> getDeviceResults() {
+            return deviceResults;
+        }
+
+        public long getTotalMillis() {
+            return totalMillis;
+        }
+
+        /**
+         * Get the number of devices which received the message
+         *
+         * @return Number of successful sends
+         */
+        public int getSuccessCount() {
+            int count = 0;
+            for (DeviceResult result : deviceResults) {
+                if (result.isSuccess()) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.p2p;
+
+/**
+ * Codec of the image chunks framed by {@link TransferFrame}
+ *
+ * @since 2020-08-05
+ */
+public class ChunkMessageCodec implements MessageCodec<TransferFrame> {
+    /**
+     * Topic of the image chunks
+     */
+    public static final String TOPIC = "chunk";
+
+    @Override
+    public boolean canDecode(byte[] data) {
+        return TransferFrame.isChunk(data);
+    }
+
+    @Override
+    public TransferFrame decode(byte[] data) {
+        return TransferFrame.decode(data);
+    }
+
+    @Override
+    public String getTopic(TransferFrame message) {
+        return TOPIC;
+    }
+}
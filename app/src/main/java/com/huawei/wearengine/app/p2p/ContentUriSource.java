@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.p2p;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.provider.OpenableColumns;
+import android.util.Log;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Transfer source reading the content behind a URI straight from its provider
+ * <p>
+ * No file path is resolved and nothing is copied, so that any URI the app can read is sent, including
+ * the ones of scoped storage. The content is read through a {@link java.nio.channels.FileChannel} on the
+ * file descriptor of the provider when it is a regular file, and otherwise through the input stream of the
+ * provider, which is reopened when a resumed transfer goes back to an earlier chunk.
+ *
+ * @since 2020-08-05
+ */
+public final class ContentUriSource implements TransferSource {
+    private static final String TAG = "ContentUriSource";
+
+    private static final String READ_MODE = "r";
+
+    private final ContentResolver resolver;
+
+    private final Uri uri;
+
+    private final long length;
+
+    private ContentUriSource(ContentResolver resolver, Uri uri, long length) {
+        this.resolver = resolver;
+        this.uri = uri;
+        this.length = length;
+    }
+
+    /**
+     * Create the source of a URI, reading the length of its content
+     * <p>
+     * The length is read through blocking calls to the provider, {@link ContentResolver#openFileDescriptor}
+     * and then {@link ContentResolver#query}, which may be served by another process. Do not call this on the
+     * main thread.
+     *
+     * @param resolver content resolver
+     * @param uri URI of the content to send
+     * @return Source
+     * @throws IOException if the content cannot be opened, or its length is unknown or above
+     *         {@link TransferFrame#MAX_FILE_LENGTH}
+     */
+    public static ContentUriSource create(ContentResolver resolver, Uri uri) throws IOException {
+        long length = -1L;
+        ParcelFileDescriptor descriptor = openDescriptor(resolver, uri);
+        if (descriptor != null) {
+            try {
+                length = descriptor.getStatSize();
+            } finally {
+                descriptor.close();
+            }
+        }
+        if (length < 0) {
+            length = querySize(resolver, uri);
+        }
+        if (length < 0) {
+            throw new IOException("length of " + uri + " is unknown");
+        }
+        if (length > TransferFrame.MAX_FILE_LENGTH) {
+            throw new IOException(uri + " is too large to transfer: " + length + " bytes");
+        }
+        return new ContentUriSource(resolver, uri, length);
+    }
+
+    public Uri getUri() {
+        return uri;
+    }
+
+    /**
+     * Get the key of the content, made of the URI and the length since providers rarely tell when the
+     * content was modified
+     *
+     * @return Key
+     */
+    @Override
+    public String getKey() {
+        return uri.toString() + '|' + length;
+    }
+
+    @Override
+    public String getName() {
+        return uri.toString();
+    }
+
+    @Override
+    public long getLength() {
+        return length;
+    }
+
+    @Override
+    public Reader open() throws IOException {
+        ParcelFileDescriptor descriptor = openDescriptor(resolver, uri);
+        if (descriptor != null) {
+            // Pipes and sockets have no size, and cannot be read at an offset
+            if (descriptor.getStatSize() >= 0) {
+                return new FileSource.ChannelReader(new ParcelFileDescriptor.AutoCloseInputStream(descriptor)
+                    .getChannel());
+            }
+            descriptor.close();
+        }
+        return new StreamReader();
+    }
+
+    private static ParcelFileDescriptor openDescriptor(ContentResolver resolver, Uri uri) {
+        try {
+            return resolver.openFileDescriptor(uri, READ_MODE);
+        } catch (FileNotFoundException e) {
+            // Some providers only serve streams, such as the compressed assets of resources
+            Log.w(TAG, "no file descriptor for " + uri);
+            return null;
+        }
+    }
+
+    private static long querySize(ContentResolver resolver, Uri uri) {
+        Cursor cursor = null;
+        try {
+            cursor = resolver.query(uri, new String[] {OpenableColumns.SIZE}, null, null, null);
+            if (cursor != null && cursor.moveToFirst()) {
+                int column = cursor.getColumnIndex(OpenableColumns.SIZE);
+                if (column >= 0 && !cursor.isNull(column)) {
+                    return cursor.getLong(column);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "no size column for " + uri);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return -1L;
+    }
+
+    /**
+     * Reader of the input stream of the provider, read forward only
+     */
+    private final class StreamReader implements Reader {
+        private InputStream input;
+
+        private ReadableByteChannel channel;
+
+        private long streamPosition;
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            if (input == null || position < streamPosition) {
+                reopen();
+            }
+            if (!skipTo(position)) {
+                return -1;
+            }
+            int read = channel.read(dst);
+            if (read > 0) {
+                streamPosition += read;
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (input != null) {
+                channel.close();
+                input = null;
+                channel = null;
+            }
+        }
+
+        private void reopen() throws IOException {
+            close();
+            InputStream stream = resolver.openInputStream(uri);
+            if (stream == null) {
+                throw new FileNotFoundException("cannot open " + uri);
+            }
+            input = stream;
+            channel = Channels.newChannel(stream);
+            streamPosition = 0L;
+        }
+
+        private boolean skipTo(long position) throws IOException {
+            while (streamPosition < position) {
+                long skipped = input.skip(position - streamPosition);
+                if (skipped <= 0) {
+                    // skip may stop short of the end, a read tells whether the end is reached
+                    if (input.read() < 0) {
+                        return false;
+                    }
+                    skipped = 1;
+                }
+                streamPosition += skipped;
+            }
+            return true;
+        }
+    }
+}
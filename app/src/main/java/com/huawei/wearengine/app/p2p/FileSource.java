@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.p2p;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Transfer source reading a file through a {@link FileChannel}
+ *
+ * @since 2020-08-05
+ */
+public final class FileSource implements TransferSource {
+    private final File file;
+
+    private final long length;
+
+    private final String key;
+
+    /**
+     * Constructor, the length of the file is read once here
+     *
+     * @param file file to send
+     */
+    public FileSource(File file) {
+        this.file = file;
+        this.length = file.length();
+        this.key = file.getAbsolutePath() + '|' + length + '|' + file.lastModified();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public String getKey() {
+        return key;
+    }
+
+    @Override
+    public String getName() {
+        return file.getPath();
+    }
+
+    @Override
+    public long getLength() {
+        return length;
+    }
+
+    @Override
+    public Reader open() throws IOException {
+        return new ChannelReader(new RandomAccessFile(file, "r").getChannel());
+    }
+
+    /**
+     * Reader of a seekable channel
+     */
+    static final class ChannelReader implements Reader {
+        private final FileChannel channel;
+
+        ChannelReader(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            return channel.read(dst, position);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
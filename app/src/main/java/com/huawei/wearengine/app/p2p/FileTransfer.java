@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.p2p;
+
+import com.huawei.wearengine.device.Device;
+import com.huawei.wearengine.p2p.SendCallback;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * Chunked transfer of one file, or other {@link TransferSource}, to one device, driven by
+ * {@link FileTransferEngine}
+ * <p>
+ * The transfer remembers which chunks were confirmed, so that it resumes from the first unconfirmed
+ * chunk after a failure. The state is only changed on the engine thread, the getters may be called on
+ * any thread.
+ *
+ * @since 2020-08-05
+ */
+public final class FileTransfer {
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    /**
+     * States of a transfer
+     */
+    public enum State {
+        IDLE,
+        RUNNING,
+        PAUSED,
+        SUCCEEDED,
+        FAILED,
+        CANCELLED
+    }
+
+    final Device device;
+
+    final TransferSource source;
+
+    final String key;
+
+    final int transferId;
+
+    final int length;
+
+    final int chunkSize;
+
+    final int chunkCount;
+
+    final boolean[] isConfirmed;
+
+    final boolean[] isPending;
+
+    int inFlight;
+
+    int cursor;
+
+    int confirmedChunks;
+
+    int autoResumes;
+
+    int lastProgress = -1;
+
+    TransferSource.Reader reader;
+
+    SendCallback callback;
+
+    private volatile State state = State.IDLE;
+
+    private volatile long confirmedBytes;
+
+    private volatile long runConfirmedBytes;
+
+    private volatile long runStartNanos;
+
+    FileTransfer(Device device, TransferSource source, String key, int transferId, int chunkSize) {
+        this.device = device;
+        this.source = source;
+        this.key = key;
+        this.transferId = transferId;
+        if (source.getLength() > TransferFrame.MAX_FILE_LENGTH) {
+            throw new IllegalArgumentException(source.getName() + " is too large to transfer: "
+                + source.getLength() + " bytes");
+        }
+        this.length = (int) source.getLength();
+        this.chunkSize = chunkSize;
+        // In long, since the length rounded up to a whole chunk may overflow an int
+        this.chunkCount = (int) Math.max(1L, (length + (long) chunkSize - 1L) / chunkSize);
+        this.isConfirmed = new boolean[chunkCount];
+        this.isPending = new boolean[chunkCount];
+    }
+
+    public Device getDevice() {
+        return device;
+    }
+
+    public TransferSource getSource() {
+        return source;
+    }
+
+    /**
+     * Get the file sent
+     *
+     * @return File, null if the source is not a file
+     */
+    public File getFile() {
+        return source instanceof FileSource ? ((FileSource) source).getFile() : null;
+    }
+
+    public int getTransferId() {
+        return transferId;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Get the number of bytes confirmed by the device
+     *
+     * @return Confirmed bytes
+     */
+    public long getConfirmedBytes() {
+        return confirmedBytes;
+    }
+
+    /**
+     * Get the throughput since the transfer was last started or resumed
+     *
+     * @return Confirmed bytes per second
+     */
+    public long getBytesPerSecond() {
+        long elapsed = System.nanoTime() - runStartNanos;
+        return elapsed <= 0 ? 0 : runConfirmedBytes * NANOS_PER_SECOND / elapsed;
+    }
+
+    /**
+     * Check whether the transfer ended, successfully or not
+     *
+     * @return true if the transfer will not send anything anymore
+     */
+    public boolean isFinished() {
+        return state == State.SUCCEEDED || state == State.FAILED || state == State.CANCELLED;
+    }
+
+    void setState(State state) {
+        this.state = state;
+    }
+
+    void startRun() {
+        cursor = 0;
+        runConfirmedBytes = 0;
+        runStartNanos = System.nanoTime();
+    }
+
+    int getChunkLength(int sequence) {
+        return Math.min(chunkSize, length - sequence * chunkSize);
+    }
+
+    int nextUnsentChunk() {
+        for (int sequence = cursor; sequence < chunkCount; sequence++) {
+            if (!isConfirmed[sequence] && !isPending[sequence]) {
+                cursor = sequence + 1;
+                return sequence;
+            }
+        }
+        return -1;
+    }
+
+    void dropPending() {
+        Arrays.fill(isPending, false);
+        inFlight = 0;
+    }
+
+    boolean confirm(int sequence) {
+        if (isConfirmed[sequence]) {
+            return false;
+        }
+        isConfirmed[sequence] = true;
+        confirmedChunks++;
+        int chunkLength = getChunkLength(sequence);
+        confirmedBytes += chunkLength;
+        runConfirmedBytes += chunkLength;
+        return true;
+    }
+
+    boolean isComplete() {
+        return confirmedChunks == chunkCount;
+    }
+}
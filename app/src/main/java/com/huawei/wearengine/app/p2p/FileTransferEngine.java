@@ -0,0 +1,434 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.p2p;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.util.Log;
+
+import com.huawei.hmf.tasks.OnFailureListener;
+import com.huawei.hmf.tasks.Task;
+import com.huawei.wearengine.app.transport.P2pTransport;
+import com.huawei.wearengine.app.utils.MainThreadExecutor;
+import com.huawei.wearengine.device.Device;
+import com.huawei.wearengine.p2p.Message;
+import com.huawei.wearengine.p2p.SendCallback;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Chunked and resumable file transfer over {@link P2pTransport#send}
+ * <p>
+ * A file is split into chunks framed by {@link TransferFrame}, and a few chunks are kept in flight at once.
+ * A chunk is confirmed when its send result is a success. After a failure, such as a disconnection, the
+ * transfer pauses and resumes a few times from the first unconfirmed chunk; once they are exhausted, it
+ * reports the failure but keeps its confirmed chunks, so that sending the same file to the same device
+ * again resumes it instead of restarting. Callbacks are called on the callback executor, the main thread by
+ * default.
+ *
+ * @since 2020-08-05
+ */
+public class FileTransferEngine {
+    /**
+     * Send result code of a successful send, as reported by WearEngine
+     */
+    public static final int RESULT_SUCCESS = 207;
+
+    /**
+     * Send result code of a file which cannot be read
+     */
+    public static final int RESULT_FILE_ERROR = -1;
+
+    /**
+     * Send result code of a cancelled transfer
+     */
+    public static final int RESULT_CANCELLED = -2;
+
+    /**
+     * Send result code of a chunk whose sending task failed
+     */
+    public static final int RESULT_SEND_ERROR = -3;
+
+    /**
+     * Default size of the chunk data
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 16 * 1024;
+
+    /**
+     * Default number of chunks in flight
+     */
+    public static final int DEFAULT_WINDOW = 4;
+
+    private static final String TAG = "FileTransferEngine";
+
+    private static final String THREAD_NAME = "FileTransfer";
+
+    private static final int MAX_AUTO_RESUMES = 3;
+
+    private static final long RESUME_DELAY_MILLIS = 2000L;
+
+    private static final int PERCENT = 100;
+
+    private final P2pTransport p2pClient;
+
+    private final int chunkSize;
+
+    private final int window;
+
+    private final ScheduledExecutorService executor;
+
+    private final Executor callbackExecutor;
+
+    private final Map<String, FileTransfer> transfers = new HashMap<>();
+
+    private final AtomicInteger nextTransferId = new AtomicInteger(new Random().nextInt());
+
+    /**
+     * Constructor with the default chunk size and window
+     *
+     * @param p2pClient client sending the chunks
+     */
+    public FileTransferEngine(P2pTransport p2pClient) {
+        this(p2pClient, DEFAULT_CHUNK_SIZE, DEFAULT_WINDOW);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param p2pClient client sending the chunks
+     * @param chunkSize size of the chunk data
+     * @param window number of chunks in flight
+     */
+    public FileTransferEngine(P2pTransport p2pClient, int chunkSize, int window) {
+        this(p2pClient, chunkSize, window, new MainThreadExecutor());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param p2pClient client sending the chunks
+     * @param chunkSize size of the chunk data
+     * @param window number of chunks in flight
+     * @param callbackExecutor executor calling the callbacks
+     */
+    public FileTransferEngine(P2pTransport p2pClient, int chunkSize, int window, Executor callbackExecutor) {
+        if (chunkSize < 1 || window < 1) {
+            throw new IllegalArgumentException("invalid chunkSize " + chunkSize + " or window " + window);
+        }
+        this.p2pClient = p2pClient;
+        this.chunkSize = chunkSize;
+        this.window = window;
+        this.callbackExecutor = callbackExecutor;
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, THREAD_NAME);
+            }
+        });
+    }
+
+    /**
+     * Get the transfer of a file to a device, resuming the unfinished transfer of the same file if any
+     *
+     * @param device receiving device
+     * @param file file to send
+     * @return Transfer, started by {@link #start}
+     * @throws IllegalArgumentException if the file is above {@link TransferFrame#MAX_FILE_LENGTH}
+     */
+    public FileTransfer getTransfer(Device device, File file) {
+        return getTransfer(device, new FileSource(file));
+    }
+
+    /**
+     * Get the transfer of some content to a device, resuming the unfinished transfer of the same content if any
+     * <p>
+     * The content is read straight from the source, such as a {@link ContentUriSource} for a content URI,
+     * without resolving its path or copying it into a file.
+     *
+     * @param device receiving device
+     * @param source content to send
+     * @return Transfer, started by {@link #start}
+     * @throws IllegalArgumentException if the content is above {@link TransferFrame#MAX_FILE_LENGTH}
+     */
+    public FileTransfer getTransfer(Device device, TransferSource source) {
+        String key = device.getUuid() + '|' + source.getKey();
+        synchronized (transfers) {
+            FileTransfer transfer = transfers.get(key);
+            if (transfer == null || transfer.isFinished()) {
+                transfer = new FileTransfer(device, source, key, nextTransferId.getAndIncrement(), chunkSize);
+                transfers.put(key, transfer);
+            }
+            return transfer;
+        }
+    }
+
+    /**
+     * Start or resume a transfer
+     *
+     * @param transfer transfer got from {@link #getTransfer}
+     * @param callback receiver of the progress in percent and of the final result code
+     */
+    public void start(final FileTransfer transfer, final SendCallback callback) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                restart(transfer, callback);
+            }
+        });
+    }
+
+    /**
+     * Start or resume the transfer of the content behind a URI
+     * <p>
+     * The {@link ContentUriSource} of the URI is created on the engine thread, since reading the length of the
+     * content calls the provider. A content which cannot be opened, or whose length is unknown or too large,
+     * ends with {@link #RESULT_FILE_ERROR}.
+     *
+     * @param device receiving device
+     * @param resolver content resolver
+     * @param uri URI of the content to send
+     * @param callback receiver of the progress in percent and of the final result code
+     */
+    public void start(final Device device, final ContentResolver resolver, final Uri uri,
+        final SendCallback callback) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                FileTransfer transfer;
+                try {
+                    transfer = getTransfer(device, ContentUriSource.create(resolver, uri));
+                } catch (IOException e) {
+                    Log.e(TAG, "open " + uri + " failed", e);
+                    deliverResult(callback, RESULT_FILE_ERROR);
+                    return;
+                }
+                restart(transfer, callback);
+            }
+        });
+    }
+
+    /**
+     * Cancel a transfer, forgetting its confirmed chunks
+     *
+     * @param transfer transfer to cancel
+     */
+    public void cancel(final FileTransfer transfer) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!transfer.isFinished()) {
+                    finish(transfer, FileTransfer.State.CANCELLED, RESULT_CANCELLED);
+                }
+            }
+        });
+    }
+
+    /**
+     * Stop the engine, the unfinished transfers are abandoned
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+        synchronized (transfers) {
+            for (FileTransfer transfer : transfers.values()) {
+                closeReader(transfer);
+            }
+            transfers.clear();
+        }
+    }
+
+    private void restart(FileTransfer transfer, SendCallback callback) {
+        transfer.callback = callback;
+        transfer.autoResumes = 0;
+        resume(transfer);
+    }
+
+    private void resume(FileTransfer transfer) {
+        if (transfer.isFinished() || transfer.getState() == FileTransfer.State.RUNNING) {
+            return;
+        }
+        if (transfer.reader == null) {
+            try {
+                transfer.reader = transfer.source.open();
+            } catch (IOException e) {
+                Log.e(TAG, "open " + transfer.source.getName() + " failed", e);
+                finish(transfer, FileTransfer.State.FAILED, RESULT_FILE_ERROR);
+                return;
+            }
+        }
+        Log.i(TAG, "transfer " + transfer.transferId + " starts at " + transfer.getConfirmedBytes() + "/"
+            + transfer.length);
+        transfer.setState(FileTransfer.State.RUNNING);
+        transfer.startRun();
+        pump(transfer);
+    }
+
+    private void pump(FileTransfer transfer) {
+        while (transfer.getState() == FileTransfer.State.RUNNING && transfer.inFlight < window) {
+            int sequence = transfer.nextUnsentChunk();
+            if (sequence < 0) {
+                return;
+            }
+            sendChunk(transfer, sequence);
+        }
+    }
+
+    private void sendChunk(final FileTransfer transfer, final int sequence) {
+        int offset = sequence * transfer.chunkSize;
+        int chunkLength = transfer.getChunkLength(sequence);
+        byte[] data = new byte[chunkLength];
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining()) {
+                if (transfer.reader.read(buffer, offset + buffer.position()) < 0) {
+                    throw new IOException("content is shorter than " + transfer.length);
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "read " + transfer.source.getName() + " failed", e);
+            finish(transfer, FileTransfer.State.FAILED, RESULT_FILE_ERROR);
+            return;
+        }
+        byte[] frame = TransferFrame.encodeChunk(transfer.transferId, sequence, transfer.chunkCount, offset,
+            transfer.length, data, chunkLength);
+        Message message = new Message.Builder().setPayload(frame).build();
+        transfer.isPending[sequence] = true;
+        transfer.inFlight++;
+        Task<Void> task = p2pClient.send(transfer.device, message, new SendCallback() {
+            @Override
+            public void onSendResult(int resultCode) {
+                postChunkResult(transfer, sequence, resultCode);
+            }
+
+            @Override
+            public void onSendProgress(long progress) {
+            }
+        });
+        if (task != null) {
+            task.addOnFailureListener(new OnFailureListener() {
+                @Override
+                public void onFailure(Exception e) {
+                    Log.w(TAG, "send chunk " + sequence + " of transfer " + transfer.transferId + " failed", e);
+                    postChunkResult(transfer, sequence, RESULT_SEND_ERROR);
+                }
+            });
+        }
+    }
+
+    private void postChunkResult(final FileTransfer transfer, final int sequence, final int resultCode) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                onChunkResult(transfer, sequence, resultCode);
+            }
+        });
+    }
+
+    private void onChunkResult(FileTransfer transfer, int sequence, int resultCode) {
+        if (!transfer.isPending[sequence] || transfer.isFinished()) {
+            return;
+        }
+        transfer.isPending[sequence] = false;
+        transfer.inFlight--;
+        if (resultCode != RESULT_SUCCESS) {
+            if (transfer.getState() == FileTransfer.State.RUNNING) {
+                pause(transfer, resultCode);
+            }
+            return;
+        }
+        transfer.confirm(sequence);
+        if (transfer.isComplete()) {
+            notifyProgress(transfer);
+            finish(transfer, FileTransfer.State.SUCCEEDED, RESULT_SUCCESS);
+            return;
+        }
+        notifyProgress(transfer);
+        pump(transfer);
+    }
+
+    private void pause(final FileTransfer transfer, int resultCode) {
+        Log.w(TAG, "transfer " + transfer.transferId + " paused at " + transfer.getConfirmedBytes() + "/"
+            + transfer.length + ", result " + resultCode);
+        transfer.setState(FileTransfer.State.PAUSED);
+        closeReader(transfer);
+        if (transfer.autoResumes < MAX_AUTO_RESUMES) {
+            transfer.autoResumes++;
+            executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    resume(transfer);
+                }
+            }, RESUME_DELAY_MILLIS * transfer.autoResumes, TimeUnit.MILLISECONDS);
+        } else {
+            // The results of the chunks still in flight are dropped, so that a late success does not finish the
+            // transfer after its failure was reported. Those chunks are sent again when the transfer is restarted.
+            transfer.dropPending();
+            deliverResult(transfer.callback, resultCode);
+        }
+    }
+
+    private void finish(FileTransfer transfer, FileTransfer.State state, int resultCode) {
+        transfer.setState(state);
+        closeReader(transfer);
+        synchronized (transfers) {
+            if (transfers.get(transfer.key) == transfer) {
+                transfers.remove(transfer.key);
+            }
+        }
+        Log.i(TAG, "transfer " + transfer.transferId + " ends with " + state + " at " + transfer.getBytesPerSecond()
+            + " B/s");
+        deliverResult(transfer.callback, resultCode);
+    }
+
+    private void notifyProgress(FileTransfer transfer) {
+        int progress = PERCENT;
+        if (transfer.length > 0) {
+            progress = (int) (transfer.getConfirmedBytes() * PERCENT / transfer.length);
+        }
+        if (progress == transfer.lastProgress) {
+            return;
+        }
+        transfer.lastProgress = progress;
+        final SendCallback callback = transfer.callback;
+        final long sendProgress = progress;
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                callback.onSendProgress(sendProgress);
+            }
+        });
+    }
+
+    private void deliverResult(final SendCallback callback, final int resultCode) {
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                callback.onSendResult(resultCode);
+            }
+        });
+    }
+
+    private static void closeReader(FileTransfer transfer) {
+        if (transfer.reader == null) {
+            return;
+        }
+        try {
+            transfer.reader.close();
+        } catch (IOException e) {
+            Log.w(TAG, "close " + transfer.source.getName() + " failed", e);
+        }
+        transfer.reader = null;
+    }
+}
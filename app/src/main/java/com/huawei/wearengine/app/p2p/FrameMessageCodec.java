@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.p2p;
+
+/**
+ * Codec of the telemetry and command messages framed by {@link WireFrame}, each message type having its
+ * own topic
+ *
+ * @since 2020-08-05
+ */
+public class FrameMessageCodec implements MessageCodec<WireFrame> {
+    private static final String TOPIC_PREFIX = "frame/";
+
+    @Override
+    public boolean canDecode(byte[] data) {
+        return WireFrame.isFrame(data);
+    }
+
+    @Override
+    public WireFrame decode(byte[] data) {
+        return WireFrame.decode(data);
+    }
+
+    @Override
+    public String getTopic(WireFrame message) {
+        return getTopic(message.getMessageType());
+    }
+
+    /**
+     * Get the topic of a message type
+     *
+     * @param messageType message type
+     * @return Topic of the frames of this type
+     */
+    public static String getTopic(int messageType) {
+        return TOPIC_PREFIX + (messageType & 0xFFFFFFFFL);
+    }
+}
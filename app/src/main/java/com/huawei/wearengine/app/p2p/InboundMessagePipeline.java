@@ -0,0 +1,346 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.p2p;
+
+import android.util.Log;
+
+import com.huawei.wearengine.app.utils.MainThreadExecutor;
+import com.huawei.wearengine.device.Device;
+import com.huawei.wearengine.p2p.Message;
+import com.huawei.wearengine.p2p.Receiver;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pipeline decoding received messages on worker threads and dispatching them to topic subscribers
+ * <p>
+ * The receiver callback only queues the message, so that it returns at once. Workers unbatch the
+ * {@link MessageBatch} frames, decode each payload with the first codec accepting it, and hand the result
+ * to the subscribers of its topic, found with one map lookup: a {@link String} on
+ * {@link TextMessageCodec#TOPIC}, a {@link BinaryRecord} or a {@link WireFrame} on the topic of its type, a
+ * {@link TransferFrame} on {@link ChunkMessageCodec#TOPIC}, a {@link File} on {@link #TOPIC_FILE}, or the
+ * raw bytes on {@link #TOPIC_BYTES} when no codec decodes them. When the queue is full the oldest
+ * messages are dropped and counted. Messages decoded by different workers may be dispatched out of order.
+ *
+ * @since 2020-08-05
+ */
+public class InboundMessagePipeline {
+    /**
+     * Default number of worker threads
+     */
+    public static final int DEFAULT_WORKERS = 2;
+
+    /**
+     * Default number of messages waiting for a worker
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 256;
+
+    /**
+     * Topic of the file messages
+     */
+    public static final String TOPIC_FILE = "file";
+
+    /**
+     * Topic of the payloads no codec decodes
+     */
+    public static final String TOPIC_BYTES = "bytes";
+
+    private static final String TAG = "InboundMessagePipeline";
+
+    private static final String THREAD_NAME = "InboundMessage-";
+
+    /**
+     * Receives the decoded messages of a type
+     *
+     * @param <T> type of the messages
+     */
+    public interface Subscriber<T> {
+        /**
+         * A message was received and decoded
+         *
+         * @param device sending device
+         * @param message decoded message
+         */
+        void onMessage(Device device, T message);
+    }
+
+    private final List<MessageCodec<?>> codecs = new CopyOnWriteArrayList<>();
+
+    private final ConcurrentHashMap<String, List<Subscription<?>>> subscriptions = new ConcurrentHashMap<>();
+
+    private final Executor callbackExecutor;
+
+    private final AtomicLong droppedMessages = new AtomicLong();
+
+    private final AtomicLong invalidMessages = new AtomicLong();
+
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Constructor with the default workers and queue capacity
+     */
+    public InboundMessagePipeline() {
+        this(DEFAULT_WORKERS, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Constructor with the chunk, frame, record and text codecs
+     *
+     * @param workers number of worker threads
+     * @param queueCapacity number of messages waiting for a worker
+     */
+    public InboundMessagePipeline(int workers, int queueCapacity) {
+        this(workers, queueCapacity, new MainThreadExecutor());
+    }
+
+    /**
+     * Constructor with the chunk, frame, record and text codecs
+     *
+     * @param workers number of worker threads
+     * @param queueCapacity number of messages waiting for a worker
+     * @param callbackExecutor executor standing for the main thread, calling the subscribers which ask for it
+     */
+    public InboundMessagePipeline(int workers, int queueCapacity, Executor callbackExecutor) {
+        this.callbackExecutor = callbackExecutor;
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(queueCapacity), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    return new Thread(runnable, THREAD_NAME + threadCount.incrementAndGet());
+                }
+            }, new RejectedExecutionHandler() {
+                @Override
+                public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+                    if (executor.isShutdown()) {
+                        return;
+                    }
+                    executor.getQueue().poll();
+                    droppedMessages.incrementAndGet();
+                    executor.execute(runnable);
+                }
+            });
+        codecs.add(new ChunkMessageCodec());
+        codecs.add(new FrameMessageCodec());
+        codecs.add(new RecordMessageCodec());
+        codecs.add(new TextMessageCodec());
+    }
+
+    /**
+     * Add a codec, tried before the codecs already added
+     *
+     * @param codec codec
+     */
+    public void addCodec(MessageCodec<?> codec) {
+        codecs.add(0, codec);
+    }
+
+    /**
+     * Subscribe to the messages of a topic on the main thread
+     *
+     * @param topic topic of the messages
+     * @param type type of the messages, the messages of the topic of another type are ignored
+     * @param subscriber subscriber
+     * @param <T> type of the messages
+     */
+    public <T> void subscribe(String topic, Class<T> type, Subscriber<? super T> subscriber) {
+        subscribe(topic, type, subscriber, true);
+    }
+
+    /**
+     * Subscribe to the messages of a topic
+     *
+     * @param topic topic of the messages
+     * @param type type of the messages, the messages of the topic of another type are ignored
+     * @param subscriber subscriber
+     * @param isMainThread whether the subscriber is called on the main thread rather than on a worker thread
+     * @param <T> type of the messages
+     */
+    public <T> void subscribe(String topic, Class<T> type, Subscriber<? super T> subscriber,
+        boolean isMainThread) {
+        List<Subscription<?>> topicSubscriptions = subscriptions.get(topic);
+        if (topicSubscriptions == null) {
+            List<Subscription<?>> created = new CopyOnWriteArrayList<>();
+            topicSubscriptions = subscriptions.putIfAbsent(topic, created);
+            if (topicSubscriptions == null) {
+                topicSubscriptions = created;
+            }
+        }
+        topicSubscriptions.add(new Subscription<>(type, subscriber, isMainThread));
+    }
+
+    /**
+     * Unsubscribe from all the topics
+     *
+     * @param subscriber subscriber
+     */
+    public void unsubscribe(Subscriber<?> subscriber) {
+        for (List<Subscription<?>> topicSubscriptions : subscriptions.values()) {
+            for (Subscription<?> subscription : topicSubscriptions) {
+                if (subscription.subscriber == subscriber) {
+                    topicSubscriptions.remove(subscription);
+                }
+            }
+        }
+    }
+
+    /**
+     * Create a receiver queueing the messages of a device into the pipeline
+     *
+     * @param device sending device
+     * @return Receiver to register
+     */
+    public Receiver createReceiver(final Device device) {
+        return new Receiver() {
+            @Override
+            public void onReceiveMessage(Message message) {
+                submit(device, message);
+            }
+        };
+    }
+
+    /**
+     * Queue a received message
+     *
+     * @param device sending device
+     * @param message received message
+     */
+    public void submit(final Device device, final Message message) {
+        if (message == null) {
+            return;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                process(device, message);
+            }
+        });
+    }
+
+    /**
+     * Get the number of messages dropped because the queue was full
+     *
+     * @return Dropped messages
+     */
+    public long getDroppedMessages() {
+        return droppedMessages.get();
+    }
+
+    /**
+     * Get the number of payloads rejected by their codec
+     *
+     * @return Invalid payloads
+     */
+    public long getInvalidMessages() {
+        return invalidMessages.get();
+    }
+
+    /**
+     * Stop the workers, the queued messages are dropped
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void process(Device device, Message message) {
+        if (message.getType() == Message.MESSAGE_TYPE_FILE) {
+            dispatch(device, TOPIC_FILE, message.getFile());
+            return;
+        }
+        byte[] data = message.getData();
+        if (data == null) {
+            return;
+        }
+        if (!MessageBatch.isBatch(data)) {
+            decode(device, data);
+            return;
+        }
+        try {
+            for (byte[] payload : MessageBatch.unbatch(data)) {
+                decode(device, payload);
+            }
+        } catch (IllegalArgumentException e) {
+            invalidMessages.incrementAndGet();
+            Log.w(TAG, "invalid batch from " + device.getName(), e);
+        }
+    }
+
+    private void decode(Device device, byte[] data) {
+        for (MessageCodec<?> codec : codecs) {
+            if (codec.canDecode(data) && decodeWith(codec, device, data)) {
+                return;
+            }
+        }
+        dispatch(device, TOPIC_BYTES, data);
+    }
+
+    private <T> boolean decodeWith(MessageCodec<T> codec, Device device, byte[] data) {
+        T message;
+        try {
+            message = codec.decode(data);
+        } catch (IllegalArgumentException e) {
+            invalidMessages.incrementAndGet();
+            Log.w(TAG, "invalid message from " + device.getName() + ": " + e.getMessage());
+            return false;
+        }
+        dispatch(device, codec.getTopic(message), message);
+        return true;
+    }
+
+    private void dispatch(Device device, String topic, Object message) {
+        List<Subscription<?>> topicSubscriptions = subscriptions.get(topic);
+        if (message == null || topicSubscriptions == null) {
+            return;
+        }
+        for (Subscription<?> subscription : topicSubscriptions) {
+            subscription.deliver(device, message);
+        }
+    }
+
+    /**
+     * Subscriber of the messages of a topic
+     */
+    private final class Subscription<T> {
+        private final Class<T> type;
+
+        private final Subscriber<? super T> subscriber;
+
+        private final boolean isMainThread;
+
+        Subscription(Class<T> type, Subscriber<? super T> subscriber, boolean isMainThread) {
+            this.type = type;
+            this.subscriber = subscriber;
+            this.isMainThread = isMainThread;
+        }
+
+        void deliver(final Device device, Object message) {
+            if (!type.isInstance(message)) {
+                return;
+            }
+            final T typedMessage = type.cast(message);
+            if (!isMainThread) {
+                subscriber.onMessage(device, typedMessage);
+                return;
+            }
+            callbackExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    subscriber.onMessage(device, typedMessage);
+                }
+            });
+        }
+    }
+}
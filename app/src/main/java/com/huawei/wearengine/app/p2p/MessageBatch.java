@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.p2p;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Frame of a batch of small messages, carried as the payload of a data message
+ * <p>
+ * The frame is made of little-endian fields: magic "WB", version, type, number of messages, followed by
+ * each message as its length and its bytes.
+ *
+ * @since 2020-08-05
+ */
+public final class MessageBatch {
+    /**
+     * Size of the frame header in bytes
+     */
+    public static final int HEADER_SIZE = 6;
+
+    /**
+     * Size added by the frame to each message in bytes
+     */
+    public static final int ENTRY_OVERHEAD = 4;
+
+    /**
+     * Largest number of messages of a batch
+     */
+    public static final int MAX_MESSAGES = 0xFFFF;
+
+    private static final short MAGIC = 0x4257;
+
+    private static final byte VERSION = 1;
+
+    private static final byte TYPE_BATCH = 2;
+
+    private static final int COUNT_MASK = 0xFFFF;
+
+    private MessageBatch() {
+    }
+
+    /**
+     * Encode a batch frame
+     *
+     * @param payloads messages of the batch, at most {@link #MAX_MESSAGES}
+     * @return Frame bytes
+     */
+    public static byte[] encode(List<byte[]> payloads) {
+        if (payloads.size() > MAX_MESSAGES) {
+            throw new IllegalArgumentException("too many messages in a batch: " + payloads.size());
+        }
+        int length = HEADER_SIZE;
+        for (byte[] payload : payloads) {
+            length += ENTRY_OVERHEAD + payload.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putShort(MAGIC).put(VERSION).put(TYPE_BATCH).putShort((short) payloads.size());
+        for (byte[] payload : payloads) {
+            buffer.putInt(payload.length).put(payload);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Check whether received data is a batch frame
+     *
+     * @param data received data
+     * @return true if the data starts like a batch frame
+     */
+    public static boolean isBatch(byte[] data) {
+        if (data == null || data.length < HEADER_SIZE) {
+            return false;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        return buffer.getShort() == MAGIC && buffer.get() == VERSION && buffer.get() == TYPE_BATCH;
+    }
+
+    /**
+     * Split a batch frame into its messages
+     *
+     * @param data batch frame
+     * @return Messages of the batch, in the order they were queued
+     * @throws IllegalArgumentException if the data is not a valid batch frame
+     */
+    public static List<byte[]> unbatch(byte[] data) {
+        if (!isBatch(data)) {
+            throw new IllegalArgumentException("not a batch frame");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(data, HEADER_SIZE - 2, data.length - HEADER_SIZE + 2)
+            .order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            int count = buffer.getShort() & COUNT_MASK;
+            List<byte[]> payloads = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int length = buffer.getInt();
+                if (length < 0 || length > buffer.remaining()) {
+                    throw new IllegalArgumentException("invalid message length " + length + " in batch");
+                }
+                byte[] payload = new byte[length];
+                buffer.get(payload);
+                payloads.add(payload);
+            }
+            if (buffer.hasRemaining()) {
+                throw new IllegalArgumentException("trailing bytes after " + count + " messages in batch");
+            }
+            return payloads;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("batch frame is truncated", e);
+        }
+    }
+}
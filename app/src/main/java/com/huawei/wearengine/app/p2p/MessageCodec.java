@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.p2p;
+
+/**
+ * Decoder of the payload of received data messages into a typed value
+ *
+ * @param <T> type of the decoded values
+ * @since 2020-08-05
+ */
+public interface MessageCodec<T> {
+    /**
+     * Check whether a payload is meant for this codec, without decoding it
+     *
+     * @param data payload
+     * @return true if the payload should be decoded by this codec
+     */
+    boolean canDecode(byte[] data);
+
+    /**
+     * Decode a payload, called on a worker thread
+     *
+     * @param data payload
+     * @return Decoded value
+     * @throws IllegalArgumentException if the payload is invalid
+     */
+    T decode(byte[] data);
+
+    /**
+     * Get the topic a decoded value is dispatched to
+     *
+     * @param message decoded value
+     * @return Topic of the value
+     */
+    String getTopic(T message);
+}
@@ -0,0 +1,498 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.p2p;
+
+import android.util.Log;
+
+import com.huawei.hmf.tasks.OnFailureListener;
+import com.huawei.hmf.tasks.OnSuccessListener;
+import com.huawei.hmf.tasks.Task;
+import com.huawei.hmf.tasks.TaskCompletionSource;
+import com.huawei.wearengine.app.transport.P2pTransport;
+import com.huawei.wearengine.app.utils.MainThreadExecutor;
+import com.huawei.wearengine.device.Device;
+import com.huawei.wearengine.p2p.Message;
+import com.huawei.wearengine.p2p.SendCallback;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Outbound queue of small messages, sent in order to each device and optionally in {@link MessageBatch} frames
+ * <p>
+ * The messages of a device are sent one send at a time. While a send is in flight, the next messages of the
+ * device accumulate, and a message queued with a coalescing key replaces the pending message of the same key.
+ * <p>
+ * Batching is opt-in, because the peer app must unbatch the frames, as {@link InboundMessagePipeline} does.
+ * Without it, every message is sent as is. With it, messages queued for a device wait at most the batching
+ * delay, or until the batch size is reached, and are then sent as one frame, so that bursts cost one link
+ * round trip per batch rather than per message. A batch of a single message is sent as is, unless the message
+ * itself looks like a batch frame. Callbacks are called, and tasks complete, on the callback executor, the main
+ * thread by default.
+ * <p>
+ * A send which reports no result within the send timeout ends with {@link FileTransferEngine#RESULT_SEND_ERROR},
+ * so that a lost result does not hold back the next messages of the device.
+ *
+ * @since 2020-08-05
+ */
+public class OutboundMessageQueue {
+    /**
+     * Send result code of a message replaced by a newer message of the same coalescing key
+     */
+    public static final int RESULT_SUPERSEDED = -4;
+
+    /**
+     * Default longest time a message waits for other messages
+     */
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 20L;
+
+    /**
+     * Default size of a batch frame which is sent without waiting
+     */
+    public static final int DEFAULT_MAX_BATCH_BYTES = 4 * 1024;
+
+    /**
+     * Default time a send has to report its result
+     */
+    public static final long DEFAULT_SEND_TIMEOUT_MILLIS = 30000L;
+
+    private static final String TAG = "OutboundMessageQueue";
+
+    private static final String THREAD_NAME = "OutboundMessage";
+
+    private final P2pTransport p2pClient;
+
+    private final long maxDelayMillis;
+
+    private final int maxBatchBytes;
+
+    private final boolean isBatching;
+
+    private final long sendTimeoutMillis;
+
+    private final ScheduledExecutorService executor;
+
+    private final Executor callbackExecutor;
+
+    private final Map<String, DeviceQueue> deviceQueues = new HashMap<>();
+
+    private final AtomicInteger queueDepth = new AtomicInteger();
+
+    private final AtomicLong sentMessages = new AtomicLong();
+
+    private final AtomicLong sentBatches = new AtomicLong();
+
+    private final AtomicLong coalescedMessages = new AtomicLong();
+
+    /**
+     * Constructor of a queue sending every message as is, for peers which do not unbatch
+     *
+     * @param p2pClient client sending the messages
+     */
+    public OutboundMessageQueue(P2pTransport p2pClient) {
+        this(p2pClient, new MainThreadExecutor());
+    }
+
+    /**
+     * Constructor of a queue sending every message as is, for peers which do not unbatch
+     *
+     * @param p2pClient client sending the messages
+     * @param callbackExecutor executor calling the callbacks and completing the tasks
+     */
+    public OutboundMessageQueue(P2pTransport p2pClient, Executor callbackExecutor) {
+        this(p2pClient, DEFAULT_SEND_TIMEOUT_MILLIS, callbackExecutor);
+    }
+
+    /**
+     * Constructor of a queue sending every message as is, for peers which do not unbatch
+     *
+     * @param p2pClient client sending the messages
+     * @param sendTimeoutMillis time a send has to report its result
+     * @param callbackExecutor executor calling the callbacks and completing the tasks
+     */
+    public OutboundMessageQueue(P2pTransport p2pClient, long sendTimeoutMillis, Executor callbackExecutor) {
+        this(p2pClient, 0L, 0, false, sendTimeoutMillis, callbackExecutor);
+    }
+
+    /**
+     * Constructor of a queue batching the messages, for peers which unbatch {@link MessageBatch} frames
+     *
+     * @param p2pClient client sending the batches
+     * @param maxDelayMillis longest time a message waits for other messages, such as
+     *     {@link #DEFAULT_MAX_DELAY_MILLIS}
+     * @param maxBatchBytes size of a batch frame which is sent without waiting, such as
+     *     {@link #DEFAULT_MAX_BATCH_BYTES}
+     */
+    public OutboundMessageQueue(P2pTransport p2pClient, long maxDelayMillis, int maxBatchBytes) {
+        this(p2pClient, maxDelayMillis, maxBatchBytes, new MainThreadExecutor());
+    }
+
+    /**
+     * Constructor of a queue batching the messages, for peers which unbatch {@link MessageBatch} frames
+     *
+     * @param p2pClient client sending the batches
+     * @param maxDelayMillis longest time a message waits for other messages
+     * @param maxBatchBytes size of a batch frame which is sent without waiting
+     * @param callbackExecutor executor calling the callbacks and completing the tasks
+     */
+    public OutboundMessageQueue(P2pTransport p2pClient, long maxDelayMillis, int maxBatchBytes,
+        Executor callbackExecutor) {
+        this(p2pClient, maxDelayMillis, maxBatchBytes, DEFAULT_SEND_TIMEOUT_MILLIS, callbackExecutor);
+    }
+
+    /**
+     * Constructor of a queue batching the messages, for peers which unbatch {@link MessageBatch} frames
+     *
+     * @param p2pClient client sending the batches
+     * @param maxDelayMillis longest time a message waits for other messages
+     * @param maxBatchBytes size of a batch frame which is sent without waiting
+     * @param sendTimeoutMillis time a send has to report its result
+     * @param callbackExecutor executor calling the callbacks and completing the tasks
+     */
+    public OutboundMessageQueue(P2pTransport p2pClient, long maxDelayMillis, int maxBatchBytes,
+        long sendTimeoutMillis, Executor callbackExecutor) {
+        this(p2pClient, maxDelayMillis, maxBatchBytes, true, sendTimeoutMillis, callbackExecutor);
+    }
+
+    private OutboundMessageQueue(P2pTransport p2pClient, long maxDelayMillis, int maxBatchBytes,
+        boolean isBatching, long sendTimeoutMillis, Executor callbackExecutor) {
+        if (isBatching && (maxDelayMillis < 0 || maxBatchBytes < MessageBatch.HEADER_SIZE)) {
+            throw new IllegalArgumentException("invalid maxDelayMillis " + maxDelayMillis + " or maxBatchBytes "
+                + maxBatchBytes);
+        }
+        if (sendTimeoutMillis <= 0) {
+            throw new IllegalArgumentException("invalid sendTimeoutMillis " + sendTimeoutMillis);
+        }
+        this.p2pClient = p2pClient;
+        this.maxDelayMillis = maxDelayMillis;
+        this.maxBatchBytes = maxBatchBytes;
+        this.isBatching = isBatching;
+        this.sendTimeoutMillis = sendTimeoutMillis;
+        this.callbackExecutor = callbackExecutor;
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, THREAD_NAME);
+            }
+        });
+    }
+
+    /**
+     * Queue a message
+     *
+     * @param device receiving device
+     * @param payload message bytes
+     * @param callback receiver of the send result of the message or of the batch carrying it, may be null
+     * @return Task completing like the sending task of the message or of its batch
+     */
+    public Task<Void> enqueue(Device device, byte[] payload, SendCallback callback) {
+        return enqueue(device, null, payload, callback);
+    }
+
+    /**
+     * Queue a message, replacing the pending message of the same coalescing key
+     *
+     * @param device receiving device
+     * @param coalesceKey key of the messages superseding each other, null if the message is always sent
+     * @param payload message bytes
+     * @param callback receiver of the send result of the message or of the batch carrying it, may be null
+     * @return Task completing like the sending task of the message or of its batch, failing if the message is
+     *     superseded
+     */
+    public Task<Void> enqueue(final Device device, String coalesceKey, byte[] payload, SendCallback callback) {
+        final PendingMessage message = new PendingMessage(coalesceKey, payload, callback);
+        queueDepth.incrementAndGet();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                add(device, message);
+            }
+        });
+        return message.sendTask.getTask();
+    }
+
+    /**
+     * Get the number of queued messages not sent yet
+     *
+     * @return Queue depth
+     */
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    /**
+     * Get the average number of messages per send, batch or single message
+     *
+     * @return Batching ratio, 0 if nothing was sent
+     */
+    public double getBatchingRatio() {
+        long batches = sentBatches.get();
+        return batches == 0 ? 0 : (double) sentMessages.get() / batches;
+    }
+
+    public long getSentMessages() {
+        return sentMessages.get();
+    }
+
+    public long getSentBatches() {
+        return sentBatches.get();
+    }
+
+    public long getCoalescedMessages() {
+        return coalescedMessages.get();
+    }
+
+    /**
+     * Stop the queue, the pending messages are dropped
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void add(Device device, PendingMessage message) {
+        DeviceQueue queue = deviceQueues.get(device.getUuid());
+        if (queue == null) {
+            queue = new DeviceQueue(device);
+            deviceQueues.put(device.getUuid(), queue);
+        }
+        PendingMessage superseded = queue.replace(message);
+        if (superseded != null) {
+            queueDepth.decrementAndGet();
+            coalescedMessages.incrementAndGet();
+            deliverResult(superseded.callback, RESULT_SUPERSEDED);
+            completeTask(superseded.sendTask, new IllegalStateException("message superseded"));
+        }
+        if (queue.isInFlight) {
+            return;
+        }
+        if (queue.bytes >= maxBatchBytes) {
+            flush(queue);
+        } else if (queue.flushTask == null) {
+            final DeviceQueue flushQueue = queue;
+            queue.flushTask = executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    flushQueue.flushTask = null;
+                    flush(flushQueue);
+                }
+            }, maxDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flush(final DeviceQueue queue) {
+        if (queue.flushTask != null) {
+            queue.flushTask.cancel(false);
+            queue.flushTask = null;
+        }
+        if (queue.isInFlight || queue.pending.isEmpty()) {
+            return;
+        }
+        final List<PendingMessage> batch = queue.takeBatch(maxBatchBytes);
+        queueDepth.addAndGet(-batch.size());
+        sentMessages.addAndGet(batch.size());
+        sentBatches.incrementAndGet();
+        queue.isInFlight = true;
+
+        final AtomicInteger isDone = new AtomicInteger();
+        final AtomicBoolean isTaskDone = new AtomicBoolean();
+        Message frame = new Message.Builder().setPayload(encode(batch)).build();
+        Task<Void> task = p2pClient.send(queue.device, frame, new SendCallback() {
+            @Override
+            public void onSendResult(int resultCode) {
+                postBatchResult(queue, batch, isDone, resultCode);
+            }
+
+            @Override
+            public void onSendProgress(long progress) {
+            }
+        });
+        if (task == null) {
+            completeTasks(batch, isTaskDone, new IllegalStateException("send task unavailable"));
+            postBatchResult(queue, batch, isDone, FileTransferEngine.RESULT_SEND_ERROR);
+            return;
+        }
+        task.addOnSuccessListener(new OnSuccessListener<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+                completeTasks(batch, isTaskDone, null);
+            }
+        }).addOnFailureListener(new OnFailureListener() {
+            @Override
+            public void onFailure(Exception e) {
+                Log.w(TAG, "send batch of " + batch.size() + " messages failed", e);
+                completeTasks(batch, isTaskDone, e);
+                postBatchResult(queue, batch, isDone, FileTransferEngine.RESULT_SEND_ERROR);
+            }
+        });
+        if (isDone.get() == 0) {
+            queue.sendTimeout = executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (isDone.get() != 0) {
+                        return;
+                    }
+                    Log.w(TAG, "send batch of " + batch.size() + " messages timed out");
+                    completeTasks(batch, isTaskDone, new TimeoutException("send timed out"));
+                    postBatchResult(queue, batch, isDone, FileTransferEngine.RESULT_SEND_ERROR);
+                }
+            }, sendTimeoutMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private byte[] encode(List<PendingMessage> batch) {
+        if (batch.size() == 1) {
+            byte[] payload = batch.get(0).payload;
+            // A message looking like a batch frame is still framed when batching, or the peer would unbatch it
+            if (!isBatching || !MessageBatch.isBatch(payload)) {
+                return payload;
+            }
+        }
+        List<byte[]> payloads = new ArrayList<>(batch.size());
+        for (PendingMessage message : batch) {
+            payloads.add(message.payload);
+        }
+        return MessageBatch.encode(payloads);
+    }
+
+    private void postBatchResult(final DeviceQueue queue, final List<PendingMessage> batch, AtomicInteger isDone,
+        final int resultCode) {
+        if (!isDone.compareAndSet(0, 1)) {
+            return;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (queue.sendTimeout != null) {
+                    queue.sendTimeout.cancel(false);
+                    queue.sendTimeout = null;
+                }
+                queue.isInFlight = false;
+                for (PendingMessage message : batch) {
+                    deliverResult(message.callback, resultCode);
+                }
+                flush(queue);
+            }
+        });
+    }
+
+    private void deliverResult(final SendCallback callback, final int resultCode) {
+        if (callback == null) {
+            return;
+        }
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                callback.onSendResult(resultCode);
+            }
+        });
+    }
+
+    private void completeTasks(List<PendingMessage> batch, AtomicBoolean isTaskDone, Exception exception) {
+        // The sending task may complete after the send timed out, the tasks of the messages only complete once
+        if (!isTaskDone.compareAndSet(false, true)) {
+            return;
+        }
+        for (PendingMessage message : batch) {
+            completeTask(message.sendTask, exception);
+        }
+    }
+
+    private void completeTask(final TaskCompletionSource<Void> sendTask, final Exception exception) {
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (exception == null) {
+                    sendTask.setResult(null);
+                } else {
+                    sendTask.setException(exception);
+                }
+            }
+        });
+    }
+
+    /**
+     * Message waiting in a device queue
+     */
+    private static final class PendingMessage {
+        private final String coalesceKey;
+
+        private final byte[] payload;
+
+        private final SendCallback callback;
+
+        private final TaskCompletionSource<Void> sendTask = new TaskCompletionSource<>();
+
+        PendingMessage(String coalesceKey, byte[] payload, SendCallback callback) {
+            this.coalesceKey = coalesceKey;
+            this.payload = payload;
+            this.callback = callback;
+        }
+    }
+
+    /**
+     * Messages waiting for one device, only used on the queue thread
+     */
+    private static final class DeviceQueue {
+        private final Device device;
+
+        private final LinkedList<PendingMessage> pending = new LinkedList<>();
+
+        private int bytes = MessageBatch.HEADER_SIZE;
+
+        private boolean isInFlight;
+
+        private ScheduledFuture<?> flushTask;
+
+        private ScheduledFuture<?> sendTimeout;
+
+        DeviceQueue(Device device) {
+            this.device = device;
+        }
+
+        PendingMessage replace(PendingMessage message) {
+            bytes += MessageBatch.ENTRY_OVERHEAD + message.payload.length;
+            if (message.coalesceKey != null) {
+                for (int i = 0; i < pending.size(); i++) {
+                    PendingMessage old = pending.get(i);
+                    if (message.coalesceKey.equals(old.coalesceKey)) {
+                        pending.set(i, message);
+                        bytes -= MessageBatch.ENTRY_OVERHEAD + old.payload.length;
+                        return old;
+                    }
+                }
+            }
+            pending.add(message);
+            return null;
+        }
+
+        List<PendingMessage> takeBatch(int maxBytes) {
+            List<PendingMessage> batch = new ArrayList<>();
+            int batchBytes = MessageBatch.HEADER_SIZE;
+            while (!pending.isEmpty() && batch.size() < MessageBatch.MAX_MESSAGES) {
+                int entryBytes = MessageBatch.ENTRY_OVERHEAD + pending.peek().payload.length;
+                if (!batch.isEmpty() && batchBytes + entryBytes > maxBytes) {
+                    break;
+                }
+                batch.add(pending.poll());
+                batchBytes += entryBytes;
+                bytes -= entryBytes;
+            }
+            return batch;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.p2p;
+
+import android.util.Log;
+
+import com.huawei.hmf.tasks.OnFailureListener;
+import com.huawei.hmf.tasks.Task;
+import com.huawei.wearengine.app.transport.P2pTransport;
+import com.huawei.wearengine.device.Device;
+import com.huawei.wearengine.p2p.Receiver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Router registering a single receiver per device and feeding it into the inbound pipeline
+ * <p>
+ * Registering a device again reuses the receiver and the registration task of the first call, so the
+ * messages of a device are never received twice and the pipeline dispatches each of them by topic with
+ * one lookup. A failed registration is forgotten, so that it can be retried. The receivers must be
+ * unregistered when the device is removed or the application is torn down.
+ *
+ * @since 2020-08-05
+ */
+public class ReceiverRouter {
+    private static final String TAG = "ReceiverRouter";
+
+    private final P2pTransport p2pClient;
+
+    private final InboundMessagePipeline pipeline;
+
+    private final ConcurrentHashMap<String, Registration> registrations = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor
+     *
+     * @param p2pClient client registering the receivers
+     * @param pipeline pipeline decoding and dispatching the received messages
+     */
+    public ReceiverRouter(P2pTransport p2pClient, InboundMessagePipeline pipeline) {
+        this.p2pClient = p2pClient;
+        this.pipeline = pipeline;
+    }
+
+    /**
+     * Register the receiver of a device, unless it is already registered
+     *
+     * @param device sending device
+     * @return Registration task, the task of the first registration if the device is already registered
+     */
+    public synchronized Task<Void> register(Device device) {
+        final String uuid = device.getUuid();
+        Registration registration = registrations.get(uuid);
+        if (registration != null) {
+            return registration.task;
+        }
+        Receiver receiver = pipeline.createReceiver(device);
+        Task<Void> task = p2pClient.registerReceiver(device, receiver);
+        if (task == null) {
+            return null;
+        }
+        final Registration created = new Registration(receiver, task);
+        registrations.put(uuid, created);
+        task.addOnFailureListener(new OnFailureListener() {
+            @Override
+            public void onFailure(Exception e) {
+                Log.w(TAG, "registerReceiver failed", e);
+                registrations.remove(uuid, created);
+            }
+        });
+        return task;
+    }
+
+    /**
+     * Check whether the receiver of a device is registered or being registered
+     *
+     * @param uuid UUID of the device
+     * @return true if the device has a receiver
+     */
+    public boolean isRegistered(String uuid) {
+        return uuid != null && registrations.containsKey(uuid);
+    }
+
+    /**
+     * Unregister the receiver of a device
+     *
+     * @param device sending device
+     */
+    public void unregister(Device device) {
+        Registration registration = registrations.remove(device.getUuid());
+        if (registration != null) {
+            unregister(registration);
+        }
+    }
+
+    /**
+     * Unregister the receivers of all the devices, on teardown
+     */
+    public void unregisterAll() {
+        List<String> uuids = new ArrayList<>(registrations.keySet());
+        for (String uuid : uuids) {
+            Registration registration = registrations.remove(uuid);
+            if (registration != null) {
+                unregister(registration);
+            }
+        }
+    }
+
+    private void unregister(Registration registration) {
+        Task<Void> task = p2pClient.unregisterReceiver(registration.receiver);
+        if (task != null) {
+            task.addOnFailureListener(new OnFailureListener() {
+                @Override
+                public void onFailure(Exception e) {
+                    Log.w(TAG, "unregisterReceiver failed", e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Receiver of one device and its registration task
+     */
+    private static final class Registration {
+        private final Receiver receiver;
+
+        private final Task<Void> task;
+
+        Registration(Receiver receiver, Task<Void> task) {
+            this.receiver = receiver;
+            this.task = task;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.p2p;
+
+/**
+ * Codec of the binary records sent by the watch, each record type having its own topic
+ *
+ * @since 2020-08-05
+ */
+public class RecordMessageCodec implements MessageCodec<BinaryRecord> {
+    private static final String TOPIC_PREFIX = "record/";
+
+    @Override
+    public boolean canDecode(byte[] data) {
+        return BinaryRecord.isRecord(data);
+    }
+
+    @Override
+    public BinaryRecord decode(byte[] data) {
+        return BinaryRecord.decode(data);
+    }
+
+    @Override
+    public String getTopic(BinaryRecord message) {
+        return getTopic(message.getRecordType());
+    }
+
+    /**
+     * Get the topic of a record type
+     *
+     * @param recordType record type
+     * @return Topic of the records of this type
+     */
+    public static String getTopic(int recordType) {
+        return TOPIC_PREFIX + recordType;
+    }
+}
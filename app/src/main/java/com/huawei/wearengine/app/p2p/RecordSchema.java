@@ -0,0 +1,372 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.p2p;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Schema of the payload of a {@link WireFrame}, encoding and decoding its fields in a fixed order
+ * <p>
+ * Each field is written without a tag: booleans as one byte, integers as signed varints, floating point
+ * numbers as little-endian IEEE 754 values, strings and byte arrays as a varint length followed by their
+ * bytes. Fields are only appended to a schema: a payload missing the last fields decodes them as null,
+ * and the bytes after the known fields are ignored, so that both sides may run different versions.
+ *
+ * @since 2020-08-05
+ */
+public final class RecordSchema {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int FLOAT_SIZE = 4;
+
+    private static final int DOUBLE_SIZE = 8;
+
+    /**
+     * Type of a field
+     */
+    public enum FieldType {
+        /**
+         * Boolean, as one byte
+         */
+        BOOL,
+
+        /**
+         * Integer, as a signed varint
+         */
+        INT,
+
+        /**
+         * Long, as a signed varint
+         */
+        LONG,
+
+        /**
+         * Float, as 4 bytes
+         */
+        FLOAT,
+
+        /**
+         * Double, as 8 bytes
+         */
+        DOUBLE,
+
+        /**
+         * UTF-8 string, after its length
+         */
+        STRING,
+
+        /**
+         * Byte array, after its length, decoded as a read-only buffer sharing the payload
+         */
+        BYTES
+    }
+
+    private final int messageType;
+
+    private final String[] names;
+
+    private final FieldType[] types;
+
+    private final Map<String, Integer> indexes;
+
+    private RecordSchema(Builder builder) {
+        this.messageType = builder.messageType;
+        this.names = builder.names.toArray(new String[0]);
+        this.types = builder.types.toArray(new FieldType[0]);
+        Map<String, Integer> map = new HashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            map.put(names[i], i);
+        }
+        this.indexes = Collections.unmodifiableMap(map);
+    }
+
+    public int getMessageType() {
+        return messageType;
+    }
+
+    public int getFieldCount() {
+        return names.length;
+    }
+
+    public String getFieldName(int index) {
+        return names[index];
+    }
+
+    public FieldType getFieldType(int index) {
+        return types[index];
+    }
+
+    /**
+     * Get the index of a field
+     *
+     * @param name field name
+     * @return Index of the field, -1 if the schema has no such field
+     */
+    public int getFieldIndex(String name) {
+        Integer index = indexes.get(name);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Get the size of the encoded values
+     *
+     * @param values values of the fields, in the order of the schema
+     * @return Size in bytes
+     * @throws IllegalArgumentException if the values do not match the fields
+     */
+    public int getEncodedSize(Object[] values) {
+        checkValues(values);
+        int size = 0;
+        for (int i = 0; i < types.length; i++) {
+            size += getFieldSize(types[i], values[i]);
+        }
+        return size;
+    }
+
+    /**
+     * Encode values into a buffer
+     *
+     * @param dst destination, the values are written at its position
+     * @param values values of the fields, in the order of the schema
+     * @throws IllegalArgumentException if the values do not match the fields
+     * @throws java.nio.BufferOverflowException if the destination has less than {@link #getEncodedSize} bytes
+     *     remaining
+     */
+    public void encode(ByteBuffer dst, Object[] values) {
+        checkValues(values);
+        ByteBuffer out = dst.order() == ByteOrder.LITTLE_ENDIAN ? dst : dst.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < types.length; i++) {
+            putField(out, types[i], values[i]);
+        }
+        dst.position(out.position());
+    }
+
+    /**
+     * Encode values
+     *
+     * @param values values of the fields, in the order of the schema
+     * @return Payload bytes
+     * @throws IllegalArgumentException if the values do not match the fields
+     */
+    public byte[] encode(Object[] values) {
+        ByteBuffer buffer = ByteBuffer.allocate(getEncodedSize(values));
+        encode(buffer, values);
+        return buffer.array();
+    }
+
+    /**
+     * Encode values into a frame of the message type of the schema
+     *
+     * @param values values of the fields, in the order of the schema
+     * @param isCompressible whether the payload should be compressed when this makes the frame shorter
+     * @return Frame bytes
+     * @throws IllegalArgumentException if the values do not match the fields
+     */
+    public byte[] encodeFrame(Object[] values, boolean isCompressible) {
+        return WireFrame.encode(messageType, encode(values), isCompressible);
+    }
+
+    /**
+     * Decode values
+     *
+     * @param src source, from its position to its limit, which is left unchanged
+     * @return Values of the fields, in the order of the schema, null for the fields missing in the source
+     * @throws IllegalArgumentException if the source is not valid for the schema
+     */
+    public Object[] decode(ByteBuffer src) {
+        ByteBuffer in = src.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        Object[] values = new Object[types.length];
+        try {
+            for (int i = 0; i < types.length && in.hasRemaining(); i++) {
+                values[i] = getField(in, types[i]);
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("record of type " + messageType + " is truncated", e);
+        }
+        return values;
+    }
+
+    /**
+     * Decode the values of a frame
+     *
+     * @param frame frame of the message type of the schema
+     * @return Values of the fields, in the order of the schema, null for the fields missing in the frame
+     * @throws IllegalArgumentException if the frame is not valid for the schema
+     */
+    public Object[] decode(WireFrame frame) {
+        if (frame.getMessageType() != messageType) {
+            throw new IllegalArgumentException("frame of type " + frame.getMessageType() + " is not of type "
+                + messageType);
+        }
+        return decode(frame.getPayload());
+    }
+
+    private void checkValues(Object[] values) {
+        if (values.length != types.length) {
+            throw new IllegalArgumentException(values.length + " values for " + types.length + " fields");
+        }
+        for (int i = 0; i < types.length; i++) {
+            if (!isValid(types[i], values[i])) {
+                throw new IllegalArgumentException("invalid value for field " + names[i] + " of type " + types[i]);
+            }
+        }
+    }
+
+    private static boolean isValid(FieldType type, Object value) {
+        switch (type) {
+            case BOOL:
+                return value instanceof Boolean;
+            case INT:
+                return value instanceof Integer;
+            case LONG:
+                return value instanceof Long;
+            case FLOAT:
+                return value instanceof Float;
+            case DOUBLE:
+                return value instanceof Double;
+            case STRING:
+                return value instanceof String;
+            default:
+                return value instanceof byte[] || value instanceof ByteBuffer;
+        }
+    }
+
+    private static int getFieldSize(FieldType type, Object value) {
+        switch (type) {
+            case BOOL:
+                return 1;
+            case INT:
+                return Varint.sizeOfSigned((Integer) value);
+            case LONG:
+                return Varint.sizeOfSigned((Long) value);
+            case FLOAT:
+                return FLOAT_SIZE;
+            case DOUBLE:
+                return DOUBLE_SIZE;
+            case STRING:
+                int length = ((String) value).getBytes(UTF_8).length;
+                return Varint.sizeOf(length) + length;
+            default:
+                int size = value instanceof byte[] ? ((byte[]) value).length : ((ByteBuffer) value).remaining();
+                return Varint.sizeOf(size) + size;
+        }
+    }
+
+    private static void putField(ByteBuffer out, FieldType type, Object value) {
+        switch (type) {
+            case BOOL:
+                out.put((byte) ((Boolean) value ? 1 : 0));
+                break;
+            case INT:
+                Varint.putSigned(out, (Integer) value);
+                break;
+            case LONG:
+                Varint.putSigned(out, (Long) value);
+                break;
+            case FLOAT:
+                out.putFloat((Float) value);
+                break;
+            case DOUBLE:
+                out.putDouble((Double) value);
+                break;
+            case STRING:
+                byte[] text = ((String) value).getBytes(UTF_8);
+                Varint.putUnsigned(out, text.length);
+                out.put(text);
+                break;
+            default:
+                if (value instanceof byte[]) {
+                    Varint.putUnsigned(out, ((byte[]) value).length);
+                    out.put((byte[]) value);
+                } else {
+                    ByteBuffer bytes = ((ByteBuffer) value).duplicate();
+                    Varint.putUnsigned(out, bytes.remaining());
+                    out.put(bytes);
+                }
+                break;
+        }
+    }
+
+    private static Object getField(ByteBuffer in, FieldType type) {
+        switch (type) {
+            case BOOL:
+                return in.get() != 0;
+            case INT:
+                long value = Varint.getSigned(in);
+                if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("int field out of range: " + value);
+                }
+                return (int) value;
+            case LONG:
+                return Varint.getSigned(in);
+            case FLOAT:
+                return in.getFloat();
+            case DOUBLE:
+                return in.getDouble();
+            case STRING:
+                return new String(readBytes(in, Varint.getLength(in, in.remaining())), UTF_8);
+            default:
+                int length = Varint.getLength(in, in.remaining());
+                ByteBuffer bytes = in.slice();
+                bytes.limit(length);
+                in.position(in.position() + length);
+                return bytes.asReadOnlyBuffer();
+        }
+    }
+
+    private static byte[] readBytes(ByteBuffer in, int length) {
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Builder of a schema
+     */
+    public static final class Builder {
+        private final int messageType;
+
+        private final List<String> names = new ArrayList<>();
+
+        private final List<FieldType> types = new ArrayList<>();
+
+        /**
+         * Constructor
+         *
+         * @param messageType message type of the frames of the schema
+         */
+        public Builder(int messageType) {
+            this.messageType = messageType;
+        }
+
+        /**
+         * Append a field
+         *
+         * @param name field name, unique in the schema
+         * @param type field type
+         * @return Builder
+         */
+        public Builder addField(String name, FieldType type) {
+            if (names.contains(name)) {
+                throw new IllegalArgumentException("duplicate field " + name);
+            }
+            names.add(name);
+            types.add(type);
+            return this;
+        }
+
+        public RecordSchema build() {
+            return new RecordSchema(this);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.p2p;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Codec of UTF-8 text messages, accepting any payload as the last resort codec
+ * <p>
+ * Each worker thread keeps its own decoder and character buffer, which grows to the longest message it
+ * decoded, so that decoding a burst of messages does not allocate more than the resulting strings.
+ *
+ * @since 2020-08-05
+ */
+public class TextMessageCodec implements MessageCodec<String> {
+    /**
+     * Topic of the text messages
+     */
+    public static final String TOPIC = "text";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int INITIAL_BUFFER_SIZE = 256;
+
+    private static final int MAX_POOLED_BUFFER_SIZE = 64 * 1024;
+
+    private final ThreadLocal<CharsetDecoder> decoders = new ThreadLocal<CharsetDecoder>() {
+        @Override
+        protected CharsetDecoder initialValue() {
+            return UTF_8.newDecoder().onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        }
+    };
+
+    private final ThreadLocal<CharBuffer> buffers = new ThreadLocal<CharBuffer>() {
+        @Override
+        protected CharBuffer initialValue() {
+            return CharBuffer.allocate(INITIAL_BUFFER_SIZE);
+        }
+    };
+
+    @Override
+    public boolean canDecode(byte[] data) {
+        return true;
+    }
+
+    @Override
+    public String decode(byte[] data) {
+        CharBuffer buffer = buffers.get();
+        if (buffer.capacity() < data.length) {
+            // UTF-8 never decodes to more chars than bytes
+            buffer = CharBuffer.allocate(data.length);
+            if (data.length <= MAX_POOLED_BUFFER_SIZE) {
+                buffers.set(buffer);
+            }
+        }
+        buffer.clear();
+        CharsetDecoder decoder = decoders.get();
+        decoder.reset();
+        try {
+            CoderResult result = decoder.decode(ByteBuffer.wrap(data), buffer, true);
+            if (!result.isUnderflow()) {
+                result.throwException();
+            }
+            result = decoder.flush(buffer);
+            if (!result.isUnderflow()) {
+                result.throwException();
+            }
+        } catch (CharacterCodingException e) {
+            throw new IllegalArgumentException("message is not UTF-8 text", e);
+        }
+        buffer.flip();
+        return buffer.toString();
+    }
+
+    @Override
+    public String getTopic(String message) {
+        return TOPIC;
+    }
+}
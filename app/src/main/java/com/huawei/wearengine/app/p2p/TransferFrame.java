@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.p2p;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.CRC32;
+
+/**
+ * Frame of one chunk of a file transfer, carried as the payload of a data message
+ * <p>
+ * The frame is made of little-endian fields: magic "WT", version, type, transfer id, sequence number,
+ * number of chunks, offset of the chunk in the file, file length, CRC32 of the chunk data, length of the
+ * chunk data, followed by the chunk data.
+ *
+ * @since 2020-08-05
+ */
+public final class TransferFrame {
+    /**
+     * Size of the frame header in bytes
+     */
+    public static final int HEADER_SIZE = 32;
+
+    /**
+     * Largest length of a transferred file, the offset and the file length of a chunk being 32-bit fields
+     */
+    public static final long MAX_FILE_LENGTH = Integer.MAX_VALUE;
+
+    private static final short MAGIC = 0x5457;
+
+    private static final byte VERSION = 1;
+
+    private static final byte TYPE_CHUNK = 1;
+
+    private final int transferId;
+
+    private final int sequence;
+
+    private final int chunkCount;
+
+    private final int offset;
+
+    private final int fileLength;
+
+    private final byte[] data;
+
+    private TransferFrame(int transferId, int sequence, int chunkCount, int offset, int fileLength, byte[] data) {
+        this.transferId = transferId;
+        this.sequence = sequence;
+        this.chunkCount = chunkCount;
+        this.offset = offset;
+        this.fileLength = fileLength;
+        this.data = data;
+    }
+
+    public int getTransferId() {
+        return transferId;
+    }
+
+    public int getSequence() {
+        return sequence;
+    }
+
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getFileLength() {
+        return fileLength;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * Encode a chunk frame
+     *
+     * @param transferId id of the transfer
+     * @param sequence sequence number of the chunk, from 0
+     * @param chunkCount number of chunks of the file
+     * @param offset offset of the chunk in the file
+     * @param fileLength length of the file
+     * @param data chunk data
+     * @param length length of the chunk data
+     * @return Frame bytes
+     */
+    public static byte[] encodeChunk(int transferId, int sequence, int chunkCount, int offset, int fileLength,
+        byte[] data, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, length);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putShort(MAGIC).put(VERSION).put(TYPE_CHUNK).putInt(transferId).putInt(sequence)
+            .putInt(chunkCount).putInt(offset).putInt(fileLength).putInt((int) crc.getValue()).putInt(length)
+            .put(data, 0, length);
+        return buffer.array();
+    }
+
+    /**
+     * Check whether received data is a chunk frame
+     *
+     * @param data received data
+     * @return true if the data starts like a chunk frame
+     */
+    public static boolean isChunk(byte[] data) {
+        if (data == null || data.length < HEADER_SIZE) {
+            return false;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        return buffer.getShort() == MAGIC && buffer.get() == VERSION && buffer.get() == TYPE_CHUNK;
+    }
+
+    /**
+     * Decode a chunk frame and verify its checksum
+     *
+     * @param frame frame bytes
+     * @return Decoded frame
+     * @throws IllegalArgumentException if the frame is not a valid chunk frame
+     */
+    public static TransferFrame decode(byte[] frame) {
+        ByteBuffer buffer = ByteBuffer.wrap(frame).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            if (buffer.getShort() != MAGIC || buffer.get() != VERSION || buffer.get() != TYPE_CHUNK) {
+                throw new IllegalArgumentException("not a chunk frame");
+            }
+            int transferId = buffer.getInt();
+            int sequence = buffer.getInt();
+            int chunkCount = buffer.getInt();
+            int offset = buffer.getInt();
+            int fileLength = buffer.getInt();
+            int checksum = buffer.getInt();
+            int length = buffer.getInt();
+            if (length != buffer.remaining() || sequence < 0 || sequence >= chunkCount || offset < 0
+                || offset + length > fileLength) {
+                throw new IllegalArgumentException("invalid chunk " + sequence + " of transfer " + transferId);
+            }
+            byte[] data = new byte[length];
+            buffer.get(data);
+            CRC32 crc = new CRC32();
+            crc.update(data, 0, length);
+            if ((int) crc.getValue() != checksum) {
+                throw new IllegalArgumentException("checksum mismatch in chunk " + sequence);
+            }
+            return new TransferFrame(transferId, sequence, chunkCount, offset, fileLength, data);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("chunk frame is truncated", e);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.p2p;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Content sent by a {@link FileTransfer}, such as a file or the document behind a content URI
+ * <p>
+ * The content is opened when the transfer starts or resumes and closed when it pauses or ends, and its
+ * chunks are read at their offsets, so that a resumed transfer only reads the unconfirmed chunks.
+ *
+ * @since 2020-08-05
+ */
+public interface TransferSource {
+    /**
+     * Get the key of the content, the same as long as the content does not change
+     *
+     * @return Key resuming the unfinished transfer of the same content
+     */
+    String getKey();
+
+    /**
+     * Get a name of the content for the logs
+     *
+     * @return Name
+     */
+    String getName();
+
+    /**
+     * Get the length of the content
+     *
+     * @return Length in bytes
+     */
+    long getLength();
+
+    /**
+     * Open the content for reading
+     *
+     * @return Reader, closed by the caller
+     * @throws IOException if the content cannot be opened
+     */
+    Reader open() throws IOException;
+
+    /**
+     * Reader of the chunks of the content
+     */
+    interface Reader extends Closeable {
+        /**
+         * Read bytes of the content from an offset
+         *
+         * @param dst buffer filled from its position
+         * @param position offset in the content of the first byte read
+         * @return Number of bytes read, -1 at the end of the content
+         * @throws IOException if the content cannot be read
+         */
+        int read(ByteBuffer dst, long position) throws IOException;
+    }
+}
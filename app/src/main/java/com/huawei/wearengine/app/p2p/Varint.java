@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.p2p;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Variable-length integers of the wire frames
+ * <p>
+ * Unsigned values are written 7 bits per byte, low bits first, the high bit of each byte telling whether
+ * another byte follows. Signed values are zigzag encoded first, so that small negative values stay short.
+ *
+ * @since 2020-08-05
+ */
+public final class Varint {
+    /**
+     * Largest number of bytes of a varint
+     */
+    public static final int MAX_SIZE = 10;
+
+    private static final int PAYLOAD_BITS = 7;
+
+    private static final int PAYLOAD_MASK = 0x7F;
+
+    private static final int CONTINUATION = 0x80;
+
+    private static final int LAST_SHIFT = (MAX_SIZE - 1) * PAYLOAD_BITS;
+
+    private static final int LAST_BYTE_MAX = 1;
+
+    private Varint() {
+    }
+
+    /**
+     * Get the number of bytes of an unsigned varint
+     *
+     * @param value value, read as unsigned
+     * @return Size in bytes, from 1 to {@link #MAX_SIZE}
+     */
+    public static int sizeOf(long value) {
+        int size = 1;
+        long rest = value >>> PAYLOAD_BITS;
+        while (rest != 0) {
+            size++;
+            rest >>>= PAYLOAD_BITS;
+        }
+        return size;
+    }
+
+    /**
+     * Get the number of bytes of a signed varint
+     *
+     * @param value value
+     * @return Size in bytes, from 1 to {@link #MAX_SIZE}
+     */
+    public static int sizeOfSigned(long value) {
+        return sizeOf(zigzag(value));
+    }
+
+    /**
+     * Write an unsigned varint
+     *
+     * @param buffer destination, at its position
+     * @param value value, read as unsigned
+     */
+    public static void putUnsigned(ByteBuffer buffer, long value) {
+        long rest = value;
+        while ((rest & ~PAYLOAD_MASK) != 0) {
+            buffer.put((byte) ((rest & PAYLOAD_MASK) | CONTINUATION));
+            rest >>>= PAYLOAD_BITS;
+        }
+        buffer.put((byte) rest);
+    }
+
+    /**
+     * Write a signed varint
+     *
+     * @param buffer destination, at its position
+     * @param value value
+     */
+    public static void putSigned(ByteBuffer buffer, long value) {
+        putUnsigned(buffer, zigzag(value));
+    }
+
+    /**
+     * Read an unsigned varint
+     *
+     * @param buffer source, at its position
+     * @return Value, read as unsigned
+     * @throws IllegalArgumentException if the varint is truncated, longer than {@link #MAX_SIZE} bytes or
+     *     greater than 64 bits
+     */
+    public static long getUnsigned(ByteBuffer buffer) {
+        long value = 0;
+        try {
+            for (int shift = 0; shift < MAX_SIZE * PAYLOAD_BITS; shift += PAYLOAD_BITS) {
+                int next = buffer.get();
+                // The last byte only holds the 64th bit, its other bits would be silently dropped
+                if (shift == LAST_SHIFT && (next & PAYLOAD_MASK) > LAST_BYTE_MAX) {
+                    throw new IllegalArgumentException("varint overflows 64 bits");
+                }
+                value |= (long) (next & PAYLOAD_MASK) << shift;
+                if ((next & CONTINUATION) == 0) {
+                    return value;
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("varint is truncated", e);
+        }
+        throw new IllegalArgumentException("varint is longer than " + MAX_SIZE + " bytes");
+    }
+
+    /**
+     * Read a signed varint
+     *
+     * @param buffer source, at its position
+     * @return Value
+     * @throws IllegalArgumentException if the varint is truncated, longer than {@link #MAX_SIZE} bytes or
+     *     greater than 64 bits
+     */
+    public static long getSigned(ByteBuffer buffer) {
+        long value = getUnsigned(buffer);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Read an unsigned varint which must fit a length
+     *
+     * @param buffer source, at its position
+     * @param max largest accepted value
+     * @return Value, from 0 to max
+     * @throws IllegalArgumentException if the varint is invalid or greater than max
+     */
+    public static int getLength(ByteBuffer buffer, int max) {
+        long value = getUnsigned(buffer);
+        if (value < 0 || value > max) {
+            throw new IllegalArgumentException("invalid length " + value + ", max " + max);
+        }
+        return (int) value;
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> (Long.SIZE - 1));
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.p2p;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Versioned frame of a telemetry or command message, carried as the payload of a data message
+ * <p>
+ * The frame is made of: magic "WF" and version as in the other frames, flags, message type as a varint,
+ * payload length as a varint, the raw payload length as a varint when the payload is compressed, the
+ * payload, and the little-endian CRC32 of all the previous bytes. A compressed payload is zlib deflated;
+ * it is only sent compressed when this makes the frame shorter.
+ * <p>
+ * Uncompressed frames are encoded straight into the destination buffer and decoded as views of the
+ * source buffer, without copying the payload.
+ *
+ * @since 2020-08-05
+ */
+public final class WireFrame {
+    /**
+     * Largest payload of a frame in bytes, before compression
+     */
+    public static final int MAX_PAYLOAD_SIZE = 1024 * 1024;
+
+    /**
+     * Flag of the frames whose payload is compressed
+     */
+    public static final int FLAG_COMPRESSED = 0x01;
+
+    private static final short MAGIC = 0x4657;
+
+    private static final byte VERSION = 1;
+
+    private static final int PREFIX_SIZE = 4;
+
+    private static final int CRC_SIZE = 4;
+
+    private static final int KNOWN_FLAGS = FLAG_COMPRESSED;
+
+    private static final int MIN_COMPRESSED_SIZE = 64;
+
+    private static final int CRC_BUFFER_SIZE = 4096;
+
+    private static final ThreadLocal<Deflater> DEFLATERS = new ThreadLocal<Deflater>() {
+        @Override
+        protected Deflater initialValue() {
+            return new Deflater(Deflater.BEST_SPEED);
+        }
+    };
+
+    private static final ThreadLocal<Inflater> INFLATERS = new ThreadLocal<Inflater>() {
+        @Override
+        protected Inflater initialValue() {
+            return new Inflater();
+        }
+    };
+
+    private final int messageType;
+
+    private final boolean isCompressed;
+
+    private final int encodedSize;
+
+    private final ByteBuffer payload;
+
+    private WireFrame(int messageType, boolean isCompressed, int encodedSize, ByteBuffer payload) {
+        this.messageType = messageType;
+        this.isCompressed = isCompressed;
+        this.encodedSize = encodedSize;
+        this.payload = payload;
+    }
+
+    public int getMessageType() {
+        return messageType;
+    }
+
+    public boolean isCompressed() {
+        return isCompressed;
+    }
+
+    public int getEncodedSize() {
+        return encodedSize;
+    }
+
+    /**
+     * Get the payload, uncompressed
+     *
+     * @return Read-only little-endian view of the payload
+     */
+    public ByteBuffer getPayload() {
+        return payload.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Get the size of an uncompressed frame
+     *
+     * @param messageType message type
+     * @param payloadLength payload length
+     * @return Frame size in bytes
+     */
+    public static int getEncodedSize(int messageType, int payloadLength) {
+        return PREFIX_SIZE + Varint.sizeOf(messageType & 0xFFFFFFFFL) + Varint.sizeOf(payloadLength) + payloadLength
+            + CRC_SIZE;
+    }
+
+    /**
+     * Encode an uncompressed frame into a buffer
+     *
+     * @param dst destination, the frame is written at its position
+     * @param messageType message type, read as unsigned
+     * @param payload payload, from its position to its limit, which is left unchanged
+     * @throws IllegalArgumentException if the payload is larger than {@link #MAX_PAYLOAD_SIZE}
+     * @throws java.nio.BufferOverflowException if the destination has less than
+     *     {@link #getEncodedSize} bytes remaining
+     */
+    public static void encode(ByteBuffer dst, int messageType, ByteBuffer payload) {
+        int length = payload.remaining();
+        checkPayloadSize(length);
+        int start = dst.position();
+        ByteBuffer out = dst.order() == ByteOrder.LITTLE_ENDIAN ? dst : dst.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        out.putShort(MAGIC).put(VERSION).put((byte) 0);
+        Varint.putUnsigned(out, messageType & 0xFFFFFFFFL);
+        Varint.putUnsigned(out, length);
+        out.put(payload.duplicate());
+        out.putInt((int) checksum(out, start, out.position()));
+        dst.position(out.position());
+    }
+
+    /**
+     * Encode a frame
+     *
+     * @param messageType message type, read as unsigned
+     * @param payload payload
+     * @param isCompressible whether the payload should be compressed when this makes the frame shorter
+     * @return Frame bytes
+     * @throws IllegalArgumentException if the payload is larger than {@link #MAX_PAYLOAD_SIZE}
+     */
+    public static byte[] encode(int messageType, byte[] payload, boolean isCompressible) {
+        checkPayloadSize(payload.length);
+        byte[] compressed = isCompressible && payload.length >= MIN_COMPRESSED_SIZE ? deflate(payload) : null;
+        if (compressed == null) {
+            ByteBuffer buffer = ByteBuffer.allocate(getEncodedSize(messageType, payload.length));
+            encode(buffer, messageType, ByteBuffer.wrap(payload));
+            return buffer.array();
+        }
+        int length = compressed.length;
+        int size = PREFIX_SIZE + Varint.sizeOf(messageType & 0xFFFFFFFFL) + Varint.sizeOf(length)
+            + Varint.sizeOf(payload.length) + length + CRC_SIZE;
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putShort(MAGIC).put(VERSION).put((byte) FLAG_COMPRESSED);
+        Varint.putUnsigned(buffer, messageType & 0xFFFFFFFFL);
+        Varint.putUnsigned(buffer, length);
+        Varint.putUnsigned(buffer, payload.length);
+        buffer.put(compressed);
+        buffer.putInt((int) checksum(buffer, 0, buffer.position()));
+        return buffer.array();
+    }
+
+    /**
+     * Check whether received data is a frame
+     *
+     * @param data received data
+     * @return true if the data starts like a frame
+     */
+    public static boolean isFrame(byte[] data) {
+        if (data == null || data.length < PREFIX_SIZE + CRC_SIZE) {
+            return false;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        return buffer.getShort() == MAGIC && buffer.get() == VERSION;
+    }
+
+    /**
+     * Decode a frame which must fill the data
+     *
+     * @param data frame bytes
+     * @return Decoded frame, its payload is shared with the data when it is not compressed
+     * @throws IllegalArgumentException if the data is not a valid frame
+     */
+    public static WireFrame decode(byte[] data) {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        WireFrame frame = decode(buffer);
+        if (buffer.hasRemaining()) {
+            throw new IllegalArgumentException(buffer.remaining() + " trailing bytes after frame");
+        }
+        return frame;
+    }
+
+    /**
+     * Decode the frame at the position of a buffer, which is moved past the frame
+     *
+     * @param src source
+     * @return Decoded frame, its payload is shared with the source when it is not compressed
+     * @throws IllegalArgumentException if the source does not hold a valid frame at its position
+     */
+    public static WireFrame decode(ByteBuffer src) {
+        ByteBuffer in = src.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int start = in.position();
+        try {
+            if (in.getShort() != MAGIC || in.get() != VERSION) {
+                throw new IllegalArgumentException("not a wire frame");
+            }
+            int flags = in.get() & 0xFF;
+            if ((flags & ~KNOWN_FLAGS) != 0) {
+                throw new IllegalArgumentException("unknown frame flags " + Integer.toHexString(flags));
+            }
+            long messageType = Varint.getUnsigned(in);
+            if (messageType > 0xFFFFFFFFL || messageType < 0) {
+                throw new IllegalArgumentException("invalid message type " + messageType);
+            }
+            int length = Varint.getLength(in, MAX_PAYLOAD_SIZE);
+            boolean isCompressed = (flags & FLAG_COMPRESSED) != 0;
+            int rawLength = isCompressed ? Varint.getLength(in, MAX_PAYLOAD_SIZE) : length;
+            if (length > in.remaining() - CRC_SIZE) {
+                throw new IllegalArgumentException("frame is truncated");
+            }
+            int payloadStart = in.position();
+            int end = payloadStart + length;
+            in.position(end);
+            int checksum = in.getInt();
+            if ((int) checksum(in, start, end) != checksum) {
+                throw new IllegalArgumentException("checksum mismatch in frame of type " + messageType);
+            }
+            ByteBuffer payload;
+            if (isCompressed) {
+                payload = ByteBuffer.wrap(inflate(in, payloadStart, length, rawLength)).asReadOnlyBuffer();
+            } else {
+                ByteBuffer view = in.duplicate();
+                view.position(payloadStart);
+                view.limit(end);
+                payload = view.slice().asReadOnlyBuffer();
+            }
+            src.position(in.position());
+            return new WireFrame((int) messageType, isCompressed, in.position() - start, payload);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("frame is truncated", e);
+        }
+    }
+
+    private static void checkPayloadSize(int length) {
+        if (length > MAX_PAYLOAD_SIZE) {
+            throw new IllegalArgumentException("payload of " + length + " bytes is too large");
+        }
+    }
+
+    private static byte[] deflate(byte[] payload) {
+        Deflater deflater = DEFLATERS.get();
+        deflater.reset();
+        deflater.setInput(payload);
+        deflater.finish();
+        // Compression must save more than the raw length varint to be worth it
+        byte[] output = new byte[payload.length - Varint.sizeOf(payload.length)];
+        int length = 0;
+        while (!deflater.finished() && length < output.length) {
+            length += deflater.deflate(output, length, output.length - length);
+        }
+        if (!deflater.finished()) {
+            return null;
+        }
+        byte[] compressed = new byte[length];
+        System.arraycopy(output, 0, compressed, 0, length);
+        return compressed;
+    }
+
+    private static byte[] inflate(ByteBuffer buffer, int offset, int length, int rawLength) {
+        byte[] input = new byte[length];
+        ByteBuffer source = buffer.duplicate();
+        source.position(offset);
+        source.get(input);
+        Inflater inflater = INFLATERS.get();
+        inflater.reset();
+        inflater.setInput(input);
+        byte[] output = new byte[rawLength];
+        int count = 0;
+        try {
+            while (!inflater.finished() && count < rawLength) {
+                int inflated = inflater.inflate(output, count, rawLength - count);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                count += inflated;
+            }
+            if (!inflater.finished() || count != rawLength || inflater.getRemaining() != 0) {
+                throw new IllegalArgumentException("compressed payload does not match its length " + rawLength);
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("invalid compressed payload", e);
+        }
+        return output;
+    }
+
+    private static long checksum(ByteBuffer buffer, int from, int to) {
+        CRC32 crc = new CRC32();
+        if (buffer.hasArray()) {
+            crc.update(buffer.array(), buffer.arrayOffset() + from, to - from);
+            return crc.getValue();
+        }
+        ByteBuffer view = buffer.duplicate();
+        view.limit(to);
+        view.position(from);
+        byte[] chunk = new byte[Math.min(CRC_BUFFER_SIZE, to - from)];
+        while (view.hasRemaining()) {
+            int count = Math.min(chunk.length, view.remaining());
+            view.get(chunk, 0, count);
+            crc.update(chunk, 0, count);
+        }
+        return crc.getValue();
+    }
+}
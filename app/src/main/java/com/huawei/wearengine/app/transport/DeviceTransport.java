@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.transport;
+
+import com.huawei.hmf.tasks.Task;
+import com.huawei.wearengine.device.Device;
+
+import java.util.List;
+
+/**
+ * Source of the devices bonded to the phone
+ * <p>
+ * The calls have the contract of the {@link com.huawei.wearengine.device.DeviceClient} calls of the same
+ * name.
+ *
+ * @since 2020-08-05
+ */
+public interface DeviceTransport {
+    /**
+     * List the bonded devices
+     *
+     * @return Task of the call, null if the call could not be made
+     */
+    Task<List<Device>> getBondedDevices();
+
+    /**
+     * Check whether a bonded device is available
+     *
+     * @return Task of the call, null if the call could not be made
+     */
+    Task<Boolean> hasAvailableDevices();
+}
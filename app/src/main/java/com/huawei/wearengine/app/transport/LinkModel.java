@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.transport;
+
+/**
+ * Model of the Bluetooth LE link between the phone and a simulated watch
+ * <p>
+ * A message is cut into packets of at most the MTU. Each packet takes its size over the bandwidth on the
+ * link and is lost with the loss rate; a lost packet is sent again after a retransmission delay, and the
+ * message fails once a packet is lost more than the retransmission limit. The message is then delivered
+ * after the one-way latency plus a uniform jitter, and acknowledged after the same delay back.
+ *
+ * @since 2020-08-05
+ */
+public final class LinkModel {
+    /**
+     * Link of a BLE 4.2 connection with data length extension, sending about 100 KB/s in practice
+     */
+    public static final LinkModel DEFAULT = new Builder().build();
+
+    private final long bandwidthBytesPerSecond;
+
+    private final long latencyMillis;
+
+    private final long jitterMillis;
+
+    private final int mtu;
+
+    private final double lossRate;
+
+    private final int maxRetransmissions;
+
+    private final long retransmissionDelayMillis;
+
+    private LinkModel(Builder builder) {
+        this.bandwidthBytesPerSecond = builder.bandwidthBytesPerSecond;
+        this.latencyMillis = builder.latencyMillis;
+        this.jitterMillis = builder.jitterMillis;
+        this.mtu = builder.mtu;
+        this.lossRate = builder.lossRate;
+        this.maxRetransmissions = builder.maxRetransmissions;
+        this.retransmissionDelayMillis = builder.retransmissionDelayMillis;
+    }
+
+    public long getBandwidthBytesPerSecond() {
+        return bandwidthBytesPerSecond;
+    }
+
+    public long getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    public long getJitterMillis() {
+        return jitterMillis;
+    }
+
+    public int getMtu() {
+        return mtu;
+    }
+
+    public double getLossRate() {
+        return lossRate;
+    }
+
+    public int getMaxRetransmissions() {
+        return maxRetransmissions;
+    }
+
+    public long getRetransmissionDelayMillis() {
+        return retransmissionDelayMillis;
+    }
+
+    /**
+     * Get the number of packets of a message
+     *
+     * @param length message length in bytes
+     * @return Number of packets, at least 1
+     */
+    public long getPacketCount(long length) {
+        return Math.max(1L, (length + mtu - 1) / mtu);
+    }
+
+    /**
+     * Get the time a packet occupies the link
+     *
+     * @param length packet length in bytes
+     * @return Time in nanoseconds
+     */
+    public long getTransmitNanos(long length) {
+        return length * 1000000000L / bandwidthBytesPerSecond;
+    }
+
+    /**
+     * Builder of a link model
+     */
+    public static final class Builder {
+        private long bandwidthBytesPerSecond = 100 * 1024L;
+
+        private long latencyMillis = 30L;
+
+        private long jitterMillis = 15L;
+
+        private int mtu = 244;
+
+        private double lossRate = 0.01;
+
+        private int maxRetransmissions = 5;
+
+        private long retransmissionDelayMillis = 8L;
+
+        /**
+         * Set the bandwidth, 100 KB/s by default
+         *
+         * @param bandwidthBytesPerSecond bytes sent per second
+         * @return Builder
+         */
+        public Builder setBandwidth(long bandwidthBytesPerSecond) {
+            this.bandwidthBytesPerSecond = bandwidthBytesPerSecond;
+            return this;
+        }
+
+        /**
+         * Set the one-way latency, 30 ms by default
+         *
+         * @param latencyMillis latency
+         * @return Builder
+         */
+        public Builder setLatency(long latencyMillis) {
+            this.latencyMillis = latencyMillis;
+            return this;
+        }
+
+        /**
+         * Set the largest jitter added to the latency, 15 ms by default
+         *
+         * @param jitterMillis jitter
+         * @return Builder
+         */
+        public Builder setJitter(long jitterMillis) {
+            this.jitterMillis = jitterMillis;
+            return this;
+        }
+
+        /**
+         * Set the largest packet payload, 244 bytes by default
+         *
+         * @param mtu packet payload in bytes
+         * @return Builder
+         */
+        public Builder setMtu(int mtu) {
+            this.mtu = mtu;
+            return this;
+        }
+
+        /**
+         * Set the probability of losing a packet, 1% by default
+         *
+         * @param lossRate loss rate, from 0 to 1
+         * @return Builder
+         */
+        public Builder setLossRate(double lossRate) {
+            this.lossRate = lossRate;
+            return this;
+        }
+
+        /**
+         * Set how many times a packet is sent again before the message fails, 5 by default
+         *
+         * @param maxRetransmissions retransmission limit
+         * @param retransmissionDelayMillis delay before sending a lost packet again, 8 ms by default
+         * @return Builder
+         */
+        public Builder setRetransmissions(int maxRetransmissions, long retransmissionDelayMillis) {
+            this.maxRetransmissions = maxRetransmissions;
+            this.retransmissionDelayMillis = retransmissionDelayMillis;
+            return this;
+        }
+
+        /**
+         * Build the link model
+         *
+         * @return Link model
+         * @throws IllegalArgumentException if a parameter is out of range
+         */
+        public LinkModel build() {
+            if (bandwidthBytesPerSecond <= 0 || latencyMillis < 0 || jitterMillis < 0 || mtu <= 0 || lossRate < 0
+                || lossRate >= 1 || maxRetransmissions < 0 || retransmissionDelayMillis < 0) {
+                throw new IllegalArgumentException("invalid link model");
+            }
+            return new LinkModel(this);
+        }
+    }
+}
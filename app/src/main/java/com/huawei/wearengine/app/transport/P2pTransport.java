@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.transport;
+
+import com.huawei.hmf.tasks.Task;
+import com.huawei.wearengine.device.Device;
+import com.huawei.wearengine.p2p.Message;
+import com.huawei.wearengine.p2p.PingCallback;
+import com.huawei.wearengine.p2p.Receiver;
+import com.huawei.wearengine.p2p.SendCallback;
+
+/**
+ * Transport of the P2P messages between the phone and the watch application
+ * <p>
+ * The calls have the contract of the {@link com.huawei.wearengine.p2p.P2pClient} calls of the same name,
+ * so that the senders and receivers can run over the WearEngine client, a simulated link, or decorators
+ * of them.
+ *
+ * @since 2020-08-05
+ */
+public interface P2pTransport {
+    /**
+     * Ping the watch application of a device
+     *
+     * @param device device to ping
+     * @param pingCallback receiver of the ping result
+     * @return Task of the call, null if the call could not be made
+     */
+    Task<Void> ping(Device device, PingCallback pingCallback);
+
+    /**
+     * Send a message to the watch application of a device
+     *
+     * @param device receiving device
+     * @param message message to send
+     * @param sendCallback receiver of the send result and progress
+     * @return Task of the call, null if the call could not be made
+     */
+    Task<Void> send(Device device, Message message, SendCallback sendCallback);
+
+    /**
+     * Register a receiver of the messages of the watch application of a device
+     *
+     * @param device sending device
+     * @param receiver receiver
+     * @return Task of the call, null if the call could not be made
+     */
+    Task<Void> registerReceiver(Device device, Receiver receiver);
+
+    /**
+     * Unregister a receiver
+     *
+     * @param receiver receiver
+     * @return Task of the call, null if the call could not be made
+     */
+    Task<Void> unregisterReceiver(Receiver receiver);
+}
@@ -0,0 +1,342 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.transport;
+
+import com.huawei.hmf.tasks.Task;
+import com.huawei.hmf.tasks.TaskCompletionSource;
+import com.huawei.wearengine.device.Device;
+import com.huawei.wearengine.p2p.Message;
+import com.huawei.wearengine.p2p.PingCallback;
+import com.huawei.wearengine.p2p.Receiver;
+import com.huawei.wearengine.p2p.SendCallback;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process transport to simulated watches, for load tests and benchmarks without a paired watch
+ * <p>
+ * Each watch has its own {@link LinkModel}: the messages in both directions share the link one after the
+ * other, so that a burst of sends queues on the bandwidth as it would over Bluetooth. The results, the
+ * received messages and the tasks are completed on a single link thread, like the binder threads of the
+ * WearEngine client, and the time is measured with {@link System#nanoTime}, so that the transport runs on
+ * a plain JVM.
+ *
+ * @since 2020-08-05
+ */
+public class SimulatedTransport implements P2pTransport, DeviceTransport {
+    /**
+     * Send result code of a delivered message
+     */
+    public static final int RESULT_SUCCESS = 207;
+
+    /**
+     * Send result code of a message whose packets were lost more than the retransmission limit
+     */
+    public static final int RESULT_SEND_FAILED = 206;
+
+    /**
+     * Ping result code of a watch running the peer application
+     */
+    public static final int PING_RESULT_APP_RUNNING = 202;
+
+    /**
+     * Ping result code of a watch whose peer application is not running
+     */
+    public static final int PING_RESULT_APP_NOT_RUNNING = 201;
+
+    private static final String THREAD_NAME = "SimulatedLink";
+
+    private static final int PROGRESS_DONE = 100;
+
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    private final ScheduledExecutorService executor;
+
+    private final Random random;
+
+    private final Map<String, SimulatedWatch> watches = new ConcurrentHashMap<>();
+
+    private final List<SimulatedWatch> watchList = new CopyOnWriteArrayList<>();
+
+    private final ConcurrentHashMap<String, List<Receiver>> receivers = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor with a random seed
+     */
+    public SimulatedTransport() {
+        this(new Random());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param random source of the jitter and losses, seeded for repeatable runs
+     */
+    public SimulatedTransport(Random random) {
+        this.random = random;
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, THREAD_NAME);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Bond a simulated watch
+     *
+     * @param watch watch
+     */
+    public void addWatch(SimulatedWatch watch) {
+        if (watches.put(watch.getDevice().getUuid(), watch) == null) {
+            watchList.add(watch);
+        }
+    }
+
+    /**
+     * Unbond a simulated watch
+     *
+     * @param uuid UUID of the watch
+     */
+    public void removeWatch(String uuid) {
+        SimulatedWatch watch = watches.remove(uuid);
+        if (watch != null) {
+            watchList.remove(watch);
+        }
+    }
+
+    /**
+     * Get a simulated watch
+     *
+     * @param uuid UUID of the watch
+     * @return Watch, null if it is not bonded
+     */
+    public SimulatedWatch getWatch(String uuid) {
+        return uuid == null ? null : watches.get(uuid);
+    }
+
+    /**
+     * Send a data message from the peer application of a watch to the receivers of the phone
+     *
+     * @param uuid UUID of the watch
+     * @param payload message bytes
+     * @return false if the watch is not bonded, connected and running the peer application
+     */
+    public boolean sendFromWatch(String uuid, byte[] payload) {
+        final SimulatedWatch watch = getWatch(uuid);
+        if (watch == null || !watch.isConnected() || !watch.isAppRunning()) {
+            return false;
+        }
+        final Message message = new Message.Builder().setPayload(payload).build();
+        final Transmission transmission = transmit(watch, payload.length);
+        schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (transmission.isLost) {
+                    watch.onLost();
+                    return;
+                }
+                watch.onSent();
+                List<Receiver> deviceReceivers = receivers.get(watch.getDevice().getUuid());
+                if (deviceReceivers == null) {
+                    return;
+                }
+                for (Receiver receiver : deviceReceivers) {
+                    receiver.onReceiveMessage(message);
+                }
+            }
+        }, transmission.deliveryNanos);
+        return true;
+    }
+
+    /**
+     * Stop the link thread, the messages in flight are dropped
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public Task<Void> ping(Device device, final PingCallback pingCallback) {
+        final SimulatedWatch watch = getWatch(device.getUuid());
+        TaskCompletionSource<Void> source = new TaskCompletionSource<>();
+        if (watch == null || !watch.isConnected()) {
+            source.setException(new IllegalStateException("device is not connected"));
+            return source.getTask();
+        }
+        final Transmission transmission = transmit(watch, 1);
+        schedule(new Runnable() {
+            @Override
+            public void run() {
+                int result = watch.isAppRunning() ? PING_RESULT_APP_RUNNING : PING_RESULT_APP_NOT_RUNNING;
+                pingCallback.onPingResult(result);
+            }
+        }, transmission.deliveryNanos + getOneWayNanos(watch.getLink()));
+        source.setResult(null);
+        return source.getTask();
+    }
+
+    @Override
+    public Task<Void> send(Device device, final Message message, final SendCallback sendCallback) {
+        final SimulatedWatch watch = getWatch(device.getUuid());
+        TaskCompletionSource<Void> source = new TaskCompletionSource<>();
+        if (watch == null || !watch.isConnected()) {
+            source.setException(new IllegalStateException("device is not connected"));
+            return source.getTask();
+        }
+        final long length = getSize(message);
+        final Transmission transmission = transmit(watch, length);
+        final long ackNanos = getOneWayNanos(watch.getLink());
+        schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (transmission.isLost || !watch.isAppRunning()) {
+                    watch.onLost();
+                    schedule(newResult(sendCallback, RESULT_SEND_FAILED), ackNanos);
+                    return;
+                }
+                watch.onReceive(message, length);
+                if (watch.isEcho() && message.getType() == Message.MESSAGE_TYPE_DATA) {
+                    sendFromWatch(watch.getDevice().getUuid(), message.getData());
+                }
+                sendCallback.onSendProgress(PROGRESS_DONE);
+                schedule(newResult(sendCallback, RESULT_SUCCESS), ackNanos);
+            }
+        }, transmission.deliveryNanos);
+        source.setResult(null);
+        return source.getTask();
+    }
+
+    @Override
+    public Task<Void> registerReceiver(Device device, Receiver receiver) {
+        TaskCompletionSource<Void> source = new TaskCompletionSource<>();
+        if (getWatch(device.getUuid()) == null) {
+            source.setException(new IllegalStateException("device is not bonded"));
+            return source.getTask();
+        }
+        List<Receiver> deviceReceivers = receivers.get(device.getUuid());
+        if (deviceReceivers == null) {
+            deviceReceivers = new CopyOnWriteArrayList<>();
+            List<Receiver> existing = receivers.putIfAbsent(device.getUuid(), deviceReceivers);
+            if (existing != null) {
+                deviceReceivers = existing;
+            }
+        }
+        deviceReceivers.add(receiver);
+        source.setResult(null);
+        return source.getTask();
+    }
+
+    @Override
+    public Task<Void> unregisterReceiver(Receiver receiver) {
+        for (List<Receiver> deviceReceivers : receivers.values()) {
+            deviceReceivers.remove(receiver);
+        }
+        TaskCompletionSource<Void> source = new TaskCompletionSource<>();
+        source.setResult(null);
+        return source.getTask();
+    }
+
+    @Override
+    public Task<List<Device>> getBondedDevices() {
+        List<Device> devices = new ArrayList<>(watchList.size());
+        for (SimulatedWatch watch : watchList) {
+            devices.add(watch.getDevice());
+        }
+        TaskCompletionSource<List<Device>> source = new TaskCompletionSource<>();
+        source.setResult(devices);
+        return source.getTask();
+    }
+
+    @Override
+    public Task<Boolean> hasAvailableDevices() {
+        boolean isAvailable = false;
+        for (SimulatedWatch watch : watchList) {
+            isAvailable |= watch.isConnected();
+        }
+        TaskCompletionSource<Boolean> source = new TaskCompletionSource<>();
+        source.setResult(isAvailable);
+        return source.getTask();
+    }
+
+    private Transmission transmit(SimulatedWatch watch, long length) {
+        LinkModel link = watch.getLink();
+        long packets = link.getPacketCount(length);
+        long lastPacket = length - (packets - 1) * link.getMtu();
+        long busyNanos = 0;
+        boolean isLost = false;
+        for (long i = 0; i < packets && !isLost; i++) {
+            long packetNanos = link.getTransmitNanos(i == packets - 1 ? Math.max(1L, lastPacket) : link.getMtu());
+            int retransmissions = 0;
+            while (link.getLossRate() > 0 && random.nextDouble() < link.getLossRate()) {
+                if (++retransmissions > link.getMaxRetransmissions()) {
+                    isLost = true;
+                    break;
+                }
+                busyNanos += packetNanos + link.getRetransmissionDelayMillis() * NANOS_PER_MILLI;
+            }
+            busyNanos += packetNanos;
+        }
+        long now = System.nanoTime();
+        long sentAt = watch.reserveLink(now, busyNanos);
+        return new Transmission(sentAt - now + getOneWayNanos(link), isLost);
+    }
+
+    private long getOneWayNanos(LinkModel link) {
+        long jitter = link.getJitterMillis() == 0 ? 0 : (long) (random.nextDouble() * link.getJitterMillis()
+            * NANOS_PER_MILLI);
+        return link.getLatencyMillis() * NANOS_PER_MILLI + jitter;
+    }
+
+    private void schedule(Runnable runnable, long delayNanos) {
+        if (!executor.isShutdown()) {
+            executor.schedule(runnable, delayNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static Runnable newResult(final SendCallback sendCallback, final int resultCode) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                sendCallback.onSendResult(resultCode);
+            }
+        };
+    }
+
+    private static long getSize(Message message) {
+        if (message.getType() == Message.MESSAGE_TYPE_FILE) {
+            File file = message.getFile();
+            return file == null ? 0L : file.length();
+        }
+        byte[] data = message.getData();
+        return data == null ? 0L : data.length;
+    }
+
+    /**
+     * Outcome of sending a message over a link
+     */
+    private static final class Transmission {
+        private final long deliveryNanos;
+
+        private final boolean isLost;
+
+        Transmission(long deliveryNanos, boolean isLost) {
+            this.deliveryNanos = deliveryNanos;
+            this.isLost = isLost;
+        }
+    }
+}
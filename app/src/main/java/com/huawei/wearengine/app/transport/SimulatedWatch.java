@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.transport;
+
+import com.huawei.wearengine.device.Device;
+import com.huawei.wearengine.p2p.Message;
+import com.huawei.wearengine.p2p.Receiver;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Watch running the peer application in a {@link SimulatedTransport}
+ * <p>
+ * The watch counts the messages it receives, hands them to its receiver if any, and may echo the data
+ * messages back to the phone, for round-trip load tests. It can be disconnected, or its application
+ * stopped, while a test runs. The connection state of the {@link Device} itself is not changed.
+ *
+ * @since 2020-08-05
+ */
+public class SimulatedWatch {
+    /**
+     * Package name of the watch application of the codelab
+     */
+    public static final String DEFAULT_PKG_NAME = "com.watch.wearengine";
+
+    private final Device device;
+
+    private final String pkgName;
+
+    private final LinkModel link;
+
+    private final AtomicLong receivedMessages = new AtomicLong();
+
+    private final AtomicLong receivedBytes = new AtomicLong();
+
+    private final AtomicLong lostMessages = new AtomicLong();
+
+    private final AtomicLong sentMessages = new AtomicLong();
+
+    private volatile boolean isConnected = true;
+
+    private volatile boolean isAppRunning = true;
+
+    private volatile boolean isEcho;
+
+    private volatile Receiver receiver;
+
+    // Time the link finishes sending the packets queued so far, guarded by this
+    private long linkFreeAtNanos;
+
+    /**
+     * Constructor of a watch running the codelab application over the default link
+     *
+     * @param device device of the watch
+     */
+    public SimulatedWatch(Device device) {
+        this(device, DEFAULT_PKG_NAME, LinkModel.DEFAULT);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param device device of the watch
+     * @param pkgName package name of the watch application
+     * @param link link between the phone and the watch
+     */
+    public SimulatedWatch(Device device, String pkgName, LinkModel link) {
+        this.device = device;
+        this.pkgName = pkgName;
+        this.link = link;
+    }
+
+    public Device getDevice() {
+        return device;
+    }
+
+    public String getPkgName() {
+        return pkgName;
+    }
+
+    public LinkModel getLink() {
+        return link;
+    }
+
+    public boolean isConnected() {
+        return isConnected;
+    }
+
+    public void setConnected(boolean isConnected) {
+        this.isConnected = isConnected;
+    }
+
+    public boolean isAppRunning() {
+        return isAppRunning;
+    }
+
+    public void setAppRunning(boolean isAppRunning) {
+        this.isAppRunning = isAppRunning;
+    }
+
+    /**
+     * Set whether the data messages received are sent back to the phone
+     *
+     * @param isEcho whether the messages are echoed
+     */
+    public void setEcho(boolean isEcho) {
+        this.isEcho = isEcho;
+    }
+
+    public boolean isEcho() {
+        return isEcho;
+    }
+
+    /**
+     * Set the receiver of the messages of the phone, called on the link thread
+     *
+     * @param receiver receiver, null for none
+     */
+    public void setReceiver(Receiver receiver) {
+        this.receiver = receiver;
+    }
+
+    public long getReceivedMessages() {
+        return receivedMessages.get();
+    }
+
+    public long getReceivedBytes() {
+        return receivedBytes.get();
+    }
+
+    public long getLostMessages() {
+        return lostMessages.get();
+    }
+
+    public long getSentMessages() {
+        return sentMessages.get();
+    }
+
+    void onReceive(Message message, long length) {
+        receivedMessages.incrementAndGet();
+        receivedBytes.addAndGet(length);
+        Receiver current = receiver;
+        if (current != null) {
+            current.onReceiveMessage(message);
+        }
+    }
+
+    void onLost() {
+        lostMessages.incrementAndGet();
+    }
+
+    void onSent() {
+        sentMessages.incrementAndGet();
+    }
+
+    synchronized long reserveLink(long startNanos, long busyNanos) {
+        long start = Math.max(startNanos, linkFreeAtNanos);
+        linkFreeAtNanos = start + busyNanos;
+        return linkFreeAtNanos;
+    }
+}
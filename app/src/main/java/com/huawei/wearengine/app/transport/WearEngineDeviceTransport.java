@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.transport;
+
+import com.huawei.hmf.tasks.Task;
+import com.huawei.wearengine.device.Device;
+import com.huawei.wearengine.device.DeviceClient;
+
+import java.util.List;
+
+/**
+ * Device transport over the WearEngine client, which needs a paired watch
+ *
+ * @since 2020-08-05
+ */
+public class WearEngineDeviceTransport implements DeviceTransport {
+    private final DeviceClient deviceClient;
+
+    /**
+     * Constructor
+     *
+     * @param deviceClient client
+     */
+    public WearEngineDeviceTransport(DeviceClient deviceClient) {
+        this.deviceClient = deviceClient;
+    }
+
+    @Override
+    public Task<List<Device>> getBondedDevices() {
+        return deviceClient.getBondedDevices();
+    }
+
+    @Override
+    public Task<Boolean> hasAvailableDevices() {
+        return deviceClient.hasAvailableDevices();
+    }
+}
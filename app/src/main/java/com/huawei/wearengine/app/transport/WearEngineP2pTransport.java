@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.transport;
+
+import com.huawei.hmf.tasks.Task;
+import com.huawei.wearengine.device.Device;
+import com.huawei.wearengine.p2p.Message;
+import com.huawei.wearengine.p2p.P2pClient;
+import com.huawei.wearengine.p2p.PingCallback;
+import com.huawei.wearengine.p2p.Receiver;
+import com.huawei.wearengine.p2p.SendCallback;
+
+/**
+ * P2P transport over the WearEngine client, which needs a paired watch
+ *
+ * @since 2020-08-05
+ */
+public class WearEngineP2pTransport implements P2pTransport {
+    private final P2pClient p2pClient;
+
+    /**
+     * Constructor
+     *
+     * @param p2pClient client, with the peer package name and fingerprint set
+     */
+    public WearEngineP2pTransport(P2pClient p2pClient) {
+        this.p2pClient = p2pClient;
+    }
+
+    @Override
+    public Task<Void> ping(Device device, PingCallback pingCallback) {
+        return p2pClient.ping(device, pingCallback);
+    }
+
+    @Override
+    public Task<Void> send(Device device, Message message, SendCallback sendCallback) {
+        return p2pClient.send(device, message, sendCallback);
+    }
+
+    @Override
+    public Task<Void> registerReceiver(Device device, Receiver receiver) {
+        return p2pClient.registerReceiver(device, receiver);
+    }
+
+    @Override
+    public Task<Void> unregisterReceiver(Receiver receiver) {
+        return p2pClient.unregisterReceiver(receiver);
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.utils;
+
+import android.graphics.Bitmap;
+
+import com.huawei.wearengine.app.image.BinCompression;
+import com.huawei.wearengine.app.image.BinEncodeOptions;
+import com.huawei.wearengine.app.image.BinImageFormat;
+import com.huawei.wearengine.app.image.BinPixelFormat;
+import com.huawei.wearengine.app.image.PaletteQuantizer;
+import com.huawei.wearengine.app.image.ParallelPixelConverter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Streaming encoder of the watch .bin image file
+ * <p>
+ * Pixels are pulled from the bitmap in bands of rows into small buffers that are reused across bands
+ * and calls, so the memory used does not depend on the size of the image. Each band is compressed on
+ * its own when a compression is set. When the options ask for a parallel conversion, the bands are larger
+ * and each band is converted on several threads. An instance is not thread safe.
+ *
+ * @since 2020-08-05
+ */
+public class BinImageEncoder {
+    private static final int BAND_BUFFER_PIXELS = 16 * 1024;
+
+    private static final int PARALLEL_BAND_BUFFER_PIXELS = 256 * 1024;
+
+    private static final int MAX_HEADER_LENGTH =
+        BinImageFormat.HEADER_SIZE + BinImageFormat.getPaletteSize(PaletteQuantizer.MAX_COLORS);
+
+    private final BinEncodeOptions options;
+
+    private final BinPixelFormat format;
+
+    private final BinCompression compression;
+
+    private int[] bandPixels = new int[0];
+
+    private byte[] bandBytes = new byte[0];
+
+    private ByteBuffer outputBytes = ByteBuffer.allocate(0);
+
+    /**
+     * Constructor of an encoder writing uncompressed 32-bit BGRA pixels
+     */
+    public BinImageEncoder() {
+        this(BinEncodeOptions.DEFAULT);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param options encoding options
+     */
+    public BinImageEncoder(BinEncodeOptions options) {
+        this.options = options;
+        this.format = options.getPixelFormat();
+        this.compression = options.getCompression();
+    }
+
+    public BinEncodeOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * Encode the bitmap and write it to the channel
+     *
+     * @param bitmap source bitmap
+     * @param channel destination channel, which is left open
+     * @throws IOException if writing to the channel fails
+     */
+    public void encode(Bitmap bitmap, WritableByteChannel channel) throws IOException {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int bandRows = getBandRows(width);
+        int rowBytes = width * format.getBytesPerPixel();
+        ensureCapacity(width, bandRows);
+
+        int[] indices = null;
+        byte[] output = outputBytes.array();
+        int headerLength = BinImageFormat.writeHeader(output, 0, options.getColorMode(), width, height);
+        if (format == BinPixelFormat.INDEX8) {
+            // The palette is built from the whole image, so the indices of all the pixels are kept
+            indices = new int[width * height];
+            bitmap.getPixels(indices, 0, width, 0, 0, width, height);
+            int[] palette = options.createQuantizer().quantize(indices, width, height);
+            headerLength = BinImageFormat.writePalette(output, headerLength, palette);
+        }
+        writeFully(channel, headerLength);
+        for (int top = 0; top < height; top += bandRows) {
+            int rows = Math.min(bandRows, height - top);
+            int[] source = indices;
+            int sourceOffset = top * width;
+            if (indices == null) {
+                bitmap.getPixels(bandPixels, 0, width, 0, top, width, rows);
+                source = bandPixels;
+                sourceOffset = 0;
+            }
+            int length;
+            if (compression == BinCompression.NONE) {
+                length = convert(source, sourceOffset, width, rows, output, 0);
+            } else {
+                int rawLength = convert(source, sourceOffset, width, rows, bandBytes, 0);
+                length = compression.compress(bandBytes, 0, rawLength, rowBytes, format.getBytesPerPixel(), output,
+                    0);
+            }
+            writeFully(channel, length);
+        }
+    }
+
+    /**
+     * Encode the bitmap into a new array
+     *
+     * @param bitmap source bitmap
+     * @return Content of the .bin file
+     */
+    public byte[] encode(Bitmap bitmap) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        if (compression != BinCompression.NONE || format == BinPixelFormat.INDEX8) {
+            // The size of compressed or indexed files is not known up front
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                encode(bitmap, Channels.newChannel(out));
+            } catch (IOException e) {
+                throw new IllegalStateException("write to memory failed", e);
+            }
+            return out.toByteArray();
+        }
+        int bandRows = getBandRows(width);
+        ensureCapacity(width, bandRows);
+
+        byte[] result = new byte[BinImageFormat.getFileSize(format, width, height)];
+        int index = BinImageFormat.writeHeader(result, 0, options.getColorMode(), width, height);
+        for (int top = 0; top < height; top += bandRows) {
+            int rows = Math.min(bandRows, height - top);
+            bitmap.getPixels(bandPixels, 0, width, 0, top, width, rows);
+            index = convert(bandPixels, 0, width, rows, result, index);
+        }
+        return result;
+    }
+
+    private int getBandRows(int width) {
+        int bandPixels = options.isParallel() ? PARALLEL_BAND_BUFFER_PIXELS : BAND_BUFFER_PIXELS;
+        return Math.max(1, bandPixels / Math.max(1, width));
+    }
+
+    private int convert(int[] pixels, int pixelOffset, int width, int rows, byte[] dst, int dstOffset) {
+        if (options.isParallel()) {
+            return ParallelPixelConverter.getDefault().encode(format, pixels, pixelOffset, width, rows, dst,
+                dstOffset);
+        }
+        return format.encode(pixels, pixelOffset, width * rows, dst, dstOffset);
+    }
+
+    private void ensureCapacity(int width, int bandRows) {
+        int pixelCount = width * bandRows;
+        if (bandPixels.length < pixelCount) {
+            bandPixels = new int[pixelCount];
+        }
+        int rowBytes = width * format.getBytesPerPixel();
+        int rawLength = rowBytes * bandRows;
+        if (compression != BinCompression.NONE && bandBytes.length < rawLength) {
+            bandBytes = new byte[rawLength];
+        }
+        int outputLength = Math.max(MAX_HEADER_LENGTH,
+            compression.maxCompressedLength(rawLength, rowBytes, format.getBytesPerPixel()));
+        if (outputBytes.capacity() < outputLength) {
+            outputBytes = ByteBuffer.allocate(outputLength);
+        }
+    }
+
+    private void writeFully(WritableByteChannel channel, int length) throws IOException {
+        outputBytes.clear();
+        outputBytes.limit(length);
+        while (outputBytes.hasRemaining()) {
+            channel.write(outputBytes);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.utils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decode images already close to the size they are scaled to
+ * <p>
+ * The bounds of the image are read first. Only the center area with the aspect ratio of the target is
+ * decoded, subsampled by the largest power of two that keeps it at least as large as the target. With a
+ * {@link BitmapPool}, the image is decoded into a pooled bitmap when one has room for it.
+ *
+ * @since 2020-08-05
+ */
+public final class BitmapDecoder {
+    private static final String TAG = "BitmapDecoder";
+
+    private static final int ARGB_8888_BYTES = 4;
+
+    private BitmapDecoder() {
+    }
+
+    /**
+     * Decode the center crop of the image
+     *
+     * @param context context
+     * @param uri Uri address of the image
+     * @param targetWidth width the image is scaled to afterwards
+     * @param targetHeight height the image is scaled to afterwards
+     * @return Decoded bitmap, which is at least as large as the target unless the image is smaller, or
+     *         null if the image cannot be decoded
+     * @throws IOException if the image cannot be read
+     */
+    public static Bitmap decodeCenterCrop(Context context, Uri uri, int targetWidth, int targetHeight)
+        throws IOException {
+        return decodeCenterCrop(context, uri, targetWidth, targetHeight, null);
+    }
+
+    /**
+     * Decode the center crop of the image, into a pooled bitmap if possible
+     *
+     * @param context context
+     * @param uri Uri address of the image
+     * @param targetWidth width the image is scaled to afterwards
+     * @param targetHeight height the image is scaled to afterwards
+     * @param bitmapPool pool of the bitmaps to decode into, null to always decode into a new bitmap
+     * @return Decoded mutable bitmap, which is at least as large as the target unless the image is smaller,
+     *         or null if the image cannot be decoded
+     * @throws IOException if the image cannot be read
+     */
+    public static Bitmap decodeCenterCrop(Context context, Uri uri, int targetWidth, int targetHeight,
+        BitmapPool bitmapPool) throws IOException {
+        BitmapFactory.Options boundsOptions = new BitmapFactory.Options();
+        boundsOptions.inJustDecodeBounds = true;
+        InputStream input = openInputStream(context, uri);
+        try {
+            BitmapFactory.decodeStream(input, null, boundsOptions);
+        } finally {
+            input.close();
+        }
+        int originalWidth = boundsOptions.outWidth;
+        int originalHeight = boundsOptions.outHeight;
+        if (originalWidth <= 0 || originalHeight <= 0) {
+            return null;
+        }
+
+        Rect crop = getCenterCrop(originalWidth, originalHeight, targetWidth, targetHeight);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = calculateInSampleSize(crop.width(), crop.height(), targetWidth, targetHeight);
+        options.inDither = true;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        options.inMutable = true;
+        if (bitmapPool != null) {
+            // The decoders round the subsampled size up at most
+            long byteCount = (long) divideRoundUp(crop.width(), options.inSampleSize)
+                * divideRoundUp(crop.height(), options.inSampleSize) * ARGB_8888_BYTES;
+            options.inBitmap = bitmapPool.getReusable(byteCount);
+        }
+        Bitmap reusable = options.inBitmap;
+        Bitmap bitmap = null;
+        try {
+            bitmap = decodeRegion(context, uri, crop, options);
+            if (bitmap == null) {
+                bitmap = decodeStream(context, uri, options);
+            }
+        } finally {
+            if (bitmap != reusable && bitmapPool != null) {
+                bitmapPool.put(reusable);
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * Compute the largest power-of-two subsample factor that keeps the image at least as large as the target
+     *
+     * @param width width of the decoded area
+     * @param height height of the decoded area
+     * @param targetWidth width the image is scaled to afterwards
+     * @param targetHeight height the image is scaled to afterwards
+     * @return Value for BitmapFactory.Options.inSampleSize
+     */
+    public static int calculateInSampleSize(int width, int height, int targetWidth, int targetHeight) {
+        int inSampleSize = 1;
+        while ((width / (inSampleSize * 2)) >= targetWidth && (height / (inSampleSize * 2)) >= targetHeight) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    /**
+     * Get the largest centered area with the aspect ratio of the target
+     *
+     * @param width image width
+     * @param height image height
+     * @param targetWidth target width
+     * @param targetHeight target height
+     * @return Center crop area
+     */
+    public static Rect getCenterCrop(int width, int height, int targetWidth, int targetHeight) {
+        int cropWidth = width;
+        int cropHeight = height;
+        if ((long) width * targetHeight > (long) height * targetWidth) {
+            cropWidth = (int) ((long) height * targetWidth / targetHeight);
+        } else {
+            cropHeight = (int) ((long) width * targetHeight / targetWidth);
+        }
+        int left = (width - cropWidth) / 2;
+        int top = (height - cropHeight) / 2;
+        return new Rect(left, top, left + cropWidth, top + cropHeight);
+    }
+
+    private static Bitmap decodeStream(Context context, Uri uri, BitmapFactory.Options options) throws IOException {
+        InputStream input = openInputStream(context, uri);
+        try {
+            return BitmapFactory.decodeStream(input, null, options);
+        } catch (IllegalArgumentException e) {
+            if (options.inBitmap == null) {
+                throw e;
+            }
+            Log.w(TAG, "cannot decode into the pooled bitmap, decode into a new one");
+        } finally {
+            input.close();
+        }
+        options.inBitmap = null;
+        input = openInputStream(context, uri);
+        try {
+            return BitmapFactory.decodeStream(input, null, options);
+        } finally {
+            input.close();
+        }
+    }
+
+    private static int divideRoundUp(int dividend, int divisor) {
+        return (dividend + divisor - 1) / divisor;
+    }
+
+    private static Bitmap decodeRegion(Context context, Uri uri, Rect crop, BitmapFactory.Options options)
+        throws IOException {
+        Bitmap inBitmap = options.inBitmap;
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
+            // Before Android O, the region decoder keeps the size of a larger inBitmap instead of reconfiguring it
+            options.inBitmap = null;
+        }
+        InputStream input = openInputStream(context, uri);
+        BitmapRegionDecoder regionDecoder = null;
+        try {
+            regionDecoder = BitmapRegionDecoder.newInstance(input, false);
+            return regionDecoder.decodeRegion(crop, options);
+        } catch (IOException | IllegalArgumentException e) {
+            // Formats such as GIF cannot be region decoded, the whole image is decoded instead
+            Log.w(TAG, "decodeRegion unsupported, fall back to full decode");
+            return null;
+        } finally {
+            options.inBitmap = inBitmap;
+            if (regionDecoder != null) {
+                regionDecoder.recycle();
+            }
+            input.close();
+        }
+    }
+
+    private static InputStream openInputStream(Context context, Uri uri) throws FileNotFoundException {
+        InputStream input = context.getContentResolver().openInputStream(uri);
+        if (input == null) {
+            throw new FileNotFoundException("cannot open " + uri);
+        }
+        return input;
+    }
+}
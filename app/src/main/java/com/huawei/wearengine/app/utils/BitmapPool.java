@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.utils;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pool of mutable bitmaps reused from one capture to the next
+ * <p>
+ * A pooled bitmap is reused for any size and config it has room for, either reconfigured by {@link #get}
+ * or handed to BitmapFactory.Options.inBitmap, which reconfigures it while decoding. Both need API 19,
+ * the minimum of the app. The smallest bitmap with room is reused first, so that a large decoded picture
+ * is kept for the next decode. The bitmaps put beyond the memory cap evict and recycle the bitmaps put the
+ * longest ago. The pool is thread safe.
+ *
+ * @since 2020-08-05
+ */
+public class BitmapPool {
+    /**
+     * Default memory cap, holding a decoded picture, a watch image and its preview
+     */
+    public static final long DEFAULT_MAX_BYTES = 8L * 1024 * 1024;
+
+    private static final int ARGB_8888_BYTES = 4;
+
+    private static final int RGB_565_BYTES = 2;
+
+    private final long maxBytes;
+
+    // Pooled bitmaps, the oldest first, guarded by this
+    private final List<Bitmap> bitmaps = new ArrayList<>();
+
+    private long pooledBytes;
+
+    private long hits;
+
+    private long misses;
+
+    private long evictions;
+
+    private boolean isClosed;
+
+    /**
+     * Constructor
+     *
+     * @param maxBytes largest number of bytes of the pooled bitmaps, 0 to pool nothing
+     */
+    public BitmapPool(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("invalid maxBytes " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Get a mutable bitmap, whose pixels are undefined
+     *
+     * @param width bitmap width
+     * @param height bitmap height
+     * @param config bitmap config
+     * @return Pooled bitmap reconfigured to the size and config, or a new one
+     */
+    public Bitmap get(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = take((long) width * height * getBytesPerPixel(config));
+        if (bitmap == null) {
+            return Bitmap.createBitmap(width, height, config);
+        }
+        if (bitmap.getWidth() != width || bitmap.getHeight() != height || bitmap.getConfig() != config) {
+            bitmap.reconfigure(width, height, config);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Get a bitmap to decode into through BitmapFactory.Options.inBitmap
+     *
+     * @param byteCount number of bytes of the decoded bitmap
+     * @return Pooled bitmap with room for the bytes, null if there is none
+     */
+    public Bitmap getReusable(long byteCount) {
+        return take(byteCount);
+    }
+
+    /**
+     * Give a bitmap back to the pool, the caller must not use it anymore
+     *
+     * @param bitmap bitmap, recycled if it cannot be reused or does not fit in the pool, ignored if null
+     */
+    public void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+        long size = bitmap.getAllocationByteCount();
+        if (!bitmap.isMutable() || size > maxBytes) {
+            bitmap.recycle();
+            return;
+        }
+        List<Bitmap> evicted = new ArrayList<>();
+        synchronized (this) {
+            if (isClosed) {
+                // Given back by a task still running when the pool was closed
+                evicted.add(bitmap);
+            } else {
+                add(bitmap, size, evicted);
+            }
+        }
+        for (Bitmap eldest : evicted) {
+            eldest.recycle();
+        }
+    }
+
+    /**
+     * Recycle all the pooled bitmaps, and the bitmaps put from now on
+     * <p>
+     * Unlike {@link #clear}, the bitmaps given back later by the previews or conversions still running are
+     * recycled instead of being kept in a pool nobody clears anymore.
+     */
+    public void close() {
+        synchronized (this) {
+            isClosed = true;
+        }
+        clear();
+    }
+
+    /**
+     * Recycle all the pooled bitmaps
+     */
+    public void clear() {
+        List<Bitmap> cleared;
+        synchronized (this) {
+            cleared = new ArrayList<>(bitmaps);
+            bitmaps.clear();
+            pooledBytes = 0;
+        }
+        for (Bitmap bitmap : cleared) {
+            bitmap.recycle();
+        }
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized long getPooledBytes() {
+        return pooledBytes;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BitmapPool{bitmaps=" + bitmaps.size() + ", bytes=" + pooledBytes + ", hits=" + hits + ", misses="
+            + misses + ", evictions=" + evictions + "}";
+    }
+
+    private void add(Bitmap bitmap, long size, List<Bitmap> evicted) {
+        for (Bitmap pooled : bitmaps) {
+            if (pooled == bitmap) {
+                return;
+            }
+        }
+        bitmaps.add(bitmap);
+        pooledBytes += size;
+        while (pooledBytes > maxBytes) {
+            Bitmap eldest = bitmaps.remove(0);
+            pooledBytes -= eldest.getAllocationByteCount();
+            evictions++;
+            evicted.add(eldest);
+        }
+    }
+
+    private synchronized Bitmap take(long byteCount) {
+        int best = -1;
+        for (int i = 0; i < bitmaps.size(); i++) {
+            int size = bitmaps.get(i).getAllocationByteCount();
+            if (size >= byteCount && (best < 0 || size < bitmaps.get(best).getAllocationByteCount())) {
+                best = i;
+            }
+        }
+        if (best < 0) {
+            misses++;
+            return null;
+        }
+        hits++;
+        Bitmap bitmap = bitmaps.remove(best);
+        pooledBytes -= bitmap.getAllocationByteCount();
+        return bitmap;
+    }
+
+    private static int getBytesPerPixel(Bitmap.Config config) {
+        switch (config) {
+            case ALPHA_8:
+                return 1;
+            case RGB_565:
+            case ARGB_4444:
+                return RGB_565_BYTES;
+            default:
+                return ARGB_8888_BYTES;
+        }
+    }
+}
@@ -9,8 +9,6 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.Matrix;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Environment;
@@ -21,12 +19,15 @@ import android.util.Log;
 
 import androidx.core.os.EnvironmentCompat;
 
+import com.huawei.wearengine.app.image.BinEncodeOptions;
+import com.huawei.wearengine.app.image.BufferPool;
+import com.huawei.wearengine.app.image.ImageScaler;
+
 import java.io.BufferedOutputStream;
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
@@ -75,17 +76,46 @@ public class FileManager {
 
     private static final int INDEX_TWO = 1;
 
+    private static final int WATCH_IMAGE_SIZE = 454;
+
+    private static final FilePathCache FILE_PATH_CACHE = new FilePathCache(FilePathCache.DEFAULT_MAX_ENTRIES);
+
     private FileManager() {
     }
 
     /**
      * Query the real file path from the database
+     * <p>
+     * The paths are cached, see {@link #getFilePathCache}.
      *
      * @param context context
      * @param contentUri Uri address of the file 
      * @return Return the file path
      */
-    public static String getFilePath(Context context, Uri contentUri) {
+    public static String getFilePath(final Context context, Uri contentUri) {
+        if ((context == null) || (contentUri == null)) {
+            Log.w(TAG, "context or contentUri is null");
+            return null;
+        }
+        FILE_PATH_CACHE.observeMediaStore(context.getApplicationContext().getContentResolver());
+        return FILE_PATH_CACHE.get(contentUri, new FilePathCache.Resolver() {
+            @Override
+            public String resolve(Uri uri) {
+                return resolveFilePath(context, uri);
+            }
+        });
+    }
+
+    /**
+     * Get the cache of the file paths resolved by {@link #getFilePath}
+     *
+     * @return Cache, with its hit and miss counters
+     */
+    public static FilePathCache getFilePathCache() {
+        return FILE_PATH_CACHE;
+    }
+
+    private static String resolveFilePath(Context context, Uri contentUri) {
         String selectFilePath = null;
         int sdkInit = Build.VERSION.SDK_INT;
         int kitkat = Build.VERSION_CODES.KITKAT;
@@ -361,38 +391,90 @@ public class FileManager {
     }
 
     /**
-     * Get the path of the compressed file
+     * Get the path of the compressed file, without writing its JPEG preview
      *
      * @param context Context
      * @param fileUri Original image path
      * @return String File path of the compressed file
      */
     public static String getPathAfterCompressed(Context context, Uri fileUri) {
-        String savePath = Environment.getExternalStorageDirectory().getAbsolutePath();
-        File filePic = new File(savePath);
-        try {
-            if (Environment.getExternalStorageState().equals(Environment.MEDIA_MOUNTED)) {
-                savePath = Environment.getExternalStorageDirectory().getAbsolutePath();
-            } else {
-                savePath = context.getApplicationContext().getFilesDir().getAbsolutePath();
-            }
-            filePic = new File(savePath + "/Pictures/"
-                + new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date()) + ".bin");
-            Log.d(TAG, "image path is " + filePic);
+        return getPathAfterCompressed(context, fileUri, BinEncodeOptions.DEFAULT);
+    }
 
-            if (!filePic.exists()) {
-                filePic.createNewFile();
-            }
+    /**
+     * Get the path of the compressed file, without writing its JPEG preview
+     *
+     * @param context Context
+     * @param fileUri Original image path
+     * @param options Encoding options of the .bin file
+     * @return String File path of the compressed file
+     */
+    public static String getPathAfterCompressed(Context context, Uri fileUri, BinEncodeOptions options) {
+        return getPathAfterCompressed(context, fileUri, options,
+            new PreviewJpegWriter(context, PreviewJpegWriter.Mode.DISABLED, 0));
+    }
+
+    /**
+     * Get the path of the compressed file, and hand the picture to a preview writer once the file is written
+     *
+     * @param context Context
+     * @param fileUri Original image path
+     * @param options Encoding options of the .bin file
+     * @param previewJpegWriter writer of the JPEG preview, which takes over the picture
+     * @return String File path of the compressed file
+     */
+    public static String getPathAfterCompressed(Context context, Uri fileUri, BinEncodeOptions options,
+        PreviewJpegWriter previewJpegWriter) {
+        File filePic = new File(Environment.getExternalStorageDirectory().getAbsolutePath());
+        try {
+            filePic = createBinFile(context);
             Bitmap bitmap = getBitmapFormUri(context, fileUri);
-            saveBitMap(bitmap, context);
-            imgToBin(bitmap, filePic);
+            if (bitmap == null) {
+                Log.w(TAG, "the picture cannot be decoded");
+                return filePic.getAbsolutePath();
+            }
+            imgToBin(bitmap, filePic, options);
+            previewJpegWriter.write(bitmap);
         } catch (IOException e) {
             Log.e(TAG, "Compressed Picture error", e);
         }
         return filePic.getAbsolutePath();
     }
 
-    private static void saveBitMap(Bitmap bitmap, Context context) throws IOException {
+    /**
+     * Create the file the compressed picture is written to
+     *
+     * @param context Context
+     * @return File of the compressed picture
+     * @throws IOException IO exception
+     */
+    public static File createBinFile(Context context) throws IOException {
+        String savePath;
+        if (Environment.getExternalStorageState().equals(Environment.MEDIA_MOUNTED)) {
+            savePath = Environment.getExternalStorageDirectory().getAbsolutePath();
+        } else {
+            savePath = context.getApplicationContext().getFilesDir().getAbsolutePath();
+        }
+        File filePic = new File(savePath + "/Pictures/"
+            + new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date()) + ".bin");
+        Log.d(TAG, "image path is " + filePic);
+
+        if (!filePic.exists()) {
+            filePic.createNewFile();
+        }
+        return filePic;
+    }
+
+    /**
+     * Save the watch image as a JPEG preview next to the .bin file
+     *
+     * @param bitmap bitmap of the watch image
+     * @param context Context
+     * @param quality JPEG quality, from 0 to 100
+     * @return File of the preview
+     * @throws IOException IO exception
+     */
+    public static File saveBitMap(Bitmap bitmap, Context context, int quality) throws IOException {
         String savePath;
         if (Environment.getExternalStorageState().equals(Environment.MEDIA_MOUNTED)) {
             savePath = Environment.getExternalStorageDirectory().getAbsolutePath();
@@ -407,137 +489,195 @@ public class FileManager {
             filePic.createNewFile();
         }
 
+        BufferedOutputStream bos = new BufferedOutputStream(new FileOutputStream(filePic));
         try {
-            BufferedOutputStream bos = new BufferedOutputStream(new FileOutputStream(filePic));
-            bitmap.compress(Bitmap.CompressFormat.JPEG, 100, bos);
+            bitmap.compress(Bitmap.CompressFormat.JPEG, quality, bos);
             bos.flush();
-            bos.close();
-        } catch (IOException e) {
-            e.printStackTrace();
+        } finally {
+            closeQuietly(bos);
         }
         Log.i(TAG, "bmp path is " + filePic);
+        return filePic;
     }
 
     // Compress image size
-    private static Bitmap getBitmapFormUri(Context context, Uri uri) throws FileNotFoundException, IOException {
-        BitmapFactory.Options onlyBoundsOptions = new BitmapFactory.Options();
-        onlyBoundsOptions.inJustDecodeBounds = true;
-        onlyBoundsOptions.inDither = true;
-        onlyBoundsOptions.inPreferredConfig = Bitmap.Config.ARGB_8888;
-        InputStream input = context.getContentResolver().openInputStream(uri);
-        Bitmap bitmap1 = BitmapFactory.decodeStream(input, null, onlyBoundsOptions);
-        input.close();
-        int originalWidth = onlyBoundsOptions.outWidth;
-        int originalHeight = onlyBoundsOptions.outHeight;
-        if ((originalWidth == -1) || (originalHeight == -1)) {
+    private static Bitmap getBitmapFormUri(Context context, Uri uri) throws IOException {
+        Bitmap bitmap = decodeBitmap(context, uri);
+        if (bitmap == null) {
             return null;
         }
-        // Proportional compression
-        BitmapFactory.Options bitmapOptions = new BitmapFactory.Options();
-        bitmapOptions.inSampleSize = 1; 
-        bitmapOptions.inDither = true;
-        bitmapOptions.inPreferredConfig = Bitmap.Config.ARGB_8888;
-        bitmapOptions.inJustDecodeBounds = false;
-        input = context.getContentResolver().openInputStream(uri);
-        Bitmap bitmap = BitmapFactory.decodeStream(input, null, bitmapOptions);
-        input.close();
-        return zoomBitmap(bitmap, 454, 454);
+        return scaleBitmap(bitmap);
     }
 
-    // Transfer the image file into bin format
-    private static void imgToBin(Bitmap bitmap, File file) {
+    /**
+     * Decode the picture close to the size of the watch image
+     *
+     * @param context Context
+     * @param uri Original image path
+     * @return Decoded bitmap, or null if the picture cannot be decoded
+     * @throws IOException IO exception
+     */
+    public static Bitmap decodeBitmap(Context context, Uri uri) throws IOException {
+        return BitmapDecoder.decodeCenterCrop(context, uri, WATCH_IMAGE_SIZE, WATCH_IMAGE_SIZE);
+    }
 
-        try {
-            byte[] bytes = getPicturePixel(bitmap);
-            FileOutputStream out = new FileOutputStream(file);
-            out.write(bytes);
-            out.close();
-        } catch (Exception ex) {
-            ex.printStackTrace();
-        }
+    /**
+     * Decode the picture close to the size of the watch image, into a pooled bitmap if possible
+     *
+     * @param context Context
+     * @param uri Original image path
+     * @param bitmapPool pool of the bitmaps to decode into
+     * @return Decoded bitmap, or null if the picture cannot be decoded
+     * @throws IOException IO exception
+     */
+    public static Bitmap decodeBitmap(Context context, Uri uri, BitmapPool bitmapPool) throws IOException {
+        return BitmapDecoder.decodeCenterCrop(context, uri, WATCH_IMAGE_SIZE, WATCH_IMAGE_SIZE, bitmapPool);
     }
 
-    public static byte[] getPicturePixel(Bitmap bitmap) {
+    /**
+     * Scale the decoded picture to the size of the watch image, the decoded bitmap is recycled
+     *
+     * @param bitmap decoded bitmap
+     * @return Bitmap of the watch image
+     */
+    public static Bitmap scaleBitmap(Bitmap bitmap) {
+        Bitmap zoomedBitmap = zoomBitmap(bitmap, WATCH_IMAGE_SIZE, WATCH_IMAGE_SIZE);
+        if (zoomedBitmap != null && zoomedBitmap != bitmap) {
+            bitmap.recycle();
+        }
+        return zoomedBitmap;
+    }
 
+    /**
+     * Scale the decoded picture to the size of the watch image with reused memory, the decoded bitmap is
+     * given back to the pool
+     *
+     * @param bitmap decoded bitmap
+     * @param scaler scaler of the pixels
+     * @param bitmapPool pool of the bitmaps, where the watch image is taken from
+     * @param bufferPool pool of the pixel buffers of the scaling
+     * @return Mutable bitmap of the watch image
+     */
+    public static Bitmap scaleBitmap(Bitmap bitmap, ImageScaler scaler, BitmapPool bitmapPool,
+        BufferPool bufferPool) {
         int width = bitmap.getWidth();
         int height = bitmap.getHeight();
-        int pixelSize = 4;
-        int headSize = 8;
-
-        int colorMode = 1 << 8 + 0;
-        int widthBitOffset = 0;
-        int heightBitOffset = 16;
-        int header = (bitmap.getWidth() << widthBitOffset) + (bitmap.getHeight() << heightBitOffset);
-        // The arrays of all the pixels, weight by height of image
-        int[] pixels = new int[width * height];
-        byte[] result = new byte[width * height * pixelSize + headSize];
+        if (width == WATCH_IMAGE_SIZE && height == WATCH_IMAGE_SIZE && bitmap.isMutable()) {
+            return bitmap;
+        }
+        int[] pixels = bufferPool.acquireInts(width * height);
+        int[] scaledPixels = bufferPool.acquireInts(WATCH_IMAGE_SIZE * WATCH_IMAGE_SIZE);
+        try {
+            bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+            scaler.cropAndScale(pixels, width, height, scaledPixels, WATCH_IMAGE_SIZE, WATCH_IMAGE_SIZE);
+            Bitmap scaledBitmap = bitmapPool.get(WATCH_IMAGE_SIZE, WATCH_IMAGE_SIZE, Bitmap.Config.ARGB_8888);
+            scaledBitmap.setPixels(scaledPixels, 0, WATCH_IMAGE_SIZE, 0, 0, WATCH_IMAGE_SIZE, WATCH_IMAGE_SIZE);
+            bitmapPool.put(bitmap);
+            return scaledBitmap;
+        } finally {
+            bufferPool.release(pixels);
+            bufferPool.release(scaledPixels);
+        }
+    }
 
-        int index = 0;
+    /**
+     * Transfer the image file into bin format
+     *
+     * @param bitmap bitmap of the watch image
+     * @param file destination file
+     * @param options encoding options of the .bin file
+     * @throws IOException IO exception
+     */
+    public static void imgToBin(Bitmap bitmap, File file, BinEncodeOptions options) throws IOException {
+        imgToBin(bitmap, file, new BinImageEncoder(options));
+    }
 
-        result[index++] = (byte)(colorMode & 0xFF);
-        result[index++] = (byte)((colorMode >> 8) & 0xFF);
-        result[index++] = (byte)((colorMode >> 16) & 0xFF);
-        result[index++] = (byte)((colorMode >> 24) & 0xFF);
+    /**
+     * Transfer the image file into bin format with an encoder reused across images
+     *
+     * @param bitmap bitmap of the watch image
+     * @param file destination file
+     * @param encoder encoder, keeping its buffers for the next image
+     * @throws IOException IO exception
+     */
+    public static void imgToBin(Bitmap bitmap, File file, BinImageEncoder encoder) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            encoder.encode(bitmap, out.getChannel());
+        } finally {
+            closeQuietly(out);
+        }
+    }
 
-        result[index++] = (byte)(header & 0xFF);
-        result[index++] = (byte)((header >> 8) & 0xFF);
-        result[index++] = (byte)((header >> 16) & 0xFF);
-        result[index++] = (byte)((header >> 24) & 0xFF);
+    /**
+     * Write the content of a .bin file
+     *
+     * @param data file content
+     * @param file destination file
+     * @throws IOException IO exception
+     */
+    public static void bytesToBin(byte[] data, File file) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            closeQuietly(out);
+        }
+    }
 
-        bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+    /**
+     * Get the content of the .bin file of the image
+     *
+     * @param bitmap source bitmap
+     * @return Header and BGRA pixels of the image
+     */
+    public static byte[] getPicturePixel(Bitmap bitmap) {
+        return getPicturePixel(bitmap, BinEncodeOptions.DEFAULT);
+    }
 
-        for (int i = 0; i < pixels.length; i++) {
-            int clr = pixels[i];
-            int alpha = (clr & 0xff000000) >> 24;
-            int red = (clr & 0x00ff0000) >> 16;
-            int green = (clr & 0x0000ff00) >> 8;
-            int blue = clr & 0x000000ff;
-            // Log.d("tag", "r=" + red + ",g=" + green + ",b=" + blue);
-            result[index++] = (byte)blue;
-            result[index++] = (byte)green;
-            result[index++] = (byte)red;
-            result[index++] = (byte)alpha;
-        }
-        return result;
+    /**
+     * Get the content of the .bin file of the image
+     *
+     * @param bitmap source bitmap
+     * @param options encoding options of the .bin file
+     * @return Header and encoded pixels of the image
+     */
+    public static byte[] getPicturePixel(Bitmap bitmap, BinEncodeOptions options) {
+        return new BinImageEncoder(options).encode(bitmap);
     }
 
-    public static Bitmap zoomBitmap(Bitmap bitmap, float vw, float vh) {
-        float width = bitmap.getWidth();// Get width and height of the image
-        float height = bitmap.getHeight();
-        float resultWidth = 0;
-        float resultHeight = 0;
-        float scaleWidht, scaleHeight, xBegin, yBegin;// Zoom ratio and X, Y axis translation position
-        Bitmap newbmp = null; // New images
-        Matrix matrix = new Matrix();// Transform matrix
-        if ((width / height) <= vw / vh) {
-            // When the aspect ratio is greater than the requirement, the multiple of the width is taken as the zoom factor
-            scaleWidht = vw / width;
-            scaleHeight = scaleWidht;
-            // To get Y coordinate in the bitmap source file,it needs the translation pixels
-            yBegin = (height - width) / 2;
-            xBegin = 0;
-            resultWidth = width - xBegin;
-            resultHeight = height - 2 * yBegin;
-        } else {
-            scaleWidht = vh / height;
-            scaleHeight = scaleWidht;
-            // To get Y coordinate in the bitmap source file,it needs the translation pixels
-            xBegin = (width - height) / 2;
-            yBegin = 0;
-            resultWidth = width - 2 * xBegin;
-            resultHeight = height - yBegin;
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
         }
-        matrix.postScale(scaleWidht / 1f, scaleHeight / 1f);
         try {
-            if (width - xBegin > 0 && height - yBegin > 0 && bitmap != null)
-                // （Original image, X-axis start position, Y-axis start-up position, X-axis end position, Y-axis end position, zoom matrix, whether to filter the original image)Take absolute value to prevent error reporting
-                newbmp = Bitmap.createBitmap(bitmap, (int)Math.abs(xBegin), (int)Math.abs(yBegin),
-                    (int)Math.abs(resultWidth), (int)Math.abs(resultHeight), matrix, true);
-        } catch (Exception e) {
-            // If an error is reported, it will return to the original image, not blank
-            e.printStackTrace();
+            closeable.close();
+        } catch (IOException e) {
+            Log.w(TAG, "close IOException");
+        }
+    }
+
+    /**
+     * Crop the center of the bitmap to the aspect ratio of the target and scale it to the target
+     *
+     * @param bitmap source bitmap
+     * @param vw target width
+     * @param vh target height
+     * @return New bitmap of the target size, or the source bitmap if it already has the target size or the
+     *         target size is empty
+     */
+    public static Bitmap zoomBitmap(Bitmap bitmap, float vw, float vh) {
+        int targetWidth = Math.round(vw);
+        int targetHeight = Math.round(vh);
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        if (targetWidth <= 0 || targetHeight <= 0 || (width == targetWidth && height == targetHeight)) {
             return bitmap;
         }
-        return newbmp;
+        int[] pixels = new int[width * height];
+        bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+        int[] scaledPixels = new int[targetWidth * targetHeight];
+        new ImageScaler().cropAndScale(pixels, width, height, scaledPixels, targetWidth, targetHeight);
+        return Bitmap.createBitmap(scaledPixels, targetWidth, targetHeight, Bitmap.Config.ARGB_8888);
     }
 }
@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.utils;
+
+import android.content.ContentResolver;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.provider.MediaStore;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Least recently used cache of the file paths resolved from URIs
+ * <p>
+ * Resolving a document URI takes one or two ContentResolver queries, so the paths are kept, as well as the
+ * URIs which resolve to no path. A path is used again only while its file keeps the modification time and
+ * length it had when the path was resolved. A URI without path is resolved again after a while, in case
+ * its provider now knows it. Any change to the MediaStore images, videos or audio drops the whole cache,
+ * since the changed media URIs cannot be matched to the document URIs the paths were resolved from.
+ *
+ * @since 2020-08-05
+ */
+public class FilePathCache {
+    /**
+     * Default number of URIs kept
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 256;
+
+    private static final long NEGATIVE_TTL_MILLIS = 30000L;
+
+    private static final Uri[] OBSERVED_URIS = {MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
+        MediaStore.Video.Media.EXTERNAL_CONTENT_URI, MediaStore.Audio.Media.EXTERNAL_CONTENT_URI};
+
+    private final int maxEntries;
+
+    // Guarded by this
+    private final LinkedHashMap<String, Entry> entries;
+
+    // Incremented by every invalidation, guarded by this
+    private long generation;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final ContentObserver mediaObserver = new ContentObserver(null) {
+        @Override
+        public void onChange(boolean isSelfChange) {
+            invalidateAll();
+        }
+
+        @Override
+        public void onChange(boolean isSelfChange, Uri uri) {
+            invalidateAll();
+        }
+    };
+
+    // Guarded by this
+    private ContentResolver observedResolver;
+
+    /**
+     * Resolves the file path of a URI on a cache miss
+     */
+    public interface Resolver {
+        /**
+         * Resolve the file path of a URI
+         *
+         * @param uri URI of the file
+         * @return File path, null if the URI has none
+         */
+        String resolve(Uri uri);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param maxEntries number of URIs kept, the least recently used ones are evicted first
+     */
+    public FilePathCache(final int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("invalid maxEntries " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<String, Entry>(maxEntries, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Drop the cache whenever the MediaStore changes, until {@link #stopObserving} is called
+     *
+     * @param resolver content resolver of the application context
+     */
+    public synchronized void observeMediaStore(ContentResolver resolver) {
+        if (observedResolver != null) {
+            return;
+        }
+        for (Uri uri : OBSERVED_URIS) {
+            resolver.registerContentObserver(uri, true, mediaObserver);
+        }
+        observedResolver = resolver;
+    }
+
+    /**
+     * Stop dropping the cache on MediaStore changes
+     */
+    public synchronized void stopObserving() {
+        if (observedResolver != null) {
+            observedResolver.unregisterContentObserver(mediaObserver);
+            observedResolver = null;
+        }
+    }
+
+    /**
+     * Get the file path of a URI, resolving it on a miss
+     *
+     * @param uri URI of the file
+     * @param resolver resolver called on a miss, outside of the cache lock
+     * @return File path, null if the URI has none
+     */
+    public String get(Uri uri, Resolver resolver) {
+        String key = uri.toString();
+        long entryGeneration;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (entry.isValid()) {
+                    hits.incrementAndGet();
+                    return entry.path;
+                }
+                entries.remove(key);
+                invalidations.incrementAndGet();
+            }
+            entryGeneration = generation;
+        }
+        misses.incrementAndGet();
+        String path = resolver.resolve(uri);
+        Entry entry = new Entry(path);
+        synchronized (this) {
+            // A path resolved while the cache was invalidated may already be stale
+            if (entryGeneration == generation) {
+                entries.put(key, entry);
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Drop the path of a URI
+     *
+     * @param uri URI of the file
+     */
+    public synchronized void invalidate(Uri uri) {
+        if (entries.remove(uri.toString()) != null) {
+            invalidations.incrementAndGet();
+        }
+    }
+
+    /**
+     * Drop all the paths
+     */
+    public synchronized void invalidateAll() {
+        generation++;
+        invalidations.addAndGet(entries.size());
+        entries.clear();
+    }
+
+    /**
+     * Drop the paths whose files changed and the expired URIs without path
+     */
+    public synchronized void trim() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (!iterator.next().isValid()) {
+                iterator.remove();
+                invalidations.incrementAndGet();
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Get the number of entries dropped because their file or the MediaStore changed, or they expired
+     *
+     * @return Number of invalidated entries
+     */
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    @Override
+    public String toString() {
+        return "FilePathCache{size=" + size() + ", hits=" + getHits() + ", misses=" + getMisses()
+            + ", invalidations=" + getInvalidations() + "}";
+    }
+
+    /**
+     * Path of a URI, with the state of its file when it was resolved
+     */
+    private static final class Entry {
+        private final String path;
+
+        private final long lastModified;
+
+        private final long length;
+
+        private final long resolvedAt;
+
+        Entry(String path) {
+            this.path = path;
+            this.resolvedAt = SystemClock.elapsedRealtime();
+            if (path == null) {
+                this.lastModified = 0L;
+                this.length = 0L;
+            } else {
+                File file = new File(path);
+                this.lastModified = file.lastModified();
+                this.length = file.length();
+            }
+        }
+
+        boolean isValid() {
+            if (path == null) {
+                return SystemClock.elapsedRealtime() - resolvedAt < NEGATIVE_TTL_MILLIS;
+            }
+            File file = new File(path);
+            return file.lastModified() == lastModified && file.length() == length;
+        }
+    }
+}
@@ -0,0 +1,425 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.utils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import com.huawei.wearengine.app.image.BinEncodeOptions;
+import com.huawei.wearengine.app.image.BufferPool;
+import com.huawei.wearengine.app.image.ImageScaler;
+import com.huawei.wearengine.app.image.TileDeltaEncoder;
+import com.huawei.wearengine.app.p2p.FileTransferEngine;
+import com.huawei.wearengine.device.Device;
+import com.huawei.wearengine.p2p.SendCallback;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Background pipeline converting a captured picture into a watch .bin file and sending it
+ * <p>
+ * The stages run one after another on a single background thread. Submitting a new picture cancels the
+ * conversion in progress, and the results of a superseded conversion are never delivered. When the
+ * options enable delta files, a picture sent again to the same device only carries the changed tiles of
+ * the last picture whose delivery the sender confirmed.
+ * The bitmaps, the pixel buffers, the scaler and the encoder are reused from one picture to the next, so
+ * that converting pictures of the same size does not allocate large objects once the pools are warm.
+ *
+ * @since 2020-08-05
+ */
+public class ImageConvertPipeline {
+    private static final String TAG = "ImageConvertPipeline";
+
+    private static final String THREAD_NAME = "ImageConvert";
+
+    private static final int QUEUE_CAPACITY = 2;
+
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    /**
+     * Stages of a conversion
+     */
+    public enum Stage {
+        DECODE,
+        SCALE,
+        ENCODE,
+        SEND
+    }
+
+    /**
+     * Sends the converted file, called on the background thread
+     */
+    public interface Sender {
+        /**
+         * Send the converted file to the device it was converted for
+         *
+         * @param device receiving device given to {@link #submit}, the delta file is only valid for it
+         * @param binPath path of the .bin file
+         * @param callback receiver of the delivery result, {@link FileTransferEngine#RESULT_SUCCESS} once the
+         *     device got the whole file
+         */
+        void send(Device device, String binPath, SendCallback callback);
+    }
+
+    /**
+     * Receives the result of a conversion on the main thread
+     */
+    public interface Callback {
+        /**
+         * The picture was converted and handed to the sender
+         *
+         * @param binPath path of the .bin file
+         * @param timings time spent in each stage
+         */
+        void onSuccess(String binPath, Timings timings);
+
+        /**
+         * The conversion failed
+         *
+         * @param exception cause of the failure
+         */
+        void onFailure(Exception exception);
+    }
+
+    /**
+     * Time spent in each stage of a conversion
+     */
+    public static final class Timings {
+        private final long[] stageNanos = new long[Stage.values().length];
+
+        void record(Stage stage, long nanos) {
+            stageNanos[stage.ordinal()] = nanos;
+        }
+
+        /**
+         * Get the time spent in a stage
+         *
+         * @param stage stage of the conversion
+         * @return Time in milliseconds
+         */
+        public long getMillis(Stage stage) {
+            return stageNanos[stage.ordinal()] / NANOS_PER_MILLI;
+        }
+
+        /**
+         * Get the time spent in all the stages
+         *
+         * @return Time in milliseconds
+         */
+        public long getTotalMillis() {
+            long total = 0;
+            for (long nanos : stageNanos) {
+                total += nanos;
+            }
+            return total / NANOS_PER_MILLI;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            for (Stage stage : Stage.values()) {
+                builder.append(stage.name().toLowerCase(Locale.ENGLISH)).append('=').append(getMillis(stage))
+                    .append("ms ");
+            }
+            return builder.append("total=").append(getTotalMillis()).append("ms").toString();
+        }
+    }
+
+    private final Context context;
+
+    private final Sender sender;
+
+    private final PreviewJpegWriter previewJpegWriter;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final AtomicInteger generation = new AtomicInteger();
+
+    private final ThreadPoolExecutor executor;
+
+    private final TileDeltaEncoder tileDeltaEncoder = new TileDeltaEncoder();
+
+    private final BitmapPool bitmapPool;
+
+    private final BufferPool bufferPool = new BufferPool(BufferPool.DEFAULT_MAX_BYTES);
+
+    // Only used on the background thread
+    private final ImageScaler imageScaler = new ImageScaler();
+
+    // Encoder of the options of the last picture, only used on the background thread
+    private BinImageEncoder binImageEncoder;
+
+    private Future<?> currentTask;
+
+    /**
+     * Constructor
+     *
+     * @param context context
+     * @param sender sender of the converted files
+     * @param previewJpegWriter writer of the JPEG previews, shut down with the pipeline
+     */
+    public ImageConvertPipeline(Context context, Sender sender, PreviewJpegWriter previewJpegWriter) {
+        this(context, sender, previewJpegWriter, new BitmapPool(BitmapPool.DEFAULT_MAX_BYTES));
+    }
+
+    /**
+     * Constructor
+     *
+     * @param context context
+     * @param sender sender of the converted files
+     * @param previewJpegWriter writer of the JPEG previews, shut down with the pipeline
+     * @param bitmapPool pool of the bitmaps, which the preview writer should give the bitmaps back to
+     */
+    public ImageConvertPipeline(Context context, Sender sender, PreviewJpegWriter previewJpegWriter,
+        BitmapPool bitmapPool) {
+        this.context = context.getApplicationContext();
+        this.sender = sender;
+        this.previewJpegWriter = previewJpegWriter;
+        this.bitmapPool = bitmapPool;
+        this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(QUEUE_CAPACITY), new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    return new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            runnable.run();
+                        }
+                    }, THREAD_NAME);
+                }
+            }, new ThreadPoolExecutor.DiscardOldestPolicy());
+    }
+
+    /**
+     * Convert and send a picture to a device, superseding the conversion in progress
+     *
+     * @param uri Uri address of the picture
+     * @param options encoding options of the .bin file
+     * @param device receiving device, the converted file is only sent to it
+     * @param callback receiver of the result
+     */
+    public synchronized void submit(final Uri uri, final BinEncodeOptions options, final Device device,
+        final Callback callback) {
+        final int taskGeneration = generation.incrementAndGet();
+        if (currentTask != null) {
+            currentTask.cancel(true);
+        }
+        currentTask = executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                convert(taskGeneration, uri, options, device, callback);
+            }
+        });
+    }
+
+    /**
+     * Forget the picture last sent to a device, so that the next one is sent whole
+     * <p>
+     * To be called when sending to the device failed or the device was reset.
+     *
+     * @param deviceUuid UUID of the device
+     */
+    public void forgetDevice(String deviceUuid) {
+        tileDeltaEncoder.forget(deviceUuid);
+    }
+
+    /**
+     * Cancel the conversion in progress
+     */
+    public synchronized void cancel() {
+        generation.incrementAndGet();
+        if (currentTask != null) {
+            currentTask.cancel(true);
+            currentTask = null;
+        }
+    }
+
+    public BitmapPool getBitmapPool() {
+        return bitmapPool;
+    }
+
+    public BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * Cancel the conversion in progress and stop the background threads
+     * <p>
+     * The bitmap pool is closed rather than cleared, since the previews still pending give their bitmaps back
+     * after the threads are asked to stop.
+     */
+    public void shutdown() {
+        cancel();
+        executor.shutdownNow();
+        previewJpegWriter.shutdown();
+        bufferPool.clear();
+        bitmapPool.close();
+    }
+
+    private void convert(int taskGeneration, Uri uri, BinEncodeOptions options, Device device, Callback callback) {
+        String deviceUuid = device.getUuid();
+        Timings timings = new Timings();
+        Bitmap bitmap = null;
+        File binFile = null;
+        boolean isSent = false;
+        try {
+            long start = System.nanoTime();
+            bitmap = FileManager.decodeBitmap(context, uri, bitmapPool);
+            if (bitmap == null) {
+                throw new IOException("the picture cannot be decoded");
+            }
+            start = endStage(taskGeneration, timings, Stage.DECODE, start);
+
+            Bitmap scaledBitmap = FileManager.scaleBitmap(bitmap, imageScaler, bitmapPool, bufferPool);
+            if (scaledBitmap == null) {
+                throw new IOException("the picture cannot be scaled");
+            }
+            bitmap = scaledBitmap;
+            start = endStage(taskGeneration, timings, Stage.SCALE, start);
+
+            binFile = FileManager.createBinFile(context);
+            TileDeltaEncoder.Result deltaResult = null;
+            if (options.isDelta()) {
+                int[] pixels = bufferPool.acquireInts(bitmap.getWidth() * bitmap.getHeight());
+                try {
+                    bitmap.getPixels(pixels, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
+                    deltaResult = tileDeltaEncoder.encode(deviceUuid, pixels, bitmap.getWidth(),
+                        bitmap.getHeight(), options);
+                } finally {
+                    bufferPool.release(pixels);
+                }
+                FileManager.bytesToBin(deltaResult.getData(), binFile);
+                Log.i(TAG, "encode " + deltaResult.getChangedTiles() + "/" + deltaResult.getTotalTiles()
+                    + " tiles, delta=" + deltaResult.isDelta());
+            } else {
+                FileManager.imgToBin(bitmap, binFile, getBinImageEncoder(options));
+            }
+            start = endStage(taskGeneration, timings, Stage.ENCODE, start);
+
+            // The image shown by the device is unknown until the delivery is confirmed
+            tileDeltaEncoder.forget(deviceUuid);
+            sender.send(device, binFile.getAbsolutePath(), new DeliveryCallback(deviceUuid, deltaResult));
+            isSent = true;
+            endStage(taskGeneration, timings, Stage.SEND, start);
+
+            // The preview is off the critical path, the writer takes over the bitmap
+            previewJpegWriter.write(bitmap);
+            bitmap = null;
+            Log.i(TAG, "convert " + uri + " in " + timings);
+            deliverSuccess(taskGeneration, callback, binFile.getAbsolutePath(), timings);
+        } catch (CancellationException e) {
+            Log.i(TAG, "convert " + uri + " is cancelled");
+        } catch (IOException | RuntimeException e) {
+            onConvertFailure(taskGeneration, uri, callback, e);
+        } catch (OutOfMemoryError e) {
+            onConvertFailure(taskGeneration, uri, callback, new IOException("the picture does not fit in memory", e));
+        } finally {
+            bitmapPool.put(bitmap);
+            if (binFile != null && !isSent) {
+                deleteQuietly(binFile);
+            }
+        }
+    }
+
+    private void onConvertFailure(int taskGeneration, Uri uri, Callback callback, Exception exception) {
+        if (isCurrent(taskGeneration)) {
+            Log.e(TAG, "convert " + uri + " failed", exception);
+            deliverFailure(taskGeneration, callback, exception);
+        } else {
+            Log.i(TAG, "convert " + uri + " is cancelled");
+        }
+    }
+
+    private BinImageEncoder getBinImageEncoder(BinEncodeOptions options) {
+        if (binImageEncoder == null || binImageEncoder.getOptions() != options) {
+            binImageEncoder = new BinImageEncoder(options);
+        }
+        return binImageEncoder;
+    }
+
+    private long endStage(int taskGeneration, Timings timings, Stage stage, long start) {
+        long end = System.nanoTime();
+        timings.record(stage, end - start);
+        if (!isCurrent(taskGeneration) || Thread.currentThread().isInterrupted()) {
+            throw new CancellationException(stage.name());
+        }
+        return end;
+    }
+
+    private boolean isCurrent(int taskGeneration) {
+        return generation.get() == taskGeneration;
+    }
+
+    private void deliverSuccess(final int taskGeneration, final Callback callback, final String binPath,
+        final Timings timings) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (isCurrent(taskGeneration)) {
+                    callback.onSuccess(binPath, timings);
+                }
+            }
+        });
+    }
+
+    private void deliverFailure(final int taskGeneration, final Callback callback, final Exception exception) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (isCurrent(taskGeneration)) {
+                    callback.onFailure(exception);
+                }
+            }
+        });
+    }
+
+    /**
+     * Remembers the image of a delivered file as the base of the next delta file of the device
+     */
+    private final class DeliveryCallback implements SendCallback {
+        private final String deviceUuid;
+
+        private final TileDeltaEncoder.Result deltaResult;
+
+        DeliveryCallback(String deviceUuid, TileDeltaEncoder.Result deltaResult) {
+            this.deviceUuid = deviceUuid;
+            this.deltaResult = deltaResult;
+        }
+
+        @Override
+        public void onSendResult(int resultCode) {
+            if (resultCode != FileTransferEngine.RESULT_SUCCESS) {
+                tileDeltaEncoder.forget(deviceUuid);
+            } else if (deltaResult != null) {
+                tileDeltaEncoder.onSent(deviceUuid, deltaResult);
+            }
+        }
+
+        @Override
+        public void onSendProgress(long progress) {
+        }
+    }
+
+    private static void deleteQuietly(File file) {
+        if (!file.delete()) {
+            Log.w(TAG, "delete " + file + " failed");
+        }
+    }
+}
@@ -0,0 +1,27 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.utils;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Executor posting its tasks to the main thread, the default callback executor of the senders and registries
+ * <p>
+ * The classes calling back on the main thread take their callback executor as a constructor argument, so
+ * that they can run on a plain JVM, in tests and benchmarks, with an executor of their own.
+ *
+ * @since 2020-08-05
+ */
+public final class MainThreadExecutor implements Executor {
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    @Override
+    public void execute(Runnable runnable) {
+        mainHandler.post(runnable);
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.utils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writer of the JPEG preview of converted watch images
+ * <p>
+ * The watch never receives the preview, so it can be disabled, or written on a lowest-priority thread
+ * after the .bin file is handed to the sender. The writer takes ownership of the bitmaps it is given
+ * and, once written, gives them back to its {@link BitmapPool} if any, or recycles them.
+ *
+ * @since 2020-08-05
+ */
+public class PreviewJpegWriter {
+    private static final String TAG = "PreviewJpegWriter";
+
+    private static final String THREAD_NAME = "PreviewJpegWriter";
+
+    private static final int QUEUE_CAPACITY = 2;
+
+    private static final int MAX_QUALITY = 100;
+
+    /**
+     * When the preview is written
+     */
+    public enum Mode {
+        /**
+         * The preview is not written
+         */
+        DISABLED,
+
+        /**
+         * The preview is written on the calling thread
+         */
+        SYNC,
+
+        /**
+         * The preview is written later on a lowest-priority thread, previews are dropped while it is busy
+         */
+        DEFERRED
+    }
+
+    private final Context context;
+
+    private final Mode mode;
+
+    private final int quality;
+
+    private final BitmapPool bitmapPool;
+
+    private ThreadPoolExecutor executor;
+
+    /**
+     * Constructor
+     *
+     * @param context context
+     * @param mode when the preview is written
+     * @param quality JPEG quality, from 0 to 100
+     */
+    public PreviewJpegWriter(Context context, Mode mode, int quality) {
+        this(context, mode, quality, null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param context context
+     * @param mode when the preview is written
+     * @param quality JPEG quality, from 0 to 100
+     * @param bitmapPool pool the written bitmaps are given back to, null to recycle them
+     */
+    public PreviewJpegWriter(Context context, Mode mode, int quality, BitmapPool bitmapPool) {
+        if (quality < 0 || quality > MAX_QUALITY) {
+            throw new IllegalArgumentException("quality must be in [0, 100]: " + quality);
+        }
+        this.context = context.getApplicationContext();
+        this.mode = mode;
+        this.quality = quality;
+        this.bitmapPool = bitmapPool;
+        if (mode == Mode.DEFERRED) {
+            executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(QUEUE_CAPACITY), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        return new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                Process.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
+                                runnable.run();
+                            }
+                        }, THREAD_NAME);
+                    }
+                });
+        }
+    }
+
+    /**
+     * Write the preview of the watch image according to the mode
+     *
+     * @param bitmap bitmap of the watch image, released by the writer
+     */
+    public void write(final Bitmap bitmap) {
+        switch (mode) {
+            case SYNC:
+                writeAndRecycle(bitmap);
+                break;
+            case DEFERRED:
+                try {
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            writeAndRecycle(bitmap);
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    Log.w(TAG, "preview writer is busy, drop the preview");
+                    release(bitmap);
+                }
+                break;
+            default:
+                release(bitmap);
+                break;
+        }
+    }
+
+    /**
+     * Stop the background thread once the pending previews are written
+     */
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    private void writeAndRecycle(Bitmap bitmap) {
+        try {
+            FileManager.saveBitMap(bitmap, context, quality);
+        } catch (IOException e) {
+            Log.e(TAG, "write preview error", e);
+        } finally {
+            release(bitmap);
+        }
+    }
+
+    private void release(Bitmap bitmap) {
+        if (bitmapPool == null) {
+            bitmap.recycle();
+        } else {
+            bitmapPool.put(bitmap);
+        }
+    }
+}
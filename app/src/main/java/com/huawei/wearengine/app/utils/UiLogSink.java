@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.utils;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.Choreographer;
+import android.widget.TextView;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Log sink showing the last lines in a TextView, at most once per frame
+ * <p>
+ * Lines are mirrored to logcat at once and written without locking into a ring buffer, which may be done
+ * from any thread. On the next frame the main thread moves the new lines to the retained lines, capped at
+ * the line limit, and sets the text of the view once. When lines arrive faster than frames, the oldest
+ * ones are only dropped from the view, so the UI cost does not depend on the event rate.
+ *
+ * @since 2020-08-05
+ */
+public class UiLogSink {
+    /**
+     * Default number of lines retained in the view
+     */
+    public static final int DEFAULT_MAX_LINES = 500;
+
+    private final String tag;
+
+    private final TextView textView;
+
+    private final int scrollMargin;
+
+    private final int maxLines;
+
+    private final int mask;
+
+    private final AtomicReferenceArray<Entry> ring;
+
+    private final AtomicLong writeSequence = new AtomicLong();
+
+    private final AtomicBoolean isFrameScheduled = new AtomicBoolean();
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final String[] lines;
+
+    private final Choreographer.FrameCallback frameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            isFrameScheduled.set(false);
+            if (drain()) {
+                render();
+            }
+        }
+    };
+
+    private final Runnable scheduleFrame = new Runnable() {
+        @Override
+        public void run() {
+            Choreographer.getInstance().postFrameCallback(frameCallback);
+        }
+    };
+
+    private int firstLine;
+
+    private int lineCount;
+
+    private long readSequence;
+
+    /**
+     * Constructor with the default line limit
+     *
+     * @param tag logcat tag of the lines
+     * @param textView view showing the lines
+     * @param scrollMargin margin kept below the last line when scrolling
+     */
+    public UiLogSink(String tag, TextView textView, int scrollMargin) {
+        this(tag, textView, scrollMargin, DEFAULT_MAX_LINES);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param tag logcat tag of the lines
+     * @param textView view showing the lines
+     * @param scrollMargin margin kept below the last line when scrolling
+     * @param maxLines number of lines retained in the view
+     */
+    public UiLogSink(String tag, TextView textView, int scrollMargin, int maxLines) {
+        if (maxLines < 1) {
+            throw new IllegalArgumentException("invalid maxLines " + maxLines);
+        }
+        this.tag = tag;
+        this.textView = textView;
+        this.scrollMargin = scrollMargin;
+        this.maxLines = maxLines;
+        int capacity = Integer.highestOneBit((maxLines - 1) | 1) << 1;
+        this.mask = capacity - 1;
+        this.ring = new AtomicReferenceArray<>(capacity);
+        this.lines = new String[maxLines];
+    }
+
+    /**
+     * Log a line, from any thread
+     *
+     * @param line line to log
+     */
+    public void log(String line) {
+        Log.i(tag, line);
+        long sequence = writeSequence.getAndIncrement();
+        ring.set((int) (sequence & mask), new Entry(sequence, line));
+        if (isFrameScheduled.compareAndSet(false, true)) {
+            mainHandler.post(scheduleFrame);
+        }
+    }
+
+    /**
+     * Clear the view and the retained lines, on the main thread
+     */
+    public void clear() {
+        readSequence = writeSequence.get();
+        firstLine = 0;
+        lineCount = 0;
+        textView.setText("");
+        textView.scrollTo(0, 0);
+    }
+
+    private boolean drain() {
+        long end = writeSequence.get();
+        if (end - readSequence > mask + 1) {
+            readSequence = end - mask - 1;
+        }
+        boolean isChanged = false;
+        while (readSequence < end) {
+            Entry entry = ring.get((int) (readSequence & mask));
+            if (entry == null || entry.sequence < readSequence) {
+                // The writer claimed the slot but has not stored the line yet
+                if (isFrameScheduled.compareAndSet(false, true)) {
+                    mainHandler.post(scheduleFrame);
+                }
+                break;
+            }
+            if (entry.sequence == readSequence) {
+                addLine(entry.line);
+                isChanged = true;
+            }
+            readSequence++;
+        }
+        return isChanged;
+    }
+
+    private void addLine(String line) {
+        if (lineCount < maxLines) {
+            lines[(firstLine + lineCount) % maxLines] = line;
+            lineCount++;
+        } else {
+            lines[firstLine] = line;
+            firstLine = (firstLine + 1) % maxLines;
+        }
+    }
+
+    private void render() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < lineCount; i++) {
+            builder.append(lines[(firstLine + i) % maxLines]).append(System.lineSeparator());
+        }
+        textView.setText(builder);
+        int offset = textView.getLineCount() * textView.getLineHeight();
+        if (offset > textView.getHeight()) {
+            textView.scrollTo(0, offset - textView.getHeight() + scrollMargin);
+        }
+    }
+
+    /**
+     * Line stored in a slot of the ring buffer
+     */
+    private static final class Entry {
+        private final long sequence;
+
+        private final String line;
+
+        Entry(long sequence, String line) {
+            this.sequence = sequence;
+            this.line = line;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.image;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Round trips of the compressions of the watch .bin image file
+ *
+ * @since 2020-08-05
+ */
+public class BinCompressionTest {
+    private static final int[] BYTES_PER_PIXEL = {1, 2, 3, 4};
+
+    private static final int[] WIDTHS = {1, 2, 127, 128, 129, 454};
+
+    private static final int ROWS = 5;
+
+    private static final int SEED = 20200805;
+
+    /**
+     * Patterns of raw rows, each byte computed from its pixel and its byte in the pixel
+     */
+    private enum Pattern {
+        FLAT {
+            @Override
+            int getByte(Random random, int pixel, int channel) {
+                return 0;
+            }
+        },
+        NOISE {
+            @Override
+            int getByte(Random random, int pixel, int channel) {
+                return random.nextInt();
+            }
+        },
+        // A literal pixel then a run of 2, the worst case of the run-length coding
+        LITERAL_THEN_PAIR {
+            @Override
+            int getByte(Random random, int pixel, int channel) {
+                return pixel / 3 * 2 + Math.min(pixel % 3, 1) + channel;
+            }
+        },
+        PAIRS {
+            @Override
+            int getByte(Random random, int pixel, int channel) {
+                return pixel / 2 + channel;
+            }
+        },
+        FEW_COLORS {
+            @Override
+            int getByte(Random random, int pixel, int channel) {
+                return random.nextInt(4) * 0x40 + channel;
+            }
+        },
+        REPEATED_NOISE {
+            @Override
+            int getByte(Random random, int pixel, int channel) {
+                return (pixel % 37) * 7 + channel * 13;
+            }
+        };
+
+        abstract int getByte(Random random, int pixel, int channel);
+
+        byte[] createRows(int width, int rows, int bytesPerPixel) {
+            Random random = new Random(SEED);
+            byte[] raw = new byte[width * rows * bytesPerPixel];
+            int index = 0;
+            for (int row = 0; row < rows; row++) {
+                for (int pixel = 0; pixel < width; pixel++) {
+                    for (int channel = 0; channel < bytesPerPixel; channel++) {
+                        raw[index++] = (byte) getByte(random, pixel, channel);
+                    }
+                }
+            }
+            return raw;
+        }
+    }
+
+    @Test
+    public void roundTripOfEveryPattern() {
+        for (BinCompression compression : BinCompression.values()) {
+            for (int bytesPerPixel : BYTES_PER_PIXEL) {
+                for (int width : WIDTHS) {
+                    for (Pattern pattern : Pattern.values()) {
+                        String name = compression + " " + bytesPerPixel + "bpp " + width + " " + pattern;
+                        assertRoundTrip(name, compression, pattern.createRows(width, ROWS, bytesPerPixel),
+                            width * bytesPerPixel, bytesPerPixel);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void roundTripOfChainedBands() {
+        int bytesPerPixel = 4;
+        int rowBytes = 454 * bytesPerPixel;
+        byte[] raw = Pattern.REPEATED_NOISE.createRows(454, 12, bytesPerPixel);
+        for (BinCompression compression : BinCompression.values()) {
+            byte[] compressed = new byte[compression.maxCompressedLength(raw.length, rowBytes, bytesPerPixel)];
+            int out = 0;
+            for (int band = 0; band < raw.length; band += rowBytes * 4) {
+                out = compression.compress(raw, band, rowBytes * 4, rowBytes, bytesPerPixel, compressed, out);
+            }
+            byte[] decompressed = new byte[raw.length];
+            assertEquals(compression.name(), out,
+                compression.decompress(compressed, 0, decompressed, 0, raw.length, bytesPerPixel));
+            assertArrayEquals(compression.name(), raw, decompressed);
+        }
+    }
+
+    @Test
+    public void flatRowsShrink() {
+        int bytesPerPixel = 4;
+        byte[] raw = Pattern.FLAT.createRows(454, 454, bytesPerPixel);
+        for (BinCompression compression : new BinCompression[] {BinCompression.ROW_RLE, BinCompression.LZ}) {
+            byte[] compressed = compress(compression, raw, 454 * bytesPerPixel, bytesPerPixel);
+            assertTrue(compression + " " + compressed.length, compressed.length * 50 < raw.length);
+        }
+    }
+
+    @Test
+    public void maxRawLengthBoundsTheDecompressedData() {
+        int bytesPerPixel = 2;
+        byte[] raw = Pattern.FLAT.createRows(LzBlockCodec.MAX_BLOCK_SIZE / bytesPerPixel, 8, bytesPerPixel);
+        for (BinCompression compression : BinCompression.values()) {
+            byte[] compressed = compress(compression, raw, LzBlockCodec.MAX_BLOCK_SIZE, bytesPerPixel);
+            assertTrue(compression.name(), raw.length <= compression.maxRawLength(compressed.length, bytesPerPixel));
+        }
+    }
+
+    @Test
+    public void truncatedDataIsRejected() {
+        int bytesPerPixel = 3;
+        byte[] raw = Pattern.PAIRS.createRows(129, ROWS, bytesPerPixel);
+        for (BinCompression compression : BinCompression.values()) {
+            byte[] compressed = compress(compression, raw, 129 * bytesPerPixel, bytesPerPixel);
+            for (int length = 0; length < compressed.length; length++) {
+                try {
+                    compression.decompress(Arrays.copyOf(compressed, length), 0, new byte[raw.length], 0, raw.length,
+                        bytesPerPixel);
+                    fail(compression + " accepted " + length + " of " + compressed.length + " bytes");
+                } catch (IllegalArgumentException e) {
+                    // Expected
+                }
+            }
+        }
+    }
+
+    @Test
+    public void corruptedDataIsRejectedOrDecoded() {
+        int bytesPerPixel = 4;
+        byte[] raw = Pattern.REPEATED_NOISE.createRows(454, ROWS, bytesPerPixel);
+        Random random = new Random(SEED);
+        for (BinCompression compression : BinCompression.values()) {
+            byte[] compressed = compress(compression, raw, 454 * bytesPerPixel, bytesPerPixel);
+            for (int i = 0; i < 2000; i++) {
+                byte[] corrupted = compressed.clone();
+                corrupted[random.nextInt(corrupted.length)] = (byte) random.nextInt();
+                try {
+                    compression.decompress(corrupted, 0, new byte[raw.length], 0, raw.length, bytesPerPixel);
+                } catch (IllegalArgumentException e) {
+                    // Expected, any other exception fails the test
+                }
+            }
+        }
+    }
+
+    private static void assertRoundTrip(String name, BinCompression compression, byte[] raw, int rowBytes,
+        int bytesPerPixel) {
+        int maxLength = compression.maxCompressedLength(raw.length, rowBytes, bytesPerPixel);
+        // Compressed at an offset into an array of exactly the largest size, to catch overruns
+        byte[] compressed = new byte[1 + maxLength];
+        int end = compression.compress(raw, 0, raw.length, rowBytes, bytesPerPixel, compressed, 1);
+        assertTrue(name, end <= compressed.length);
+
+        byte[] decompressed = new byte[raw.length + 2];
+        assertEquals(name, end, compression.decompress(compressed, 1, decompressed, 1, raw.length, bytesPerPixel));
+        assertArrayEquals(name, raw, Arrays.copyOfRange(decompressed, 1, 1 + raw.length));
+    }
+
+    private static byte[] compress(BinCompression compression, byte[] raw, int rowBytes, int bytesPerPixel) {
+        byte[] compressed = new byte[compression.maxCompressedLength(raw.length, rowBytes, bytesPerPixel)];
+        return Arrays.copyOf(compressed,
+            compression.compress(raw, 0, raw.length, rowBytes, bytesPerPixel, compressed, 0));
+    }
+}
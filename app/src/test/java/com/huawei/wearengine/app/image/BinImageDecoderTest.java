@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.image;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Decoding of valid, truncated and corrupted watch .bin image files
+ *
+ * @since 2020-08-05
+ */
+public class BinImageDecoderTest {
+    private static final int WIDTH = 96;
+
+    private static final int HEIGHT = 64;
+
+    private static final int SEED = 20200805;
+
+    private static final int FUZZ_ROUNDS = 3000;
+
+    @Test
+    public void compressedFilesRoundTrip() {
+        int[] pixels = createPixels();
+        for (BinCompression compression : BinCompression.values()) {
+            BinEncodeOptions options = new BinEncodeOptions.Builder().setCompression(compression).build();
+            BinImage image = BinImageDecoder.decode(BinPixelsEncoder.encode(pixels, WIDTH, HEIGHT, options));
+            assertArrayEquals(compression.name(), pixels, image.getPixels());
+        }
+    }
+
+    @Test
+    public void corruptedSizeIsRejected() {
+        for (BinCompression compression : BinCompression.values()) {
+            BinEncodeOptions options = new BinEncodeOptions.Builder().setCompression(compression).build();
+            byte[] data = BinPixelsEncoder.encode(createPixels(), WIDTH, HEIGHT, options);
+            // 65535 x 65535 pixels, which would take 16 GB
+            Arrays.fill(data, 4, BinImageFormat.HEADER_SIZE, (byte) 0xFF);
+            assertRejected(compression.name(), data);
+            // 8192 x 8192 pixels, which is within the size limit but not in the data
+            BinImageFormat.writeHeader(data, 0, options.getColorMode(), 8192, 8192);
+            assertRejected(compression.name(), data);
+        }
+    }
+
+    @Test
+    public void truncatedFilesAreRejected() {
+        for (BinCompression compression : BinCompression.values()) {
+            BinEncodeOptions options = new BinEncodeOptions.Builder().setCompression(compression).build();
+            byte[] data = BinPixelsEncoder.encode(createPixels(), WIDTH, HEIGHT, options);
+            for (int length = 0; length < data.length; length += 7) {
+                assertRejected(compression + " " + length, Arrays.copyOf(data, length));
+            }
+        }
+    }
+
+    @Test
+    public void corruptedFilesAreRejectedOrDecoded() {
+        Random random = new Random(SEED);
+        for (BinCompression compression : BinCompression.values()) {
+            BinEncodeOptions options = new BinEncodeOptions.Builder().setPixelFormat(BinPixelFormat.RGB565)
+                .setCompression(compression).build();
+            byte[] data = BinPixelsEncoder.encode(createPixels(), WIDTH, HEIGHT, options);
+            for (int i = 0; i < FUZZ_ROUNDS; i++) {
+                byte[] corrupted = data.clone();
+                // The header is corrupted as often as the pixels
+                int index = random.nextBoolean() ? random.nextInt(BinImageFormat.HEADER_SIZE)
+                    : random.nextInt(corrupted.length);
+                corrupted[index] = (byte) random.nextInt();
+                try {
+                    BinImageDecoder.decode(corrupted);
+                } catch (IllegalArgumentException e) {
+                    // Expected, any other exception or error fails the test
+                }
+            }
+        }
+    }
+
+    private static void assertRejected(String name, byte[] data) {
+        try {
+            BinImageDecoder.decode(data);
+            fail(name + " accepted");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    private static int[] createPixels() {
+        int[] pixels = new int[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                // Flat background with a square in the middle, like a cropped watch face
+                boolean isInside = x > WIDTH / 4 && x < WIDTH * 3 / 4 && y > HEIGHT / 4 && y < HEIGHT * 3 / 4;
+                pixels[y * WIDTH + x] = isInside ? 0xFF000000 | (x * 0x010203 + y * 0x030201) : 0xFF000000;
+            }
+        }
+        return pixels;
+    }
+}
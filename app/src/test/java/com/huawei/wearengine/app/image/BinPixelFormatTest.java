@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.image;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Round trips of the pixel formats of the watch .bin image file
+ *
+ * @since 2020-08-05
+ */
+public class BinPixelFormatTest {
+    private static final int WIDTH = 454;
+
+    private static final int HEIGHT = 454;
+
+    private static final int SEED = 20200805;
+
+    @Test
+    public void argb8888RoundTripIsLossless() {
+        int[] pixels = createPixels(WIDTH * HEIGHT);
+        assertArrayEquals(pixels, roundTrip(BinPixelFormat.ARGB8888, pixels));
+    }
+
+    @Test
+    public void rgb888RoundTripDropsAlphaOnly() {
+        int[] pixels = createPixels(WIDTH * HEIGHT);
+        int[] decoded = roundTrip(BinPixelFormat.RGB888, pixels);
+        for (int i = 0; i < pixels.length; i++) {
+            assertEquals(0xFF000000 | pixels[i], decoded[i]);
+        }
+    }
+
+    @Test
+    public void rgb565RoundTripKeepsHighBits() {
+        int[] pixels = createPixels(WIDTH * HEIGHT);
+        int[] decoded = roundTrip(BinPixelFormat.RGB565, pixels);
+        for (int i = 0; i < pixels.length; i++) {
+            assertEquals(0xFF000000 | (pixels[i] & 0xF8FCF8), decoded[i] & 0xFFF8FCF8);
+        }
+        assertStable(BinPixelFormat.RGB565, decoded);
+    }
+
+    @Test
+    public void argb4444RoundTripKeepsHighNibbles() {
+        int[] pixels = createPixels(WIDTH * HEIGHT);
+        int[] decoded = roundTrip(BinPixelFormat.ARGB4444, pixels);
+        for (int i = 0; i < pixels.length; i++) {
+            assertEquals(pixels[i] & 0xF0F0F0F0, decoded[i] & 0xF0F0F0F0);
+            // Each nibble is expanded by repeating it
+            assertEquals((decoded[i] >>> 4) & 0x0F0F0F0F, decoded[i] & 0x0F0F0F0F);
+        }
+        assertStable(BinPixelFormat.ARGB4444, decoded);
+    }
+
+    @Test
+    public void index8RoundTripKeepsIndices() {
+        int[] indices = new int[PaletteQuantizer.MAX_COLORS * 4];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = i % PaletteQuantizer.MAX_COLORS;
+        }
+        assertArrayEquals(indices, roundTrip(BinPixelFormat.INDEX8, indices));
+    }
+
+    @Test
+    public void colorModeNamesTheFormat() {
+        for (BinPixelFormat format : BinPixelFormat.values()) {
+            assertSame(format, BinPixelFormat.fromColorMode(format.getColorMode()));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownColorModeIsRejected() {
+        BinPixelFormat.fromColorMode(0xFF << 8);
+    }
+
+    @Test
+    public void fileRoundTripOfEveryFormat() {
+        int[] pixels = createPixels(WIDTH * HEIGHT);
+        for (BinPixelFormat format : BinPixelFormat.values()) {
+            if (format == BinPixelFormat.INDEX8) {
+                continue;
+            }
+            BinEncodeOptions options = new BinEncodeOptions.Builder().setPixelFormat(format).build();
+            byte[] data = BinPixelsEncoder.encode(pixels, WIDTH, HEIGHT, options);
+            assertEquals(format.name(), BinImageFormat.getFileSize(format, WIDTH, HEIGHT), data.length);
+
+            BinImage image = BinImageDecoder.decode(data);
+            assertSame(format, image.getFormat());
+            assertEquals(WIDTH, image.getWidth());
+            assertEquals(HEIGHT, image.getHeight());
+            assertArrayEquals(format.name(), roundTrip(format, pixels), image.getPixels());
+        }
+    }
+
+    @Test
+    public void fileRoundTripOfIndex8KeepsFewColors() {
+        int[] colors = {0xFF000000, 0xFFFFFFFF, 0x80FF0000, 0xFF00FF00, 0x000000FF};
+        int[] pixels = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = colors[(i / 7) % colors.length];
+        }
+        BinEncodeOptions options = new BinEncodeOptions.Builder().setPixelFormat(BinPixelFormat.INDEX8).build();
+        BinImage image = BinImageDecoder.decode(BinPixelsEncoder.encode(pixels, WIDTH, HEIGHT, options));
+        assertSame(BinPixelFormat.INDEX8, image.getFormat());
+        assertArrayEquals(pixels, image.getPixels());
+    }
+
+    @Test
+    public void fileRoundTripOfEveryFormatAndCompression() {
+        // Four colors, each pixel followed by a pair, the worst case of the run-length coding of indices
+        int[] colors = {0xFF000000, 0xFFFFFFFF, 0xFF2040C0, 0xFFC08020};
+        int[] pixels = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = colors[(i / 3 * 2 + Math.min(i % 3, 1)) % colors.length];
+        }
+        for (BinPixelFormat format : BinPixelFormat.values()) {
+            int[] expected = format == BinPixelFormat.INDEX8 ? pixels : roundTrip(format, pixels);
+            for (BinCompression compression : BinCompression.values()) {
+                BinEncodeOptions options = new BinEncodeOptions.Builder().setPixelFormat(format)
+                    .setCompression(compression).build();
+                BinImage image = BinImageDecoder.decode(BinPixelsEncoder.encode(pixels, WIDTH, HEIGHT, options));
+                assertSame(format, image.getFormat());
+                assertArrayEquals(format + " " + compression, expected, image.getPixels());
+            }
+        }
+    }
+
+    @Test
+    public void argb8888FileIsByteIdenticalToTheOriginalLayout() {
+        int[] pixels = createPixels(WIDTH * HEIGHT);
+        byte[] data = BinPixelsEncoder.encode(pixels, WIDTH, HEIGHT, BinEncodeOptions.DEFAULT);
+        assertArrayEquals(encodeOriginal(pixels, WIDTH, HEIGHT), data);
+    }
+
+    /**
+     * Encode pixels the way FileManager.getPicturePixel did before the pixel formats were added
+     */
+    private static byte[] encodeOriginal(int[] pixels, int width, int height) {
+        int colorMode = 1 << 8;
+        int header = (width << 0) + (height << 16);
+        byte[] result = new byte[width * height * 4 + 8];
+        int index = 0;
+        result[index++] = (byte) (colorMode & 0xFF);
+        result[index++] = (byte) ((colorMode >> 8) & 0xFF);
+        result[index++] = (byte) ((colorMode >> 16) & 0xFF);
+        result[index++] = (byte) ((colorMode >> 24) & 0xFF);
+        result[index++] = (byte) (header & 0xFF);
+        result[index++] = (byte) ((header >> 8) & 0xFF);
+        result[index++] = (byte) ((header >> 16) & 0xFF);
+        result[index++] = (byte) ((header >> 24) & 0xFF);
+        for (int clr : pixels) {
+            result[index++] = (byte) (clr & 0x000000ff);
+            result[index++] = (byte) ((clr & 0x0000ff00) >> 8);
+            result[index++] = (byte) ((clr & 0x00ff0000) >> 16);
+            result[index++] = (byte) ((clr & 0xff000000) >> 24);
+        }
+        return result;
+    }
+
+    private static int[] roundTrip(BinPixelFormat format, int[] pixels) {
+        byte[] encoded = new byte[pixels.length * format.getBytesPerPixel()];
+        assertEquals(encoded.length, format.encode(pixels, 0, pixels.length, encoded, 0));
+        int[] decoded = new int[pixels.length];
+        assertEquals(encoded.length, format.decode(encoded, 0, pixels.length, decoded, 0));
+        return decoded;
+    }
+
+    private static void assertStable(BinPixelFormat format, int[] decoded) {
+        assertArrayEquals(format.name(), decoded, roundTrip(format, decoded));
+    }
+
+    private static int[] createPixels(int count) {
+        Random random = new Random(SEED);
+        int[] pixels = new int[count];
+        for (int i = 0; i < count; i++) {
+            pixels[i] = random.nextInt();
+        }
+        return pixels;
+    }
+}
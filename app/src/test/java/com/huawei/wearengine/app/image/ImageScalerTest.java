@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.image;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * Center crop and scaling of ARGB pixels, for square and non-square targets
+ *
+ * @since 2020-08-05
+ */
+public class ImageScalerTest {
+    private static final int WATCH_SIZE = 454;
+
+    private static final int[] COLORS = {0xFF336699, 0x80C0FFEE, 0x00000000, 0xFFFFFFFF};
+
+    private static final int BYTE_MASK = 0xFF;
+
+    @Test
+    public void landscapeIsCroppedToSquare() {
+        assertCrop(500, 0, 3000, 3000, ImageScaler.getCenterCrop(4000, 3000, WATCH_SIZE, WATCH_SIZE));
+    }
+
+    @Test
+    public void portraitIsCroppedToSquare() {
+        assertCrop(0, 500, 3000, 3000, ImageScaler.getCenterCrop(3000, 4000, WATCH_SIZE, WATCH_SIZE));
+    }
+
+    @Test
+    public void cropKeepsTheAspectRatioOfNonSquareTargets() {
+        assertCrop(0, 250, 1000, 500, ImageScaler.getCenterCrop(1000, 1000, 400, 200));
+        assertCrop(375, 0, 250, 500, ImageScaler.getCenterCrop(1000, 500, 200, 400));
+        // Same aspect ratio, nothing is cropped
+        assertCrop(0, 0, 800, 600, ImageScaler.getCenterCrop(800, 600, 400, 300));
+        // The crop is rounded to the nearest pixel and never empty
+        assertCrop(0, 0, 3, 1, ImageScaler.getCenterCrop(3, 1, 1000, 1));
+        assertCrop(0, 499, 1, 1, ImageScaler.getCenterCrop(1, 1000, 1000, 1));
+    }
+
+    @Test
+    public void upscaleTargetIsCroppedLikeAReduction() {
+        assertCrop(25, 0, 50, 50, ImageScaler.getCenterCrop(100, 50, WATCH_SIZE, WATCH_SIZE));
+        assertCrop(0, 10, 30, 20, ImageScaler.getCenterCrop(30, 40, 600, 400));
+    }
+
+    @Test
+    public void areaAveragingIsChosenForReductionsOfAtLeastTwice() {
+        assertTrue(ImageScaler.isAreaAveraging(4000, 3000, WATCH_SIZE, WATCH_SIZE));
+        assertTrue(ImageScaler.isAreaAveraging(90, 100, 45, 60));
+        assertTrue(ImageScaler.isAreaAveraging(100, 90, 60, 45));
+        assertFalse(ImageScaler.isAreaAveraging(89, 100, 45, 60));
+        assertFalse(ImageScaler.isAreaAveraging(100, 80, 70, 50));
+        // An enlargement on one side interpolates even if the other side is reduced a lot
+        assertFalse(ImageScaler.isAreaAveraging(1000, 100, 100, 200));
+        assertFalse(ImageScaler.isAreaAveraging(100, 100, WATCH_SIZE, WATCH_SIZE));
+        assertFalse(ImageScaler.isAreaAveraging(100, 100, 100, 100));
+    }
+
+    @Test
+    public void constantImagesStayConstant() {
+        int[][] sizes = {
+            {400, 300, 45, 45}, {300, 400, 40, 20}, {100, 80, 70, 50}, {10, 8, 45, 45}, {7, 13, 12, 5}, {1, 1, 3, 2}
+        };
+        ImageScaler scaler = new ImageScaler();
+        for (int color : COLORS) {
+            for (int[] size : sizes) {
+                int[] src = new int[size[0] * size[1]];
+                Arrays.fill(src, color);
+                int[] dst = new int[size[2] * size[3]];
+                scaler.cropAndScale(src, size[0], size[1], dst, size[2], size[3]);
+                for (int i = 0; i < dst.length; i++) {
+                    assertEquals(Arrays.toString(size) + " pixel " + i, color, dst[i]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void areaAveragingDoesNotAliasFineDetails() {
+        // Alternating black and white columns, which sampling would turn into a single color
+        int width = 64;
+        int[] src = new int[width * width];
+        for (int i = 0; i < src.length; i++) {
+            src[i] = (i % width) % 2 == 0 ? 0xFF000000 : 0xFFFFFFFF;
+        }
+        int[] dst = new int[16 * 16];
+        new ImageScaler().cropAndScale(src, width, width, dst, 16, 16);
+        for (int color : dst) {
+            assertEquals(BYTE_MASK, color >>> 24);
+            for (int shift = 0; shift < 24; shift += 8) {
+                int channel = (color >> shift) & BYTE_MASK;
+                assertTrue(Integer.toHexString(color), channel == 127 || channel == 128);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyTargetIsRejected() {
+        new ImageScaler().cropAndScale(new int[4], 2, 2, new int[4], 0, 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void smallDestinationIsRejected() {
+        new ImageScaler().cropAndScale(new int[4], 2, 2, new int[3], 2, 2);
+    }
+
+    private static void assertCrop(int left, int top, int width, int height, ImageScaler.Crop crop) {
+        assertEquals("left", left, crop.getLeft());
+        assertEquals("top", top, crop.getTop());
+        assertEquals("width", width, crop.getWidth());
+        assertEquals("height", height, crop.getHeight());
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.image;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Parallel conversions, which must match the sequential conversion byte for byte
+ *
+ * @since 2020-08-05
+ */
+public class ParallelPixelConverterTest {
+    // Widths and heights giving several bands whose last one is partial, and single column images
+    private static final int[][] SIZES = {{257, 301}, {1000, 33}, {1, 40000}, {129, 129}, {640, 480}};
+
+    private static final int PIXEL_OFFSET = 3;
+
+    private static final int BYTE_OFFSET = 5;
+
+    private static final int GUARD = 7;
+
+    private static final int PARALLELISM = 4;
+
+    private static final int SEED = 20200805;
+
+    private static final int BYTE_MASK = 0xFF;
+
+    private final ExecutorService pool = Executors.newFixedThreadPool(PARALLELISM - 1);
+
+    private final AtomicInteger helperRuns = new AtomicInteger();
+
+    private final Executor countingExecutor = new Executor() {
+        @Override
+        public void execute(Runnable runnable) {
+            helperRuns.incrementAndGet();
+            pool.execute(runnable);
+        }
+    };
+
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void parallelEncodingMatchesSequentialEncoding() {
+        ParallelPixelConverter converter = new ParallelPixelConverter(countingExecutor, PARALLELISM, 0);
+        for (BinPixelFormat format : BinPixelFormat.values()) {
+            for (int[] size : SIZES) {
+                String name = format + " " + size[0] + "x" + size[1];
+                int count = size[0] * size[1];
+                int[] pixels = createPixels(format, PIXEL_OFFSET + count + GUARD);
+                int length = BYTE_OFFSET + count * format.getBytesPerPixel() + GUARD;
+                byte[] expected = createGuardBytes(length);
+                format.encode(pixels, PIXEL_OFFSET, count, expected, BYTE_OFFSET);
+
+                byte[] actual = createGuardBytes(length);
+                int end = converter.encode(format, pixels, PIXEL_OFFSET, size[0], size[1], actual, BYTE_OFFSET);
+                assertEquals(name, length - GUARD, end);
+                assertArrayEquals(name, expected, actual);
+            }
+        }
+        assertTrue(helperRuns.get() > 0);
+    }
+
+    @Test
+    public void parallelDecodingMatchesSequentialDecoding() {
+        ParallelPixelConverter converter = new ParallelPixelConverter(countingExecutor, PARALLELISM, 0);
+        Random random = new Random(SEED);
+        for (BinPixelFormat format : BinPixelFormat.values()) {
+            for (int[] size : SIZES) {
+                String name = format + " " + size[0] + "x" + size[1];
+                int count = size[0] * size[1];
+                byte[] src = new byte[BYTE_OFFSET + count * format.getBytesPerPixel() + GUARD];
+                random.nextBytes(src);
+                int[] expected = createGuardPixels(PIXEL_OFFSET + count + GUARD);
+                format.decode(src, BYTE_OFFSET, count, expected, PIXEL_OFFSET);
+
+                int[] actual = createGuardPixels(expected.length);
+                int end = converter.decode(format, src, BYTE_OFFSET, size[0], size[1], actual, PIXEL_OFFSET);
+                assertEquals(name, src.length - GUARD, end);
+                assertArrayEquals(name, expected, actual);
+            }
+        }
+        assertTrue(helperRuns.get() > 0);
+    }
+
+    @Test
+    public void rejectedHelpersLeaveTheBandsToTheCallingThread() {
+        Executor rejecting = new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                throw new RejectedExecutionException("busy");
+            }
+        };
+        ParallelPixelConverter converter = new ParallelPixelConverter(rejecting, PARALLELISM, 0);
+        int[] size = SIZES[0];
+        int count = size[0] * size[1];
+        int[] pixels = createPixels(BinPixelFormat.RGB565, count);
+        byte[] expected = new byte[count * 2];
+        BinPixelFormat.RGB565.encode(pixels, 0, count, expected, 0);
+        byte[] actual = new byte[expected.length];
+        converter.encode(BinPixelFormat.RGB565, pixels, 0, size[0], size[1], actual, 0);
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void smallImagesStayOnTheCallingThread() {
+        ParallelPixelConverter converter = new ParallelPixelConverter(countingExecutor, PARALLELISM,
+            ParallelPixelConverter.DEFAULT_THRESHOLD_PIXELS);
+        int[] pixels = createPixels(BinPixelFormat.ARGB8888, 200 * 200);
+        converter.encode(BinPixelFormat.ARGB8888, pixels, 0, 200, 200, new byte[pixels.length * 4], 0);
+        assertEquals(0, helperRuns.get());
+    }
+
+    private static int[] createPixels(BinPixelFormat format, int length) {
+        Random random = new Random(SEED + length);
+        int[] pixels = new int[length];
+        for (int i = 0; i < length; i++) {
+            // Palette indices for the indexed format
+            pixels[i] = format == BinPixelFormat.INDEX8 ? random.nextInt() & BYTE_MASK : random.nextInt();
+        }
+        return pixels;
+    }
+
+    private static byte[] createGuardBytes(int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (i * 31);
+        }
+        return bytes;
+    }
+
+    private static int[] createGuardPixels(int length) {
+        int[] pixels = new int[length];
+        for (int i = 0; i < length; i++) {
+            pixels[i] = i * 0x01010101;
+        }
+        return pixels;
+    }
+}
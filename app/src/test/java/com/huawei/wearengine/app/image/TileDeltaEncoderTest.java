@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.image;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * Encoding of delta .bin files and their decoding over the image they update
+ *
+ * @since 2020-08-05
+ */
+public class TileDeltaEncoderTest {
+    // Sizes which the tile sizes do not divide, so that the last column and row of tiles are partial
+    private static final int WIDTH = 50;
+
+    private static final int HEIGHT = 37;
+
+    private static final int[] TILE_SIZES = {7, 16};
+
+    private static final String DEVICE = "device";
+
+    private static final String OTHER_DEVICE = "other-device";
+
+    @Test
+    public void deltasRoundTripForEveryFormatAndCompression() {
+        int[] first = createPixels(0);
+        int[] second = changePixels(first);
+        for (BinPixelFormat format : BinPixelFormat.values()) {
+            if (format == BinPixelFormat.INDEX8) {
+                continue;
+            }
+            for (BinCompression compression : BinCompression.values()) {
+                for (int tileSize : TILE_SIZES) {
+                    String name = format + " " + compression + " " + tileSize;
+                    BinEncodeOptions options = createOptions(format, compression);
+                    TileDeltaEncoder encoder = new TileDeltaEncoder(tileSize);
+                    TileDeltaEncoder.Result whole = encoder.encode(DEVICE, first, WIDTH, HEIGHT, options);
+                    assertFalse(name, whole.isDelta());
+                    BinImage base = BinImageDecoder.decode(whole.getData());
+                    encoder.onSent(DEVICE, whole);
+
+                    TileDeltaEncoder.Result delta = encoder.encode(DEVICE, second, WIDTH, HEIGHT, options);
+                    assertTrue(name, delta.isDelta());
+                    assertTrue(name, delta.getChangedTiles() < delta.getTotalTiles());
+                    BinImage expected = BinImageDecoder.decode(BinPixelsEncoder.encode(second, WIDTH, HEIGHT,
+                        options));
+                    assertArrayEquals(name, expected.getPixels(),
+                        BinImageDecoder.decodeDelta(delta.getData(), base).getPixels());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void unchangedImageHasNoChangedTile() {
+        BinEncodeOptions options = createOptions(BinPixelFormat.RGB565, BinCompression.NONE);
+        TileDeltaEncoder encoder = new TileDeltaEncoder(TILE_SIZES[0]);
+        int[] pixels = createPixels(0);
+        TileDeltaEncoder.Result whole = encoder.encode(DEVICE, pixels, WIDTH, HEIGHT, options);
+        encoder.onSent(DEVICE, whole);
+
+        TileDeltaEncoder.Result delta = encoder.encode(DEVICE, pixels, WIDTH, HEIGHT, options);
+        assertTrue(delta.isDelta());
+        assertEquals(0, delta.getChangedTiles());
+        BinImage base = BinImageDecoder.decode(whole.getData());
+        assertArrayEquals(base.getPixels(), BinImageDecoder.decodeDelta(delta.getData(), base).getPixels());
+    }
+
+    @Test
+    public void deltasAreOnlyBasedOnSentImagesOfTheSameDevice() {
+        BinEncodeOptions options = createOptions(BinPixelFormat.ARGB8888, BinCompression.NONE);
+        TileDeltaEncoder encoder = new TileDeltaEncoder(TILE_SIZES[0]);
+        int[] first = createPixels(0);
+        int[] second = changePixels(first);
+        TileDeltaEncoder.Result whole = encoder.encode(DEVICE, first, WIDTH, HEIGHT, options);
+        // Not remembered before its delivery is confirmed
+        assertFalse(encoder.encode(DEVICE, second, WIDTH, HEIGHT, options).isDelta());
+
+        encoder.onSent(DEVICE, whole);
+        assertFalse(encoder.encode(OTHER_DEVICE, second, WIDTH, HEIGHT, options).isDelta());
+        assertFalse(encoder.encode(null, second, WIDTH, HEIGHT, options).isDelta());
+        assertTrue(encoder.encode(DEVICE, second, WIDTH, HEIGHT, options).isDelta());
+
+        encoder.forget(DEVICE);
+        assertFalse(encoder.encode(DEVICE, second, WIDTH, HEIGHT, options).isDelta());
+    }
+
+    @Test
+    public void singleTileAndIndexedImagesAreSentWhole() {
+        int[] first = createPixels(0);
+        int[] second = changePixels(first);
+        // One tile covers the whole image, so that a delta cannot be smaller
+        TileDeltaEncoder encoder = new TileDeltaEncoder(Math.max(WIDTH, HEIGHT));
+        BinEncodeOptions options = createOptions(BinPixelFormat.ARGB8888, BinCompression.NONE);
+        encoder.onSent(DEVICE, encoder.encode(DEVICE, first, WIDTH, HEIGHT, options));
+        assertFalse(encoder.encode(DEVICE, second, WIDTH, HEIGHT, options).isDelta());
+
+        encoder = new TileDeltaEncoder(TILE_SIZES[0]);
+        options = createOptions(BinPixelFormat.INDEX8, BinCompression.NONE);
+        TileDeltaEncoder.Result whole = encoder.encode(DEVICE, first, WIDTH, HEIGHT, options);
+        assertEquals(0, whole.getTotalTiles());
+        encoder.onSent(DEVICE, whole);
+        assertFalse(encoder.encode(DEVICE, second, WIDTH, HEIGHT, options).isDelta());
+    }
+
+    @Test
+    public void deltaOverAnotherBaseIsRejected() {
+        for (BinCompression compression : BinCompression.values()) {
+            BinEncodeOptions options = createOptions(BinPixelFormat.RGB565, compression);
+            TileDeltaEncoder encoder = new TileDeltaEncoder(TILE_SIZES[1]);
+            int[] first = createPixels(0);
+            TileDeltaEncoder.Result whole = encoder.encode(DEVICE, first, WIDTH, HEIGHT, options);
+            encoder.onSent(DEVICE, whole);
+            byte[] delta = encoder.encode(DEVICE, changePixels(first), WIDTH, HEIGHT, options).getData();
+
+            // The watch shows another image, whose tiles differ from the base
+            BinImage otherBase = BinImageDecoder.decode(BinPixelsEncoder.encode(createPixels(1), WIDTH, HEIGHT,
+                options));
+            assertRejected(compression + " other base", delta, otherBase);
+
+            BinImage base = BinImageDecoder.decode(whole.getData());
+            BinImage otherSize = new BinImage(base.getFormat(), HEIGHT, WIDTH, base.getPixels());
+            assertRejected(compression + " other size", delta, otherSize);
+            BinImage otherFormat = new BinImage(BinPixelFormat.ARGB8888, WIDTH, HEIGHT, base.getPixels());
+            assertRejected(compression + " other format", delta, otherFormat);
+            assertRejected(compression + " whole file", whole.getData(), base);
+            assertRejected(compression + " truncated", Arrays.copyOf(delta, BinImageFormat.HEADER_SIZE), base);
+        }
+    }
+
+    private static void assertRejected(String name, byte[] data, BinImage base) {
+        try {
+            BinImageDecoder.decodeDelta(data, base);
+            fail(name + " accepted");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    private static BinEncodeOptions createOptions(BinPixelFormat format, BinCompression compression) {
+        return new BinEncodeOptions.Builder().setPixelFormat(format).setCompression(compression).setDelta(true)
+            .build();
+    }
+
+    private static int[] createPixels(int shift) {
+        int[] pixels = new int[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                pixels[y * WIDTH + x] = 0xFF000000 | ((x + shift) * 0x050301 + y * 0x010407);
+            }
+        }
+        return pixels;
+    }
+
+    private static int[] changePixels(int[] pixels) {
+        int[] changed = pixels.clone();
+        // A block in the middle and one in the partial tile of the bottom right corner
+        fill(changed, 20, 20, 5, 5, 0xFFFF0000);
+        fill(changed, WIDTH - 3, HEIGHT - 2, 3, 2, 0xFF00FF00);
+        return changed;
+    }
+
+    private static void fill(int[] pixels, int left, int top, int width, int height, int color) {
+        for (int y = top; y < top + height; y++) {
+            Arrays.fill(pixels, y * WIDTH + left, y * WIDTH + left + width, color);
+        }
+    }
+}
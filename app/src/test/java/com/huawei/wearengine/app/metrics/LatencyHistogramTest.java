@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Bucket boundaries and percentile ranks of the latency histogram
+ *
+ * @since 2020-08-05
+ */
+public class LatencyHistogramTest {
+    private static final int LAST_BUCKET = (Long.SIZE - 3) * 8 - 1;
+
+    @Test
+    public void valuesBelowSixteenHaveOneBucketEach() {
+        for (int value = 0; value < 16; value++) {
+            assertEquals(value, LatencyHistogram.getBucket(value));
+            assertEquals(value, LatencyHistogram.getBucketUpperBound(value));
+        }
+    }
+
+    @Test
+    public void bucketsAboveSixteenSplitEachPowerOfTwo() {
+        assertEquals(15, LatencyHistogram.getBucket(15));
+        assertEquals(16, LatencyHistogram.getBucket(16));
+        assertEquals(16, LatencyHistogram.getBucket(17));
+        assertEquals(17, LatencyHistogram.getBucket(18));
+        assertEquals(17L, LatencyHistogram.getBucketUpperBound(16));
+        assertEquals(19L, LatencyHistogram.getBucketUpperBound(17));
+        // 32 starts the 8 buckets of the next power of two, 4 values wide
+        assertEquals(24, LatencyHistogram.getBucket(32));
+        assertEquals(35L, LatencyHistogram.getBucketUpperBound(24));
+        assertEquals(LAST_BUCKET, LatencyHistogram.getBucket(Long.MAX_VALUE));
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.getBucketUpperBound(LAST_BUCKET));
+    }
+
+    @Test
+    public void everyValueIsWithinItsBucket() {
+        for (int bit = 0; bit < Long.SIZE - 1; bit++) {
+            long power = 1L << bit;
+            for (long value : new long[] {power - 1, power, power + 1, power + power / 3}) {
+                assertWithinBucket(value);
+            }
+        }
+        for (long value = 0; value < 5000; value++) {
+            assertWithinBucket(value);
+        }
+        assertWithinBucket(Long.MAX_VALUE);
+    }
+
+    @Test
+    public void percentilesOfSmallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 1; value <= 10; value++) {
+            histogram.record(value);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.getSnapshot();
+        assertEquals(5L, snapshot.getP50());
+        assertEquals(10L, snapshot.getP95());
+        assertEquals(10L, snapshot.getP99());
+        assertEquals(1L, snapshot.getPercentile(0.0));
+        assertEquals(5.5, snapshot.getMean(), 0.0);
+    }
+
+    @Test
+    public void percentilesAreBucketUpperBoundsCappedByTheMax() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 1; value <= 100; value++) {
+            histogram.record(value);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.getSnapshot();
+        // Rank 50 falls in the bucket of 48 to 51, rank 95 in the one of 88 to 95
+        assertEquals(51L, snapshot.getP50());
+        assertEquals(95L, snapshot.getP95());
+        // Rank 99 falls in the bucket of 96 to 103, whose bound is above the max
+        assertEquals(100L, snapshot.getP99());
+        assertEquals(100L, snapshot.getPercentile(100.0));
+        assertEquals(100L, snapshot.getMax());
+        assertEquals(100L, snapshot.getCount());
+    }
+
+    @Test
+    public void emptyAndNegativeValuesAreZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0L, histogram.getSnapshot().getP99());
+        assertEquals(0.0, histogram.getSnapshot().getMean(), 0.0);
+
+        histogram.record(-5L);
+        assertEquals(1L, histogram.getSnapshot().getCount());
+        assertEquals(0L, histogram.getSnapshot().getP50());
+
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, histogram.getSnapshot().getP99());
+        histogram.reset();
+        assertEquals(0L, histogram.getSnapshot().getCount());
+        assertEquals(0L, histogram.getSnapshot().getMax());
+    }
+
+    private static void assertWithinBucket(long value) {
+        int bucket = LatencyHistogram.getBucket(value);
+        String name = Long.toString(value);
+        assertTrue(name, value <= LatencyHistogram.getBucketUpperBound(bucket));
+        if (bucket > 0) {
+            assertTrue(name, value > LatencyHistogram.getBucketUpperBound(bucket - 1));
+        }
+        // A percentile is within 12.5% of the values of its bucket
+        long lower = bucket == 0 ? 0 : LatencyHistogram.getBucketUpperBound(bucket - 1) + 1;
+        assertTrue(name, LatencyHistogram.getBucketUpperBound(bucket) - lower <= lower / 8);
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.p2p;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Chunking of the largest transfers, whose offsets and lengths are 32-bit in the chunk frames
+ *
+ * @since 2020-08-05
+ */
+public class FileTransferTest {
+    private static final int CHUNK_SIZE = FileTransferEngine.DEFAULT_CHUNK_SIZE;
+
+    @Test
+    public void largestContentIsChunked() {
+        FileTransfer transfer = new FileTransfer(null, new SizedSource(TransferFrame.MAX_FILE_LENGTH), "key", 1,
+            CHUNK_SIZE);
+        int chunkCount = (int) ((TransferFrame.MAX_FILE_LENGTH + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        assertEquals(chunkCount, transfer.chunkCount);
+        long lastOffset = (long) (chunkCount - 1) * CHUNK_SIZE;
+        assertEquals(TransferFrame.MAX_FILE_LENGTH - lastOffset, transfer.getChunkLength(chunkCount - 1));
+    }
+
+    @Test
+    public void emptyContentHasOneChunk() {
+        FileTransfer transfer = new FileTransfer(null, new SizedSource(0L), "key", 1, CHUNK_SIZE);
+        assertEquals(1, transfer.chunkCount);
+        assertEquals(0, transfer.getChunkLength(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void contentAboveMaxLengthIsRejected() {
+        new FileTransfer(null, new SizedSource(TransferFrame.MAX_FILE_LENGTH + 1L), "key", 1, CHUNK_SIZE);
+    }
+
+    /**
+     * Source of a given length, never opened
+     */
+    private static final class SizedSource implements TransferSource {
+        private final long length;
+
+        SizedSource(long length) {
+            this.length = length;
+        }
+
+        @Override
+        public String getKey() {
+            return getName();
+        }
+
+        @Override
+        public String getName() {
+            return "sized-" + length;
+        }
+
+        @Override
+        public long getLength() {
+            return length;
+        }
+
+        @Override
+        public Reader open() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.p2p;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Encoding and decoding of records of valid, older, newer, truncated and corrupted payloads
+ *
+ * @since 2020-08-05
+ */
+public class RecordSchemaTest {
+    private static final int MESSAGE_TYPE = 0x51;
+
+    private static final int SEED = 20200805;
+
+    private static final int FUZZ_ROUNDS = 5000;
+
+    private static final RecordSchema SCHEMA = new RecordSchema.Builder(MESSAGE_TYPE)
+        .addField("isCharging", RecordSchema.FieldType.BOOL)
+        .addField("heartRate", RecordSchema.FieldType.INT)
+        .addField("timestamp", RecordSchema.FieldType.LONG)
+        .addField("battery", RecordSchema.FieldType.FLOAT)
+        .addField("latitude", RecordSchema.FieldType.DOUBLE)
+        .addField("name", RecordSchema.FieldType.STRING)
+        .addField("raw", RecordSchema.FieldType.BYTES)
+        .build();
+
+    @Test
+    public void valuesRoundTrip() {
+        assertRoundTrip(new Object[] {true, 72, 1596585600000L, 0.85f, 48.8566, "Watch GT 2", new byte[] {1, 2, 3}});
+        assertRoundTrip(new Object[] {false, Integer.MIN_VALUE, Long.MIN_VALUE, Float.NaN, Double.NEGATIVE_INFINITY,
+            "", new byte[0]});
+        assertRoundTrip(new Object[] {true, Integer.MAX_VALUE, Long.MAX_VALUE, -0.0f, Double.MIN_VALUE,
+            "\u624b\u8868 \ud83d\ude00", ByteBuffer.wrap(new byte[] {9, 8, 7, 6}, 1, 2)});
+    }
+
+    @Test
+    public void framesRoundTrip() {
+        Object[] values = {true, 72, 1L, 0.5f, 1.5, "name", new byte[300]};
+        for (boolean isCompressible : new boolean[] {false, true}) {
+            WireFrame frame = WireFrame.decode(SCHEMA.encodeFrame(values, isCompressible));
+            assertEquals(MESSAGE_TYPE, frame.getMessageType());
+            assertValuesEqual(values, SCHEMA.decode(frame));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void frameOfAnotherTypeIsRejected() {
+        SCHEMA.decode(WireFrame.decode(WireFrame.encode(MESSAGE_TYPE + 1, new byte[0], false)));
+    }
+
+    @Test
+    public void olderPayloadsLeaveTheNewFieldsNull() {
+        RecordSchema older = new RecordSchema.Builder(MESSAGE_TYPE)
+            .addField("isCharging", RecordSchema.FieldType.BOOL)
+            .addField("heartRate", RecordSchema.FieldType.INT)
+            .build();
+        Object[] values = SCHEMA.decode(ByteBuffer.wrap(older.encode(new Object[] {true, 60})));
+        assertEquals(true, values[0]);
+        assertEquals(60, values[1]);
+        for (int i = 2; i < values.length; i++) {
+            assertNull(SCHEMA.getFieldName(i), values[i]);
+        }
+    }
+
+    @Test
+    public void newerPayloadsHaveTheirExtraFieldsIgnored() {
+        RecordSchema newer = new RecordSchema.Builder(MESSAGE_TYPE)
+            .addField("isCharging", RecordSchema.FieldType.BOOL)
+            .addField("heartRate", RecordSchema.FieldType.INT)
+            .addField("steps", RecordSchema.FieldType.LONG)
+            .build();
+        RecordSchema older = new RecordSchema.Builder(MESSAGE_TYPE)
+            .addField("isCharging", RecordSchema.FieldType.BOOL)
+            .addField("heartRate", RecordSchema.FieldType.INT)
+            .build();
+        Object[] values = older.decode(ByteBuffer.wrap(newer.encode(new Object[] {false, 80, 12345L})));
+        assertArrayEquals(new Object[] {false, 80}, values);
+    }
+
+    @Test
+    public void fieldsAreFoundByName() {
+        assertEquals(SCHEMA.getFieldCount() - 1, SCHEMA.getFieldIndex("raw"));
+        assertEquals(RecordSchema.FieldType.BYTES, SCHEMA.getFieldType(SCHEMA.getFieldIndex("raw")));
+        assertEquals(-1, SCHEMA.getFieldIndex("missing"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void duplicateFieldIsRejected() {
+        new RecordSchema.Builder(1).addField("a", RecordSchema.FieldType.INT)
+            .addField("a", RecordSchema.FieldType.LONG);
+    }
+
+    @Test
+    public void invalidValuesAreRejected() {
+        assertEncodeRejected(new Object[] {true, 72});
+        assertEncodeRejected(new Object[] {true, 72L, 1L, 0.5f, 1.5, "name", new byte[0]});
+        assertEncodeRejected(new Object[] {true, 72, 1L, 0.5f, 1.5, null, new byte[0]});
+        assertEncodeRejected(new Object[] {true, 72, 1L, 0.5, 1.5, "name", new byte[0]});
+    }
+
+    @Test
+    public void intOutOfRangeIsRejected() {
+        RecordSchema longSchema = new RecordSchema.Builder(1).addField("value", RecordSchema.FieldType.LONG).build();
+        RecordSchema intSchema = new RecordSchema.Builder(1).addField("value", RecordSchema.FieldType.INT).build();
+        byte[] payload = longSchema.encode(new Object[] {Integer.MAX_VALUE + 1L});
+        assertDecodeRejected(intSchema, "int out of range", payload);
+    }
+
+    @Test
+    public void truncatedPayloadsAreRejectedOrDecodedPartially() {
+        Object[] values = {true, 72, 1596585600000L, 0.85f, 48.8566, "Watch GT 2", new byte[] {1, 2, 3}};
+        byte[] payload = SCHEMA.encode(values);
+        int fieldEnd = 0;
+        int fields = 0;
+        for (int length = 0; length < payload.length; length++) {
+            byte[] truncated = Arrays.copyOf(payload, length);
+            if (length == fieldEnd) {
+                // Cut between two fields, the payload of an older schema
+                Object[] decoded = SCHEMA.decode(ByteBuffer.wrap(truncated));
+                assertValuesEqual(Arrays.copyOf(values, fields), Arrays.copyOf(decoded, fields));
+                assertNull(decoded[fields]);
+                fieldEnd += getFieldSize(values, fields);
+                fields++;
+            } else {
+                assertDecodeRejected(SCHEMA, "length " + length, truncated);
+            }
+        }
+    }
+
+    @Test
+    public void lengthBeyondThePayloadIsRejected() {
+        RecordSchema schema = new RecordSchema.Builder(1).addField("name", RecordSchema.FieldType.STRING).build();
+        byte[] payload = schema.encode(new Object[] {"name"});
+        payload[0] = (byte) (payload.length);
+        assertDecodeRejected(schema, "string length", payload);
+    }
+
+    @Test
+    public void randomPayloadsAreRejectedOrDecoded() {
+        Random random = new Random(SEED);
+        for (int i = 0; i < FUZZ_ROUNDS; i++) {
+            byte[] payload = new byte[random.nextInt(64)];
+            random.nextBytes(payload);
+            try {
+                SCHEMA.decode(ByteBuffer.wrap(payload));
+            } catch (IllegalArgumentException e) {
+                // Expected, any other exception fails the test
+            }
+        }
+    }
+
+    private static int getFieldSize(Object[] values, int index) {
+        RecordSchema field = new RecordSchema.Builder(1).addField("field", SCHEMA.getFieldType(index)).build();
+        return field.getEncodedSize(new Object[] {values[index]});
+    }
+
+    private static void assertRoundTrip(Object[] values) {
+        byte[] payload = SCHEMA.encode(values);
+        assertEquals(SCHEMA.getEncodedSize(values), payload.length);
+        assertValuesEqual(values, SCHEMA.decode(ByteBuffer.wrap(payload)));
+    }
+
+    private static void assertValuesEqual(Object[] expected, Object[] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            Object value = expected[i];
+            if (value instanceof byte[]) {
+                value = ByteBuffer.wrap((byte[]) value);
+            }
+            assertEquals(SCHEMA.getFieldName(i), value, actual[i]);
+        }
+    }
+
+    private static void assertEncodeRejected(Object[] values) {
+        try {
+            SCHEMA.encode(values);
+            fail(Arrays.toString(values) + " accepted");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    private static void assertDecodeRejected(RecordSchema schema, String name, byte[] payload) {
+        try {
+            schema.decode(ByteBuffer.wrap(payload));
+            fail(name + " accepted");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+}
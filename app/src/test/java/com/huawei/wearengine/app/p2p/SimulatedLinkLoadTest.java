@@ -0,0 +1,478 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.p2p;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.huawei.hmf.tasks.Task;
+import com.huawei.hmf.tasks.TaskCompletionSource;
+import com.huawei.wearengine.app.transport.LinkModel;
+import com.huawei.wearengine.app.transport.P2pTransport;
+import com.huawei.wearengine.app.transport.SimulatedTransport;
+import com.huawei.wearengine.app.transport.SimulatedWatch;
+import com.huawei.wearengine.device.Device;
+import com.huawei.wearengine.p2p.Message;
+import com.huawei.wearengine.p2p.PingCallback;
+import com.huawei.wearengine.p2p.Receiver;
+import com.huawei.wearengine.p2p.SendCallback;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Load of the file transfers, the outbound queue and the broadcasts over simulated watches
+ * <p>
+ * The callbacks run on a single thread standing for the main thread, so that the senders run on the JVM.
+ *
+ * @since 2020-08-05
+ */
+public class SimulatedLinkLoadTest {
+    private static final int SEED = 20200805;
+
+    private static final int WATCHES = 4;
+
+    private static final long TIMEOUT_SECONDS = 30L;
+
+    private static final LinkModel FAST_LINK = new LinkModel.Builder().setBandwidth(2 * 1024 * 1024).setLatency(2)
+        .setJitter(1).setLossRate(0.01).setRetransmissions(8, 1).build();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final SimulatedTransport transport = new SimulatedTransport(new Random(SEED));
+
+    private final ExecutorService mainThread = Executors.newSingleThreadExecutor();
+
+    @After
+    public void tearDown() {
+        transport.shutdown();
+        mainThread.shutdownNow();
+    }
+
+    @Test
+    public void fileTransfersReachEveryWatch() throws Exception {
+        byte[] content = new byte[300 * 1000 + 7];
+        new Random(SEED).nextBytes(content);
+        File file = folder.newFile("transfer.bin");
+        FileOutputStream output = new FileOutputStream(file);
+        try {
+            output.write(content);
+        } finally {
+            output.close();
+        }
+
+        List<SimulatedWatch> watches = addWatches(WATCHES, FAST_LINK);
+        List<byte[]> received = new ArrayList<>();
+        for (SimulatedWatch watch : watches) {
+            final byte[] copy = new byte[content.length];
+            received.add(copy);
+            watch.setReceiver(new Receiver() {
+                @Override
+                public void onReceiveMessage(Message message) {
+                    TransferFrame frame = TransferFrame.decode(message.getData());
+                    System.arraycopy(frame.getData(), 0, copy, frame.getOffset(), frame.getData().length);
+                }
+            });
+        }
+
+        FileTransferEngine engine = new FileTransferEngine(transport, FileTransferEngine.DEFAULT_CHUNK_SIZE,
+            FileTransferEngine.DEFAULT_WINDOW, mainThread);
+        try {
+            ResultRecorder recorder = new ResultRecorder(watches.size());
+            for (int i = 0; i < watches.size(); i++) {
+                engine.start(engine.getTransfer(watches.get(i).getDevice(), file), recorder.newCallback(i));
+            }
+            recorder.await();
+            for (int i = 0; i < watches.size(); i++) {
+                assertEquals(FileTransferEngine.RESULT_SUCCESS, recorder.getResult(i));
+                assertArrayEquals("watch " + i, content, received.get(i));
+            }
+            assertEquals(watches.size(), recorder.getResultCount());
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    public void unbatchedMessagesArriveInOrder() throws Exception {
+        OutboundMessageQueue queue = new OutboundMessageQueue(transport, mainThread);
+        try {
+            assertMessagesArriveInOrder(queue, 200);
+            // One send per message, as the peer application does not unbatch
+            assertEquals(queue.getSentMessages(), queue.getSentBatches());
+        } finally {
+            queue.shutdown();
+        }
+    }
+
+    @Test
+    public void batchedMessagesArriveInOrder() throws Exception {
+        OutboundMessageQueue queue = new OutboundMessageQueue(transport, 5L,
+            OutboundMessageQueue.DEFAULT_MAX_BATCH_BYTES, mainThread);
+        try {
+            assertMessagesArriveInOrder(queue, 1000);
+            assertTrue(queue.getBatchingRatio() > 1);
+        } finally {
+            queue.shutdown();
+        }
+    }
+
+    @Test
+    public void broadcastsStayWithinTheirConcurrency() throws Exception {
+        List<SimulatedWatch> watches = addWatches(WATCHES * 2, FAST_LINK);
+        CountingTransport counting = new CountingTransport(transport);
+        BroadcastSender sender = new BroadcastSender(counting, 3, BroadcastSender.DEFAULT_TIMEOUT_MILLIS, mainThread);
+        try {
+            BroadcastSender.BroadcastResult result = broadcast(sender, watches, new byte[20 * 1024]);
+            assertEquals(watches.size(), result.getSuccessCount());
+            assertTrue(counting.maxInFlight.get() <= 3);
+            for (SimulatedWatch watch : watches) {
+                assertEquals(1, watch.getReceivedMessages());
+            }
+        } finally {
+            sender.shutdown();
+        }
+    }
+
+    @Test
+    public void timedOutBroadcastSendsKeepTheirSlots() throws Exception {
+        LinkModel slowLink = new LinkModel.Builder().setLatency(150).setJitter(0).setLossRate(0).build();
+        List<SimulatedWatch> watches = addWatches(WATCHES + 2, slowLink);
+        CountingTransport counting = new CountingTransport(transport);
+        BroadcastSender sender = new BroadcastSender(counting, 2, 20L, mainThread);
+        try {
+            BroadcastSender.BroadcastResult result = broadcast(sender, watches, new byte[16]);
+            for (BroadcastSender.DeviceResult deviceResult : result.getDeviceResults()) {
+                assertEquals(BroadcastSender.RESULT_TIMEOUT, deviceResult.getResultCode());
+            }
+            assertTrue("in flight " + counting.maxInFlight.get(), counting.maxInFlight.get() <= 2);
+        } finally {
+            sender.shutdown();
+        }
+    }
+
+    @Test
+    public void lostSendResultsDoNotStallTheQueue() throws Exception {
+        Device device = addWatches(1, FAST_LINK).get(0).getDevice();
+        StalledTransport stalled = new StalledTransport(true);
+        OutboundMessageQueue queue = new OutboundMessageQueue(stalled, 50L, mainThread);
+        try {
+            int messages = 3;
+            ResultRecorder recorder = new ResultRecorder(messages);
+            List<Task<Void>> tasks = new ArrayList<>();
+            for (int i = 0; i < messages; i++) {
+                tasks.add(queue.enqueue(device, ("message " + i).getBytes(), recorder.newCallback(i)));
+            }
+            recorder.await();
+            for (int i = 0; i < messages; i++) {
+                assertEquals(FileTransferEngine.RESULT_SEND_ERROR, recorder.getResult(i));
+            }
+            // Each message is sent once the send before it timed out
+            assertEquals(messages, stalled.sends.get());
+            assertEquals(0, queue.getQueueDepth());
+            awaitMainThread();
+            for (Task<Void> task : tasks) {
+                assertTrue(task.isComplete());
+                assertFalse(task.isSuccessful());
+            }
+        } finally {
+            queue.shutdown();
+        }
+    }
+
+    @Test
+    public void sendsWithoutTaskEndTheBroadcast() throws Exception {
+        List<SimulatedWatch> watches = addWatches(3, FAST_LINK);
+        StalledTransport stalled = new StalledTransport(false);
+        BroadcastSender sender = new BroadcastSender(stalled, 2, 50L, mainThread);
+        try {
+            BroadcastSender.BroadcastResult result = broadcast(sender, watches, new byte[16]);
+            for (BroadcastSender.DeviceResult deviceResult : result.getDeviceResults()) {
+                assertEquals(FileTransferEngine.RESULT_SEND_ERROR, deviceResult.getResultCode());
+            }
+            assertEquals(watches.size(), stalled.sends.get());
+        } finally {
+            sender.shutdown();
+        }
+    }
+
+    @Test
+    public void sendsWhichNeverEndTimeOutTheBroadcast() throws Exception {
+        List<SimulatedWatch> watches = addWatches(3, FAST_LINK);
+        StalledTransport stalled = new StalledTransport(true);
+        BroadcastSender sender = new BroadcastSender(stalled, 2, 50L, mainThread);
+        try {
+            BroadcastSender.BroadcastResult result = broadcast(sender, watches, new byte[16]);
+            assertEquals(watches.size(), result.getDeviceResults().size());
+            for (BroadcastSender.DeviceResult deviceResult : result.getDeviceResults()) {
+                assertEquals(BroadcastSender.RESULT_TIMEOUT, deviceResult.getResultCode());
+            }
+            // The third device never starts, both slots being held by the sends which never end
+            assertEquals(2, stalled.sends.get());
+        } finally {
+            sender.shutdown();
+        }
+    }
+
+    private void assertMessagesArriveInOrder(OutboundMessageQueue queue, int messagesPerWatch) throws Exception {
+        List<SimulatedWatch> watches = addWatches(WATCHES, FAST_LINK);
+        List<List<String>> received = new ArrayList<>();
+        for (SimulatedWatch watch : watches) {
+            final List<String> payloads = Collections.synchronizedList(new ArrayList<String>());
+            received.add(payloads);
+            watch.setReceiver(new Receiver() {
+                @Override
+                public void onReceiveMessage(Message message) {
+                    byte[] data = message.getData();
+                    if (!MessageBatch.isBatch(data)) {
+                        payloads.add(new String(data));
+                        return;
+                    }
+                    for (byte[] payload : MessageBatch.unbatch(data)) {
+                        payloads.add(new String(payload));
+                    }
+                }
+            });
+        }
+
+        ResultRecorder recorder = new ResultRecorder(watches.size() * messagesPerWatch);
+        for (int i = 0; i < messagesPerWatch; i++) {
+            for (int j = 0; j < watches.size(); j++) {
+                queue.enqueue(watches.get(j).getDevice(), ("message " + i).getBytes(),
+                    recorder.newCallback(i * watches.size() + j));
+            }
+        }
+        recorder.await();
+        for (int i = 0; i < recorder.results.length; i++) {
+            assertEquals(FileTransferEngine.RESULT_SUCCESS, recorder.getResult(i));
+        }
+        for (List<String> payloads : received) {
+            assertEquals(messagesPerWatch, payloads.size());
+            for (int i = 0; i < messagesPerWatch; i++) {
+                assertEquals("message " + i, payloads.get(i));
+            }
+        }
+        assertEquals(0, queue.getQueueDepth());
+    }
+
+    private BroadcastSender.BroadcastResult broadcast(BroadcastSender sender, List<SimulatedWatch> watches,
+        byte[] payload) throws InterruptedException {
+        List<Device> devices = new ArrayList<>();
+        for (SimulatedWatch watch : watches) {
+            devices.add(watch.getDevice());
+        }
+        final CountDownLatch done = new CountDownLatch(1);
+        final BroadcastSender.BroadcastResult[] result = new BroadcastSender.BroadcastResult[1];
+        sender.send(devices, payload, new BroadcastSender.Callback() {
+            @Override
+            public void onComplete(BroadcastSender.BroadcastResult broadcastResult) {
+                result[0] = broadcastResult;
+                done.countDown();
+            }
+        });
+        assertTrue("broadcast did not complete", done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        return result[0];
+    }
+
+    private void awaitMainThread() throws Exception {
+        // The tasks complete on the main thread, after the tasks queued before
+        mainThread.submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private List<SimulatedWatch> addWatches(int count, LinkModel link) {
+        List<SimulatedWatch> watches = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            SimulatedWatch watch = new SimulatedWatch(new TestDevice("watch-" + i), SimulatedWatch.DEFAULT_PKG_NAME,
+                link);
+            transport.addWatch(watch);
+            watches.add(watch);
+        }
+        return watches;
+    }
+
+    /**
+     * Device of a simulated watch
+     */
+    private static final class TestDevice extends Device {
+        private final String uuid;
+
+        TestDevice(String uuid) {
+            this.uuid = uuid;
+        }
+
+        @Override
+        public String getUuid() {
+            return uuid;
+        }
+
+        @Override
+        public String getName() {
+            return uuid;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return true;
+        }
+    }
+
+    /**
+     * Final results of several sends, each expected once
+     */
+    private static final class ResultRecorder {
+        private final Integer[] results;
+
+        private final AtomicInteger resultCount = new AtomicInteger();
+
+        private final CountDownLatch done;
+
+        ResultRecorder(int count) {
+            this.results = new Integer[count];
+            this.done = new CountDownLatch(count);
+        }
+
+        SendCallback newCallback(final int index) {
+            return new SendCallback() {
+                @Override
+                public void onSendResult(int resultCode) {
+                    resultCount.incrementAndGet();
+                    synchronized (results) {
+                        if (results[index] == null) {
+                            results[index] = resultCode;
+                            done.countDown();
+                        }
+                    }
+                }
+
+                @Override
+                public void onSendProgress(long progress) {
+                }
+            };
+        }
+
+        void await() throws InterruptedException {
+            assertTrue(done.getCount() + " sends did not complete", done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        }
+
+        int getResult(int index) {
+            synchronized (results) {
+                return results[index];
+            }
+        }
+
+        int getResultCount() {
+            return resultCount.get();
+        }
+    }
+
+    /**
+     * Transport whose sends never end, returning either a task which never completes or no task at all
+     */
+    private static final class StalledTransport implements P2pTransport {
+        private final boolean hasTask;
+
+        private final AtomicInteger sends = new AtomicInteger();
+
+        StalledTransport(boolean hasTask) {
+            this.hasTask = hasTask;
+        }
+
+        @Override
+        public Task<Void> ping(Device device, PingCallback pingCallback) {
+            return null;
+        }
+
+        @Override
+        public Task<Void> send(Device device, Message message, SendCallback sendCallback) {
+            sends.incrementAndGet();
+            return hasTask ? new TaskCompletionSource<Void>().getTask() : null;
+        }
+
+        @Override
+        public Task<Void> registerReceiver(Device device, Receiver receiver) {
+            return null;
+        }
+
+        @Override
+        public Task<Void> unregisterReceiver(Receiver receiver) {
+            return null;
+        }
+    }
+
+    /**
+     * Transport counting the sends in flight, from the call to their result
+     */
+    private static final class CountingTransport implements P2pTransport {
+        private final P2pTransport transport;
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        private final AtomicInteger maxInFlight = new AtomicInteger();
+
+        CountingTransport(P2pTransport transport) {
+            this.transport = transport;
+        }
+
+        @Override
+        public Task<Void> ping(Device device, PingCallback pingCallback) {
+            return transport.ping(device, pingCallback);
+        }
+
+        @Override
+        public Task<Void> send(Device device, Message message, final SendCallback sendCallback) {
+            int count = inFlight.incrementAndGet();
+            while (true) {
+                int max = maxInFlight.get();
+                if (count <= max || maxInFlight.compareAndSet(max, count)) {
+                    break;
+                }
+            }
+            return transport.send(device, message, new SendCallback() {
+                @Override
+                public void onSendResult(int resultCode) {
+                    inFlight.decrementAndGet();
+                    sendCallback.onSendResult(resultCode);
+                }
+
+                @Override
+                public void onSendProgress(long progress) {
+                    sendCallback.onSendProgress(progress);
+                }
+            });
+        }
+
+        @Override
+        public Task<Void> registerReceiver(Device device, Receiver receiver) {
+            return transport.registerReceiver(device, receiver);
+        }
+
+        @Override
+        public Task<Void> unregisterReceiver(Receiver receiver) {
+            return transport.unregisterReceiver(receiver);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.p2p;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Encoding and decoding of valid, truncated and overflowing varints
+ *
+ * @since 2020-08-05
+ */
+public class VarintTest {
+    private static final long[] VALUES = {
+        0L, 1L, 0x7FL, 0x80L, 0x3FFFL, 0x4000L, 0xFFFFFFFFL, Integer.MAX_VALUE, Integer.MIN_VALUE, Long.MAX_VALUE,
+        Long.MIN_VALUE, -1L, -2L, 1L << 62, 1L << 63
+    };
+
+    private static final int SEED = 20200805;
+
+    private static final int FUZZ_ROUNDS = 20000;
+
+    @Test
+    public void unsignedRoundTrip() {
+        for (long value : VALUES) {
+            byte[] data = encodeUnsigned(value);
+            assertEquals(Long.toHexString(value), Varint.sizeOf(value), data.length);
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            assertEquals(value, Varint.getUnsigned(buffer));
+            assertFalse(buffer.hasRemaining());
+        }
+    }
+
+    @Test
+    public void signedRoundTrip() {
+        for (long value : VALUES) {
+            ByteBuffer buffer = ByteBuffer.allocate(Varint.MAX_SIZE);
+            Varint.putSigned(buffer, value);
+            assertEquals(Long.toHexString(value), Varint.sizeOfSigned(value), buffer.position());
+            buffer.flip();
+            assertEquals(value, Varint.getSigned(buffer));
+        }
+    }
+
+    @Test
+    public void sizesAreBounded() {
+        assertEquals(1, Varint.sizeOf(0));
+        assertEquals(1, Varint.sizeOf(0x7F));
+        assertEquals(2, Varint.sizeOf(0x80));
+        assertEquals(Varint.MAX_SIZE, Varint.sizeOf(-1L));
+        // Small negative values stay short once zigzag encoded
+        assertEquals(1, Varint.sizeOfSigned(-1L));
+        assertEquals(1, Varint.sizeOfSigned(-64L));
+        assertEquals(Varint.MAX_SIZE, Varint.sizeOfSigned(Long.MIN_VALUE));
+    }
+
+    @Test
+    public void truncatedVarintsAreRejected() {
+        for (long value : VALUES) {
+            byte[] data = encodeUnsigned(value);
+            for (int length = 0; length < data.length; length++) {
+                assertRejected(Long.toHexString(value) + " " + length, Arrays.copyOf(data, length));
+            }
+        }
+    }
+
+    @Test
+    public void overflowingVarintsAreRejected() {
+        // 11 bytes, one more than the largest varint
+        byte[] tooLong = new byte[Varint.MAX_SIZE + 1];
+        Arrays.fill(tooLong, (byte) 0x80);
+        assertRejected("too long", tooLong);
+
+        // 10 bytes whose last byte carries bits above the 64th
+        for (int last = 2; last < 0x80; last++) {
+            byte[] data = encodeUnsigned(-1L);
+            data[Varint.MAX_SIZE - 1] = (byte) last;
+            assertRejected("last byte " + last, data);
+        }
+    }
+
+    @Test
+    public void lengthsAreBounded() {
+        assertEquals(100, Varint.getLength(ByteBuffer.wrap(encodeUnsigned(100)), 100));
+        try {
+            Varint.getLength(ByteBuffer.wrap(encodeUnsigned(101)), 100);
+            fail("length above max accepted");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        try {
+            // Negative once read as a signed long
+            Varint.getLength(ByteBuffer.wrap(encodeUnsigned(-1L)), Integer.MAX_VALUE);
+            fail("negative length accepted");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void randomBytesAreRejectedOrDecoded() {
+        Random random = new Random(SEED);
+        for (int i = 0; i < FUZZ_ROUNDS; i++) {
+            byte[] data = new byte[random.nextInt(Varint.MAX_SIZE + 2)];
+            random.nextBytes(data);
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            try {
+                long value = Varint.getUnsigned(buffer);
+                assertEquals(value, Varint.getUnsigned(ByteBuffer.wrap(encodeUnsigned(value))));
+            } catch (IllegalArgumentException e) {
+                // Expected, any other exception fails the test
+            }
+        }
+    }
+
+    private static byte[] encodeUnsigned(long value) {
+        ByteBuffer buffer = ByteBuffer.allocate(Varint.MAX_SIZE);
+        Varint.putUnsigned(buffer, value);
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    private static void assertRejected(String name, byte[] data) {
+        try {
+            Varint.getUnsigned(ByteBuffer.wrap(data));
+            fail(name + " accepted");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+}
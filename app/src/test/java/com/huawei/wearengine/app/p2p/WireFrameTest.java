@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.p2p;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+/**
+ * Encoding and decoding of valid, truncated and corrupted wire frames
+ *
+ * @since 2020-08-05
+ */
+public class WireFrameTest {
+    private static final int[] MESSAGE_TYPES = {0, 1, 0x7F, 0x80, Integer.MAX_VALUE, -1};
+
+    private static final int[] PAYLOAD_LENGTHS = {0, 1, 63, 64, 200, 20000};
+
+    private static final int CRC_SIZE = 4;
+
+    private static final int SEED = 20200805;
+
+    private static final int FUZZ_ROUNDS = 5000;
+
+    @Test
+    public void uncompressedFramesRoundTrip() {
+        for (int messageType : MESSAGE_TYPES) {
+            for (int length : PAYLOAD_LENGTHS) {
+                byte[] payload = createNoise(length);
+                byte[] data = WireFrame.encode(messageType, payload, false);
+                assertEquals(WireFrame.getEncodedSize(messageType, length), data.length);
+                assertTrue(WireFrame.isFrame(data));
+
+                WireFrame frame = WireFrame.decode(data);
+                assertEquals(messageType, frame.getMessageType());
+                assertFalse(frame.isCompressed());
+                assertEquals(data.length, frame.getEncodedSize());
+                assertEquals(ByteBuffer.wrap(payload), frame.getPayload());
+            }
+        }
+    }
+
+    @Test
+    public void compressibleFramesShrink() {
+        byte[] payload = new byte[20000];
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = (byte) (i % 10);
+        }
+        byte[] data = WireFrame.encode(7, payload, true);
+        assertTrue(data.length < payload.length / 10);
+
+        WireFrame frame = WireFrame.decode(data);
+        assertTrue(frame.isCompressed());
+        assertEquals(7, frame.getMessageType());
+        assertEquals(ByteBuffer.wrap(payload), frame.getPayload());
+    }
+
+    @Test
+    public void incompressibleFramesStayUncompressed() {
+        for (int length : PAYLOAD_LENGTHS) {
+            byte[] payload = createNoise(length);
+            WireFrame frame = WireFrame.decode(WireFrame.encode(3, payload, true));
+            assertFalse(frame.isCompressed());
+            assertEquals(ByteBuffer.wrap(payload), frame.getPayload());
+        }
+    }
+
+    @Test
+    public void consecutiveFramesDecodeFromOneBuffer() {
+        byte[] first = createNoise(10);
+        byte[] second = createNoise(300);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(WireFrame.getEncodedSize(1, first.length)
+            + WireFrame.getEncodedSize(2, second.length));
+        WireFrame.encode(buffer, 1, ByteBuffer.wrap(first));
+        WireFrame.encode(buffer, 2, ByteBuffer.wrap(second));
+        assertFalse(buffer.hasRemaining());
+
+        // A direct buffer has no array, so that the checksum is computed through copies
+        buffer.flip();
+        WireFrame frame = WireFrame.decode(buffer);
+        assertEquals(1, frame.getMessageType());
+        assertEquals(ByteBuffer.wrap(first), frame.getPayload());
+        frame = WireFrame.decode(buffer);
+        assertEquals(2, frame.getMessageType());
+        assertEquals(ByteBuffer.wrap(second), frame.getPayload());
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void oversizedPayloadIsRejected() {
+        WireFrame.encode(1, new byte[WireFrame.MAX_PAYLOAD_SIZE + 1], false);
+    }
+
+    @Test
+    public void truncatedFramesAreRejected() {
+        for (boolean isCompressible : new boolean[] {false, true}) {
+            byte[] data = WireFrame.encode(0x1234, createText(500), isCompressible);
+            for (int length = 0; length < data.length; length++) {
+                assertRejected(isCompressible + " " + length, Arrays.copyOf(data, length));
+            }
+        }
+    }
+
+    @Test
+    public void trailingBytesAreRejected() {
+        byte[] data = WireFrame.encode(1, createNoise(20), false);
+        assertRejected("trailing byte", Arrays.copyOf(data, data.length + 1));
+    }
+
+    @Test
+    public void everyBitFlipIsRejected() {
+        for (boolean isCompressible : new boolean[] {false, true}) {
+            byte[] data = WireFrame.encode(0x1234, createText(300), isCompressible);
+            for (int bit = 0; bit < data.length * Byte.SIZE; bit++) {
+                byte[] corrupted = data.clone();
+                corrupted[bit / Byte.SIZE] ^= 1 << (bit % Byte.SIZE);
+                assertRejected(isCompressible + " bit " + bit, corrupted);
+            }
+        }
+    }
+
+    @Test
+    public void compressedPayloadOfWrongLengthIsRejected() {
+        byte[] payload = createText(1000);
+        byte[] data = WireFrame.encode(1, payload, true);
+        assertTrue(WireFrame.decode(data).isCompressed());
+        // Prefix, type 1 and compressed length take 1 byte each, the raw length 1000 takes 2 bytes
+        ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(6);
+        Varint.putUnsigned(buffer, payload.length - 1);
+        assertRejected("raw length", withChecksum(data));
+    }
+
+    @Test
+    public void unknownFlagsAreRejected() {
+        byte[] data = WireFrame.encode(1, createNoise(20), false);
+        data[3] = (byte) 0x80;
+        assertRejected("flags", withChecksum(data));
+    }
+
+    @Test
+    public void randomCorruptionsAreRejectedOrDecoded() {
+        Random random = new Random(SEED);
+        byte[] data = WireFrame.encode(0x1234, createText(300), true);
+        for (int i = 0; i < FUZZ_ROUNDS; i++) {
+            byte[] corrupted = Arrays.copyOf(data, 1 + random.nextInt(data.length + 8));
+            for (int j = random.nextInt(4); j >= 0; j--) {
+                corrupted[random.nextInt(corrupted.length)] = (byte) random.nextInt();
+            }
+            // The checksum is fixed half of the time, so that the fields are parsed past it
+            if (random.nextBoolean() && corrupted.length >= CRC_SIZE) {
+                corrupted = withChecksum(corrupted);
+            }
+            try {
+                WireFrame.decode(corrupted);
+            } catch (IllegalArgumentException e) {
+                // Expected, any other exception or error fails the test
+            }
+        }
+    }
+
+    private static byte[] withChecksum(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length - CRC_SIZE);
+        ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN).putInt(data.length - CRC_SIZE, (int) crc.getValue());
+        return data;
+    }
+
+    private static void assertRejected(String name, byte[] data) {
+        try {
+            WireFrame.decode(data);
+            fail(name + " accepted");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    private static byte[] createNoise(int length) {
+        byte[] payload = new byte[length];
+        new Random(SEED + length).nextBytes(payload);
+        return payload;
+    }
+
+    private static byte[] createText(int length) {
+        byte[] payload = new byte[length];
+        for (int i = 0; i < length; i++) {
+            payload[i] = (byte) ('a' + i * 7 % 26);
+        }
+        return payload;
+    }
+}
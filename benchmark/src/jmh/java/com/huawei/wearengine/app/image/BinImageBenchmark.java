@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.image;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmark of encoding ARGB pixels into a whole .bin file and decoding it back
+ * <p>
+ * Encoding is what FileManager.imgToBin does once the Bitmap pixels are read, decoding is the path used to
+ * verify what the watch receives. Both allocate their output, which the gc profiler reports.
+ *
+ * @since 2020-08-05
+ */
+@State(Scope.Thread)
+public class BinImageBenchmark {
+    @Param({ImageSize.WATCH, ImageSize.FULL_HD, ImageSize.CAMERA_12MP, ImageSize.CAMERA_48MP})
+    private String size;
+
+    @Param({"RGB565", "ARGB8888"})
+    private BinPixelFormat format;
+
+    @Param({"NONE", "ROW_RLE", "LZ"})
+    private BinCompression compression;
+
+    private ImageSize imageSize;
+
+    private int[] pixels;
+
+    private BinEncodeOptions options;
+
+    private byte[] encoded;
+
+    /**
+     * Create the pixels and the encoded file to decode
+     */
+    @Setup
+    public void setUp() {
+        imageSize = ImageSize.parse(size);
+        pixels = imageSize.createPixels();
+        options = new BinEncodeOptions.Builder().setPixelFormat(format).setCompression(compression).build();
+        encoded = BinPixelsEncoder.encode(pixels, imageSize.getWidth(), imageSize.getHeight(), options);
+    }
+
+    /**
+     * Encode the pixels into a .bin file
+     *
+     * @return File content
+     */
+    @Benchmark
+    public byte[] encode() {
+        return BinPixelsEncoder.encode(pixels, imageSize.getWidth(), imageSize.getHeight(), options);
+    }
+
+    /**
+     * Decode the .bin file into pixels
+     *
+     * @return Decoded image
+     */
+    @Benchmark
+    public BinImage decode() {
+        return BinImageDecoder.decode(encoded);
+    }
+}
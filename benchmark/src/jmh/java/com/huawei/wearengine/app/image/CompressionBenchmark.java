@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.image;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmark of the compressions of the .bin pixels on a corpus of watch images
+ * <p>
+ * Besides the operation rate, the throughput mode reports the rawBytes and compressedBytes counters as
+ * bytes per millisecond. rawBytes divided by 1000 is the speed in MB/s, and rawBytes divided by
+ * compressedBytes is the compression ratio.
+ *
+ * @since 2020-08-05
+ */
+@State(Scope.Thread)
+public class CompressionBenchmark {
+    @Param({"WATCH_FACE", "PHOTO", "ICON", "SCREENSHOT"})
+    private SampleImage image;
+
+    @Param({"RGB565", "ARGB8888"})
+    private BinPixelFormat format;
+
+    @Param({"ROW_RLE", "LZ"})
+    private BinCompression compression;
+
+    private int rowBytes;
+
+    private byte[] raw;
+
+    private byte[] compressBuffer;
+
+    private byte[] compressed;
+
+    private byte[] decompressed;
+
+    /**
+     * Bytes processed by the operations of an iteration
+     */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class ByteCounters {
+        /**
+         * Raw pixel bytes compressed or decompressed
+         */
+        public long rawBytes;
+
+        /**
+         * Compressed bytes written or read
+         */
+        public long compressedBytes;
+
+        /**
+         * Start the iteration from zero
+         */
+        @Setup(Level.Iteration)
+        public void reset() {
+            rawBytes = 0;
+            compressedBytes = 0;
+        }
+    }
+
+    /**
+     * Convert the image into raw pixels and compress them once for the decompression
+     */
+    @Setup
+    public void setUp() {
+        int[] pixels = image.createPixels();
+        int bytesPerPixel = format.getBytesPerPixel();
+        rowBytes = image.getWidth() * bytesPerPixel;
+        raw = new byte[rowBytes * image.getHeight()];
+        format.encode(pixels, 0, pixels.length, raw, 0);
+        compressBuffer = new byte[compression.maxCompressedLength(raw.length, rowBytes, bytesPerPixel)];
+        int length = compression.compress(raw, 0, raw.length, rowBytes, bytesPerPixel, compressBuffer, 0);
+        compressed = new byte[length];
+        System.arraycopy(compressBuffer, 0, compressed, 0, length);
+        decompressed = new byte[raw.length];
+    }
+
+    /**
+     * Compress the raw pixels
+     *
+     * @param counters byte counters
+     * @return Compressed length
+     */
+    @Benchmark
+    public int compress(ByteCounters counters) {
+        int length = compression.compress(raw, 0, raw.length, rowBytes, format.getBytesPerPixel(), compressBuffer, 0);
+        counters.rawBytes += raw.length;
+        counters.compressedBytes += length;
+        return length;
+    }
+
+    /**
+     * Decompress the compressed pixels
+     *
+     * @param counters byte counters
+     * @return Decompressed pixels
+     */
+    @Benchmark
+    public byte[] decompress(ByteCounters counters) {
+        compression.decompress(compressed, 0, decompressed, 0, raw.length, format.getBytesPerPixel());
+        counters.rawBytes += raw.length;
+        counters.compressedBytes += compressed.length;
+        return decompressed;
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.image;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmark of the center crop and scaling of a picture to the watch image, as FileManager.zoomBitmap does
+ * <p>
+ * The larger sizes are averaged by area, the watch size goes through the bilinear path. The scaler and the
+ * target buffer are reused, so the scaling should not allocate.
+ *
+ * @since 2020-08-05
+ */
+@State(Scope.Thread)
+public class ImageScalerBenchmark {
+    @Param({ImageSize.WATCH, ImageSize.FULL_HD, ImageSize.CAMERA_12MP, ImageSize.CAMERA_48MP})
+    private String size;
+
+    @Param({ImageSize.WATCH, "454x300"})
+    private String target;
+
+    private final ImageScaler scaler = new ImageScaler();
+
+    private ImageSize imageSize;
+
+    private ImageSize targetSize;
+
+    private int[] pixels;
+
+    private int[] scaled;
+
+    /**
+     * Create the pixels and the target buffer
+     */
+    @Setup
+    public void setUp() {
+        imageSize = ImageSize.parse(size);
+        targetSize = ImageSize.parse(target);
+        pixels = imageSize.createPixels();
+        scaled = new int[targetSize.getPixelCount()];
+    }
+
+    /**
+     * Crop and scale the pixels into the target buffer
+     *
+     * @return Target buffer
+     */
+    @Benchmark
+    public int[] cropAndScale() {
+        scaler.cropAndScale(pixels, imageSize.getWidth(), imageSize.getHeight(), scaled, targetSize.getWidth(),
+            targetSize.getHeight());
+        return scaled;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.image;
+
+import java.util.Random;
+
+/**
+ * Image sizes of the benchmarks and synthetic pixels of these sizes
+ * <p>
+ * The pixels are a smooth gradient with a little noise, so that the compressions see runs and repeats
+ * neither as rare as in random noise nor as frequent as in a flat color, like in a photo.
+ *
+ * @since 2020-08-05
+ */
+final class ImageSize {
+    /**
+     * Size of a round watch face
+     */
+    static final String WATCH = "454x454";
+
+    /**
+     * Size of a 1080p screenshot or video frame
+     */
+    static final String FULL_HD = "1920x1080";
+
+    /**
+     * Size of a 12 MP camera photo
+     */
+    static final String CAMERA_12MP = "4000x3000";
+
+    /**
+     * Size of a 48 MP camera photo
+     */
+    static final String CAMERA_48MP = "8000x6000";
+
+    private static final long SEED = 20200805L;
+
+    private static final int NOISE_MASK = 0x070707;
+
+    private static final int OPAQUE = 0xFF000000;
+
+    private static final int BYTE_MASK = 0xFF;
+
+    private final int width;
+
+    private final int height;
+
+    private ImageSize(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Parse a size parameter
+     *
+     * @param size size as width "x" height, such as "454x454"
+     * @return Size
+     * @throws IllegalArgumentException if the size is malformed
+     */
+    static ImageSize parse(String size) {
+        int separator = size.indexOf('x');
+        if (separator <= 0) {
+            throw new IllegalArgumentException("invalid size " + size);
+        }
+        int width = Integer.parseInt(size.substring(0, separator));
+        int height = Integer.parseInt(size.substring(separator + 1));
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("invalid size " + size);
+        }
+        return new ImageSize(width, height);
+    }
+
+    int getWidth() {
+        return width;
+    }
+
+    int getHeight() {
+        return height;
+    }
+
+    int getPixelCount() {
+        return width * height;
+    }
+
+    /**
+     * Create the opaque ARGB pixels of an image of this size, the same at every call
+     *
+     * @return Pixels, row by row
+     */
+    int[] createPixels() {
+        Random random = new Random(SEED);
+        int[] pixels = new int[getPixelCount()];
+        int index = 0;
+        for (int y = 0; y < height; y++) {
+            int green = y * BYTE_MASK / height;
+            for (int x = 0; x < width; x++) {
+                int red = x * BYTE_MASK / width;
+                int blue = (x + y) * BYTE_MASK / (width + height);
+                int color = (red << 16) | (green << 8) | blue;
+                pixels[index++] = OPAQUE | (color ^ (random.nextInt() & NOISE_MASK));
+            }
+        }
+        return pixels;
+    }
+}
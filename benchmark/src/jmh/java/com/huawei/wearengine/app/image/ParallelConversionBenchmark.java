@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.image;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmark of the parallel pixel conversion against the sequential loop
+ * <p>
+ * Both convert the same pixels into the same buffer, the sequential one with the loop of the pixel format,
+ * the parallel one with the shared {@link ParallelPixelConverter}, so the ratio of their throughputs is
+ * the speedup at each size. The parallel one falls back to the loop below its threshold.
+ *
+ * @since 2020-08-05
+ */
+@State(Scope.Thread)
+public class ParallelConversionBenchmark {
+    @Param({ImageSize.WATCH, ImageSize.FULL_HD, ImageSize.CAMERA_12MP, ImageSize.CAMERA_48MP})
+    private String size;
+
+    @Param({"ARGB8888", "RGB565"})
+    private BinPixelFormat format;
+
+    private ParallelPixelConverter converter;
+
+    private int width;
+
+    private int height;
+
+    private int[] pixels;
+
+    private byte[] raw;
+
+    /**
+     * Create the pixels and the buffer of the conversions
+     */
+    @Setup
+    public void setUp() {
+        ImageSize imageSize = ImageSize.parse(size);
+        width = imageSize.getWidth();
+        height = imageSize.getHeight();
+        pixels = imageSize.createPixels();
+        raw = new byte[imageSize.getPixelCount() * format.getBytesPerPixel()];
+        converter = ParallelPixelConverter.getDefault();
+    }
+
+    /**
+     * Convert the pixels on the benchmark thread
+     *
+     * @return End offset of the converted pixels
+     */
+    @Benchmark
+    public int sequential() {
+        return format.encode(pixels, 0, width * height, raw, 0);
+    }
+
+    /**
+     * Convert the pixels in bands on the threads of the shared converter
+     *
+     * @return End offset of the converted pixels
+     */
+    @Benchmark
+    public int parallel() {
+        return converter.encode(format, pixels, 0, width, height, raw, 0);
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.image;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmark of the conversion between ARGB pixels and the pixel formats of the watch
+ * <p>
+ * This is the per-pixel loop behind FileManager.getPicturePixel, run on the int[] pixels the app reads
+ * from a Bitmap. The buffers are allocated once, so the conversion itself should not allocate.
+ *
+ * @since 2020-08-05
+ */
+@State(Scope.Thread)
+public class PixelConversionBenchmark {
+    @Param({ImageSize.WATCH, ImageSize.FULL_HD, ImageSize.CAMERA_12MP, ImageSize.CAMERA_48MP})
+    private String size;
+
+    @Param({"ARGB8888", "RGB565", "ARGB4444", "RGB888"})
+    private BinPixelFormat format;
+
+    private int count;
+
+    private int[] pixels;
+
+    private byte[] raw;
+
+    private int[] decoded;
+
+    /**
+     * Create the pixels and the buffers of the conversions
+     */
+    @Setup
+    public void setUp() {
+        ImageSize imageSize = ImageSize.parse(size);
+        count = imageSize.getPixelCount();
+        pixels = imageSize.createPixels();
+        raw = new byte[count * format.getBytesPerPixel()];
+        decoded = new int[count];
+        format.encode(pixels, 0, count, raw, 0);
+    }
+
+    /**
+     * Convert ARGB pixels into the pixel format
+     *
+     * @return End offset of the converted pixels
+     */
+    @Benchmark
+    public int encode() {
+        return format.encode(pixels, 0, count, raw, 0);
+    }
+
+    /**
+     * Convert pixels of the pixel format back into ARGB
+     *
+     * @return End offset of the read pixels
+     */
+    @Benchmark
+    public int decode() {
+        return format.decode(raw, 0, count, decoded, 0);
+    }
+}
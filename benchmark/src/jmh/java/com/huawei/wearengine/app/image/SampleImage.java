@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.image;
+
+import java.util.Random;
+
+/**
+ * Synthetic watch images of the kinds the app sends, drawn at the watch size
+ *
+ * @since 2020-08-05
+ */
+public enum SampleImage {
+    /**
+     * Round face on the black background left by the center crop, with a shaded dial, ticks and a ring
+     */
+    WATCH_FACE {
+        @Override
+        int getPixel(Random random, int x, int y) {
+            int dx = x - CENTER;
+            int dy = y - CENTER;
+            int distance = (int) Math.sqrt(dx * dx + dy * dy);
+            if (distance >= CENTER) {
+                return BLACK;
+            }
+            if (distance >= CENTER - RING_WIDTH) {
+                return WHITE;
+            }
+            boolean isTick = distance >= CENTER - TICK_LENGTH && (Math.abs(dx) < 3 || Math.abs(dy) < 3);
+            if (isTick) {
+                return WHITE;
+            }
+            // Shaded in 16 steps from the center, like a dial gradient saved as RGB565
+            int shade = 0x40 - distance * 16 / CENTER * 2;
+            return OPAQUE | (shade << 16) | (shade << 8) | (shade + 0x10);
+        }
+    },
+
+    /**
+     * Camera photo, a smooth gradient with a little noise like {@link ImageSize#createPixels}
+     */
+    PHOTO {
+        @Override
+        int getPixel(Random random, int x, int y) {
+            int red = x * BYTE_MASK / SIZE;
+            int green = y * BYTE_MASK / SIZE;
+            int blue = (x + y) * BYTE_MASK / (SIZE + SIZE);
+            return OPAQUE | (((red << 16) | (green << 8) | blue) ^ (random.nextInt() & NOISE_MASK));
+        }
+    },
+
+    /**
+     * Icon of a few flat colors on a transparent background
+     */
+    ICON {
+        @Override
+        int getPixel(Random random, int x, int y) {
+            int margin = SIZE / 8;
+            if (x < margin || y < margin || x >= SIZE - margin || y >= SIZE - margin) {
+                return TRANSPARENT;
+            }
+            int dx = x - CENTER;
+            int dy = y - CENTER;
+            if (dx * dx + dy * dy < (SIZE / 5) * (SIZE / 5)) {
+                return WHITE;
+            }
+            return y < CENTER ? 0xFF1E88E5 : 0xFF1565C0;
+        }
+    },
+
+    /**
+     * Screenshot of a list, lines of text on a white background under a colored title bar
+     */
+    SCREENSHOT {
+        @Override
+        int getPixel(Random random, int x, int y) {
+            if (y < TITLE_HEIGHT) {
+                return 0xFFD32F2F;
+            }
+            int line = y / LINE_HEIGHT;
+            int lineEnd = SIZE / 4 + line * 97 % (SIZE / 2);
+            boolean isText = y % LINE_HEIGHT > 6 && y % LINE_HEIGHT < 18 && x > 24 && x < lineEnd;
+            // Glyphs, as short dark strokes
+            return isText && random.nextInt(3) == 0 ? 0xFF212121 : WHITE;
+        }
+    };
+
+    private static final int SIZE = 454;
+
+    private static final int CENTER = SIZE / 2;
+
+    private static final int RING_WIDTH = 6;
+
+    private static final int TICK_LENGTH = 30;
+
+    private static final int LINE_HEIGHT = 24;
+
+    private static final int TITLE_HEIGHT = 64;
+
+    private static final long SEED = 20200805L;
+
+    private static final int NOISE_MASK = 0x070707;
+
+    private static final int BYTE_MASK = 0xFF;
+
+    private static final int OPAQUE = 0xFF000000;
+
+    private static final int BLACK = 0xFF000000;
+
+    private static final int WHITE = 0xFFFFFFFF;
+
+    private static final int TRANSPARENT = 0x00000000;
+
+    int getWidth() {
+        return SIZE;
+    }
+
+    int getHeight() {
+        return SIZE;
+    }
+
+    /**
+     * Create the ARGB pixels of the image, the same at every call
+     *
+     * @return Pixels, row by row
+     */
+    int[] createPixels() {
+        Random random = new Random(SEED);
+        int[] pixels = new int[SIZE * SIZE];
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                pixels[y * SIZE + x] = getPixel(random, x, y);
+            }
+        }
+        return pixels;
+    }
+
+    /**
+     * Get the color of a pixel, the pixels being drawn row by row
+     *
+     * @param random random numbers of the image, seeded the same at every call of {@link #createPixels}
+     * @param x pixel column
+     * @param y pixel row
+     * @return ARGB color
+     */
+    abstract int getPixel(Random random, int x, int y);
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) Huawei Technologies Co., Ltd. 2020-2020. All rights reserved.
+ */
+
+package com.huawei.wearengine.app.p2p;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.charset.Charset;
+
+/**
+ * Benchmark of a telemetry sample sent as a {@link WireFrame} of a {@link RecordSchema}, against the same
+ * sample sent as a UTF-8 string like the text messages of the app
+ * <p>
+ * Besides the operation rate, the throughput mode reports the messageBytes counter as bytes per
+ * millisecond. messageBytes divided by the operation rate is the size of one message.
+ *
+ * @since 2020-08-05
+ */
+@State(Scope.Thread)
+public class FrameBenchmark {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int MESSAGE_TYPE = 1;
+
+    private static final String[] NAMES = {"isCharging", "heartRate", "steps", "timestamp", "battery", "latitude",
+        "longitude", "deviceName"};
+
+    private static final RecordSchema SCHEMA = new RecordSchema.Builder(MESSAGE_TYPE)
+        .addField(NAMES[0], RecordSchema.FieldType.BOOL)
+        .addField(NAMES[1], RecordSchema.FieldType.INT)
+        .addField(NAMES[2], RecordSchema.FieldType.INT)
+        .addField(NAMES[3], RecordSchema.FieldType.LONG)
+        .addField(NAMES[4], RecordSchema.FieldType.FLOAT)
+        .addField(NAMES[5], RecordSchema.FieldType.DOUBLE)
+        .addField(NAMES[6], RecordSchema.FieldType.DOUBLE)
+        .addField(NAMES[7], RecordSchema.FieldType.STRING)
+        .build();
+
+    private final Object[] values = {
+        false, 72, 10234, 1596585600000L, 0.85f, 48.856613, 2.352222, "HUAWEI WATCH GT 2"
+    };
+
+    private byte[] frame;
+
+    private byte[] text;
+
+    /**
+     * Bytes of the messages encoded or decoded during an iteration
+     */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class ByteCounters {
+        /**
+         * Message bytes written or read
+         */
+        public long messageBytes;
+
+        /**
+         * Start the iteration from zero
+         */
+        @Setup(Level.Iteration)
+        public void reset() {
+            messageBytes = 0;
+        }
+    }
+
+    /**
+     * Encode the sample once for the decoding
+     */
+    @Setup
+    public void setUp() {
+        frame = SCHEMA.encodeFrame(values, false);
+        text = encodeText(values);
+    }
+
+    /**
+     * Encode the sample into a frame
+     *
+     * @param counters byte counters
+     * @return Frame bytes
+     */
+    @Benchmark
+    public byte[] encodeFrame(ByteCounters counters) {
+        byte[] data = SCHEMA.encodeFrame(values, false);
+        counters.messageBytes += data.length;
+        return data;
+    }
+
+    /**
+     * Decode the sample from a frame
+     *
+     * @param counters byte counters
+     * @return Values
+     */
+    @Benchmark
+    public Object[] decodeFrame(ByteCounters counters) {
+        counters.messageBytes += frame.length;
+        return SCHEMA.decode(WireFrame.decode(frame));
+    }
+
+    /**
+     * Encode the sample into a UTF-8 string of name=value pairs
+     *
+     * @param counters byte counters
+     * @return String bytes
+     */
+    @Benchmark
+    public byte[] encodeText(ByteCounters counters) {
+        byte[] data = encodeText(values);
+        counters.messageBytes += data.length;
+        return data;
+    }
+
+    /**
+     * Decode the sample from a UTF-8 string of name=value pairs
+     *
+     * @param counters byte counters
+     * @return Values
+     */
+    @Benchmark
+    public Object[] decodeText(ByteCounters counters) {
+        counters.messageBytes += text.length;
+        return decodeText(text);
+    }
+
+    private static byte[] encodeText(Object[] values) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < NAMES.length; i++) {
+            if (i > 0) {
+                builder.append(';');
+            }
+            builder.append(NAMES[i]).append('=').append(values[i]);
+        }
+        return builder.toString().getBytes(UTF_8);
+    }
+
+    private static Object[] decodeText(byte[] data) {
+        String[] pairs = new String(data, UTF_8).split(";");
+        Object[] values = new Object[NAMES.length];
+        for (String pair : pairs) {
+            int separator = pair.indexOf('=');
+            String name = pair.substring(0, separator);
+            String value = pair.substring(separator + 1);
+            int index = SCHEMA.getFieldIndex(name);
+            switch (SCHEMA.getFieldType(index)) {
+                case BOOL:
+                    values[index] = Boolean.parseBoolean(value);
+                    break;
+                case INT:
+                    values[index] = Integer.parseInt(value);
+                    break;
+                case LONG:
+                    values[index] = Long.parseLong(value);
+                    break;
+                case FLOAT:
+                    values[index] = Float.parseFloat(value);
+                    break;
+                case DOUBLE:
+                    values[index] = Double.parseDouble(value);
+                    break;
+                default:
+                    values[index] = value;
+                    break;
+            }
+        }
+        return values;
+    }
+}